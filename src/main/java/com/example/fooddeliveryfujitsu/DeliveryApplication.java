@@ -1,13 +1,18 @@
 package com.example.fooddeliveryfujitsu;
 
+import com.example.fooddeliveryfujitsu.models.BackfillReport;
+import com.example.fooddeliveryfujitsu.services.WeatherBackfillService;
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.context.ConfigurableApplicationContext;
 import io.swagger.v3.oas.annotations.OpenAPIDefinition;
 import io.swagger.v3.oas.annotations.info.Info;
 
+import java.nio.file.Paths;
+import java.util.Arrays;
+
 @SpringBootApplication
-@EnableScheduling
 @OpenAPIDefinition(
         info = @Info(
                 title = "Weather Delivery API",
@@ -16,7 +21,37 @@ import io.swagger.v3.oas.annotations.info.Info;
         )
 )
 public class DeliveryApplication {
+
+    private static final String BACKFILL_OPTION = "--backfill=";
+    private static final String NO_SCHEDULING = "--weather.scheduling.enabled=false";
+
     public static void main(String[] args) {
-        SpringApplication.run(DeliveryApplication.class, args);
+        String backfillDirectory = backfillDirectory(args);
+        if (backfillDirectory == null) {
+            SpringApplication.run(DeliveryApplication.class, args);
+            return;
+        }
+        // Backfill mode imports an archive directory without starting the web server or scheduled jobs, and exits
+        // when done.
+        SpringApplication application = new SpringApplication(DeliveryApplication.class);
+        application.setWebApplicationType(WebApplicationType.NONE);
+        String[] backfillArgs = Arrays.copyOf(args, args.length + 1);
+        backfillArgs[args.length] = NO_SCHEDULING;
+        int exitCode;
+        try (ConfigurableApplicationContext context = application.run(backfillArgs)) {
+            BackfillReport report = context.getBean(WeatherBackfillService.class)
+                    .importDirectory(Paths.get(backfillDirectory));
+            exitCode = report.getFailedFiles() > 0 ? 1 : 0;
+        }
+        System.exit(exitCode);
+    }
+
+    private static String backfillDirectory(String[] args) {
+        for (String arg : args) {
+            if (arg.startsWith(BACKFILL_OPTION)) {
+                return arg.substring(BACKFILL_OPTION.length());
+            }
+        }
+        return null;
     }
-}
\ No newline at end of file
+}
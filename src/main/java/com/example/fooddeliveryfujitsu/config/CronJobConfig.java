@@ -4,30 +4,47 @@ import com.example.fooddeliveryfujitsu.services.WeatherDataService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Lazy;
-import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.support.CronExpression;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
 @Configuration
-@EnableScheduling
 public class CronJobConfig {
 
     private static final Logger logger = LoggerFactory.getLogger(CronJobConfig.class);
 
     private final WeatherDataService weatherDataService;
+    private final CronExpression weatherCronExpression;
 
     //Constructor with lazy-loaded WeatherDataService to break circular dependency.
     @Autowired
-    public CronJobConfig(@Lazy WeatherDataService weatherDataService) {
+    public CronJobConfig(@Lazy WeatherDataService weatherDataService,
+                         @Value("${weather.cron.expression:0 15 * * * ?}") String weatherCronExpression) {
         this.weatherDataService = weatherDataService;
+        this.weatherCronExpression = CronExpression.parse(weatherCronExpression);
     }
 
+    // One shared JDK HttpClient keeps connections to the weather API alive between fetches. The read timeout
+    // also covers the body, so a stalled upstream fails the fetch instead of holding the scheduler thread.
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate restTemplate(@Value("${weather.api.connect-timeout-ms:5000}") long connectTimeoutMs,
+                                     @Value("${weather.api.read-timeout-ms:30000}") long readTimeoutMs) {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+        return new RestTemplate(requestFactory);
     }
 
 
@@ -38,4 +55,9 @@ public class CronJobConfig {
         logger.info("Executing scheduled weather data fetch");
         weatherDataService.fetchAndSaveWeatherData();
     }
-}
\ No newline at end of file
+
+    // Time of the next scheduled weather data fetch after the given time, or null if it never fires again.
+    public LocalDateTime nextWeatherFetchAfter(LocalDateTime dateTime) {
+        return weatherCronExpression.next(dateTime);
+    }
+}
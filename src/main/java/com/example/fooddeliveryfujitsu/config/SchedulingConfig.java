@@ -0,0 +1,14 @@
+package com.example.fooddeliveryfujitsu.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Scheduled jobs (the weather fetch and retention) run unless weather.scheduling.enabled is false; backfill mode
+// turns them off, as it runs beside no server. Retention and an import started from the admin endpoint are kept
+// apart by WeatherHistoryLock.
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "weather.scheduling.enabled", havingValue = "true", matchIfMissing = true)
+public class SchedulingConfig {
+}
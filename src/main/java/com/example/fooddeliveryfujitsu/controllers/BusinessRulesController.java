@@ -1,18 +1,21 @@
 package com.example.fooddeliveryfujitsu.controllers;
 
+import com.example.fooddeliveryfujitsu.models.CursorPage;
 import com.example.fooddeliveryfujitsu.models.RegionalBaseFee;
 import com.example.fooddeliveryfujitsu.models.WeatherExtraFee;
 import com.example.fooddeliveryfujitsu.services.BusinessRulesService;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
+import java.time.LocalDateTime;
 
 @RestController
 @RequestMapping("/api/business-rules")
@@ -21,6 +24,9 @@ public class BusinessRulesController {
 
     private static final Logger logger = LoggerFactory.getLogger(BusinessRulesController.class);
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final BusinessRulesService businessRulesService;
 
     @Autowired
@@ -29,10 +35,27 @@ public class BusinessRulesController {
     }
 
     @GetMapping("/regional-base-fees")
-    @Operation(summary = "Get all regional base fees",
-            description = "Retrieves all regional base fees")
-    public ResponseEntity<List<RegionalBaseFee>> getAllRegionalBaseFees() {
-        return ResponseEntity.ok(businessRulesService.getAllRegionalBaseFees());
+    @Operation(summary = "List regional base fees",
+            description = "Lists regional base fee versions in id order, one page at a time, optionally filtered by "
+                    + "city, vehicle type and the time they are active at. Pass the returned nextCursor to get the "
+                    + "next page; it is null on the last page.")
+    public ResponseEntity<CursorPage<RegionalBaseFee>> getAllRegionalBaseFees(
+            @RequestParam(required = false) String city,
+            @RequestParam(required = false) String vehicleType,
+            @Parameter(description = "Only versions active at this time, yyyy-MM-dd HH:mm:ss")
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime activeAt,
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "Page size, at most " + MAX_PAGE_SIZE)
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(businessRulesService.findRegionalBaseFees(city, vehicleType, activeAt, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Rejected regional base fee listing: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     @GetMapping("/regional-base-fees/{id}")
@@ -81,10 +104,27 @@ public class BusinessRulesController {
     }
 
     @GetMapping("/weather-extra-fees")
-    @Operation(summary = "Get all weather extra fees",
-            description = "Retrieves all weather extra fees")
-    public ResponseEntity<List<WeatherExtraFee>> getAllWeatherExtraFees() {
-        return ResponseEntity.ok(businessRulesService.getAllWeatherExtraFees());
+    @Operation(summary = "List weather extra fees",
+            description = "Lists weather extra fee versions in id order, one page at a time, optionally filtered by "
+                    + "fee type, vehicle type and the time they are active at. Pass the returned nextCursor to get "
+                    + "the next page; it is null on the last page.")
+    public ResponseEntity<CursorPage<WeatherExtraFee>> getAllWeatherExtraFees(
+            @RequestParam(required = false) String feeType,
+            @RequestParam(required = false) String vehicleType,
+            @Parameter(description = "Only versions active at this time, yyyy-MM-dd HH:mm:ss")
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime activeAt,
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "Page size, at most " + MAX_PAGE_SIZE)
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(businessRulesService.findWeatherExtraFees(feeType, vehicleType, activeAt, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Rejected weather extra fee listing: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     @GetMapping("/weather-extra-fees/{id}")
@@ -1,8 +1,19 @@
 package com.example.fooddeliveryfujitsu.controllers;
 
+import com.example.fooddeliveryfujitsu.config.CronJobConfig;
 import com.example.fooddeliveryfujitsu.models.DeliveryFeeRequest;
 import com.example.fooddeliveryfujitsu.models.DeliveryFeeResponse;
+import com.example.fooddeliveryfujitsu.models.WeatherData;
 import com.example.fooddeliveryfujitsu.services.DeliveryFeeService;
+import com.example.fooddeliveryfujitsu.services.FeeMatrix;
+import com.example.fooddeliveryfujitsu.services.PricedQuote;
+import com.example.fooddeliveryfujitsu.services.QuoteSession;
+import com.example.fooddeliveryfujitsu.util.BoundedLineReader;
+import com.example.fooddeliveryfujitsu.util.Digests;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -10,13 +21,35 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
 @RestController
 @RequestMapping("/api/delivery-fee")
 @Tag(name = "Delivery Fee", description = "API for calculating delivery fees based on city, vehicle type, and weather conditions")
@@ -24,11 +57,32 @@ public class DeliveryFeeController {
 
     private static final Logger logger = LoggerFactory.getLogger(DeliveryFeeController.class);
 
+    private static final String NDJSON = "application/x-ndjson";
+
     private final DeliveryFeeService deliveryFeeService;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final CronJobConfig cronJobConfig;
+
+    // JSON body of the last fee matrix served; replaced on first request after the matrix is republished.
+    private volatile SerializedFeeMatrix serializedFeeMatrix;
+
+    @Value("${delivery.batch.max-size:1000}")
+    private int maxBatchSize;
+
+    @Value("${delivery.stream.max-cached-observations:1024}")
+    private int streamMaxCachedObservations;
+
+    @Value("${delivery.stream.max-line-length:8192}")
+    private int streamMaxLineLength;
 
     @Autowired
-    public DeliveryFeeController(DeliveryFeeService deliveryFeeService) {
+    public DeliveryFeeController(DeliveryFeeService deliveryFeeService, Validator validator,
+                                 ObjectMapper objectMapper, CronJobConfig cronJobConfig) {
         this.deliveryFeeService = deliveryFeeService;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.cronJobConfig = cronJobConfig;
     }
 
     @PostMapping("/calculate")
@@ -44,7 +98,7 @@ public class DeliveryFeeController {
             @Parameter(description = "Delivery fee request details", required = true)
             @Valid @RequestBody DeliveryFeeRequest request) {
 
-        logger.info("Received delivery fee calculation request: {}", request);
+        logger.debug("Received delivery fee calculation request: {}", request);
 
         try {
             DeliveryFeeResponse response = deliveryFeeService.calculateDeliveryFee(request);
@@ -54,7 +108,7 @@ public class DeliveryFeeController {
                 return ResponseEntity.badRequest().body(response);
             }
 
-            logger.info("Calculated delivery fee: {}", response.getFee());
+            logger.debug("Calculated delivery fee: {} cents", response.getFeeCents());
             return ResponseEntity.ok(response);
 
         } catch (Exception e) {
@@ -63,8 +117,230 @@ public class DeliveryFeeController {
         }
     }
 
+    @GetMapping("/quote")
+    @Operation(summary = "Get a cacheable delivery fee quote",
+            description = "Same calculation as POST /calculate, exposed as a GET so that HTTP caches can store it. "
+                    + "Responses carry a strong ETag, a digest of the observation, its values and the business rules, "
+                    + "and a Cache-Control max-age that ends at the next scheduled weather fetch. "
+                    + "Conditional requests with a matching If-None-Match get 304. There is no Last-Modified, as "
+                    + "a reading can be corrected in place without its observation time changing.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully calculated fee",
+                    content = @Content(schema = @Schema(implementation = DeliveryFeeResponse.class))),
+            @ApiResponse(responseCode = "304", description = "The cached quote is still current"),
+            @ApiResponse(responseCode = "400", description = "Invalid request parameters or fee not available",
+                    content = @Content(schema = @Schema(implementation = DeliveryFeeResponse.class)))
+    })
+    public ResponseEntity<DeliveryFeeResponse> getQuote(
+            @Parameter(description = "City", required = true) @RequestParam DeliveryFeeRequest.City city,
+            @Parameter(description = "Vehicle type", required = true) @RequestParam DeliveryFeeRequest.VehicleType vehicleType,
+            @Parameter(description = "Point in time to price at, yyyy-MM-dd HH:mm:ss; current weather if omitted")
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime dateTime) {
+
+        PricedQuote quote = deliveryFeeService.priceQuote(new DeliveryFeeRequest(city, vehicleType, dateTime));
+        DeliveryFeeResponse response = quote.getResponse();
+        if (response.hasError()) {
+            logger.warn("Delivery fee calculation error: {}", response.getError());
+            return ResponseEntity.badRequest().body(response);
+        }
+
+        // A matching If-None-Match turns this into a 304 without a body.
+        return ResponseEntity.ok()
+                .eTag(quoteETag(quote))
+                .cacheControl(CacheControl.maxAge(quoteMaxAge(quote)))
+                .body(response);
+    }
+
+    // A digest of every input of the quote. The observation values cover readings corrected in place under the same
+    // id and timestamp, and hourly aggregates, which have no id and whose averages change as more readings arrive.
+    // The rules enter by content, so every instance tags the same quote alike, before and after a restart.
+    private static String quoteETag(PricedQuote quote) {
+        WeatherData observation = quote.getObservation();
+        String inputs = String.join("\n", String.valueOf(observation.getId()), observation.getStationName(),
+                String.valueOf(observation.getTimestamp()), String.valueOf(observation.getAirTemperature()),
+                String.valueOf(observation.getWindSpeed()), String.valueOf(observation.getWeatherPhenomenon()),
+                quote.getRulesDigest(), String.valueOf(quote.getValidUntil()));
+        return Digests.sha256(inputs);
+    }
+
+    // A quote can change no earlier than the next weather fetch or, for current quotes, the next rule boundary.
+    private Duration quoteMaxAge(PricedQuote quote) {
+        LocalDateTime now = LocalDateTime.now();
+        Instant nowInstant = now.atZone(ZoneId.systemDefault()).toInstant();
+        LocalDateTime nextFetch = cronJobConfig.nextWeatherFetchAfter(now);
+        Instant expires = nextFetch != null ? nextFetch.atZone(ZoneId.systemDefault()).toInstant() : null;
+        if (quote.getValidUntil() != null && (expires == null || quote.getValidUntil().isBefore(expires))) {
+            expires = quote.getValidUntil();
+        }
+        if (expires == null || !expires.isAfter(nowInstant)) {
+            return Duration.ZERO;
+        }
+        return Duration.between(nowInstant, expires);
+    }
+
+    @PostMapping("/calculate-batch")
+    @Operation(summary = "Calculate delivery fees in a batch",
+            description = "Calculates delivery fees for a list of requests in a single call. Weather is resolved once "
+                    + "per distinct city and observation and shared by all quotes in the batch. Results are returned "
+                    + "in input order; an invalid or unpriceable item yields an error entry without failing the batch. "
+                    + "At most delivery.batch.max-size (default 1000) requests are accepted per call.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Batch evaluated, per-item results in input order"),
+            @ApiResponse(responseCode = "400", description = "Batch is empty or exceeds the maximum size",
+                    content = @Content(schema = @Schema(implementation = DeliveryFeeResponse.class)))
+    })
+    public ResponseEntity<?> calculateFeeBatch(
+            @Parameter(description = "Delivery fee requests", required = true)
+            @RequestBody List<DeliveryFeeRequest> requests) {
+
+        if (requests == null || requests.isEmpty()) {
+            return ResponseEntity.badRequest().body(new DeliveryFeeResponse("Batch must contain at least one request"));
+        }
+        if (requests.size() > maxBatchSize) {
+            logger.warn("Rejected delivery fee batch of {} requests, limit is {}", requests.size(), maxBatchSize);
+            return ResponseEntity.badRequest().body(
+                    new DeliveryFeeResponse("Batch size " + requests.size() + " exceeds the maximum of " + maxBatchSize));
+        }
+
+        logger.debug("Received delivery fee batch of {} requests", requests.size());
+
+        QuoteSession session = deliveryFeeService.openQuoteSession(requests.size());
+        List<DeliveryFeeResponse> responses = new ArrayList<>(requests.size());
+        for (DeliveryFeeRequest request : requests) {
+            responses.add(quoteBatchItem(session, request));
+        }
+        return ResponseEntity.ok(responses);
+    }
+
+    @PostMapping(value = "/calculate-stream", consumes = NDJSON, produces = NDJSON)
+    @Operation(summary = "Calculate delivery fees from a stream",
+            description = "Reads newline-delimited DeliveryFeeRequest JSON and writes one DeliveryFeeResponse line per "
+                    + "input line, in input order, as soon as each quote is computed. Requests are processed one line "
+                    + "at a time, so memory use does not grow with the input; a slow reader slows down the processing "
+                    + "through the blocking output stream. A malformed line, or one longer than delivery.stream.max-line-length "
+                    + "characters, yields an error line in its place.")
+    public void calculateFeeStream(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        ObjectReader requestReader = objectMapper.readerFor(DeliveryFeeRequest.class);
+        QuoteSession session = deliveryFeeService.openQuoteSession(streamMaxCachedObservations);
+        long count = 0;
+
+        // Each value is flushed as soon as it is written, so writes block while the client is not reading.
+        // Lines are read with a length cap, so a line without a newline cannot grow the buffer without bound.
+        try (BoundedLineReader reader = new BoundedLineReader(request.getReader(), streamMaxLineLength);
+             SequenceWriter writer = objectMapper.writer()
+                     .withRootValueSeparator("\n")
+                     .writeValues(response.getOutputStream())) {
+            while (reader.next()) {
+                String line = reader.getLine();
+                if (reader.isTooLong()) {
+                    writer.write(new DeliveryFeeResponse(
+                            "Invalid request: line exceeds " + streamMaxLineLength + " characters"));
+                    count++;
+                    continue;
+                }
+                if (line.isBlank()) {
+                    continue;
+                }
+                writer.write(quoteStreamLine(session, requestReader, line));
+                count++;
+            }
+            // The separator is written before each value, so terminate the last line explicitly.
+            if (count > 0) {
+                response.getOutputStream().write('\n');
+            }
+        }
+
+        logger.debug("Streamed {} delivery fee quotes", count);
+    }
+
+    private DeliveryFeeResponse quoteStreamLine(QuoteSession session, ObjectReader requestReader, String line) {
+        DeliveryFeeRequest request;
+        try {
+            request = requestReader.readValue(line);
+        } catch (JsonProcessingException e) {
+            return new DeliveryFeeResponse("Invalid request: " + e.getOriginalMessage());
+        }
+        return quoteBatchItem(session, request);
+    }
+
+    private DeliveryFeeResponse quoteBatchItem(QuoteSession session, DeliveryFeeRequest request) {
+        if (request == null) {
+            return new DeliveryFeeResponse("Request is required");
+        }
+
+        Set<ConstraintViolation<DeliveryFeeRequest>> violations = validator.validate(request);
+        if (!violations.isEmpty()) {
+            // Prefixed with the field, so a client can tell which part of the item to fix.
+            return new DeliveryFeeResponse(violations.stream()
+                    .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", ")));
+        }
+
+        try {
+            return session.quote(request);
+        } catch (Exception e) {
+            logger.error("Error calculating delivery fee for batch item {}", request, e);
+            return new DeliveryFeeResponse("Error calculating delivery fee: " + e.getMessage());
+        }
+    }
+
+    @GetMapping(value = "/matrix", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Get the current fee matrix",
+            description = "Returns the delivery fee, breakdown or restriction for every city and vehicle type under "
+                    + "the latest observation of each city. The body is serialized once per weather or rule change.")
+    @ApiResponse(responseCode = "200", description = "Current fees for all cities and vehicle types")
+    public ResponseEntity<byte[]> getFeeMatrix() throws JsonProcessingException {
+        FeeMatrix matrix = deliveryFeeService.getFeeMatrix();
+        SerializedFeeMatrix serialized = serializedFeeMatrix;
+        if (serialized == null || serialized.matrix != matrix) {
+            serialized = new SerializedFeeMatrix(matrix, objectMapper.writeValueAsBytes(toMatrixBody(matrix)));
+            serializedFeeMatrix = serialized;
+            logger.debug("Serialized fee matrix for rules version {}: {} bytes",
+                    matrix.getRulesVersion(), serialized.json.length);
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(serialized.json);
+    }
+
+    private static Map<String, Object> toMatrixBody(FeeMatrix matrix) {
+        Map<String, Object> cities = new LinkedHashMap<>();
+        for (DeliveryFeeRequest.City city : DeliveryFeeRequest.City.values()) {
+            Map<String, DeliveryFeeResponse> fees = new LinkedHashMap<>();
+            for (DeliveryFeeRequest.VehicleType vehicleType : DeliveryFeeRequest.VehicleType.values()) {
+                fees.put(vehicleType.name(), matrix.get(city, vehicleType));
+            }
+
+            WeatherData observation = matrix.getObservation(city);
+            Map<String, Object> cityBody = new LinkedHashMap<>();
+            cityBody.put("stationName", observation != null ? observation.getStationName() : null);
+            cityBody.put("observedAt", observation != null ? observation.getTimestamp() : null);
+            cityBody.put("fees", fees);
+            cities.put(city.name(), cityBody);
+        }
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("rulesVersion", matrix.getRulesVersion());
+        body.put("cities", cities);
+        return body;
+    }
+
     @GetMapping("/test")
     public String test() {
         return "API is working!";
     }
-}
\ No newline at end of file
+
+    private static final class SerializedFeeMatrix {
+        private final FeeMatrix matrix;
+        private final byte[] json;
+
+        SerializedFeeMatrix(FeeMatrix matrix, byte[] json) {
+            this.matrix = matrix;
+            this.json = json;
+        }
+    }
+}
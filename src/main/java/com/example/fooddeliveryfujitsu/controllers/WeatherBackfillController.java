@@ -0,0 +1,65 @@
+package com.example.fooddeliveryfujitsu.controllers;
+
+import com.example.fooddeliveryfujitsu.models.BackfillReport;
+import com.example.fooddeliveryfujitsu.services.WeatherBackfillService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/admin/weather")
+@Tag(name = "Weather Administration", description = "API for importing archived weather observations")
+public class WeatherBackfillController {
+
+    private static final Logger logger = LoggerFactory.getLogger(WeatherBackfillController.class);
+
+    private final WeatherBackfillService backfillService;
+
+    @Autowired
+    public WeatherBackfillController(WeatherBackfillService backfillService) {
+        this.backfillService = backfillService;
+    }
+
+    @PostMapping("/backfill")
+    @Operation(summary = "Import archived weather observations",
+            description = "Imports every *.xml and *.xml.gz observation feed below the given directory, relative to "
+                    + "weather.backfill.root-directory. The import runs in the background: the answer is the progress "
+                    + "before the first file is read, and GET /backfill follows it. Files imported by an earlier, "
+                    + "interrupted run are not read again, and readings already stored are skipped. Retention does not "
+                    + "run while the import does.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Import started"),
+            @ApiResponse(responseCode = "400", description = "Directory missing or outside the backfill root"),
+            @ApiResponse(responseCode = "409", description = "Another import or retention is running")
+    })
+    public ResponseEntity<BackfillReport> backfill(
+            @Parameter(description = "Archive directory, relative to the backfill root")
+            @RequestParam(defaultValue = ".") String directory) {
+        try {
+            return ResponseEntity.accepted().body(backfillService.startImport(directory));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Rejected weather backfill: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            logger.warn("Rejected weather backfill: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    @GetMapping("/backfill")
+    @Operation(summary = "Progress of the running or last import",
+            description = "Files and readings imported so far, with throughput in files and rows per second")
+    public ResponseEntity<BackfillReport> getBackfillProgress() {
+        return backfillService.getProgress()
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.fooddeliveryfujitsu.controllers;
+
+import com.example.fooddeliveryfujitsu.models.DeliveryFeeRequest;
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+import com.example.fooddeliveryfujitsu.models.WeatherHourlyAggregate;
+import com.example.fooddeliveryfujitsu.services.WeatherDataService;
+import com.example.fooddeliveryfujitsu.store.ObservationCursor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/weather")
+@Tag(name = "Weather History", description = "API for reading stored weather observations")
+public class WeatherHistoryController {
+
+    private static final Logger logger = LoggerFactory.getLogger(WeatherHistoryController.class);
+
+    private static final String NDJSON = "application/x-ndjson";
+
+    private final WeatherDataService weatherDataService;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public WeatherHistoryController(WeatherDataService weatherDataService, ObjectMapper objectMapper) {
+        this.weatherDataService = weatherDataService;
+        this.objectMapper = objectMapper;
+    }
+
+    @GetMapping("/{city}/history")
+    @Operation(summary = "Stream stored weather observations",
+            description = "Writes the city's stored observations with from <= timestamp < to as newline-delimited "
+                    + "JSON, oldest first. Observations older than weather.retention.raw-days are only kept as "
+                    + "hourly aggregates: these lines have aggregate set to true, the start of the hour as timestamp, "
+                    + "the hour's averages as airTemperature and windSpeed, its most severe phenomenon, and "
+                    + "sampleCount, airTemperatureMin, airTemperatureMax and windSpeedMax; raw lines have aggregate "
+                    + "false. Each line carries an opaque cursor; passing the cursor of the last line "
+                    + "received resumes after it. The range is read in keyset pages of weather.history.page-size "
+                    + "rows, so a long range is neither held in memory nor read in one statement. Responses are "
+                    + "gzip-compressed for clients that accept it.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Observations and hourly aggregates, one JSON object per line"),
+            @ApiResponse(responseCode = "400", description = "Invalid range, cursor or limit")
+    })
+    public void getHistory(
+            @Parameter(description = "City", required = true) @PathVariable DeliveryFeeRequest.City city,
+            @Parameter(description = "Start of the range, inclusive, yyyy-MM-dd HH:mm:ss", required = true)
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime from,
+            @Parameter(description = "End of the range, exclusive, yyyy-MM-dd HH:mm:ss", required = true)
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime to,
+            @Parameter(description = "Cursor of the last observation already received")
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "Maximum number of observations to return; the whole range if omitted")
+            @RequestParam(required = false) Long limit,
+            HttpServletResponse response) throws IOException {
+
+        // Rejected before anything is written, so the error still gets a regular 400 response.
+        if (!from.isBefore(to)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must be before to");
+        }
+        if (limit != null && limit <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be positive");
+        }
+        ObservationCursor after;
+        try {
+            after = cursor != null ? ObservationCursor.decode(cursor) : null;
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+
+        response.setContentType(NDJSON);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        // Not flushed per line: the response buffer fills in large chunks, which also keeps gzip effective.
+        long count;
+        try (SequenceWriter writer = objectMapper.writer()
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .withRootValueSeparator("\n")
+                .writeValues(response.getOutputStream())) {
+            count = weatherDataService.streamHistory(city.name(), from, to, after, limit != null ? limit : 0,
+                    new WeatherDataService.HistoryVisitor() {
+                        @Override
+                        public void observation(WeatherData observation) {
+                            write(writer, toHistoryLine(observation));
+                        }
+
+                        @Override
+                        public void aggregate(WeatherHourlyAggregate aggregate) {
+                            write(writer, toHistoryLine(aggregate));
+                        }
+                    });
+            // The separator is written before each value, so terminate the last line explicitly.
+            if (count > 0) {
+                writer.flush();
+                response.getOutputStream().write('\n');
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        logger.debug("Streamed {} observations of {} between {} and {}", count, city, from, to);
+    }
+
+    private static void write(SequenceWriter writer, Map<String, Object> line) {
+        try {
+            writer.write(line);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Map<String, Object> toHistoryLine(WeatherData observation) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("aggregate", false);
+        line.put("stationName", observation.getStationName());
+        line.put("wmoCode", observation.getWmoCode());
+        line.put("timestamp", observation.getTimestamp());
+        line.put("observedUntil", observation.getObservedUntil());
+        line.put("airTemperature", observation.getAirTemperature());
+        line.put("windSpeed", observation.getWindSpeed());
+        line.put("weatherPhenomenon", observation.getWeatherPhenomenon());
+        line.put("phenomenonCategory", observation.getPhenomenonCategory());
+        line.put("cursor", ObservationCursor.after(observation).encode());
+        return line;
+    }
+
+    // An hour past the raw retention period, at its start, with the hour's averages in the observation fields.
+    private static Map<String, Object> toHistoryLine(WeatherHourlyAggregate aggregate) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("aggregate", true);
+        line.put("stationName", aggregate.getStationName());
+        line.put("wmoCode", aggregate.getWmoCode());
+        line.put("timestamp", aggregate.getHourStart());
+        line.put("sampleCount", aggregate.getSampleCount());
+        line.put("airTemperature", aggregate.getAirTemperatureAvg());
+        line.put("airTemperatureMin", aggregate.getAirTemperatureMin());
+        line.put("airTemperatureMax", aggregate.getAirTemperatureMax());
+        line.put("windSpeed", aggregate.getWindSpeedAvg());
+        line.put("windSpeedMax", aggregate.getWindSpeedMax());
+        line.put("weatherPhenomenon", aggregate.getWeatherPhenomenon());
+        line.put("phenomenonCategory", aggregate.getPhenomenonCategory());
+        line.put("cursor", ObservationCursor.after(aggregate).encode());
+        return line;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.fooddeliveryfujitsu.events;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Published after a committed business rule change has been applied to the rule snapshot.
+ * Carries the validity intervals of the changed rule before and after the change, so that listeners
+ * can tell which points in time may price differently; without them every point in time is affected.
+ */
+public class BusinessRulesChangedEvent {
+
+    private final long rulesVersion;
+    // Null when the affected intervals are not known.
+    private final List<ValidityInterval> affectedIntervals;
+
+    public BusinessRulesChangedEvent(long rulesVersion) {
+        this.rulesVersion = rulesVersion;
+        this.affectedIntervals = null;
+    }
+
+    public BusinessRulesChangedEvent(long rulesVersion, List<ValidityInterval> affectedIntervals) {
+        this.rulesVersion = rulesVersion;
+        this.affectedIntervals = List.copyOf(affectedIntervals);
+    }
+
+    public long getRulesVersion() {
+        return rulesVersion;
+    }
+
+    public List<ValidityInterval> getAffectedIntervals() {
+        return affectedIntervals;
+    }
+
+    // Whether quotes priced at the given time may have changed.
+    public boolean affects(LocalDateTime dateTime) {
+        if (affectedIntervals == null) {
+            return true;
+        }
+        for (ValidityInterval interval : affectedIntervals) {
+            if (interval.covers(dateTime)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "BusinessRulesChangedEvent{" +
+                "rulesVersion=" + rulesVersion +
+                ", affectedIntervals=" + (affectedIntervals != null ? affectedIntervals : "all") +
+                '}';
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.fooddeliveryfujitsu.events;
+
+import java.time.LocalDateTime;
+
+/**
+ * Half-open validity interval [validFrom, validTo) of a business rule. A null validTo means open-ended.
+ */
+public class ValidityInterval {
+
+    private final LocalDateTime validFrom;
+    private final LocalDateTime validTo;
+
+    public ValidityInterval(LocalDateTime validFrom, LocalDateTime validTo) {
+        this.validFrom = validFrom;
+        this.validTo = validTo;
+    }
+
+    public LocalDateTime getValidFrom() {
+        return validFrom;
+    }
+
+    public LocalDateTime getValidTo() {
+        return validTo;
+    }
+
+    public boolean covers(LocalDateTime dateTime) {
+        return (validFrom == null || !dateTime.isBefore(validFrom))
+                && (validTo == null || dateTime.isBefore(validTo));
+    }
+
+    @Override
+    public String toString() {
+        return "[" + validFrom + ", " + (validTo != null ? validTo : "open") + ")";
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.fooddeliveryfujitsu.events;
+
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+
+import java.util.List;
+
+/**
+ * Published after a batch of weather observations has been stored.
+ */
+public class WeatherDataIngestedEvent {
+
+    private final List<WeatherData> observations;
+
+    public WeatherDataIngestedEvent(List<WeatherData> observations) {
+        this.observations = List.copyOf(observations);
+    }
+
+    public List<WeatherData> getObservations() {
+        return observations;
+    }
+
+    @Override
+    public String toString() {
+        return "WeatherDataIngestedEvent{" +
+                "observations=" + observations.size() +
+                '}';
+    }
+}
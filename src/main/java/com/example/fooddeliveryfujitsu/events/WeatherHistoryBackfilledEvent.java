@@ -0,0 +1,65 @@
+package com.example.fooddeliveryfujitsu.events;
+
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Published after each batch of an archive import was stored. Unlike live observations, the batch may lie
+ * anywhere before or between stored ones; from and to span its observation times.
+ */
+public class WeatherHistoryBackfilledEvent {
+
+    private final List<WeatherData> observations;
+    private final List<String> stationNames;
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+
+    public WeatherHistoryBackfilledEvent(List<WeatherData> observations) {
+        if (observations.isEmpty()) {
+            throw new IllegalArgumentException("A backfilled batch has at least one observation");
+        }
+        this.observations = List.copyOf(observations);
+        TreeSet<String> stations = new TreeSet<>();
+        LocalDateTime first = null;
+        LocalDateTime last = null;
+        for (WeatherData observation : observations) {
+            stations.add(observation.getStationName());
+            LocalDateTime timestamp = observation.getTimestamp();
+            first = first == null || timestamp.isBefore(first) ? timestamp : first;
+            last = last == null || timestamp.isAfter(last) ? timestamp : last;
+        }
+        this.stationNames = new ArrayList<>(stations);
+        this.from = first;
+        this.to = last;
+    }
+
+    public List<WeatherData> getObservations() {
+        return observations;
+    }
+
+    public List<String> getStationNames() {
+        return stationNames;
+    }
+
+    public LocalDateTime getFrom() {
+        return from;
+    }
+
+    public LocalDateTime getTo() {
+        return to;
+    }
+
+    @Override
+    public String toString() {
+        return "WeatherHistoryBackfilledEvent{" +
+                "observations=" + observations.size() +
+                ", stationNames=" + stationNames +
+                ", from=" + from +
+                ", to=" + to +
+                '}';
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.fooddeliveryfujitsu.events;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Published after raw observations of the given stations older than the cutoff were replaced by hourly aggregates.
+ */
+public class WeatherHistoryCompactedEvent {
+
+    private final List<String> stationNames;
+    private final LocalDateTime rawCutoff;
+
+    public WeatherHistoryCompactedEvent(List<String> stationNames, LocalDateTime rawCutoff) {
+        this.stationNames = List.copyOf(stationNames);
+        this.rawCutoff = rawCutoff;
+    }
+
+    public List<String> getStationNames() {
+        return stationNames;
+    }
+
+    public LocalDateTime getRawCutoff() {
+        return rawCutoff;
+    }
+
+    @Override
+    public String toString() {
+        return "WeatherHistoryCompactedEvent{" +
+                "stationNames=" + stationNames +
+                ", rawCutoff=" + rawCutoff +
+                '}';
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.fooddeliveryfujitsu.models;
+
+/**
+ * Progress of an archive import: files found, files imported by this run or an earlier interrupted one, files
+ * that could not be read, and the readings stored as new rows, replacing a stored row, skipped as already stored,
+ * or left out because retention would delete or has already downsampled their time.
+ */
+public class BackfillReport {
+
+    private String directory;
+    private int totalFiles;
+    private int importedFiles;
+    private int resumedFiles;
+    private int failedFiles;
+    private long inserted;
+    private long updated;
+    private long skipped;
+    private long expired;
+    private long elapsedMillis;
+    private boolean finished;
+
+    public BackfillReport() {
+    }
+
+    public BackfillReport(String directory, int totalFiles, int resumedFiles) {
+        this.directory = directory;
+        this.totalFiles = totalFiles;
+        this.resumedFiles = resumedFiles;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public int getTotalFiles() {
+        return totalFiles;
+    }
+
+    public void setTotalFiles(int totalFiles) {
+        this.totalFiles = totalFiles;
+    }
+
+    public int getImportedFiles() {
+        return importedFiles;
+    }
+
+    public void setImportedFiles(int importedFiles) {
+        this.importedFiles = importedFiles;
+    }
+
+    public int getResumedFiles() {
+        return resumedFiles;
+    }
+
+    public void setResumedFiles(int resumedFiles) {
+        this.resumedFiles = resumedFiles;
+    }
+
+    public int getFailedFiles() {
+        return failedFiles;
+    }
+
+    public void setFailedFiles(int failedFiles) {
+        this.failedFiles = failedFiles;
+    }
+
+    public long getInserted() {
+        return inserted;
+    }
+
+    public void setInserted(long inserted) {
+        this.inserted = inserted;
+    }
+
+    public long getUpdated() {
+        return updated;
+    }
+
+    public void setUpdated(long updated) {
+        this.updated = updated;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public void setSkipped(long skipped) {
+        this.skipped = skipped;
+    }
+
+    public long getExpired() {
+        return expired;
+    }
+
+    public void setExpired(long expired) {
+        this.expired = expired;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public void setFinished(boolean finished) {
+        this.finished = finished;
+    }
+
+    // Files read by this run per second; files resumed from an earlier run are not counted.
+    public double getFilesPerSecond() {
+        return perSecond(importedFiles + failedFiles);
+    }
+
+    // Readings parsed by this run per second, whether stored or skipped.
+    public double getRowsPerSecond() {
+        return perSecond(inserted + updated + skipped + expired);
+    }
+
+    private double perSecond(long count) {
+        return elapsedMillis > 0 ? count * 1000.0 / elapsedMillis : 0.0;
+    }
+
+    public BackfillReport copy() {
+        BackfillReport copy = new BackfillReport(directory, totalFiles, resumedFiles);
+        copy.importedFiles = importedFiles;
+        copy.failedFiles = failedFiles;
+        copy.inserted = inserted;
+        copy.updated = updated;
+        copy.skipped = skipped;
+        copy.expired = expired;
+        copy.elapsedMillis = elapsedMillis;
+        copy.finished = finished;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "BackfillReport{" +
+                "directory='" + directory + '\'' +
+                ", totalFiles=" + totalFiles +
+                ", importedFiles=" + importedFiles +
+                ", resumedFiles=" + resumedFiles +
+                ", failedFiles=" + failedFiles +
+                ", inserted=" + inserted +
+                ", updated=" + updated +
+                ", skipped=" + skipped +
+                ", expired=" + expired +
+                ", elapsedMillis=" + elapsedMillis +
+                ", finished=" + finished +
+                '}';
+    }
+}
@@ -1,62 +1,86 @@
 package com.example.fooddeliveryfujitsu.models;
 
+import com.example.fooddeliveryfujitsu.util.Cents;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.math.BigDecimal;
 
+// Amounts are held in cents and only converted to euros when the response is serialized.
 public class DeliveryFeeResponse {
 
-    private BigDecimal fee;
+    private long feeCents;
     private String error;
     private FeeBreakdown breakdown;
 
     public static class FeeBreakdown {
-        private BigDecimal regionalBaseFee;
-        private BigDecimal airTemperatureExtraFee;
-        private BigDecimal windSpeedExtraFee;
-        private BigDecimal weatherPhenomenonExtraFee;
-
-        public FeeBreakdown(BigDecimal regionalBaseFee, BigDecimal airTemperatureExtraFee,
-                            BigDecimal windSpeedExtraFee, BigDecimal weatherPhenomenonExtraFee) {
-            this.regionalBaseFee = regionalBaseFee;
-            this.airTemperatureExtraFee = airTemperatureExtraFee;
-            this.windSpeedExtraFee = windSpeedExtraFee;
-            this.weatherPhenomenonExtraFee = weatherPhenomenonExtraFee;
+        private long regionalBaseFeeCents;
+        private long airTemperatureExtraFeeCents;
+        private long windSpeedExtraFeeCents;
+        private long weatherPhenomenonExtraFeeCents;
+
+        public FeeBreakdown(long regionalBaseFeeCents, long airTemperatureExtraFeeCents,
+                            long windSpeedExtraFeeCents, long weatherPhenomenonExtraFeeCents) {
+            this.regionalBaseFeeCents = regionalBaseFeeCents;
+            this.airTemperatureExtraFeeCents = airTemperatureExtraFeeCents;
+            this.windSpeedExtraFeeCents = windSpeedExtraFeeCents;
+            this.weatherPhenomenonExtraFeeCents = weatherPhenomenonExtraFeeCents;
         }
 
         public BigDecimal getRegionalBaseFee() {
-            return regionalBaseFee;
+            return Cents.toDecimal(regionalBaseFeeCents);
         }
 
-        public void setRegionalBaseFee(BigDecimal regionalBaseFee) {
-            this.regionalBaseFee = regionalBaseFee;
+        public BigDecimal getAirTemperatureExtraFee() {
+            return Cents.toDecimal(airTemperatureExtraFeeCents);
         }
 
-        public BigDecimal getAirTemperatureExtraFee() {
-            return airTemperatureExtraFee;
+        public BigDecimal getWindSpeedExtraFee() {
+            return Cents.toDecimal(windSpeedExtraFeeCents);
         }
 
-        public void setAirTemperatureExtraFee(BigDecimal airTemperatureExtraFee) {
-            this.airTemperatureExtraFee = airTemperatureExtraFee;
+        public BigDecimal getWeatherPhenomenonExtraFee() {
+            return Cents.toDecimal(weatherPhenomenonExtraFeeCents);
         }
 
-        public BigDecimal getWindSpeedExtraFee() {
-            return windSpeedExtraFee;
+        @JsonIgnore
+        public long getRegionalBaseFeeCents() {
+            return regionalBaseFeeCents;
         }
 
-        public void setWindSpeedExtraFee(BigDecimal windSpeedExtraFee) {
-            this.windSpeedExtraFee = windSpeedExtraFee;
+        public void setRegionalBaseFeeCents(long regionalBaseFeeCents) {
+            this.regionalBaseFeeCents = regionalBaseFeeCents;
         }
 
-        public BigDecimal getWeatherPhenomenonExtraFee() {
-            return weatherPhenomenonExtraFee;
+        @JsonIgnore
+        public long getAirTemperatureExtraFeeCents() {
+            return airTemperatureExtraFeeCents;
+        }
+
+        public void setAirTemperatureExtraFeeCents(long airTemperatureExtraFeeCents) {
+            this.airTemperatureExtraFeeCents = airTemperatureExtraFeeCents;
         }
 
-        public void setWeatherPhenomenonExtraFee(BigDecimal weatherPhenomenonExtraFee) {
-            this.weatherPhenomenonExtraFee = weatherPhenomenonExtraFee;
+        @JsonIgnore
+        public long getWindSpeedExtraFeeCents() {
+            return windSpeedExtraFeeCents;
+        }
+
+        public void setWindSpeedExtraFeeCents(long windSpeedExtraFeeCents) {
+            this.windSpeedExtraFeeCents = windSpeedExtraFeeCents;
+        }
+
+        @JsonIgnore
+        public long getWeatherPhenomenonExtraFeeCents() {
+            return weatherPhenomenonExtraFeeCents;
+        }
+
+        public void setWeatherPhenomenonExtraFeeCents(long weatherPhenomenonExtraFeeCents) {
+            this.weatherPhenomenonExtraFeeCents = weatherPhenomenonExtraFeeCents;
         }
     }
 
-    public DeliveryFeeResponse(BigDecimal fee, FeeBreakdown breakdown) {
-        this.fee = fee;
+    public DeliveryFeeResponse(long feeCents, FeeBreakdown breakdown) {
+        this.feeCents = feeCents;
         this.breakdown = breakdown;
     }
 
@@ -65,11 +89,16 @@ public class DeliveryFeeResponse {
     }
 
     public BigDecimal getFee() {
-        return fee;
+        return hasError() ? null : Cents.toDecimal(feeCents);
+    }
+
+    @JsonIgnore
+    public long getFeeCents() {
+        return feeCents;
     }
 
-    public void setFee(BigDecimal fee) {
-        this.fee = fee;
+    public void setFeeCents(long feeCents) {
+        this.feeCents = feeCents;
     }
 
     public String getError() {
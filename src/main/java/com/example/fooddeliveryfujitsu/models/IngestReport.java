@@ -0,0 +1,65 @@
+package com.example.fooddeliveryfujitsu.models;
+
+/**
+ * Outcome of one ingest run: readings stored as new rows, readings that replaced a stored row of the same station
+ * and time, and readings that were already stored as they are. Rejected corrections are readings that differ
+ * from a stored row standing for a run of readings, which are not applied; see JpaObservationStore.upsertAll.
+ */
+public class IngestReport {
+
+    private int inserted;
+    private int updated;
+    private int skipped;
+    private int rejectedCorrections;
+
+    public IngestReport() {
+    }
+
+    public IngestReport(int inserted, int updated, int skipped) {
+        this.inserted = inserted;
+        this.updated = updated;
+        this.skipped = skipped;
+    }
+
+    public int getInserted() {
+        return inserted;
+    }
+
+    public void setInserted(int inserted) {
+        this.inserted = inserted;
+    }
+
+    public int getUpdated() {
+        return updated;
+    }
+
+    public void setUpdated(int updated) {
+        this.updated = updated;
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    public void setSkipped(int skipped) {
+        this.skipped = skipped;
+    }
+
+    public int getRejectedCorrections() {
+        return rejectedCorrections;
+    }
+
+    public void setRejectedCorrections(int rejectedCorrections) {
+        this.rejectedCorrections = rejectedCorrections;
+    }
+
+    @Override
+    public String toString() {
+        return "IngestReport{" +
+                "inserted=" + inserted +
+                ", updated=" + updated +
+                ", skipped=" + skipped +
+                ", rejectedCorrections=" + rejectedCorrections +
+                '}';
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.fooddeliveryfujitsu.models;
+
+/**
+ * Weather phenomenon categories relevant for pricing. The names match the phenomenonCategory
+ * values used by WEATHER_PHENOMENON extra fee rules.
+ */
+public enum PhenomenonCategory {
+    NONE, RAIN, SNOW_SLEET, FORBIDDEN
+}
@@ -7,8 +7,14 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 
+// Filtered rule lists are read in id order; the id after the filter columns lets them seek instead of sort.
 @Entity
-@Table(name = "regional_base_fee")
+@Table(name = "regional_base_fee", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_city_vehicle_valid_from", columnNames = {"city", "vehicle_type", "valid_from"})
+}, indexes = {
+        @Index(name = "idx_base_fee_city_vehicle_id", columnList = "city, vehicle_type, id"),
+        @Index(name = "idx_base_fee_vehicle_id", columnList = "vehicle_type, id")
+})
 public class RegionalBaseFee {
 
     @Id
@@ -1,28 +1,50 @@
 package com.example.fooddeliveryfujitsu.models;
 
+import com.example.fooddeliveryfujitsu.store.PhenomenonConverter;
+import com.example.fooddeliveryfujitsu.store.StationDimensionListener;
+import com.example.fooddeliveryfujitsu.store.StationNameConverter;
+import com.example.fooddeliveryfujitsu.store.WmoCodeListener;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
+// Station and phenomenon are stored as ids into their dimension tables, the WMO code with the station.
+// A station has at most one row per observation time; the key's index serves every station lookup.
 @Entity
-@Table(name = "weather_data")
+@EntityListeners({StationDimensionListener.class, WmoCodeListener.class})
+@Table(name = "weather_data", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_station_timestamp", columnNames = {"station_id", "timestamp"})
+})
 public class WeatherData {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    @Convert(converter = StationNameConverter.class)
+    @Column(name = "station_id")
     private String stationName;
 
+    @Transient
     private String wmoCode;
 
     private Double airTemperature;
 
     private Double windSpeed;
 
+    @Convert(converter = PhenomenonConverter.class)
+    @Column(name = "phenomenon_id")
     private String weatherPhenomenon;
 
+    // Assigned once at ingest so that quotes do not need to inspect the phenomenon text.
+    @Enumerated(EnumType.STRING)
+    private PhenomenonCategory phenomenonCategory;
+
     private LocalDateTime timestamp;
 
+    // Last fetch that still returned the same reading, when unchanged readings extend the row instead of adding one.
+    // Null for a row holding a single reading.
+    private LocalDateTime observedUntil;
+
     public WeatherData() {
     }
 
@@ -84,6 +106,14 @@ public class WeatherData {
         this.weatherPhenomenon = weatherPhenomenon;
     }
 
+    public PhenomenonCategory getPhenomenonCategory() {
+        return phenomenonCategory;
+    }
+
+    public void setPhenomenonCategory(PhenomenonCategory phenomenonCategory) {
+        this.phenomenonCategory = phenomenonCategory;
+    }
+
     public LocalDateTime getTimestamp() {
         return timestamp;
     }
@@ -92,6 +122,14 @@ public class WeatherData {
         this.timestamp = timestamp;
     }
 
+    public LocalDateTime getObservedUntil() {
+        return observedUntil;
+    }
+
+    public void setObservedUntil(LocalDateTime observedUntil) {
+        this.observedUntil = observedUntil;
+    }
+
     @Override
     public String toString() {
         return "WeatherData{" +
@@ -101,7 +139,9 @@ public class WeatherData {
                 ", airTemperature=" + airTemperature +
                 ", windSpeed=" + windSpeed +
                 ", weatherPhenomenon='" + weatherPhenomenon + '\'' +
+                ", phenomenonCategory=" + phenomenonCategory +
                 ", timestamp=" + timestamp +
+                ", observedUntil=" + observedUntil +
                 '}';
     }
 }
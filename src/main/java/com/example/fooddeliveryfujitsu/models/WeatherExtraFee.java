@@ -7,8 +7,17 @@ import jakarta.validation.constraints.Positive;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
+// Same index layout as regional_base_fee, for lists filtered by fee type and vehicle;
+// (fee_type, valid_from) serves the versions of one fee type newest first.
 @Entity
-@Table(name = "weather_extra_fee")
+@Table(name = "weather_extra_fee", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_type_vehicle_value_valid_from", columnNames = {
+                "fee_type", "vehicle_type", "min_value", "max_value", "phenomenon_category", "valid_from"})
+}, indexes = {
+        @Index(name = "idx_extra_fee_type_valid_from", columnList = "fee_type, valid_from"),
+        @Index(name = "idx_extra_fee_type_vehicle_id", columnList = "fee_type, vehicle_type, id"),
+        @Index(name = "idx_extra_fee_vehicle_id", columnList = "vehicle_type, id")
+})
 public class WeatherExtraFee {
 
     @Id
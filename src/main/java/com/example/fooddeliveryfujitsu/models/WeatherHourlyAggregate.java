@@ -0,0 +1,187 @@
+package com.example.fooddeliveryfujitsu.models;
+
+import com.example.fooddeliveryfujitsu.store.PhenomenonConverter;
+import com.example.fooddeliveryfujitsu.store.StationDimensionListener;
+import com.example.fooddeliveryfujitsu.store.StationNameConverter;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Weather observations of one station within one hour, downsampled once they are older than the raw retention period.
+ * Measurements are averaged over the observations that had them; the phenomenon is the most severe one of the hour.
+ */
+@Entity
+@EntityListeners(StationDimensionListener.class)
+@Table(name = "weather_hourly", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_hourly_station_hour", columnNames = {"station_id", "hour_start"})
+})
+public class WeatherHourlyAggregate {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Convert(converter = StationNameConverter.class)
+    @Column(name = "station_id")
+    private String stationName;
+
+    private String wmoCode;
+
+    private LocalDateTime hourStart;
+
+    private int sampleCount;
+
+    private int airTemperatureSamples;
+
+    private Double airTemperatureAvg;
+
+    private Double airTemperatureMin;
+
+    private Double airTemperatureMax;
+
+    private int windSpeedSamples;
+
+    private Double windSpeedAvg;
+
+    private Double windSpeedMax;
+
+    @Convert(converter = PhenomenonConverter.class)
+    @Column(name = "phenomenon_id")
+    private String weatherPhenomenon;
+
+    @Enumerated(EnumType.STRING)
+    private PhenomenonCategory phenomenonCategory;
+
+    public WeatherHourlyAggregate() {
+    }
+
+    public WeatherHourlyAggregate(String stationName, LocalDateTime hourStart) {
+        this.stationName = stationName;
+        this.hourStart = hourStart;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getStationName() {
+        return stationName;
+    }
+
+    public void setStationName(String stationName) {
+        this.stationName = stationName;
+    }
+
+    public String getWmoCode() {
+        return wmoCode;
+    }
+
+    public void setWmoCode(String wmoCode) {
+        this.wmoCode = wmoCode;
+    }
+
+    public LocalDateTime getHourStart() {
+        return hourStart;
+    }
+
+    public void setHourStart(LocalDateTime hourStart) {
+        this.hourStart = hourStart;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public void setSampleCount(int sampleCount) {
+        this.sampleCount = sampleCount;
+    }
+
+    public int getAirTemperatureSamples() {
+        return airTemperatureSamples;
+    }
+
+    public void setAirTemperatureSamples(int airTemperatureSamples) {
+        this.airTemperatureSamples = airTemperatureSamples;
+    }
+
+    public Double getAirTemperatureAvg() {
+        return airTemperatureAvg;
+    }
+
+    public void setAirTemperatureAvg(Double airTemperatureAvg) {
+        this.airTemperatureAvg = airTemperatureAvg;
+    }
+
+    public Double getAirTemperatureMin() {
+        return airTemperatureMin;
+    }
+
+    public void setAirTemperatureMin(Double airTemperatureMin) {
+        this.airTemperatureMin = airTemperatureMin;
+    }
+
+    public Double getAirTemperatureMax() {
+        return airTemperatureMax;
+    }
+
+    public void setAirTemperatureMax(Double airTemperatureMax) {
+        this.airTemperatureMax = airTemperatureMax;
+    }
+
+    public int getWindSpeedSamples() {
+        return windSpeedSamples;
+    }
+
+    public void setWindSpeedSamples(int windSpeedSamples) {
+        this.windSpeedSamples = windSpeedSamples;
+    }
+
+    public Double getWindSpeedAvg() {
+        return windSpeedAvg;
+    }
+
+    public void setWindSpeedAvg(Double windSpeedAvg) {
+        this.windSpeedAvg = windSpeedAvg;
+    }
+
+    public Double getWindSpeedMax() {
+        return windSpeedMax;
+    }
+
+    public void setWindSpeedMax(Double windSpeedMax) {
+        this.windSpeedMax = windSpeedMax;
+    }
+
+    public String getWeatherPhenomenon() {
+        return weatherPhenomenon;
+    }
+
+    public void setWeatherPhenomenon(String weatherPhenomenon) {
+        this.weatherPhenomenon = weatherPhenomenon;
+    }
+
+    public PhenomenonCategory getPhenomenonCategory() {
+        return phenomenonCategory;
+    }
+
+    public void setPhenomenonCategory(PhenomenonCategory phenomenonCategory) {
+        this.phenomenonCategory = phenomenonCategory;
+    }
+
+    @Override
+    public String toString() {
+        return "WeatherHourlyAggregate{" +
+                "id=" + id +
+                ", stationName='" + stationName + '\'' +
+                ", hourStart=" + hourStart +
+                ", sampleCount=" + sampleCount +
+                ", airTemperatureAvg=" + airTemperatureAvg +
+                ", windSpeedAvg=" + windSpeedAvg +
+                ", weatherPhenomenon='" + weatherPhenomenon + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.fooddeliveryfujitsu.models;
+
+import jakarta.persistence.*;
+
+/**
+ * Phenomenon dimension: observations reference a phenomenon text by its small integer id.
+ */
+@Entity
+@Table(name = "weather_phenomenon", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_phenomenon_text", columnNames = "phenomenon_text")
+})
+public class WeatherPhenomenonType {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(name = "phenomenon_text", nullable = false, length = 100)
+    private String text;
+
+    public WeatherPhenomenonType() {
+    }
+
+    public WeatherPhenomenonType(String text) {
+        this.text = text;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.fooddeliveryfujitsu.models;
+
+import jakarta.persistence.*;
+
+/**
+ * Station dimension: observations reference a station by its small integer id instead of repeating its name.
+ */
+@Entity
+@Table(name = "weather_station", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_station_name", columnNames = "name")
+})
+public class WeatherStation {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(nullable = false, length = 100)
+    private String name;
+
+    @Column(length = 10)
+    private String wmoCode;
+
+    public WeatherStation() {
+    }
+
+    public WeatherStation(String name, String wmoCode) {
+        this.name = name;
+        this.wmoCode = wmoCode;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getWmoCode() {
+        return wmoCode;
+    }
+
+    public void setWmoCode(String wmoCode) {
+        this.wmoCode = wmoCode;
+    }
+}
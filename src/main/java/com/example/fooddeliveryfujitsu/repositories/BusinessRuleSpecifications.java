@@ -0,0 +1,31 @@
+package com.example.fooddeliveryfujitsu.repositories;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+
+/**
+ * Filters for listing rule versions. Every filter is optional; a null argument leaves it out of the query,
+ * so the database only sees the conditions a request actually asks for.
+ */
+public final class BusinessRuleSpecifications {
+
+    private BusinessRuleSpecifications() {
+    }
+
+    public static <T> Specification<T> attributeEquals(String attribute, String value) {
+        return value == null ? null : (root, query, cb) -> cb.equal(root.get(attribute), value);
+    }
+
+    // Same half-open validity as rule lookups: validFrom <= dateTime < validTo, open-ended without validTo.
+    public static <T> Specification<T> activeAt(LocalDateTime dateTime) {
+        return dateTime == null ? null : (root, query, cb) -> cb.and(
+                cb.lessThanOrEqualTo(root.get("validFrom"), dateTime),
+                cb.or(cb.isNull(root.get("validTo")), cb.greaterThan(root.get("validTo"), dateTime)));
+    }
+
+    // Keyset condition of a list ordered by id.
+    public static <T> Specification<T> idAfter(Long lastId) {
+        return lastId == null ? null : (root, query, cb) -> cb.greaterThan(root.get("id"), lastId);
+    }
+}
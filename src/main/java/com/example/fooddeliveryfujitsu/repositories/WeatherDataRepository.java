@@ -1,10 +1,13 @@
 package com.example.fooddeliveryfujitsu.repositories;
 
 import com.example.fooddeliveryfujitsu.models.WeatherData;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -13,13 +16,56 @@ import java.util.Optional;
 @Repository
 public interface WeatherDataRepository extends JpaRepository<WeatherData, Long> {
 
-    @Query("SELECT w FROM WeatherData w WHERE w.stationName = :stationName ORDER BY w.timestamp DESC")
-    List<WeatherData> findLatestByStationName(@Param("stationName") String stationName);
+    // The station's reading at exactly the given time; a single seek on the unique (station_id, timestamp) key.
+    Optional<WeatherData> findByStationNameAndTimestamp(String stationName, LocalDateTime timestamp);
 
-    @Query(value = "SELECT * FROM weather_data w WHERE w.station_name = :stationName " +
-            "ORDER BY ABS(TIMESTAMPDIFF(SECOND, w.timestamp, :dateTime)) LIMIT 1", nativeQuery = true)
-    Optional<WeatherData> findClosestByStationNameAndDateTime(
+    // Newest observation of the station; a single backward seek on (station_id, timestamp).
+    @Query("SELECT w FROM WeatherData w WHERE w.stationName = :stationName " +
+            "ORDER BY w.stationName DESC, w.timestamp DESC LIMIT 1")
+    Optional<WeatherData> findLatestByStationName(@Param("stationName") String stationName);
+
+    // Latest observation at or before the given time; a single seek on (station_id, timestamp).
+    // Ordering by the full index prefix lets the database read the index instead of sorting the station's rows.
+    @Query("SELECT w FROM WeatherData w WHERE w.stationName = :stationName AND w.timestamp <= :dateTime " +
+            "ORDER BY w.stationName DESC, w.timestamp DESC LIMIT 1")
+    Optional<WeatherData> findFloorByStationNameAndTimestamp(
             @Param("stationName") String stationName,
             @Param("dateTime") LocalDateTime dateTime);
-    List<WeatherData> findByWmoCode(String wmoCode);
+
+    // Earliest observation after the given time; a single seek on (station_id, timestamp).
+    @Query("SELECT w FROM WeatherData w WHERE w.stationName = :stationName AND w.timestamp > :dateTime " +
+            "ORDER BY w.stationName, w.timestamp LIMIT 1")
+    Optional<WeatherData> findCeilingByStationNameAndTimestamp(
+            @Param("stationName") String stationName,
+            @Param("dateTime") LocalDateTime dateTime);
+
+    // Most recent observations of the station, newest first, read backwards along (station_id, timestamp).
+    List<WeatherData> findByStationNameOrderByStationNameDescTimestampDesc(String stationName, Limit limit);
+
+    // Oldest observation of the station; a single forward seek on (station_id, timestamp).
+    @Query("SELECT w FROM WeatherData w WHERE w.stationName = :stationName " +
+            "ORDER BY w.stationName, w.timestamp LIMIT 1")
+    Optional<WeatherData> findOldestByStationName(@Param("stationName") String stationName);
+
+    // Observations of the station in [from, to), oldest first.
+    @Query("SELECT w FROM WeatherData w WHERE w.stationName = :stationName " +
+            "AND w.timestamp >= :from AND w.timestamp < :to ORDER BY w.stationName, w.timestamp")
+    List<WeatherData> findByStationNameInRange(@Param("stationName") String stationName,
+                                               @Param("from") LocalDateTime from,
+                                               @Param("to") LocalDateTime to);
+
+    @Modifying
+    @Query("DELETE FROM WeatherData w WHERE w.stationName = :stationName " +
+            "AND w.timestamp >= :from AND w.timestamp < :to")
+    int deleteByStationNameInRange(@Param("stationName") String stationName,
+                                   @Param("from") LocalDateTime from,
+                                   @Param("to") LocalDateTime to);
+
+    // Moves the end of a row's validity forward; never backwards, so a delayed fetch cannot shorten it.
+    @Transactional
+    @Modifying
+    @Query("UPDATE WeatherData w SET w.observedUntil = :until WHERE w.id = :id " +
+            "AND w.timestamp < :until AND (w.observedUntil IS NULL OR w.observedUntil < :until)")
+    int extendObservedUntil(@Param("id") Long id, @Param("until") LocalDateTime until);
+
 }
@@ -0,0 +1,47 @@
+package com.example.fooddeliveryfujitsu.repositories;
+
+import com.example.fooddeliveryfujitsu.models.WeatherHourlyAggregate;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface WeatherHourlyAggregateRepository extends JpaRepository<WeatherHourlyAggregate, Long> {
+
+    Optional<WeatherHourlyAggregate> findByStationNameAndHourStart(String stationName, LocalDateTime hourStart);
+
+    // Latest hour starting at or before the given time; a single seek on (station_name, hour_start).
+    @Query("SELECT a FROM WeatherHourlyAggregate a WHERE a.stationName = :stationName AND a.hourStart <= :dateTime " +
+            "ORDER BY a.stationName DESC, a.hourStart DESC LIMIT 1")
+    Optional<WeatherHourlyAggregate> findFloorByStationNameAndHourStart(
+            @Param("stationName") String stationName,
+            @Param("dateTime") LocalDateTime dateTime);
+
+    // Earliest hour starting after the given time; a single seek on (station_name, hour_start).
+    @Query("SELECT a FROM WeatherHourlyAggregate a WHERE a.stationName = :stationName AND a.hourStart > :dateTime " +
+            "ORDER BY a.stationName, a.hourStart LIMIT 1")
+    Optional<WeatherHourlyAggregate> findCeilingByStationNameAndHourStart(
+            @Param("stationName") String stationName,
+            @Param("dateTime") LocalDateTime dateTime);
+
+    boolean existsByStationName(String stationName);
+
+    @Query("SELECT a.hourStart FROM WeatherHourlyAggregate a WHERE a.stationName = :stationName " +
+            "AND a.hourStart >= :from AND a.hourStart <= :to")
+    List<LocalDateTime> findHourStartsByStationNameInRange(
+            @Param("stationName") String stationName,
+            @Param("from") LocalDateTime from,
+            @Param("to") LocalDateTime to);
+
+    List<WeatherHourlyAggregate> findByHourStartLessThanOrderByStationNameAscHourStartAsc(LocalDateTime cutoff);
+
+    @Modifying
+    @Query("DELETE FROM WeatherHourlyAggregate a WHERE a.hourStart < :cutoff")
+    int deleteByHourStartBefore(@Param("cutoff") LocalDateTime cutoff);
+}
@@ -1,21 +1,36 @@
 package com.example.fooddeliveryfujitsu.services;
 
+import com.example.fooddeliveryfujitsu.events.BusinessRulesChangedEvent;
+import com.example.fooddeliveryfujitsu.events.ValidityInterval;
+import com.example.fooddeliveryfujitsu.models.CursorPage;
+import com.example.fooddeliveryfujitsu.models.PhenomenonCategory;
 import com.example.fooddeliveryfujitsu.models.RegionalBaseFee;
 import com.example.fooddeliveryfujitsu.models.WeatherExtraFee;
+import com.example.fooddeliveryfujitsu.repositories.BusinessRuleSpecifications;
 import com.example.fooddeliveryfujitsu.repositories.RegionalBaseFeeRepository;
 import com.example.fooddeliveryfujitsu.repositories.WeatherExtraFeeRepository;
+import com.example.fooddeliveryfujitsu.util.WeatherPhenomenonClassifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 @Service
 @Transactional
@@ -25,18 +40,49 @@ public class BusinessRulesService {
 
     private final RegionalBaseFeeRepository regionalBaseFeeRepository;
     private final WeatherExtraFeeRepository weatherExtraFeeRepository;
-
-    private final Map<String, Map<String, BigDecimal>> regionalBaseFeeCache = new HashMap<>();
+    private final ApplicationEventPublisher eventPublisher;
+    private final WeatherPhenomenonClassifier phenomenonClassifier;
+
+    // Default fees in cents, used when no stored rule is active.
+    private static final Map<String, Map<String, Long>> DEFAULT_REGIONAL_BASE_FEES = Map.of(
+            "TALLINN", Map.of(
+                    "CAR", 400L,
+                    "SCOOTER", 350L,
+                    "BIKE", 300L),
+            "TARTU", Map.of(
+                    "CAR", 350L,
+                    "SCOOTER", 300L,
+                    "BIKE", 250L),
+            "PARNU", Map.of(
+                    "CAR", 300L,
+                    "SCOOTER", 250L,
+                    "BIKE", 200L)
+    );
+    private static final long ONE_EURO = 100L;
+    private static final long FIFTY_CENTS = 50L;
+
+    // Current rule snapshot. Replaced as a whole after every committed rule change, never mutated.
+    private final AtomicReference<TariffSnapshot> snapshot = new AtomicReference<>();
 
     @Autowired
     public BusinessRulesService(RegionalBaseFeeRepository regionalBaseFeeRepository,
-                                WeatherExtraFeeRepository weatherExtraFeeRepository) {
+                                WeatherExtraFeeRepository weatherExtraFeeRepository,
+                                ApplicationEventPublisher eventPublisher,
+                                WeatherPhenomenonClassifier phenomenonClassifier) {
         this.regionalBaseFeeRepository = regionalBaseFeeRepository;
         this.weatherExtraFeeRepository = weatherExtraFeeRepository;
+        this.eventPublisher = eventPublisher;
+        this.phenomenonClassifier = phenomenonClassifier;
     }
 
-    public List<RegionalBaseFee> getAllRegionalBaseFees() {
-        return regionalBaseFeeRepository.findAll();
+    // Filters left null are not applied.
+    @Transactional(readOnly = true)
+    public CursorPage<RegionalBaseFee> findRegionalBaseFees(String city, String vehicleType, LocalDateTime activeAt,
+                                                            String cursor, int limit) {
+        Map<String, String> filters = new LinkedHashMap<>();
+        filters.put("city", city);
+        filters.put("vehicleType", vehicleType);
+        return findPage(regionalBaseFeeRepository, filters, activeAt, cursor, limit, RegionalBaseFee::getId);
     }
 
     public Optional<RegionalBaseFee> getRegionalBaseFeeById(Long id) {
@@ -44,9 +90,15 @@ public class BusinessRulesService {
     }
 
     public RegionalBaseFee saveRegionalBaseFee(RegionalBaseFee fee) {
+        // Captured before saving, since the merge overwrites the managed entity.
+        List<ValidityInterval> affected = new ArrayList<>();
+        if (fee.getId() != null) {
+            regionalBaseFeeRepository.findById(fee.getId())
+                    .ifPresent(old -> affected.add(new ValidityInterval(old.getValidFrom(), old.getValidTo())));
+        }
         RegionalBaseFee savedFee = regionalBaseFeeRepository.save(fee);
-        // Invalidate cache
-        regionalBaseFeeCache.clear();
+        affected.add(new ValidityInterval(savedFee.getValidFrom(), savedFee.getValidTo()));
+        refreshSnapshotAfterCommit(affected);
         return savedFee;
     }
 
@@ -55,62 +107,73 @@ public class BusinessRulesService {
     }
 
     public void deleteRegionalBaseFee(Long id) {
+        List<ValidityInterval> affected = new ArrayList<>();
+        regionalBaseFeeRepository.findById(id)
+                .ifPresent(old -> affected.add(new ValidityInterval(old.getValidFrom(), old.getValidTo())));
         regionalBaseFeeRepository.deleteById(id);
-        // Invalidate cache
-        regionalBaseFeeCache.clear();
+        refreshSnapshotAfterCommit(affected);
     }
 
-    public BigDecimal getRegionalBaseFee(String city, String vehicleType, LocalDateTime dateTime) {
-        // First, try to get from the database
-        Optional<RegionalBaseFee> feeRule = regionalBaseFeeRepository
-                .findActiveRuleForCityAndVehicle(city, vehicleType, dateTime);
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public long getRegionalBaseFeeCents(String city, String vehicleType, LocalDateTime dateTime) {
+        return getRegionalBaseFeeCents(getSnapshot(), city, vehicleType, dateTime);
+    }
 
-        if (feeRule.isPresent()) {
-            return feeRule.get().getFee();
-        }
+    // Lookups against a given snapshot, so that every component of one quote comes from the same rules version.
+    public long getRegionalBaseFeeCents(TariffSnapshot rules, String city, String vehicleType, LocalDateTime dateTime) {
+        TariffSnapshot.Rule feeRule = rules.findRegionalBaseFee(city, vehicleType, dateTime);
 
-        String cacheKey = city + "_" + vehicleType;
-        if (!regionalBaseFeeCache.containsKey(city)) {
-            initializeDefaultFeesForCity(city);
+        if (feeRule != null) {
+            return feeRule.getFeeCents();
         }
 
-        Map<String, BigDecimal> cityFees = regionalBaseFeeCache.get(city);
+        Map<String, Long> cityFees = DEFAULT_REGIONAL_BASE_FEES.get(city);
         if (cityFees != null && cityFees.containsKey(vehicleType)) {
             return cityFees.get(vehicleType);
         }
 
-        return BigDecimal.ZERO;
+        return 0L;
     }
 
-    private void initializeDefaultFeesForCity(String city) {
-        Map<String, BigDecimal> cityFees = new HashMap<>();
-
-        switch (city) {
-            case "TALLINN":
-                cityFees.put("CAR", new BigDecimal("4.0"));
-                cityFees.put("SCOOTER", new BigDecimal("3.5"));
-                cityFees.put("BIKE", new BigDecimal("3.0"));
-                break;
-            case "TARTU":
-                cityFees.put("CAR", new BigDecimal("3.5"));
-                cityFees.put("SCOOTER", new BigDecimal("3.0"));
-                cityFees.put("BIKE", new BigDecimal("2.5"));
-                break;
-            case "PARNU":
-                cityFees.put("CAR", new BigDecimal("3.0"));
-                cityFees.put("SCOOTER", new BigDecimal("2.5"));
-                cityFees.put("BIKE", new BigDecimal("2.0"));
-                break;
-            default:
-                break;
-        }
-
-        regionalBaseFeeCache.put(city, cityFees);
+    // Weather Extra Fee methods
+    @Transactional(readOnly = true)
+    public CursorPage<WeatherExtraFee> findWeatherExtraFees(String feeType, String vehicleType, LocalDateTime activeAt,
+                                                            String cursor, int limit) {
+        Map<String, String> filters = new LinkedHashMap<>();
+        filters.put("feeType", feeType);
+        filters.put("vehicleType", vehicleType);
+        return findPage(weatherExtraFeeRepository, filters, activeAt, cursor, limit, WeatherExtraFee::getId);
     }
 
-    // Weather Extra Fee methods
-    public List<WeatherExtraFee> getAllWeatherExtraFees() {
-        return weatherExtraFeeRepository.findAll();
+    /**
+     * A page of rules in id order matching the non-null equality filters. The filtered attributes are also put
+     * in front of id in the ORDER BY; with equality on them that is still id order, but it matches the
+     * (filter columns, id) indexes, so the database reads the page off the index instead of sorting.
+     * One row past the page tells whether another page follows, without a count query.
+     */
+    private static <T> CursorPage<T> findPage(JpaSpecificationExecutor<T> repository, Map<String, String> filters,
+                                              LocalDateTime activeAt, String cursor, int limit,
+                                              Function<T, Long> idOf) {
+        Long lastId = cursor != null ? CursorPage.decodeCursor(cursor) : null;
+        List<Specification<T>> conditions = new ArrayList<>();
+        List<String> order = new ArrayList<>();
+        filters.forEach((attribute, value) -> {
+            if (value != null) {
+                conditions.add(BusinessRuleSpecifications.attributeEquals(attribute, value));
+                order.add(attribute);
+            }
+        });
+        conditions.add(BusinessRuleSpecifications.activeAt(activeAt));
+        conditions.add(BusinessRuleSpecifications.idAfter(lastId));
+        order.add("id");
+
+        List<T> rows = repository.findBy(Specification.allOf(conditions),
+                query -> query.sortBy(Sort.by(order.toArray(new String[0]))).limit(limit + 1).all());
+        if (rows.size() <= limit) {
+            return new CursorPage<>(rows, null);
+        }
+        List<T> items = new ArrayList<>(rows.subList(0, limit));
+        return new CursorPage<>(items, CursorPage.encodeCursor(idOf.apply(items.get(limit - 1))));
     }
 
     public Optional<WeatherExtraFee> getWeatherExtraFeeById(Long id) {
@@ -118,7 +181,16 @@ public class BusinessRulesService {
     }
 
     public WeatherExtraFee saveWeatherExtraFee(WeatherExtraFee fee) {
-        return weatherExtraFeeRepository.save(fee);
+        // Captured before saving, since the merge overwrites the managed entity.
+        List<ValidityInterval> affected = new ArrayList<>();
+        if (fee.getId() != null) {
+            weatherExtraFeeRepository.findById(fee.getId())
+                    .ifPresent(old -> affected.add(new ValidityInterval(old.getValidFrom(), old.getValidTo())));
+        }
+        WeatherExtraFee savedFee = weatherExtraFeeRepository.save(fee);
+        affected.add(new ValidityInterval(savedFee.getValidFrom(), savedFee.getValidTo()));
+        refreshSnapshotAfterCommit(affected);
+        return savedFee;
     }
 
     public boolean existsWeatherExtraFeeById(Long id) {
@@ -126,76 +198,104 @@ public class BusinessRulesService {
     }
 
     public void deleteWeatherExtraFee(Long id) {
+        List<ValidityInterval> affected = new ArrayList<>();
+        weatherExtraFeeRepository.findById(id)
+                .ifPresent(old -> affected.add(new ValidityInterval(old.getValidFrom(), old.getValidTo())));
         weatherExtraFeeRepository.deleteById(id);
+        refreshSnapshotAfterCommit(affected);
+    }
+
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public long getAirTemperatureExtraFeeCents(String vehicleType, Double temperature, LocalDateTime dateTime) {
+        return getAirTemperatureExtraFeeCents(getSnapshot(), vehicleType, temperature, dateTime);
     }
 
-    public BigDecimal getAirTemperatureExtraFee(String vehicleType, Double temperature, LocalDateTime dateTime) {
+    public long getAirTemperatureExtraFeeCents(TariffSnapshot rules, String vehicleType, Double temperature,
+                                               LocalDateTime dateTime) {
         if (vehicleType.equals("CAR") || temperature == null) {
-            return BigDecimal.ZERO;
+            return 0L;
         }
 
-        Optional<WeatherExtraFee> feeRule = weatherExtraFeeRepository
-                .findActiveAirTempRuleForVehicle(vehicleType, temperature, dateTime);
+        TariffSnapshot.Rule feeRule = rules
+                .findRangeRule(TariffSnapshot.AIR_TEMP, vehicleType, temperature, dateTime);
 
-        if (feeRule.isPresent()) {
-            return feeRule.get().getFee();
+        if (feeRule != null) {
+            return feeRule.getFeeCents();
         }
 
         if (temperature < -10.0) {
-            return new BigDecimal("1.0");
+            return ONE_EURO;
         } else if (temperature < 0.0) {
-            return new BigDecimal("0.5");
+            return FIFTY_CENTS;
         }
 
-        return BigDecimal.ZERO;
+        return 0L;
     }
 
-    public BigDecimal getWindSpeedExtraFee(String vehicleType, Double windSpeed, LocalDateTime dateTime) {
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public long getWindSpeedExtraFeeCents(String vehicleType, Double windSpeed, LocalDateTime dateTime) {
+        return getWindSpeedExtraFeeCents(getSnapshot(), vehicleType, windSpeed, dateTime);
+    }
+
+    public long getWindSpeedExtraFeeCents(TariffSnapshot rules, String vehicleType, Double windSpeed,
+                                          LocalDateTime dateTime) {
         if (!vehicleType.equals("BIKE") || windSpeed == null) {
-            return BigDecimal.ZERO;
+            return 0L;
         }
 
-        Optional<WeatherExtraFee> feeRule = weatherExtraFeeRepository
-                .findActiveWindSpeedRuleForVehicle(vehicleType, windSpeed, dateTime);
+        TariffSnapshot.Rule feeRule = rules
+                .findRangeRule(TariffSnapshot.WIND_SPEED, vehicleType, windSpeed, dateTime);
 
-        if (feeRule.isPresent()) {
-            return feeRule.get().getFee();
+        if (feeRule != null) {
+            return feeRule.getFeeCents();
         }
 
         if (windSpeed >= 10.0 && windSpeed <= 20.0) {
-            return new BigDecimal("0.5");
+            return FIFTY_CENTS;
         }
 
-        return BigDecimal.ZERO;
+        return 0L;
     }
 
-    public BigDecimal getWeatherPhenomenonExtraFee(String vehicleType, String phenomenon, LocalDateTime dateTime) {
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public long getWeatherPhenomenonExtraFeeCents(String vehicleType, String phenomenon, LocalDateTime dateTime) {
         if (vehicleType.equals("CAR") || phenomenon == null || phenomenon.isEmpty()) {
-            return BigDecimal.ZERO;
+            return 0L;
         }
 
-        String phenomenonCategory = categorizeWeatherPhenomenon(phenomenon);
+        return getWeatherPhenomenonCategoryExtraFeeCents(vehicleType, phenomenonClassifier.classify(phenomenon), dateTime);
+    }
 
-        if (phenomenonCategory == null) {
-            return BigDecimal.ZERO;
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public long getWeatherPhenomenonCategoryExtraFeeCents(String vehicleType, PhenomenonCategory phenomenonCategory,
+                                                          LocalDateTime dateTime) {
+        return getWeatherPhenomenonCategoryExtraFeeCents(getSnapshot(), vehicleType, phenomenonCategory, dateTime);
+    }
+
+    public long getWeatherPhenomenonCategoryExtraFeeCents(TariffSnapshot rules, String vehicleType,
+                                                          PhenomenonCategory phenomenonCategory,
+                                                          LocalDateTime dateTime) {
+        if (vehicleType.equals("CAR") || phenomenonCategory == null || phenomenonCategory == PhenomenonCategory.NONE) {
+            return 0L;
         }
 
-        Optional<WeatherExtraFee> feeRule = weatherExtraFeeRepository
-                .findActivePhenomenonRuleForVehicle(vehicleType, phenomenonCategory, dateTime);
+        TariffSnapshot.Rule feeRule = rules
+                .findPhenomenonRule(vehicleType, phenomenonCategory.name(), dateTime);
 
-        if (feeRule.isPresent()) {
-            return feeRule.get().getFee();
+        if (feeRule != null) {
+            return feeRule.getFeeCents();
         }
 
-        if ("SNOW_SLEET".equals(phenomenonCategory)) {
-            return new BigDecimal("1.0");
-        } else if ("RAIN".equals(phenomenonCategory)) {
-            return new BigDecimal("0.5");
+        if (phenomenonCategory == PhenomenonCategory.SNOW_SLEET) {
+            return ONE_EURO;
+        } else if (phenomenonCategory == PhenomenonCategory.RAIN) {
+            return FIFTY_CENTS;
         }
 
-        return BigDecimal.ZERO;
+        return 0L;
     }
 
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public boolean isVehicleUsageForbidden(String vehicleType, Double windSpeed, String phenomenon) {
         if (vehicleType.equals("BIKE") && windSpeed != null && windSpeed > 20.0) {
             return true;
@@ -203,35 +303,50 @@ public class BusinessRulesService {
 
         if ((vehicleType.equals("BIKE") || vehicleType.equals("SCOOTER")) &&
                 phenomenon != null && !phenomenon.isEmpty()) {
-            String phenomenonCategory = categorizeWeatherPhenomenon(phenomenon);
-            return "FORBIDDEN".equals(phenomenonCategory);
+            return phenomenonClassifier.classify(phenomenon) == PhenomenonCategory.FORBIDDEN;
         }
 
         return false;
     }
 
-    private String categorizeWeatherPhenomenon(String phenomenon) {
-        if (phenomenon == null || phenomenon.isEmpty()) {
-            return null;
-        }
-
-        phenomenon = phenomenon.toLowerCase();
-
-        // Snow or sleet related phenomena
-        if (phenomenon.contains("snow") || phenomenon.contains("sleet")) {
-            return "SNOW_SLEET";
-        }
+    // Current rule snapshot, loaded on first use.
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public TariffSnapshot getSnapshot() {
+        TariffSnapshot current = snapshot.get();
+        return current != null ? current : refreshSnapshot();
+    }
 
-        // Rain related phenomena
-        if (phenomenon.contains("rain") || phenomenon.contains("shower") || phenomenon.contains("drizzle")) {
-            return "RAIN";
-        }
+    // Reloads every rule version and atomically publishes the new snapshot.
+    // Synchronized so that concurrent rebuilds cannot publish an older view over a newer one.
+    public synchronized TariffSnapshot refreshSnapshot() {
+        TariffSnapshot previous = snapshot.get();
+        long version = previous != null ? previous.getVersion() + 1 : 1L;
+        TariffSnapshot rebuilt = TariffSnapshot.build(version,
+                regionalBaseFeeRepository.findAll(),
+                weatherExtraFeeRepository.findAll());
+        snapshot.set(rebuilt);
+        logger.info("Published business rules snapshot version {}", version);
+        return rebuilt;
+    }
 
-        // Forbidden phenomena
-        if (phenomenon.contains("glaze") || phenomenon.contains("hail") || phenomenon.contains("thunder")) {
-            return "FORBIDDEN";
+    // Rebuilds the snapshot once the surrounding transaction has committed,
+    // so that readers never observe rules which could still be rolled back.
+    // The affected intervals are the validity of the changed rule before and after the change.
+    private void refreshSnapshotAfterCommit(List<ValidityInterval> affectedIntervals) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            publishRulesChange(affectedIntervals);
+            return;
         }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                publishRulesChange(affectedIntervals);
+            }
+        });
+    }
 
-        return null;
+    private void publishRulesChange(List<ValidityInterval> affectedIntervals) {
+        TariffSnapshot rebuilt = refreshSnapshot();
+        eventPublisher.publishEvent(new BusinessRulesChangedEvent(rebuilt.getVersion(), affectedIntervals));
     }
 }
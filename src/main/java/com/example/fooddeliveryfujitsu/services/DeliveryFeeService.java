@@ -1,102 +1,178 @@
 package com.example.fooddeliveryfujitsu.services;
 
+import com.example.fooddeliveryfujitsu.events.BusinessRulesChangedEvent;
+import com.example.fooddeliveryfujitsu.events.WeatherDataIngestedEvent;
+import com.example.fooddeliveryfujitsu.events.WeatherHistoryBackfilledEvent;
 import com.example.fooddeliveryfujitsu.models.DeliveryFeeRequest;
 import com.example.fooddeliveryfujitsu.models.DeliveryFeeResponse;
+import com.example.fooddeliveryfujitsu.models.PhenomenonCategory;
 import com.example.fooddeliveryfujitsu.models.WeatherData;
+import com.example.fooddeliveryfujitsu.util.WeatherPhenomenonClassifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.time.ZoneId;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 public class DeliveryFeeService {
     private static final Logger logger = LoggerFactory.getLogger(DeliveryFeeService.class);
-    private static final Map<String, Map<String, BigDecimal>> REGIONAL_BASE_FEES = new HashMap<>();
-    private static final List<String> SNOW_SLEET_PHENOMENA = Arrays.asList(
-            "Light snow shower", "Moderate snow shower", "Heavy snow shower",
-            "Light sleet", "Moderate sleet", "Light snowfall", "Moderate snowfall",
-            "Heavy snowfall", "Blowing snow", "Drifting snow"
-    );
-    private static final List<String> RAIN_PHENOMENA = Arrays.asList(
-            "Light rain", "Moderate rain", "Heavy rain", "Light shower",
-            "Moderate shower", "Heavy shower", "Light rain shower", "Moderate rain shower",
-            "Heavy rain shower", "Drizzle"
-    );
-    private static final List<String> FORBIDDEN_PHENOMENA = Arrays.asList(
-            "Glaze", "Hail", "Thunder"
-    );
-
-    static {
-        // Initialize Tallinn fees
-        Map<String, BigDecimal> tallinnFees = new HashMap<>();
-        tallinnFees.put("CAR", new BigDecimal("4.0"));
-        tallinnFees.put("SCOOTER", new BigDecimal("3.5"));
-        tallinnFees.put("BIKE", new BigDecimal("3.0"));
-        REGIONAL_BASE_FEES.put("TALLINN", tallinnFees);
-
-        // Initialize Tartu fees
-        Map<String, BigDecimal> tartuFees = new HashMap<>();
-        tartuFees.put("CAR", new BigDecimal("3.5"));
-        tartuFees.put("SCOOTER", new BigDecimal("3.0"));
-        tartuFees.put("BIKE", new BigDecimal("2.5"));
-        REGIONAL_BASE_FEES.put("TARTU", tartuFees);
-
-        // Initialize Pärnu fees
-        Map<String, BigDecimal> parnuFees = new HashMap<>();
-        parnuFees.put("CAR", new BigDecimal("3.0"));
-        parnuFees.put("SCOOTER", new BigDecimal("2.5"));
-        parnuFees.put("BIKE", new BigDecimal("2.0"));
-        REGIONAL_BASE_FEES.put("PARNU", parnuFees);
-    }
+    static final String WEATHER_DATA_NOT_AVAILABLE = "Weather data not available for the specified city";
 
     private final WeatherDataService weatherDataService;
+    private final BusinessRulesService businessRulesService;
+    private final WeatherPhenomenonClassifier phenomenonClassifier;
+    private final HistoricalQuoteCache historicalQuoteCache;
+
+    // Fees for current-weather quotes, replaced after every ingest or rule change.
+    private final AtomicReference<FeeMatrix> feeMatrix = new AtomicReference<>();
 
     @Autowired
-    public DeliveryFeeService(WeatherDataService weatherDataService) {
+    public DeliveryFeeService(WeatherDataService weatherDataService,
+                              BusinessRulesService businessRulesService,
+                              WeatherPhenomenonClassifier phenomenonClassifier,
+                              HistoricalQuoteCache historicalQuoteCache) {
         this.weatherDataService = weatherDataService;
+        this.businessRulesService = businessRulesService;
+        this.phenomenonClassifier = phenomenonClassifier;
+        this.historicalQuoteCache = historicalQuoteCache;
     }
 
     public DeliveryFeeResponse calculateDeliveryFee(DeliveryFeeRequest request) {
-        logger.info("Calculating delivery fee for: {}", request);
+        return priceQuote(request).getResponse();
+    }
 
-        String city = request.getCity().name();
-        String vehicleType = request.getVehicleType().name();
-        BigDecimal regionalBaseFee = getRegionalBaseFee(city, vehicleType);
-        Optional<WeatherData> weatherDataOpt;
-        if (request.getDateTime() != null) {
-            weatherDataOpt = weatherDataService.getWeatherDataForCityAtTime(city, request.getDateTime());
-        } else {
-            weatherDataOpt = weatherDataService.getLatestWeatherDataForCity(city);
+    /**
+     * Calculates the delivery fee and reports the observation and rules it was derived from.
+     */
+    public PricedQuote priceQuote(DeliveryFeeRequest request) {
+        logger.debug("Calculating delivery fee for: {}", request);
+
+        if (request.getDateTime() == null) {
+            FeeMatrix matrix = getFeeMatrix();
+            return new PricedQuote(matrix.get(request.getCity(), request.getVehicleType()),
+                    matrix.getObservation(request.getCity()), matrix.getRulesDigest(), matrix.getValidUntil());
+        }
+
+        PricedQuote cached = historicalQuoteCache.get(request.getCity(), request.getVehicleType(), request.getDateTime());
+        if (cached != null) {
+            return cached;
         }
 
+        // Read before pricing, so a concurrent rule change can only make the reported version older, never newer.
+        long cacheGeneration = historicalQuoteCache.currentGeneration();
+        TariffSnapshot rules = businessRulesService.getSnapshot();
+        String city = request.getCity().name();
+        Optional<WeatherData> weatherDataOpt = weatherDataService.getWeatherDataForCityAtTime(city, request.getDateTime());
+
         if (weatherDataOpt.isEmpty()) {
-            return new DeliveryFeeResponse("Weather data not available for the specified city");
+            return new PricedQuote(new DeliveryFeeResponse(WEATHER_DATA_NOT_AVAILABLE), null,
+                    rules.getDigest(), null);
+        }
+
+        DeliveryFeeResponse response = calculateFee(rules, city, request.getVehicleType().name(),
+                weatherDataOpt.get(), request.getDateTime());
+        PricedQuote quote = new PricedQuote(response, weatherDataOpt.get(), rules.getDigest(), null);
+        historicalQuoteCache.put(request.getCity(), request.getVehicleType(), request.getDateTime(), quote, cacheGeneration);
+        return quote;
+    }
+
+    /**
+     * Opens a session for evaluating a batch or stream of quotes against shared weather.
+     *
+     * @param maxCachedObservations upper bound on the historical observations the session keeps resolved
+     */
+    public QuoteSession openQuoteSession(int maxCachedObservations) {
+        return new QuoteSession(this, weatherDataService, getFeeMatrix(), maxCachedObservations);
+    }
+
+    // Current fee matrix, recomputed first if it has not been built yet or a rule boundary has passed.
+    public FeeMatrix getFeeMatrix() {
+        FeeMatrix current = feeMatrix.get();
+        if (current != null && !current.isExpired(System.currentTimeMillis())) {
+            return current;
         }
+        synchronized (this) {
+            current = feeMatrix.get();
+            if (current != null && !current.isExpired(System.currentTimeMillis())) {
+                return current;
+            }
+            return rebuildFeeMatrix();
+        }
+    }
 
-        WeatherData weatherData = weatherDataOpt.get();
-        logger.info("Using weather data: {}", weatherData);
+    @EventListener
+    public void onWeatherDataIngested(WeatherDataIngestedEvent event) {
+        logger.info("Rebuilding fee matrix after {}", event);
+        rebuildFeeMatrix();
+    }
+
+    @EventListener
+    public void onWeatherHistoryBackfilled(WeatherHistoryBackfilledEvent event) {
+        logger.info("Rebuilding fee matrix after {}", event);
+        rebuildFeeMatrix();
+    }
 
-        String restrictionMessage = checkVehicleRestrictions(vehicleType, weatherData);
+    @EventListener
+    public void onBusinessRulesChanged(BusinessRulesChangedEvent event) {
+        logger.info("Rebuilding fee matrix after {}", event);
+        rebuildFeeMatrix();
+    }
+
+    public synchronized FeeMatrix rebuildFeeMatrix() {
+        LocalDateTime now = LocalDateTime.now();
+        TariffSnapshot rules = businessRulesService.getSnapshot();
+        DeliveryFeeRequest.City[] cities = DeliveryFeeRequest.City.values();
+        DeliveryFeeRequest.VehicleType[] vehicleTypes = DeliveryFeeRequest.VehicleType.values();
+
+        DeliveryFeeResponse[][] responses = new DeliveryFeeResponse[cities.length][vehicleTypes.length];
+        WeatherData[] observations = new WeatherData[cities.length];
+
+        for (DeliveryFeeRequest.City city : cities) {
+            WeatherData weatherData = weatherDataService.getLatestWeatherDataForCity(city.name()).orElse(null);
+            observations[city.ordinal()] = weatherData;
+
+            for (DeliveryFeeRequest.VehicleType vehicleType : vehicleTypes) {
+                responses[city.ordinal()][vehicleType.ordinal()] = weatherData == null
+                        ? new DeliveryFeeResponse(WEATHER_DATA_NOT_AVAILABLE)
+                        : calculateFee(rules, city.name(), vehicleType.name(), weatherData, now);
+            }
+        }
+
+        LocalDateTime nextRuleBoundary = rules.nextBoundaryAfter(now);
+        long validUntilMillis = nextRuleBoundary == null
+                ? Long.MAX_VALUE
+                : nextRuleBoundary.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+        FeeMatrix rebuilt = new FeeMatrix(responses, observations, rules, validUntilMillis);
+        feeMatrix.set(rebuilt);
+        logger.info("Published fee matrix for rules version {}", rules.getVersion());
+        return rebuilt;
+    }
+
+    // Every fee component is looked up in the given snapshot, which is also the version reported with the quote.
+    DeliveryFeeResponse calculateFee(TariffSnapshot rules, String city, String vehicleType, WeatherData weatherData,
+                                     LocalDateTime dateTime) {
+        PhenomenonCategory phenomenonCategory = getPhenomenonCategory(weatherData);
+        String restrictionMessage = checkVehicleRestrictions(vehicleType, weatherData.getWindSpeed(), phenomenonCategory);
         if (restrictionMessage != null) {
             return new DeliveryFeeResponse(restrictionMessage);
         }
 
-        BigDecimal airTemperatureExtraFee = calculateAirTemperatureExtraFee(vehicleType, weatherData.getAirTemperature());
-        BigDecimal windSpeedExtraFee = calculateWindSpeedExtraFee(vehicleType, weatherData.getWindSpeed());
-        BigDecimal weatherPhenomenonExtraFee = calculateWeatherPhenomenonExtraFee(vehicleType, weatherData.getWeatherPhenomenon());
+        long regionalBaseFee = businessRulesService.getRegionalBaseFeeCents(rules, city, vehicleType, dateTime);
+        long airTemperatureExtraFee = businessRulesService
+                .getAirTemperatureExtraFeeCents(rules, vehicleType, weatherData.getAirTemperature(), dateTime);
+        long windSpeedExtraFee = businessRulesService
+                .getWindSpeedExtraFeeCents(rules, vehicleType, weatherData.getWindSpeed(), dateTime);
+        long weatherPhenomenonExtraFee = businessRulesService
+                .getWeatherPhenomenonCategoryExtraFeeCents(rules, vehicleType, phenomenonCategory, dateTime);
 
-        BigDecimal totalFee = regionalBaseFee
-                .add(airTemperatureExtraFee)
-                .add(windSpeedExtraFee)
-                .add(weatherPhenomenonExtraFee);
+        long totalFee = regionalBaseFee + airTemperatureExtraFee + windSpeedExtraFee + weatherPhenomenonExtraFee;
 
         DeliveryFeeResponse.FeeBreakdown breakdown = new DeliveryFeeResponse.FeeBreakdown(
                 regionalBaseFee,
@@ -105,75 +181,29 @@ public class DeliveryFeeService {
                 weatherPhenomenonExtraFee
         );
 
-        logger.info("Calculated delivery fee: {}", totalFee);
         return new DeliveryFeeResponse(totalFee, breakdown);
     }
 
-    private BigDecimal getRegionalBaseFee(String city, String vehicleType) {
-        Map<String, BigDecimal> cityFees = REGIONAL_BASE_FEES.get(city);
-        if (cityFees != null) {
-            return cityFees.getOrDefault(vehicleType, BigDecimal.ZERO);
-        }
-        return BigDecimal.ZERO;
+    // Observations stored before categories were assigned at ingest are classified on first use.
+    private PhenomenonCategory getPhenomenonCategory(WeatherData weatherData) {
+        PhenomenonCategory category = weatherData.getPhenomenonCategory();
+        return category != null ? category : phenomenonClassifier.classify(weatherData.getWeatherPhenomenon());
     }
 
-    private String checkVehicleRestrictions(String vehicleType, WeatherData weatherData) {
+    private String checkVehicleRestrictions(String vehicleType, Double windSpeed, PhenomenonCategory phenomenonCategory) {
         if (vehicleType.equals("CAR")) {
             return null;
         }
 
-        if (vehicleType.equals("BIKE") && weatherData.getWindSpeed() > 20.0) {
+        if (vehicleType.equals("BIKE") && windSpeed != null && windSpeed > 20.0) {
             return "Usage of selected vehicle type is forbidden";
         }
 
-        String phenomenon = weatherData.getWeatherPhenomenon();
         if ((vehicleType.equals("BIKE") || vehicleType.equals("SCOOTER")) &&
-                FORBIDDEN_PHENOMENA.stream().anyMatch(p -> phenomenon.toLowerCase().contains(p.toLowerCase()))) {
+                phenomenonCategory == PhenomenonCategory.FORBIDDEN) {
             return "Usage of selected vehicle type is forbidden";
         }
 
         return null;
     }
-
-    private BigDecimal calculateAirTemperatureExtraFee(String vehicleType, Double temperature) {
-        if (vehicleType.equals("CAR") || temperature == null) {
-            return BigDecimal.ZERO;
-        }
-
-        if (temperature < -10.0) {
-            return new BigDecimal("1.0");
-        } else if (temperature < 0.0) {
-            return new BigDecimal("0.5");
-        }
-
-        return BigDecimal.ZERO;
-    }
-
-    private BigDecimal calculateWindSpeedExtraFee(String vehicleType, Double windSpeed) {
-        if (!vehicleType.equals("BIKE") || windSpeed == null) {
-            return BigDecimal.ZERO;
-        }
-
-        if (windSpeed >= 10.0 && windSpeed <= 20.0) {
-            return new BigDecimal("0.5");
-        }
-
-        return BigDecimal.ZERO;
-    }
-
-    private BigDecimal calculateWeatherPhenomenonExtraFee(String vehicleType, String phenomenon) {
-        if (vehicleType.equals("CAR") || phenomenon == null || phenomenon.isEmpty()) {
-            return BigDecimal.ZERO;
-        }
-
-        if (SNOW_SLEET_PHENOMENA.stream().anyMatch(p -> phenomenon.toLowerCase().contains(p.toLowerCase()))) {
-            return new BigDecimal("1.0");
-        }
-
-        if (RAIN_PHENOMENA.stream().anyMatch(p -> phenomenon.toLowerCase().contains(p.toLowerCase()))) {
-            return new BigDecimal("0.5");
-        }
-
-        return BigDecimal.ZERO;
-    }
 }
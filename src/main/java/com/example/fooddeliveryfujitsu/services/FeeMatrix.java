@@ -0,0 +1,61 @@
+package com.example.fooddeliveryfujitsu.services;
+
+import com.example.fooddeliveryfujitsu.models.DeliveryFeeRequest;
+import com.example.fooddeliveryfujitsu.models.DeliveryFeeResponse;
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+
+import java.time.Instant;
+
+/**
+ * Precomputed delivery fees for every city and vehicle type under the latest observation of each city.
+ * Instances are immutable and published as a whole by DeliveryFeeService; the responses are indexed
+ * by the ordinals of {@link DeliveryFeeRequest.City} and {@link DeliveryFeeRequest.VehicleType}.
+ */
+public final class FeeMatrix {
+
+    private final DeliveryFeeResponse[][] responses;
+    private final WeatherData[] observations;
+    private final TariffSnapshot rules;
+    // Epoch millis of the next business rule boundary, after which the matrix must be recomputed.
+    private final long validUntilMillis;
+
+    FeeMatrix(DeliveryFeeResponse[][] responses, WeatherData[] observations,
+              TariffSnapshot rules, long validUntilMillis) {
+        this.responses = responses;
+        this.observations = observations;
+        this.rules = rules;
+        this.validUntilMillis = validUntilMillis;
+    }
+
+    public DeliveryFeeResponse get(DeliveryFeeRequest.City city, DeliveryFeeRequest.VehicleType vehicleType) {
+        return responses[city.ordinal()][vehicleType.ordinal()];
+    }
+
+    // Observation the fees of the given city were computed from, or null when none was available.
+    public WeatherData getObservation(DeliveryFeeRequest.City city) {
+        return observations[city.ordinal()];
+    }
+
+    public long getRulesVersion() {
+        return rules.getVersion();
+    }
+
+    // Content digest of the business rules snapshot the fees were computed with.
+    public String getRulesDigest() {
+        return rules.getDigest();
+    }
+
+    // Business rules snapshot the fees were computed with.
+    TariffSnapshot getRules() {
+        return rules;
+    }
+
+    // Instant at which the next business rule boundary passes, or null when no further boundary is scheduled.
+    public Instant getValidUntil() {
+        return validUntilMillis == Long.MAX_VALUE ? null : Instant.ofEpochMilli(validUntilMillis);
+    }
+
+    boolean isExpired(long nowMillis) {
+        return nowMillis >= validUntilMillis;
+    }
+}
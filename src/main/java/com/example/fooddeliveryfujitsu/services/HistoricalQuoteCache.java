@@ -0,0 +1,238 @@
+package com.example.fooddeliveryfujitsu.services;
+
+import com.example.fooddeliveryfujitsu.events.BusinessRulesChangedEvent;
+import com.example.fooddeliveryfujitsu.events.WeatherDataIngestedEvent;
+import com.example.fooddeliveryfujitsu.events.WeatherHistoryBackfilledEvent;
+import com.example.fooddeliveryfujitsu.events.WeatherHistoryCompactedEvent;
+import com.example.fooddeliveryfujitsu.models.DeliveryFeeRequest;
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Bounded LRU cache of quotes priced at an explicit dateTime, with a time-to-live per entry.
+ * Entries are keyed by city, vehicle type and dateTime and remember the observation they were priced from.
+ * Instead of keying on the global rules version, entries are dropped precisely: on a rule change only if the
+ * changed rule's old or new validity interval covers the cached dateTime, and on a weather ingest only if
+ * the new observation is at least as close to the cached dateTime as the one the quote was priced from.
+ */
+@Component
+public class HistoricalQuoteCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoricalQuoteCache.class);
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LinkedHashMap<Key, Entry> entries;
+
+    // Incremented by every invalidation, so that quotes computed before it are not stored after it.
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @Autowired
+    public HistoricalQuoteCache(@Value("${delivery.historical-cache.max-entries:10000}") int maxEntries,
+                                @Value("${delivery.historical-cache.ttl-seconds:3600}") long ttlSeconds) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = Duration.ofSeconds(ttlSeconds).toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > HistoricalQuoteCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // Cached quote, or null on a miss or when the entry has outlived its time-to-live.
+    public synchronized PricedQuote get(DeliveryFeeRequest.City city, DeliveryFeeRequest.VehicleType vehicleType,
+                                        LocalDateTime dateTime) {
+        Key key = new Key(city, vehicleType, dateTime);
+        Entry entry = entries.get(key);
+        if (entry != null && System.nanoTime() - entry.createdAtNanos >= ttlNanos) {
+            entries.remove(key);
+            evictions.incrementAndGet();
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.quote;
+    }
+
+    // Token to pass to put; taken before the quote is computed.
+    public synchronized long currentGeneration() {
+        return generation;
+    }
+
+    /**
+     * Stores a quote computed from an observation. Ignored if an invalidation happened since the
+     * generation was taken, as the quote may then have been priced from superseded rules or weather.
+     */
+    public synchronized void put(DeliveryFeeRequest.City city, DeliveryFeeRequest.VehicleType vehicleType,
+                                 LocalDateTime dateTime, PricedQuote quote, long generation) {
+        if (generation != this.generation || quote.getObservation() == null || maxEntries <= 0) {
+            return;
+        }
+        entries.put(new Key(city, vehicleType, dateTime), new Entry(quote, System.nanoTime()));
+    }
+
+    @EventListener
+    public void onBusinessRulesChanged(BusinessRulesChangedEvent event) {
+        int removed = invalidate(entry -> event.affects(entry.getKey().dateTime));
+        logger.info("Invalidated {} cached historical quotes after {}", removed, event);
+    }
+
+    @EventListener
+    public void onWeatherDataIngested(WeatherDataIngestedEvent event) {
+        List<WeatherData> observations = event.getObservations();
+        int removed = invalidate(entry -> isSupersededByAny(entry.getKey().dateTime,
+                entry.getValue().quote.getObservation(), observations));
+        logger.debug("Invalidated {} cached historical quotes after {}", removed, event);
+    }
+
+    // An imported observation can only be at least as close to the cached dateTime as the one the quote was priced
+    // from if the imported span reaches within that distance of the dateTime.
+    @EventListener
+    public void onWeatherHistoryBackfilled(WeatherHistoryBackfilledEvent event) {
+        int removed = invalidate(entry -> {
+            LocalDateTime dateTime = entry.getKey().dateTime;
+            WeatherData pricedFrom = entry.getValue().quote.getObservation();
+            Duration distance = Duration.between(dateTime, pricedFrom.getTimestamp()).abs();
+            return event.getStationNames().contains(pricedFrom.getStationName())
+                    && !event.getFrom().isAfter(dateTime.plus(distance))
+                    && !event.getTo().isBefore(dateTime.minus(distance));
+        });
+        logger.info("Invalidated {} cached historical quotes after {}", removed, event);
+    }
+
+    // Only quotes priced from a raw observation that was downsampled can change: the aggregate replacing it is
+    // never closer to the quoted time than a later raw observation that was nearer to it before.
+    @EventListener
+    public void onWeatherHistoryCompacted(WeatherHistoryCompactedEvent event) {
+        int removed = invalidate(entry -> {
+            WeatherData pricedFrom = entry.getValue().quote.getObservation();
+            return event.getStationNames().contains(pricedFrom.getStationName())
+                    && pricedFrom.getTimestamp().isBefore(event.getRawCutoff());
+        });
+        logger.info("Invalidated {} cached historical quotes after {}", removed, event);
+    }
+
+    public synchronized void clear() {
+        generation++;
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    // Entries dropped for size or age; invalidations are not counted.
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    private synchronized int invalidate(Predicate<Map.Entry<Key, Entry>> affected) {
+        generation++;
+        int removed = 0;
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (affected.test(iterator.next())) {
+                iterator.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    // Ties count as superseding; conservative, since an equally distant later observation would not win.
+    private static boolean isSupersededByAny(LocalDateTime dateTime, WeatherData pricedFrom, List<WeatherData> observations) {
+        long currentDistance = Math.abs(Duration.between(dateTime, pricedFrom.getTimestamp()).getSeconds());
+        for (WeatherData observation : observations) {
+            if (Objects.equals(observation.getStationName(), pricedFrom.getStationName())
+                    && observation.getTimestamp() != null
+                    && Math.abs(Duration.between(dateTime, observation.getTimestamp()).getSeconds()) <= currentDistance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "HistoricalQuoteCache{" +
+                "size=" + size() +
+                ", hits=" + hits.get() +
+                ", misses=" + misses.get() +
+                ", evictions=" + evictions.get() +
+                '}';
+    }
+
+    private static final class Key {
+        private final DeliveryFeeRequest.City city;
+        private final DeliveryFeeRequest.VehicleType vehicleType;
+        private final LocalDateTime dateTime;
+
+        Key(DeliveryFeeRequest.City city, DeliveryFeeRequest.VehicleType vehicleType, LocalDateTime dateTime) {
+            this.city = city;
+            this.vehicleType = vehicleType;
+            this.dateTime = dateTime;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return city == other.city && vehicleType == other.vehicleType && dateTime.equals(other.dateTime);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(city, vehicleType, dateTime);
+        }
+    }
+
+    private static final class Entry {
+        private final PricedQuote quote;
+        private final long createdAtNanos;
+
+        Entry(PricedQuote quote, long createdAtNanos) {
+            this.quote = quote;
+            this.createdAtNanos = createdAtNanos;
+        }
+    }
+}
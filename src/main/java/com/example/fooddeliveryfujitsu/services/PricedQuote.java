@@ -0,0 +1,45 @@
+package com.example.fooddeliveryfujitsu.services;
+
+import com.example.fooddeliveryfujitsu.models.DeliveryFeeResponse;
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+
+import java.time.Instant;
+
+/**
+ * A quote together with the inputs it was derived from: the weather observation and the content digest of the
+ * business rules. Two quotes for the same request with equal inputs are identical, which lets callers derive
+ * cache validators without comparing response bodies.
+ */
+public final class PricedQuote {
+
+    private final DeliveryFeeResponse response;
+    private final WeatherData observation;
+    private final String rulesDigest;
+    // End of the rule segment the quote was priced in, or null when the priced instant is fixed by the request.
+    private final Instant validUntil;
+
+    public PricedQuote(DeliveryFeeResponse response, WeatherData observation, String rulesDigest,
+                       Instant validUntil) {
+        this.response = response;
+        this.observation = observation;
+        this.rulesDigest = rulesDigest;
+        this.validUntil = validUntil;
+    }
+
+    public DeliveryFeeResponse getResponse() {
+        return response;
+    }
+
+    // Observation the fee was computed from, or null when no weather data was available.
+    public WeatherData getObservation() {
+        return observation;
+    }
+
+    public String getRulesDigest() {
+        return rulesDigest;
+    }
+
+    public Instant getValidUntil() {
+        return validUntil;
+    }
+}
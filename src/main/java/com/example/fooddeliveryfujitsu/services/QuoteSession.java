@@ -0,0 +1,90 @@
+package com.example.fooddeliveryfujitsu.services;
+
+import com.example.fooddeliveryfujitsu.models.DeliveryFeeRequest;
+import com.example.fooddeliveryfujitsu.models.DeliveryFeeResponse;
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Evaluates many quotes against shared weather. Current-weather quotes all use the fee matrix captured
+ * when the session was opened; historical quotes resolve the observation for each distinct city and
+ * dateTime only once, keeping at most a bounded number of resolved observations. Historical quotes are
+ * priced with the rules snapshot of that fee matrix, so a session never mixes rule versions.
+ * A session is not thread-safe and is meant to serve a single batch or stream.
+ */
+public final class QuoteSession {
+
+    private final DeliveryFeeService deliveryFeeService;
+    private final WeatherDataService weatherDataService;
+    private final FeeMatrix feeMatrix;
+    private final Map<ObservationKey, Optional<WeatherData>> observations;
+
+    QuoteSession(DeliveryFeeService deliveryFeeService, WeatherDataService weatherDataService,
+                 FeeMatrix feeMatrix, int maxCachedObservations) {
+        this.deliveryFeeService = deliveryFeeService;
+        this.weatherDataService = weatherDataService;
+        this.feeMatrix = feeMatrix;
+        this.observations = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ObservationKey, Optional<WeatherData>> eldest) {
+                return size() > maxCachedObservations;
+            }
+        };
+    }
+
+    public DeliveryFeeResponse quote(DeliveryFeeRequest request) {
+        if (request.getDateTime() == null) {
+            return feeMatrix.get(request.getCity(), request.getVehicleType());
+        }
+
+        Optional<WeatherData> weatherData = resolveObservation(request.getCity(), request.getDateTime());
+        if (weatherData.isEmpty()) {
+            return new DeliveryFeeResponse(DeliveryFeeService.WEATHER_DATA_NOT_AVAILABLE);
+        }
+
+        return deliveryFeeService.calculateFee(feeMatrix.getRules(), request.getCity().name(), request.getVehicleType().name(),
+                weatherData.get(), request.getDateTime());
+    }
+
+    private Optional<WeatherData> resolveObservation(DeliveryFeeRequest.City city, LocalDateTime dateTime) {
+        ObservationKey key = new ObservationKey(city, dateTime);
+        Optional<WeatherData> weatherData = observations.get(key);
+        if (weatherData == null) {
+            weatherData = weatherDataService.getWeatherDataForCityAtTime(city.name(), dateTime);
+            observations.put(key, weatherData);
+        }
+        return weatherData;
+    }
+
+    private static final class ObservationKey {
+        private final DeliveryFeeRequest.City city;
+        private final LocalDateTime dateTime;
+
+        ObservationKey(DeliveryFeeRequest.City city, LocalDateTime dateTime) {
+            this.city = city;
+            this.dateTime = dateTime;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ObservationKey)) {
+                return false;
+            }
+            ObservationKey other = (ObservationKey) o;
+            return city == other.city && dateTime.equals(other.dateTime);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(city, dateTime);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.fooddeliveryfujitsu.services;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Interval index over all versions of the rules sharing one key (city/vehicle or fee type/vehicle).
+ * The time axis is cut into segments at every validFrom/validTo; each segment stores the outcome of the rules
+ * active throughout it, already resolved by precedence (latest validFrom first). Within a segment the value
+ * axis is cut the same way at every minValue/maxValue, so "which rule was active at time t for value v"
+ * is two binary searches, independent of how many versions have accumulated.
+ */
+final class RuleTimeline {
+
+    private static final Segment EMPTY_SEGMENT = new Segment(Collections.emptyList());
+
+    // Precedence among simultaneously active versions: latest validFrom wins, ties go to the later rule.
+    private static final Comparator<TariffSnapshot.Rule> PRECEDENCE =
+            Comparator.comparing(TariffSnapshot.Rule::getValidFrom)
+                    .thenComparingLong(TariffSnapshot.Rule::getSequence)
+                    .reversed();
+
+    private final LocalDateTime[] segmentStarts;
+    private final Segment[] segments;
+
+    private RuleTimeline(LocalDateTime[] segmentStarts, Segment[] segments) {
+        this.segmentStarts = segmentStarts;
+        this.segments = segments;
+    }
+
+    static RuleTimeline build(List<TariffSnapshot.Rule> rules) {
+        TreeMap<LocalDateTime, List<TariffSnapshot.Rule>> starting = new TreeMap<>();
+        TreeMap<LocalDateTime, List<TariffSnapshot.Rule>> ending = new TreeMap<>();
+        for (TariffSnapshot.Rule rule : rules) {
+            if (rule.getValidTo() != null && !rule.getValidTo().isAfter(rule.getValidFrom())) {
+                continue; // empty validity interval, never active
+            }
+            starting.computeIfAbsent(rule.getValidFrom(), k -> new ArrayList<>()).add(rule);
+            if (rule.getValidTo() != null) {
+                ending.computeIfAbsent(rule.getValidTo(), k -> new ArrayList<>()).add(rule);
+            }
+        }
+
+        TreeSet<LocalDateTime> boundaries = new TreeSet<>(starting.keySet());
+        boundaries.addAll(ending.keySet());
+
+        // Sweep the boundaries in time order, keeping the set of currently active rules.
+        TreeSet<TariffSnapshot.Rule> active = new TreeSet<>(PRECEDENCE);
+        LocalDateTime[] segmentStarts = new LocalDateTime[boundaries.size()];
+        Segment[] segments = new Segment[boundaries.size()];
+        int index = 0;
+        for (LocalDateTime boundary : boundaries) {
+            active.removeAll(ending.getOrDefault(boundary, Collections.emptyList()));
+            active.addAll(starting.getOrDefault(boundary, Collections.emptyList()));
+            segmentStarts[index] = boundary;
+            segments[index] = active.isEmpty() ? EMPTY_SEGMENT : new Segment(active);
+            index++;
+        }
+        return new RuleTimeline(segmentStarts, segments);
+    }
+
+    // Highest-precedence rule active at the given time.
+    TariffSnapshot.Rule findActive(LocalDateTime dateTime) {
+        return segmentAt(dateTime).top;
+    }
+
+    // Highest-precedence rule active at the given time whose [minValue, maxValue) range contains the value.
+    TariffSnapshot.Rule findActiveCovering(LocalDateTime dateTime, double value) {
+        return segmentAt(dateTime).findCovering(value);
+    }
+
+    TariffSnapshot.Rule findActiveForCategory(LocalDateTime dateTime, String phenomenonCategory) {
+        return segmentAt(dateTime).byCategory.get(phenomenonCategory);
+    }
+
+    private Segment segmentAt(LocalDateTime dateTime) {
+        int index = Arrays.binarySearch(segmentStarts, dateTime);
+        int segment = index >= 0 ? index : -index - 2;
+        return segment >= 0 ? segments[segment] : EMPTY_SEGMENT;
+    }
+
+    // Resolved outcome of one time segment. Only the winning rules are retained, not the whole active set,
+    // so that long chains of open-ended versions do not make the index quadratic in size.
+    private static final class Segment {
+        private final TariffSnapshot.Rule top;
+        // Elementary value intervals [valueBounds[i], valueBounds[i + 1]) and the rule winning each of them.
+        private final double[] valueBounds;
+        private final TariffSnapshot.Rule[] valueWinners;
+        private final Map<String, TariffSnapshot.Rule> byCategory;
+
+        // The active rules must be iterated in precedence order.
+        Segment(Collection<TariffSnapshot.Rule> active) {
+            Iterator<TariffSnapshot.Rule> iterator = active.iterator();
+            this.top = iterator.hasNext() ? iterator.next() : null;
+
+            TreeSet<Double> bounds = new TreeSet<>();
+            Map<String, TariffSnapshot.Rule> categories = new HashMap<>();
+            for (TariffSnapshot.Rule rule : active) {
+                if (rule.hasValueRange()) {
+                    bounds.add(rule.getMinValue());
+                    bounds.add(rule.getMaxValue());
+                }
+                if (rule.getPhenomenonCategory() != null) {
+                    categories.putIfAbsent(rule.getPhenomenonCategory(), rule);
+                }
+            }
+
+            this.valueBounds = bounds.stream().mapToDouble(Double::doubleValue).toArray();
+            this.valueWinners = new TariffSnapshot.Rule[Math.max(valueBounds.length - 1, 0)];
+            for (int i = 0; i < valueWinners.length; i++) {
+                for (TariffSnapshot.Rule rule : active) {
+                    // Bounds include every min and max, so a rule covers an elementary interval entirely or not at all.
+                    if (rule.hasValueRange() && rule.getMinValue() <= valueBounds[i] && valueBounds[i + 1] <= rule.getMaxValue()) {
+                        valueWinners[i] = rule;
+                        break;
+                    }
+                }
+            }
+            this.byCategory = categories;
+        }
+
+        TariffSnapshot.Rule findCovering(double value) {
+            int index = Arrays.binarySearch(valueBounds, value);
+            int interval = index >= 0 ? index : -index - 2;
+            return interval >= 0 && interval < valueWinners.length ? valueWinners[interval] : null;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.fooddeliveryfujitsu.services;
+
+import com.example.fooddeliveryfujitsu.models.RegionalBaseFee;
+import com.example.fooddeliveryfujitsu.models.WeatherExtraFee;
+import com.example.fooddeliveryfujitsu.util.Cents;
+import com.example.fooddeliveryfujitsu.util.Digests;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Immutable, versioned copy of every business rule, indexed by city/vehicle for regional base fees
+ * and by fee type/vehicle for weather extra fees. Each index entry is a {@link RuleTimeline} over all
+ * versions of that key, so lookups at any point in time cost the same as lookups for the present.
+ * A snapshot is never modified after construction; BusinessRulesService swaps in a new one on change.
+ */
+public final class TariffSnapshot {
+
+    public static final String AIR_TEMP = "AIR_TEMP";
+    public static final String WIND_SPEED = "WIND_SPEED";
+    public static final String WEATHER_PHENOMENON = "WEATHER_PHENOMENON";
+
+    private static final LocalDateTime[] NO_BOUNDARIES = new LocalDateTime[0];
+
+    private final long version;
+    // Digest of the content of every rule; see getDigest.
+    private final String digest;
+    private final Map<String, Map<String, RuleTimeline>> regionalBaseFees;
+    private final Map<String, Map<String, RuleTimeline>> weatherExtraFees;
+    // Every distinct validFrom/validTo instant, ascending: the points in time where the active rule set changes.
+    private final LocalDateTime[] boundaries;
+
+    private TariffSnapshot(long version, String digest,
+                           Map<String, Map<String, RuleTimeline>> regionalBaseFees,
+                           Map<String, Map<String, RuleTimeline>> weatherExtraFees,
+                           LocalDateTime[] boundaries) {
+        this.version = version;
+        this.digest = digest;
+        this.regionalBaseFees = regionalBaseFees;
+        this.weatherExtraFees = weatherExtraFees;
+        this.boundaries = boundaries;
+    }
+
+    public static TariffSnapshot build(long version,
+                                       List<RegionalBaseFee> regionalBaseFees,
+                                       List<WeatherExtraFee> weatherExtraFees) {
+        TreeSet<LocalDateTime> boundaries = new TreeSet<>();
+        // One line per rule, sorted before digesting, so the digest does not depend on load order.
+        List<String> content = new ArrayList<>();
+        long sequence = 0;
+
+        Map<String, Map<String, List<Rule>>> baseFeeIndex = new HashMap<>();
+        for (RegionalBaseFee fee : regionalBaseFees) {
+            addBoundaries(boundaries, fee.getValidFrom(), fee.getValidTo());
+            content.add(String.join("|", "base", fee.getCity(), fee.getVehicleType(), String.valueOf(fee.getId()),
+                    String.valueOf(Cents.fromDecimal(fee.getFee())), String.valueOf(fee.getValidFrom()),
+                    String.valueOf(fee.getValidTo())));
+            baseFeeIndex.computeIfAbsent(fee.getCity(), k -> new HashMap<>())
+                    .computeIfAbsent(fee.getVehicleType(), k -> new ArrayList<>())
+                    .add(new Rule(fee.getId(), sequence++, Cents.fromDecimal(fee.getFee()),
+                            fee.getValidFrom(), fee.getValidTo(), null, null, null));
+        }
+
+        Map<String, Map<String, List<Rule>>> extraFeeIndex = new HashMap<>();
+        for (WeatherExtraFee fee : weatherExtraFees) {
+            addBoundaries(boundaries, fee.getValidFrom(), fee.getValidTo());
+            content.add(String.join("|", "extra", fee.getFeeType(), fee.getVehicleType(), String.valueOf(fee.getId()),
+                    String.valueOf(Cents.fromDecimal(fee.getFee())), String.valueOf(fee.getValidFrom()),
+                    String.valueOf(fee.getValidTo()), String.valueOf(fee.getMinValue()),
+                    String.valueOf(fee.getMaxValue()), String.valueOf(fee.getPhenomenonCategory())));
+            extraFeeIndex.computeIfAbsent(fee.getFeeType(), k -> new HashMap<>())
+                    .computeIfAbsent(fee.getVehicleType(), k -> new ArrayList<>())
+                    .add(new Rule(fee.getId(), sequence++, Cents.fromDecimal(fee.getFee()),
+                            fee.getValidFrom(), fee.getValidTo(),
+                            fee.getMinValue(), fee.getMaxValue(), fee.getPhenomenonCategory()));
+        }
+
+        Collections.sort(content);
+        return new TariffSnapshot(version, Digests.sha256(String.join("\n", content)), index(baseFeeIndex), index(extraFeeIndex),
+                boundaries.toArray(NO_BOUNDARIES));
+    }
+
+    private static void addBoundaries(TreeSet<LocalDateTime> boundaries, LocalDateTime validFrom, LocalDateTime validTo) {
+        if (validFrom != null) {
+            boundaries.add(validFrom);
+        }
+        if (validTo != null) {
+            boundaries.add(validTo);
+        }
+    }
+
+    private static Map<String, Map<String, RuleTimeline>> index(Map<String, Map<String, List<Rule>>> rules) {
+        Map<String, Map<String, RuleTimeline>> timelines = new HashMap<>();
+        rules.forEach((outerKey, byVehicle) -> {
+            Map<String, RuleTimeline> inner = new HashMap<>();
+            byVehicle.forEach((vehicleType, versions) -> inner.put(vehicleType, RuleTimeline.build(versions)));
+            timelines.put(outerKey, Collections.unmodifiableMap(inner));
+        });
+        return Collections.unmodifiableMap(timelines);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // Equal for snapshots of the same rules, on every instance and across restarts, unlike the version, which
+    // counts reloads of this instance.
+    public String getDigest() {
+        return digest;
+    }
+
+    /**
+     * Returns the first instant after the given time at which some rule becomes active or expires,
+     * or null when the active rule set never changes again.
+     */
+    public LocalDateTime nextBoundaryAfter(LocalDateTime dateTime) {
+        int index = Arrays.binarySearch(boundaries, dateTime);
+        int next = index >= 0 ? index + 1 : -index - 1;
+        return next < boundaries.length ? boundaries[next] : null;
+    }
+
+    public Rule findRegionalBaseFee(String city, String vehicleType, LocalDateTime dateTime) {
+        RuleTimeline timeline = timeline(regionalBaseFees, city, vehicleType);
+        return timeline != null ? timeline.findActive(dateTime) : null;
+    }
+
+    public Rule findRangeRule(String feeType, String vehicleType, double value, LocalDateTime dateTime) {
+        RuleTimeline timeline = timeline(weatherExtraFees, feeType, vehicleType);
+        return timeline != null ? timeline.findActiveCovering(dateTime, value) : null;
+    }
+
+    public Rule findPhenomenonRule(String vehicleType, String phenomenonCategory, LocalDateTime dateTime) {
+        RuleTimeline timeline = timeline(weatherExtraFees, WEATHER_PHENOMENON, vehicleType);
+        return timeline != null ? timeline.findActiveForCategory(dateTime, phenomenonCategory) : null;
+    }
+
+    private static RuleTimeline timeline(Map<String, Map<String, RuleTimeline>> index, String outerKey, String vehicleType) {
+        Map<String, RuleTimeline> byVehicle = index.get(outerKey);
+        return byVehicle != null ? byVehicle.get(vehicleType) : null;
+    }
+
+    /**
+     * Detached, read-only copy of a single rule version, with the fee held in cents.
+     */
+    public static final class Rule {
+        private final Long id;
+        // Load order within the snapshot, used to break ties between versions with the same validFrom.
+        private final long sequence;
+        private final long feeCents;
+        private final LocalDateTime validFrom;
+        private final LocalDateTime validTo;
+        private final Double minValue;
+        private final Double maxValue;
+        private final String phenomenonCategory;
+
+        Rule(Long id, long sequence, long feeCents, LocalDateTime validFrom, LocalDateTime validTo,
+             Double minValue, Double maxValue, String phenomenonCategory) {
+            this.id = id;
+            this.sequence = sequence;
+            this.feeCents = feeCents;
+            this.validFrom = validFrom;
+            this.validTo = validTo;
+            this.minValue = minValue;
+            this.maxValue = maxValue;
+            this.phenomenonCategory = phenomenonCategory;
+        }
+
+        // Id of the stored rule this version was copied from.
+        public Long getId() {
+            return id;
+        }
+
+        long getSequence() {
+            return sequence;
+        }
+
+        public long getFeeCents() {
+            return feeCents;
+        }
+
+        public LocalDateTime getValidFrom() {
+            return validFrom;
+        }
+
+        public LocalDateTime getValidTo() {
+            return validTo;
+        }
+
+        public Double getMinValue() {
+            return minValue;
+        }
+
+        public Double getMaxValue() {
+            return maxValue;
+        }
+
+        public String getPhenomenonCategory() {
+            return phenomenonCategory;
+        }
+
+        // Rules without both bounds never match a measured value, as with the former JPQL range queries.
+        boolean hasValueRange() {
+            return minValue != null && maxValue != null;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.example.fooddeliveryfujitsu.services;
+
+import com.example.fooddeliveryfujitsu.events.WeatherHistoryBackfilledEvent;
+import com.example.fooddeliveryfujitsu.models.BackfillReport;
+import com.example.fooddeliveryfujitsu.models.IngestReport;
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+import com.example.fooddeliveryfujitsu.store.ObservationStore;
+import com.example.fooddeliveryfujitsu.util.WeatherFeedParseException;
+import com.example.fooddeliveryfujitsu.util.WeatherPhenomenonClassifier;
+import com.example.fooddeliveryfujitsu.util.WeatherXmlParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Imports archived observation feeds (*.xml, *.xml.gz) from a directory tree, for history older than the live
+ * fetch. Files are parsed on a fork-join pool, one batch of files ahead of the batch being written through
+ * ObservationStore.bulkInsert. The names of written files are appended to a checkpoint file in the directory,
+ * so an interrupted import resumes after the last written batch; readings of a batch that was stored but not yet
+ * checkpointed are skipped as already stored.
+ * With the JPA store, readings are passed through WeatherRetentionService first: readings older than
+ * weather.retention.aggregate-months are not imported, as the next retention run would delete them, and older than
+ * weather.retention.raw-days they are stored raw and downsampled by that run, unless their hour already is.
+ * An import holds the WeatherHistoryLock, so retention does not run while it writes, and it is not started while
+ * retention runs.
+ */
+@Service
+public class WeatherBackfillService {
+
+    private static final Logger logger = LoggerFactory.getLogger(WeatherBackfillService.class);
+
+    public static final String CHECKPOINT_FILE = ".backfill-imported";
+
+    private final ObservationStore observationStore;
+    private final WeatherXmlParser weatherXmlParser;
+    private final WeatherPhenomenonClassifier phenomenonClassifier;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Optional<WeatherRetentionService> retentionService;
+    private final WeatherHistoryLock historyLock;
+    private final Path rootDirectory;
+    private final int parallelism;
+    private final int filesPerBatch;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    // Snapshot of the running or last import, replaced after every batch.
+    private volatile BackfillReport progress;
+
+    @Autowired
+    public WeatherBackfillService(ObservationStore observationStore,
+                                  WeatherXmlParser weatherXmlParser,
+                                  WeatherPhenomenonClassifier phenomenonClassifier,
+                                  ApplicationEventPublisher eventPublisher,
+                                  Optional<WeatherRetentionService> retentionService,
+                                  WeatherHistoryLock historyLock,
+                                  @Value("${weather.backfill.root-directory:./weather-archive}") String rootDirectory,
+                                  @Value("${weather.backfill.parallelism:0}") int parallelism,
+                                  @Value("${weather.backfill.files-per-batch:1000}") int filesPerBatch) {
+        this.observationStore = observationStore;
+        this.weatherXmlParser = weatherXmlParser;
+        this.phenomenonClassifier = phenomenonClassifier;
+        this.eventPublisher = eventPublisher;
+        this.retentionService = retentionService;
+        this.historyLock = historyLock;
+        this.rootDirectory = Paths.get(rootDirectory).toAbsolutePath().normalize();
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.filesPerBatch = Math.max(filesPerBatch, 1);
+    }
+
+    /**
+     * Starts importing a directory given relative to weather.backfill.root-directory. Used by the admin endpoint,
+     * so the directory may not lie outside the root. The import runs on its own thread; the returned report is the
+     * progress before the first batch, and getProgress follows the import from there.
+     */
+    public BackfillReport startImport(String relativeDirectory) {
+        Path directory = rootDirectory.resolve(relativeDirectory).normalize();
+        if (!directory.startsWith(rootDirectory)) {
+            throw new IllegalArgumentException("Directory is outside the backfill root: " + relativeDirectory);
+        }
+        ImportPlan plan = begin(directory);
+        Thread worker = new Thread(() -> {
+            try {
+                execute(plan);
+            } catch (RuntimeException e) {
+                logger.error("Backfill of {} failed", plan.directory, e);
+            } finally {
+                end();
+            }
+        }, "weather-backfill");
+        // An import cut short by a shutdown resumes from its checkpoint.
+        worker.setDaemon(true);
+        worker.start();
+        return plan.report.copy();
+    }
+
+    // Imports on the calling thread, for backfill mode.
+    public BackfillReport importDirectory(Path directory) {
+        ImportPlan plan = begin(directory);
+        try {
+            return execute(plan);
+        } finally {
+            end();
+        }
+    }
+
+    // Only one import runs at a time; a second one, or one while retention runs, is rejected rather than queued.
+    private ImportPlan begin(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            throw new IllegalArgumentException("Not a directory: " + directory);
+        }
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A backfill is already running");
+        }
+        if (!historyLock.tryAcquire()) {
+            running.set(false);
+            throw new IllegalStateException("Weather retention is running");
+        }
+        try {
+            return plan(directory.toAbsolutePath().normalize());
+        } catch (RuntimeException e) {
+            end();
+            throw e;
+        }
+    }
+
+    private void end() {
+        historyLock.release();
+        running.set(false);
+    }
+
+    public Optional<BackfillReport> getProgress() {
+        return Optional.ofNullable(progress);
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    private ImportPlan plan(Path directory) {
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        Set<String> imported = readCheckpoint(checkpoint);
+        List<Path> archive = listArchive(directory);
+        List<Path> pending = archive.stream()
+                .filter(file -> !imported.contains(checkpointName(directory, file)))
+                .toList();
+
+        BackfillReport report = new BackfillReport(directory.toString(), archive.size(), archive.size() - pending.size());
+        progress = report.copy();
+        return new ImportPlan(directory, pending, report);
+    }
+
+    private BackfillReport execute(ImportPlan plan) {
+        Path directory = plan.directory;
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        List<Path> pending = plan.pending;
+        BackfillReport report = plan.report;
+        logger.info("Backfilling {} archived feeds from {} on {} threads, {} already imported",
+                pending.size(), directory, parallelism, report.getResumedFiles());
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        LocalDateTime startedAt = LocalDateTime.now();
+        long started = System.nanoTime();
+        try {
+            ForkJoinTask<List<ParsedFile>> parsing = pending.isEmpty() ? null : parseAsync(pool, pending, 0, startedAt);
+            for (int from = 0; from < pending.size(); from += filesPerBatch) {
+                List<ParsedFile> batch = parsing.join();
+                // The next batch is parsed while this one is written.
+                int next = from + filesPerBatch;
+                parsing = next < pending.size() ? parseAsync(pool, pending, next, startedAt) : null;
+
+                write(directory, checkpoint, batch, startedAt, report);
+                report.setElapsedMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+                progress = report.copy();
+                logger.info("Backfilled {}/{} archived feeds: {} inserted, {} skipped ({} files/s, {} rows/s)",
+                        report.getImportedFiles() + report.getResumedFiles(), report.getTotalFiles(),
+                        report.getInserted(), report.getSkipped(),
+                        Math.round(report.getFilesPerSecond()), Math.round(report.getRowsPerSecond()));
+            }
+            report.setFinished(true);
+        } finally {
+            pool.shutdownNow();
+            report.setElapsedMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            progress = report.copy();
+        }
+        logger.info("Backfill of {} finished: {}", directory, report);
+        return report;
+    }
+
+    // Runs as a task of the pool, so the parallel stream splits the files over the pool's threads.
+    private ForkJoinTask<List<ParsedFile>> parseAsync(ForkJoinPool pool, List<Path> pending, int from,
+                                                      LocalDateTime startedAt) {
+        List<Path> files = pending.subList(from, Math.min(from + filesPerBatch, pending.size()));
+        return pool.submit(() -> files.parallelStream()
+                .map(file -> parse(file, startedAt))
+                .toList());
+    }
+
+    // The parser times a feed without a valid timestamp at the current time; such readings cannot be archived ones.
+    private ParsedFile parse(Path file, LocalDateTime startedAt) {
+        List<WeatherData> observations = new ArrayList<>();
+        try (InputStream in = open(file)) {
+            weatherXmlParser.parseWeatherData(in, observations::add);
+        } catch (IOException | WeatherFeedParseException e) {
+            // A truncated or malformed file stores none of its readings and is tried again by the next run.
+            logger.warn("Could not read archived feed {}: {}", file, e.getMessage());
+            return new ParsedFile(file, null);
+        }
+        for (WeatherData observation : observations) {
+            if (observation.getTimestamp() == null || !observation.getTimestamp().isBefore(startedAt)) {
+                logger.warn("Archived feed {} has no valid observation time, not imported", file);
+                return new ParsedFile(file, null);
+            }
+            observation.setPhenomenonCategory(phenomenonClassifier.classify(observation.getWeatherPhenomenon()));
+        }
+        return new ParsedFile(file, observations);
+    }
+
+    private static InputStream open(Path file) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(file));
+        return file.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(in) : in;
+    }
+
+    // Failed files are left out of the checkpoint, so that the next run tries them again.
+    // Caches hear of every stored batch, so that they never answer from history the import has already changed.
+    private void write(Path directory, Path checkpoint, List<ParsedFile> batch, LocalDateTime startedAt,
+                       BackfillReport report) {
+        List<WeatherData> parsed = new ArrayList<>();
+        List<String> written = new ArrayList<>();
+        for (ParsedFile file : batch) {
+            if (file.observations == null) {
+                report.setFailedFiles(report.getFailedFiles() + 1);
+                continue;
+            }
+            parsed.addAll(file.observations);
+            written.add(checkpointName(directory, file.path));
+        }
+        List<WeatherData> observations = retentionService
+                .map(retention -> retention.retainedReadings(parsed, startedAt))
+                .orElse(parsed);
+        report.setExpired(report.getExpired() + parsed.size() - observations.size());
+        if (!observations.isEmpty()) {
+            IngestReport stored = observationStore.bulkInsert(observations);
+            report.setInserted(report.getInserted() + stored.getInserted());
+            report.setUpdated(report.getUpdated() + stored.getUpdated());
+            report.setSkipped(report.getSkipped() + stored.getSkipped());
+            eventPublisher.publishEvent(new WeatherHistoryBackfilledEvent(observations));
+        }
+        appendCheckpoint(checkpoint, written);
+        report.setImportedFiles(report.getImportedFiles() + written.size());
+    }
+
+    private static List<Path> listArchive(Path directory) {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(file -> {
+                        String name = file.getFileName().toString();
+                        return name.endsWith(".xml") || name.endsWith(".xml.gz");
+                    })
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list archived feeds in " + directory, e);
+        }
+    }
+
+    private static Set<String> readCheckpoint(Path checkpoint) {
+        if (!Files.exists(checkpoint)) {
+            return new HashSet<>();
+        }
+        try {
+            return new HashSet<>(Files.readAllLines(checkpoint, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read backfill checkpoint " + checkpoint, e);
+        }
+    }
+
+    private static void appendCheckpoint(Path checkpoint, List<String> written) {
+        if (written.isEmpty()) {
+            return;
+        }
+        try {
+            Files.write(checkpoint, written, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not update backfill checkpoint " + checkpoint, e);
+        }
+    }
+
+    // Relative to the imported directory, with '/' separators, so a checkpoint stays valid if the archive moves.
+    private static String checkpointName(Path directory, Path file) {
+        return directory.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+    private static final class ImportPlan {
+        private final Path directory;
+        // Files not in the checkpoint yet, in import order.
+        private final List<Path> pending;
+        private final BackfillReport report;
+
+        ImportPlan(Path directory, List<Path> pending, BackfillReport report) {
+            this.directory = directory;
+            this.pending = pending;
+            this.report = report;
+        }
+    }
+
+    private static final class ParsedFile {
+        private final Path path;
+        // Null when the file could not be imported.
+        private final List<WeatherData> observations;
+
+        ParsedFile(Path path, List<WeatherData> observations) {
+            this.path = path;
+            this.observations = observations;
+        }
+    }
+}
@@ -1,22 +1,44 @@
 package com.example.fooddeliveryfujitsu.services;
 
 
+import com.example.fooddeliveryfujitsu.events.WeatherDataIngestedEvent;
+import com.example.fooddeliveryfujitsu.events.WeatherHistoryBackfilledEvent;
+import com.example.fooddeliveryfujitsu.models.IngestReport;
 import com.example.fooddeliveryfujitsu.models.WeatherData;
-import com.example.fooddeliveryfujitsu.repositories.WeatherDataRepository;
+import com.example.fooddeliveryfujitsu.models.WeatherHourlyAggregate;
+import com.example.fooddeliveryfujitsu.store.ObservationCursor;
+import com.example.fooddeliveryfujitsu.store.ObservationStore;
+import com.example.fooddeliveryfujitsu.store.WeatherTimeSeriesStore;
+import com.example.fooddeliveryfujitsu.util.WeatherPhenomenonClassifier;
 import com.example.fooddeliveryfujitsu.util.WeatherXmlParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
 
 @Service
 public class WeatherDataService {
@@ -31,56 +53,176 @@ public class WeatherDataService {
         CITY_TO_STATION_MAP.put("PARNU", "Pärnu");
     }
 
+    private static final String CHANGE_ONLY_INGEST = "change-only";
+
     @Value("${weather.api.url}")
     private String weatherApiUrl;
 
-    private final WeatherDataRepository weatherDataRepository;
+    // "full" stores every reading; "change-only" extends the station's latest row while its reading is unchanged.
+    @Value("${weather.ingest.mode:full}")
+    private String ingestMode = "full";
+
+    // Rows per keyset page of a history read; also the JDBC fetch size.
+    @Value("${weather.history.page-size:1000}")
+    private int historyPageSize = 1000;
+
+    private final ObservationStore observationStore;
     private final WeatherXmlParser weatherXmlParser;
     private final RestTemplate restTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final WeatherPhenomenonClassifier phenomenonClassifier;
+    private final WeatherTimeSeriesStore timeSeriesStore;
+
+    // Validators of the last stored feed, sent back so that an unchanged feed is answered with 304.
+    private volatile String feedEtag;
+    private volatile String feedLastModified;
+
+    // Newest known observation per station, kept current by ingest events.
+    private final Map<String, WeatherData> latestByStation = new ConcurrentHashMap<>();
 
     @Autowired
-    public WeatherDataService(WeatherDataRepository weatherDataRepository,
+    public WeatherDataService(ObservationStore observationStore,
                               WeatherXmlParser weatherXmlParser,
-                              RestTemplate restTemplate) {
-        this.weatherDataRepository = weatherDataRepository;
+                              RestTemplate restTemplate,
+                              ApplicationEventPublisher eventPublisher,
+                              WeatherPhenomenonClassifier phenomenonClassifier,
+                              WeatherTimeSeriesStore timeSeriesStore) {
+        this.observationStore = observationStore;
         this.weatherXmlParser = weatherXmlParser;
         this.restTemplate = restTemplate;
+        this.eventPublisher = eventPublisher;
+        this.phenomenonClassifier = phenomenonClassifier;
+        this.timeSeriesStore = timeSeriesStore;
     }
 
-    public void fetchAndSaveWeatherData() {
+    /**
+     * Fetches the feed and stores its readings. Storing is idempotent: a feed whose time every station already
+     * has is not stored again, and each reading is upserted on its station and time.
+     */
+    public IngestReport fetchAndSaveWeatherData() {
         logger.info("Starting manual weather data fetch from API: {}", weatherApiUrl);
 
+        IngestReport report = new IngestReport();
         try {
             logger.info("Sending request to weather API");
-            byte[] xmlBytes = restTemplate.getForObject(weatherApiUrl, byte[].class);
+            FeedSnapshot feed = restTemplate.execute(weatherApiUrl, HttpMethod.GET, this::addFeedRequestHeaders,
+                    this::readFeed);
 
-            if (xmlBytes == null || xmlBytes.length == 0) {
-                logger.error("No data received from weather API");
-                return;
+            if (feed == null) {
+                logger.info("Weather feed not modified since the last fetch, nothing to ingest");
+                return report;
             }
 
-            logger.info("Received {} bytes of XML data", xmlBytes.length);
-
-            List<WeatherData> weatherDataList = weatherXmlParser.parseWeatherData(new ByteArrayInputStream(xmlBytes));
-
+            List<WeatherData> weatherDataList = feed.observations;
             logger.info("Parsed {} weather data records", weatherDataList.size());
             for (WeatherData data : weatherDataList) {
+                data.setPhenomenonCategory(phenomenonClassifier.classify(data.getWeatherPhenomenon()));
                 logger.info("Parsed data: station={}, temp={}, wind={}, phenomenon={}",
                         data.getStationName(), data.getAirTemperature(),
                         data.getWindSpeed(), data.getWeatherPhenomenon());
             }
 
-            if (!weatherDataList.isEmpty()) {
-                List<WeatherData> savedData = weatherDataRepository.saveAll(weatherDataList);
-                logger.info("Saved {} weather data records to database", savedData.size());
+            if (alreadyIngested(weatherDataList)) {
+                report.setSkipped(weatherDataList.size());
+                logger.info("Weather feed of {} is already stored, skipped {} readings",
+                        weatherDataList.get(0).getTimestamp(), weatherDataList.size());
+            } else if (!weatherDataList.isEmpty()) {
+                report = CHANGE_ONLY_INGEST.equals(ingestMode)
+                        ? saveChanges(weatherDataList)
+                        : observationStore.upsertAll(weatherDataList);
+                logger.info("Ingested weather feed: {} inserted, {} updated, {} skipped, {} corrections rejected",
+                        report.getInserted(), report.getUpdated(), report.getSkipped(),
+                        report.getRejectedCorrections());
+                eventPublisher.publishEvent(new WeatherDataIngestedEvent(weatherDataList));
             } else {
                 logger.warn("No weather data parsed from the API response");
             }
+            // Only a stored feed may be answered with 304 next time; a failed ingest or an empty feed is fetched
+            // again in full. A body cut off mid-way fails the parse and never gets here.
+            if (!weatherDataList.isEmpty()) {
+                feedEtag = feed.etag;
+                feedLastModified = feed.lastModified;
+            }
 
         } catch (Exception e) {
             logger.error("Error fetching or processing weather data", e);
             e.printStackTrace();
         }
+        return report;
+    }
+
+    // Whether every reading is of the time its station's latest stored observation already has; a retried or
+    // repeated fetch of the same feed then stores nothing.
+    private boolean alreadyIngested(List<WeatherData> readings) {
+        if (readings.isEmpty()) {
+            return false;
+        }
+        for (WeatherData reading : readings) {
+            WeatherData latest = reading.getStationName() != null ? latestByStation.get(reading.getStationName()) : null;
+            if (latest == null || !latest.getTimestamp().equals(reading.getTimestamp())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Asks for the feed only if it changed since the last stored one, and offers gzip.
+    private void addFeedRequestHeaders(ClientHttpRequest request) {
+        HttpHeaders headers = request.getHeaders();
+        headers.set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        if (feedEtag != null) {
+            headers.setIfNoneMatch(feedEtag);
+        }
+        if (feedLastModified != null) {
+            headers.set(HttpHeaders.IF_MODIFIED_SINCE, feedLastModified);
+        }
+    }
+
+    // Parses the body straight off the connection; null when the server answered 304 Not Modified. A body that
+    // ends early, e.g. after a read timeout, throws instead of yielding the stations read before it.
+    private FeedSnapshot readFeed(ClientHttpResponse response) throws IOException {
+        if (response.getStatusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED)) {
+            return null;
+        }
+        HttpHeaders headers = response.getHeaders();
+        InputStream body = response.getBody();
+        if ("gzip".equalsIgnoreCase(headers.getFirst(HttpHeaders.CONTENT_ENCODING))) {
+            body = new GZIPInputStream(body);
+        }
+        List<WeatherData> observations = new ArrayList<>();
+        weatherXmlParser.parseWeatherData(body, observations::add);
+        return new FeedSnapshot(observations, headers.getETag(), headers.getFirst(HttpHeaders.LAST_MODIFIED));
+    }
+
+    /**
+     * Inserts only readings that differ from the station's latest one; an unchanged reading extends the latest
+     * row's validity instead and takes over its id. An extension counts as an update of that row.
+     */
+    private IngestReport saveChanges(List<WeatherData> readings) {
+        List<WeatherData> changed = new ArrayList<>();
+        for (WeatherData reading : readings) {
+            WeatherData latest = reading.getStationName() != null ? latestByStation.get(reading.getStationName()) : null;
+            if (latest != null && latest.getId() != null && reading.getTimestamp() != null
+                    && reading.getTimestamp().isAfter(latest.getTimestamp())
+                    && sameReading(latest, reading)
+                    && observationStore.extend(latest.getId(), reading.getTimestamp())) {
+                reading.setId(latest.getId());
+            } else {
+                changed.add(reading);
+            }
+        }
+        IngestReport report = changed.isEmpty() ? new IngestReport() : observationStore.upsertAll(changed);
+        int extended = readings.size() - changed.size();
+        report.setUpdated(report.getUpdated() + extended);
+        logger.info("Stored {} changed readings, extended {} unchanged ones", changed.size(), extended);
+        return report;
+    }
+
+    private static boolean sameReading(WeatherData a, WeatherData b) {
+        return Objects.equals(a.getAirTemperature(), b.getAirTemperature())
+                && Objects.equals(a.getWindSpeed(), b.getWindSpeed())
+                && Objects.equals(a.getWeatherPhenomenon(), b.getWeatherPhenomenon())
+                && Objects.equals(a.getWmoCode(), b.getWmoCode());
     }
 
     public Optional<WeatherData> getLatestWeatherDataForCity(String cityName) {
@@ -91,14 +233,60 @@ public class WeatherDataService {
             return Optional.empty();
         }
 
-        List<WeatherData> latestData = weatherDataRepository.findLatestByStationName(stationName);
+        WeatherData latest = latestByStation.get(stationName);
+        if (latest != null) {
+            return Optional.of(latest);
+        }
 
-        if (latestData.isEmpty()) {
+        Optional<WeatherData> stored = loadLatest(stationName);
+        if (stored.isEmpty()) {
             logger.warn("No weather data found for station: {}", stationName);
-            return Optional.empty();
         }
+        return stored;
+    }
 
-        return Optional.of(latestData.get(0));
+    // Seeds the latest observation of every known station with one top-1 query each,
+    // and loads as much recent history as the time series store's heap budget allows.
+    @EventListener(ApplicationReadyEvent.class)
+    public void seedLatestObservations() {
+        for (String stationName : CITY_TO_STATION_MAP.values()) {
+            loadLatest(stationName);
+        }
+        logger.info("Seeded latest observations for {} stations", latestByStation.size());
+        timeSeriesStore.load(CITY_TO_STATION_MAP.values());
+    }
+
+    // Runs before other listeners of the same event, so that they already see the new observations.
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onWeatherDataIngested(WeatherDataIngestedEvent event) {
+        for (WeatherData observation : event.getObservations()) {
+            recordLatest(observation);
+        }
+    }
+
+    // An imported archive may reach later than the last live fetch, e.g. for a station that is new to the feed.
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onWeatherHistoryBackfilled(WeatherHistoryBackfilledEvent event) {
+        for (WeatherData observation : event.getObservations()) {
+            recordLatest(observation);
+        }
+    }
+
+    private Optional<WeatherData> loadLatest(String stationName) {
+        Optional<WeatherData> stored = observationStore.findLatest(stationName);
+        stored.ifPresent(this::recordLatest);
+        return stored;
+    }
+
+    // Keeps whichever observation is newer, so a late seed query cannot replace a fresher ingest.
+    private void recordLatest(WeatherData observation) {
+        if (observation.getStationName() == null || observation.getTimestamp() == null) {
+            return;
+        }
+        latestByStation.merge(observation.getStationName(), observation,
+                (held, offered) -> offered.getTimestamp().isBefore(held.getTimestamp()) ? held : offered);
     }
 
     public Optional<WeatherData> getWeatherDataForCityAtTime(String cityName, LocalDateTime dateTime) {
@@ -109,6 +297,79 @@ public class WeatherDataService {
             return Optional.empty();
         }
 
-        return weatherDataRepository.findClosestByStationNameAndDateTime(stationName, dateTime);
+        WeatherData resident = timeSeriesStore.findNearest(stationName, dateTime);
+        if (resident != null) {
+            return Optional.of(resident);
+        }
+
+        return observationStore.findNearest(stationName, dateTime);
+    }
+
+    /**
+     * Passes the city's stored history with from <= timestamp < to, oldest first, to the visitor, starting after the
+     * cursor when one is given and stopping after limit entries when limit is positive. History past the raw
+     * retention period is only kept as hourly aggregates, which are passed in time order among the raw
+     * observations, before any raw observation of the same time.
+     * Both tiers are read in keyset pages, so at most a page of each is held in memory. Returns the number passed.
+     */
+    public long streamHistory(String cityName, LocalDateTime from, LocalDateTime to, ObservationCursor after,
+                              long limit, HistoryVisitor visitor) {
+        String stationName = CITY_TO_STATION_MAP.get(cityName.toUpperCase());
+        if (stationName == null) {
+            throw new IllegalArgumentException("Unknown city: " + cityName);
+        }
+
+        ObservationCursor position = after;
+        long streamed = 0;
+        while (limit <= 0 || streamed < limit) {
+            int pageSize = limit <= 0 ? historyPageSize : (int) Math.min(historyPageSize, limit - streamed);
+            List<WeatherHourlyAggregate> aggregates =
+                    observationStore.findAggregateRange(stationName, from, to, position, pageSize);
+            List<WeatherData> observations = observationStore.findRange(stationName, from, to, position, pageSize);
+
+            // The first pageSize entries of the merge lie within the first pageSize of each tier.
+            int a = 0;
+            int o = 0;
+            int passed = 0;
+            while (passed < pageSize && (a < aggregates.size() || o < observations.size())) {
+                if (o == observations.size() || a < aggregates.size()
+                        && !aggregates.get(a).getHourStart().isAfter(observations.get(o).getTimestamp())) {
+                    WeatherHourlyAggregate aggregate = aggregates.get(a++);
+                    visitor.aggregate(aggregate);
+                    position = ObservationCursor.after(aggregate);
+                } else {
+                    WeatherData observation = observations.get(o++);
+                    visitor.observation(observation);
+                    position = ObservationCursor.after(observation);
+                }
+                passed++;
+            }
+            streamed += passed;
+            if (passed < pageSize) {
+                break;
+            }
+        }
+        return streamed;
+    }
+
+    // Receives the entries of a history stream, each in one call.
+    public interface HistoryVisitor {
+
+        void observation(WeatherData observation);
+
+        void aggregate(WeatherHourlyAggregate aggregate);
+    }
+
+    // Observations of one fetched feed together with the validators the server sent for it.
+    private static class FeedSnapshot {
+        private final List<WeatherData> observations;
+        private final String etag;
+        private final String lastModified;
+
+        FeedSnapshot(List<WeatherData> observations, String etag, String lastModified) {
+            this.observations = observations;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
     }
 }
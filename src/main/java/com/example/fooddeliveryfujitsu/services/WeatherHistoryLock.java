@@ -0,0 +1,25 @@
+package com.example.fooddeliveryfujitsu.services;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Keeps the archive import and retention apart. Retention reads a station-day of raw rows and then deletes the
+ * rows it downsampled, so readings an import commits in between would be deleted without being aggregated.
+ * Neither job waits for the other: the one that comes second is skipped or rejected.
+ * A permit rather than a lock, as the import is started on a request thread and finished on its own thread.
+ */
+@Component
+public class WeatherHistoryLock {
+
+    private final Semaphore permit = new Semaphore(1);
+
+    public boolean tryAcquire() {
+        return permit.tryAcquire();
+    }
+
+    public void release() {
+        permit.release();
+    }
+}
@@ -0,0 +1,314 @@
+package com.example.fooddeliveryfujitsu.services;
+
+import com.example.fooddeliveryfujitsu.events.WeatherHistoryCompactedEvent;
+import com.example.fooddeliveryfujitsu.models.PhenomenonCategory;
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+import com.example.fooddeliveryfujitsu.models.WeatherHourlyAggregate;
+import com.example.fooddeliveryfujitsu.repositories.WeatherDataRepository;
+import com.example.fooddeliveryfujitsu.repositories.WeatherHourlyAggregateRepository;
+import com.example.fooddeliveryfujitsu.store.ObservationDictionary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Keeps weather_data small: raw observations older than weather.retention.raw-days are downsampled into
+ * hourly aggregates, and aggregates older than weather.retention.aggregate-months are dropped, after being
+ * appended to monthly CSV files when weather.retention.export-directory is set.
+ * Raw rows are moved one station-day per transaction, so a first run over a large table does not hold
+ * all of it in one persistence context.
+ * A run is skipped while an archive import holds the WeatherHistoryLock, and is picked up by the next run.
+ */
+@Service
+@ConditionalOnProperty(name = "weather.storage.backend", havingValue = "jpa", matchIfMissing = true)
+public class WeatherRetentionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(WeatherRetentionService.class);
+
+    private static final DateTimeFormatter EXPORT_MONTH = DateTimeFormatter.ofPattern("yyyy-MM");
+    private static final String EXPORT_HEADER = "station_name,wmo_code,hour_start,sample_count," +
+            "air_temperature_avg,air_temperature_min,air_temperature_max,wind_speed_avg,wind_speed_max," +
+            "weather_phenomenon,phenomenon_category";
+
+    private final WeatherDataRepository weatherDataRepository;
+    private final WeatherHourlyAggregateRepository aggregateRepository;
+    private final ObservationDictionary dictionary;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final WeatherHistoryLock historyLock;
+    private final int rawDays;
+    private final int aggregateMonths;
+    private final String exportDirectory;
+
+    @Autowired
+    public WeatherRetentionService(WeatherDataRepository weatherDataRepository,
+                                   WeatherHourlyAggregateRepository aggregateRepository,
+                                   ObservationDictionary dictionary,
+                                   ApplicationEventPublisher eventPublisher,
+                                   PlatformTransactionManager transactionManager,
+                                   WeatherHistoryLock historyLock,
+                                   @Value("${weather.retention.raw-days:30}") int rawDays,
+                                   @Value("${weather.retention.aggregate-months:12}") int aggregateMonths,
+                                   @Value("${weather.retention.export-directory:}") String exportDirectory) {
+        this.weatherDataRepository = weatherDataRepository;
+        this.aggregateRepository = aggregateRepository;
+        this.dictionary = dictionary;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.historyLock = historyLock;
+        this.rawDays = rawDays;
+        this.aggregateMonths = aggregateMonths;
+        this.exportDirectory = exportDirectory;
+    }
+
+    // Runs nightly by default, away from the hourly weather fetch.
+    @Scheduled(cron = "${weather.retention.cron:0 45 3 * * ?}")
+    public void applyRetention() {
+        applyRetention(LocalDateTime.now());
+    }
+
+    public void applyRetention(LocalDateTime now) {
+        if (!historyLock.tryAcquire()) {
+            logger.warn("Skipping weather retention while an archive import is running");
+            return;
+        }
+        try {
+            compact(now);
+        } finally {
+            historyLock.release();
+        }
+    }
+
+    private void compact(LocalDateTime now) {
+        LocalDateTime rawCutoff = rawCutoff(now);
+        LocalDateTime aggregateCutoff = aggregateCutoff(now);
+
+        // Stations come from the small station dimension; each is then checked with one seek for its oldest row.
+        List<String> compacted = new ArrayList<>();
+        for (String stationName : dictionary.stationNames()) {
+            int downsampled = downsampleStation(stationName, rawCutoff);
+            if (downsampled > 0) {
+                logger.info("Downsampled {} observations of station {} older than {}", downsampled, stationName, rawCutoff);
+                compacted.add(stationName);
+            }
+        }
+        if (!compacted.isEmpty()) {
+            eventPublisher.publishEvent(new WeatherHistoryCompactedEvent(compacted, rawCutoff));
+        }
+
+        Integer dropped = transactionTemplate.execute(status -> dropAggregatesBefore(aggregateCutoff));
+        logger.info("Dropped {} hourly weather aggregates older than {}", dropped, aggregateCutoff);
+    }
+
+    /**
+     * The readings of an import that retention keeps: readings older than the aggregate cutoff would be deleted by
+     * the next run, and readings older than the raw cutoff whose hour is already downsampled would be counted in
+     * that hour a second time. Readings kept that are older than the raw cutoff are downsampled by the next run.
+     */
+    public List<WeatherData> retainedReadings(List<WeatherData> readings, LocalDateTime now) {
+        LocalDateTime rawCutoff = rawCutoff(now);
+        LocalDateTime aggregateCutoff = aggregateCutoff(now);
+        Map<String, List<WeatherData>> oldByStation = new LinkedHashMap<>();
+        List<WeatherData> retained = new ArrayList<>(readings.size());
+        for (WeatherData reading : readings) {
+            if (reading.getTimestamp().isBefore(aggregateCutoff)) {
+                continue;
+            }
+            if (reading.getTimestamp().isBefore(rawCutoff)) {
+                oldByStation.computeIfAbsent(reading.getStationName(), key -> new ArrayList<>()).add(reading);
+            } else {
+                retained.add(reading);
+            }
+        }
+        // One range read of downsampled hours per station and call.
+        for (Map.Entry<String, List<WeatherData>> station : oldByStation.entrySet()) {
+            LocalDateTime from = null;
+            LocalDateTime to = null;
+            for (WeatherData reading : station.getValue()) {
+                LocalDateTime hourStart = reading.getTimestamp().truncatedTo(ChronoUnit.HOURS);
+                from = from == null || hourStart.isBefore(from) ? hourStart : from;
+                to = to == null || hourStart.isAfter(to) ? hourStart : to;
+            }
+            Set<LocalDateTime> downsampled = new HashSet<>(
+                    aggregateRepository.findHourStartsByStationNameInRange(station.getKey(), from, to));
+            for (WeatherData reading : station.getValue()) {
+                if (!downsampled.contains(reading.getTimestamp().truncatedTo(ChronoUnit.HOURS))) {
+                    retained.add(reading);
+                }
+            }
+        }
+        return retained;
+    }
+
+    private LocalDateTime rawCutoff(LocalDateTime now) {
+        return now.truncatedTo(ChronoUnit.HOURS).minusDays(rawDays);
+    }
+
+    private LocalDateTime aggregateCutoff(LocalDateTime now) {
+        return now.truncatedTo(ChronoUnit.HOURS).minusMonths(aggregateMonths);
+    }
+
+    private int downsampleStation(String stationName, LocalDateTime rawCutoff) {
+        int downsampled = 0;
+        while (true) {
+            Optional<WeatherData> oldest = weatherDataRepository.findOldestByStationName(stationName);
+            if (oldest.isEmpty() || !oldest.get().getTimestamp().isBefore(rawCutoff)) {
+                return downsampled;
+            }
+            LocalDateTime from = oldest.get().getTimestamp().truncatedTo(ChronoUnit.DAYS);
+            LocalDateTime to = from.plusDays(1).isBefore(rawCutoff) ? from.plusDays(1) : rawCutoff;
+            Integer moved = transactionTemplate.execute(status -> downsampleRange(stationName, from, to));
+            downsampled += moved != null ? moved : 0;
+        }
+    }
+
+    // Folds the observations of [from, to) into their hours, merging into aggregates that already exist
+    // (late observations of an hour that was downsampled before), and deletes them from weather_data.
+    private int downsampleRange(String stationName, LocalDateTime from, LocalDateTime to) {
+        List<WeatherData> observations = weatherDataRepository.findByStationNameInRange(stationName, from, to);
+        Map<LocalDateTime, WeatherHourlyAggregate> hours = new LinkedHashMap<>();
+        for (WeatherData observation : observations) {
+            // A row standing for a run of unchanged readings counts once in every hour the run spans.
+            LocalDateTime last = observation.getObservedUntil() != null
+                    ? observation.getObservedUntil() : observation.getTimestamp();
+            for (LocalDateTime hourStart = observation.getTimestamp().truncatedTo(ChronoUnit.HOURS);
+                 !hourStart.isAfter(last); hourStart = hourStart.plusHours(1)) {
+                WeatherHourlyAggregate aggregate = hours.computeIfAbsent(hourStart, key -> aggregateRepository
+                        .findByStationNameAndHourStart(stationName, key)
+                        .orElseGet(() -> new WeatherHourlyAggregate(stationName, key)));
+                accumulate(aggregate, observation);
+            }
+        }
+        aggregateRepository.saveAll(hours.values());
+        weatherDataRepository.deleteByStationNameInRange(stationName, from, to);
+        return observations.size();
+    }
+
+    private static void accumulate(WeatherHourlyAggregate aggregate, WeatherData observation) {
+        aggregate.setSampleCount(aggregate.getSampleCount() + 1);
+        if (observation.getWmoCode() != null) {
+            aggregate.setWmoCode(observation.getWmoCode());
+        }
+
+        Double temperature = observation.getAirTemperature();
+        if (temperature != null) {
+            int samples = aggregate.getAirTemperatureSamples();
+            aggregate.setAirTemperatureAvg(samples == 0 ? temperature
+                    : (aggregate.getAirTemperatureAvg() * samples + temperature) / (samples + 1));
+            aggregate.setAirTemperatureMin(samples == 0 ? temperature : Math.min(aggregate.getAirTemperatureMin(), temperature));
+            aggregate.setAirTemperatureMax(samples == 0 ? temperature : Math.max(aggregate.getAirTemperatureMax(), temperature));
+            aggregate.setAirTemperatureSamples(samples + 1);
+        }
+
+        Double wind = observation.getWindSpeed();
+        if (wind != null) {
+            int samples = aggregate.getWindSpeedSamples();
+            aggregate.setWindSpeedAvg(samples == 0 ? wind : (aggregate.getWindSpeedAvg() * samples + wind) / (samples + 1));
+            aggregate.setWindSpeedMax(samples == 0 ? wind : Math.max(aggregate.getWindSpeedMax(), wind));
+            aggregate.setWindSpeedSamples(samples + 1);
+        }
+
+        // Phenomena cannot be averaged; the most severe one of the hour is kept, the later one on equal severity.
+        PhenomenonCategory category = observation.getPhenomenonCategory() != null
+                ? observation.getPhenomenonCategory() : PhenomenonCategory.NONE;
+        PhenomenonCategory held = aggregate.getPhenomenonCategory();
+        if (held == null || category.compareTo(held) >= 0) {
+            aggregate.setPhenomenonCategory(category);
+            aggregate.setWeatherPhenomenon(observation.getWeatherPhenomenon());
+        }
+    }
+
+    private int dropAggregatesBefore(LocalDateTime cutoff) {
+        if (!exportDirectory.isBlank()) {
+            List<WeatherHourlyAggregate> expired = aggregateRepository
+                    .findByHourStartLessThanOrderByStationNameAscHourStartAsc(cutoff);
+            if (expired.isEmpty()) {
+                return 0;
+            }
+            export(expired);
+        }
+        return aggregateRepository.deleteByHourStartBefore(cutoff);
+    }
+
+    // Appends the aggregates to one CSV file per month; the rows are deleted only if this succeeds.
+    private void export(List<WeatherHourlyAggregate> aggregates) {
+        Map<String, List<WeatherHourlyAggregate>> byMonth = new LinkedHashMap<>();
+        for (WeatherHourlyAggregate aggregate : aggregates) {
+            byMonth.computeIfAbsent(EXPORT_MONTH.format(aggregate.getHourStart()), key -> new ArrayList<>()).add(aggregate);
+        }
+        try {
+            Path directory = Paths.get(exportDirectory);
+            Files.createDirectories(directory);
+            for (Map.Entry<String, List<WeatherHourlyAggregate>> month : byMonth.entrySet()) {
+                Path file = directory.resolve("weather_hourly-" + month.getKey() + ".csv");
+                boolean newFile = Files.notExists(file);
+                try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    if (newFile) {
+                        writer.write(EXPORT_HEADER);
+                        writer.newLine();
+                    }
+                    for (WeatherHourlyAggregate aggregate : month.getValue()) {
+                        writer.write(toCsv(aggregate));
+                        writer.newLine();
+                    }
+                }
+                logger.info("Exported {} hourly weather aggregates to {}", month.getValue().size(), file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to export expired weather aggregates", e);
+        }
+    }
+
+    private static String toCsv(WeatherHourlyAggregate aggregate) {
+        return String.join(",",
+                csvField(aggregate.getStationName()),
+                csvField(aggregate.getWmoCode()),
+                aggregate.getHourStart().toString(),
+                Integer.toString(aggregate.getSampleCount()),
+                csvField(aggregate.getAirTemperatureAvg()),
+                csvField(aggregate.getAirTemperatureMin()),
+                csvField(aggregate.getAirTemperatureMax()),
+                csvField(aggregate.getWindSpeedAvg()),
+                csvField(aggregate.getWindSpeedMax()),
+                csvField(aggregate.getWeatherPhenomenon()),
+                csvField(aggregate.getPhenomenonCategory()));
+    }
+
+    private static String csvField(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.contains(",") || text.contains("\"") || text.contains("\n")) {
+            return '"' + text.replace("\"", "\"\"") + '"';
+        }
+        return text;
+    }
+}
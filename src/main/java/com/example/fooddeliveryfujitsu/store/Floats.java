@@ -0,0 +1,19 @@
+package com.example.fooddeliveryfujitsu.store;
+
+/**
+ * Conversions between nullable measurements and the floats the stores keep them in.
+ */
+final class Floats {
+
+    private Floats() {
+    }
+
+    static float toFloat(Double value) {
+        return value != null ? value.floatValue() : Float.NaN;
+    }
+
+    // Measurements have at most a few decimals, so the shortest decimal form of the float restores them exactly.
+    static Double toDouble(float value) {
+        return Float.isNaN(value) ? null : Double.valueOf(Float.toString(value));
+    }
+}
@@ -0,0 +1,474 @@
+package com.example.fooddeliveryfujitsu.store;
+
+import com.example.fooddeliveryfujitsu.models.IngestReport;
+import com.example.fooddeliveryfujitsu.models.PhenomenonCategory;
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+import com.example.fooddeliveryfujitsu.models.WeatherHourlyAggregate;
+import com.example.fooddeliveryfujitsu.repositories.WeatherDataRepository;
+import com.example.fooddeliveryfujitsu.repositories.WeatherHourlyAggregateRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Observation store backed by the weather_data table for recent observations and the weather_hourly table
+ * for history that the retention job has downsampled.
+ */
+@Component
+@ConditionalOnProperty(name = "weather.storage.backend", havingValue = "jpa", matchIfMissing = true)
+public class JpaObservationStore implements ObservationStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(JpaObservationStore.class);
+
+    // Keyset page along the unique (station_id, timestamp) key, read in index order. A station has one row per
+    // time, so the only row at the cursor's time is the cursor's own, which its id excludes; see rawIdFloor.
+    private static final String RANGE_QUERY = "SELECT id, air_temperature, wind_speed, phenomenon_id, " +
+            "phenomenon_category, timestamp, observed_until FROM weather_data " +
+            "WHERE station_id = ? AND timestamp >= ? AND timestamp < ? AND (timestamp > ? OR id > ?) " +
+            "ORDER BY station_id, timestamp LIMIT ?";
+
+    // The same keyset page over the unique (station_id, hour_start) key of the downsampled tier.
+    private static final String AGGREGATE_RANGE_QUERY = "SELECT id, wmo_code, hour_start, sample_count, " +
+            "air_temperature_samples, air_temperature_avg, air_temperature_min, air_temperature_max, " +
+            "wind_speed_samples, wind_speed_avg, wind_speed_max, phenomenon_id, phenomenon_category " +
+            "FROM weather_hourly WHERE station_id = ? AND hour_start >= ? AND hour_start < ? " +
+            "AND (hour_start > ? OR id > ?) ORDER BY station_id, hour_start LIMIT ?";
+
+    private static final String BULK_INSERT = "INSERT INTO weather_data (station_id, air_temperature, wind_speed, " +
+            "phenomenon_id, phenomenon_category, timestamp, observed_until) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    // Times a station already has within a span; one range seek on the unique key.
+    private static final String STORED_TIMES = "SELECT timestamp FROM weather_data " +
+            "WHERE station_id = ? AND timestamp >= ? AND timestamp <= ?";
+
+    // Time of the station's limit-th newest row: the start of the recent history the time series store loads.
+    private static final String RECENT_CUTOFF = "SELECT timestamp FROM weather_data WHERE station_id = ? " +
+            "ORDER BY station_id DESC, timestamp DESC LIMIT 1 OFFSET ?";
+
+    // Used instead when the station has fewer rows than the limit.
+    private static final String OLDEST_TIME = "SELECT MIN(timestamp) FROM weather_data WHERE station_id = ?";
+
+    private static final String RECENT_ROWS = "SELECT id, air_temperature, wind_speed, phenomenon_id, timestamp, " +
+            "observed_until FROM weather_data WHERE station_id = ? AND timestamp >= ? ORDER BY station_id, timestamp";
+
+    // Rows fetched per round trip while loading recent history.
+    private static final int LOAD_FETCH_SIZE = 1000;
+
+    // Rows per JDBC batch of a bulk insert.
+    @Value("${weather.ingest.batch-size:1000}")
+    private int batchSize = 1000;
+
+    // Same setting as WeatherRetentionService: raw rows older than this many days are downsampled.
+    @Value("${weather.retention.raw-days:30}")
+    private int rawDays = 30;
+
+    private final WeatherDataRepository weatherDataRepository;
+    private final WeatherHourlyAggregateRepository aggregateRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObservationDictionary dictionary;
+
+    @Autowired
+    public JpaObservationStore(WeatherDataRepository weatherDataRepository,
+                               WeatherHourlyAggregateRepository aggregateRepository,
+                               JdbcTemplate jdbcTemplate,
+                               ObservationDictionary dictionary) {
+        this.weatherDataRepository = weatherDataRepository;
+        this.aggregateRepository = aggregateRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public List<WeatherData> saveAll(List<WeatherData> observations) {
+        return weatherDataRepository.saveAll(observations);
+    }
+
+    /**
+     * One seek on the unique key per reading. A corrected reading rewrites its row. A row that stands for a run of
+     * readings (change-only ingest) is not rewritten: its values are also those of the later readings of the run,
+     * whose times are not stored, so the run cannot be split at the next reading. Such a correction is rejected
+     * and counted in the report, and the reading takes the stored values, so listeners of the ingest see what is
+     * stored.
+     */
+    @Override
+    public IngestReport upsertAll(List<WeatherData> observations) {
+        List<WeatherData> changed = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        int inserted = 0;
+        int rejected = 0;
+        for (WeatherData observation : observations) {
+            if (!seen.add(observation.getStationName() + "|" + observation.getTimestamp())) {
+                continue;
+            }
+            Optional<WeatherData> stored = weatherDataRepository
+                    .findByStationNameAndTimestamp(observation.getStationName(), observation.getTimestamp());
+            if (stored.isEmpty()) {
+                changed.add(observation);
+                inserted++;
+                continue;
+            }
+            WeatherData row = stored.get();
+            observation.setId(row.getId());
+            if (sameValues(row, observation)) {
+                continue;
+            }
+            if (lastReading(row).isAfter(row.getTimestamp())) {
+                logger.warn("Not correcting the reading of {} at {}: it starts a run of readings until {}",
+                        row.getStationName(), row.getTimestamp(), row.getObservedUntil());
+                observation.setAirTemperature(row.getAirTemperature());
+                observation.setWindSpeed(row.getWindSpeed());
+                observation.setWeatherPhenomenon(row.getWeatherPhenomenon());
+                observation.setPhenomenonCategory(row.getPhenomenonCategory());
+                observation.setObservedUntil(row.getObservedUntil());
+                rejected++;
+                continue;
+            }
+            observation.setObservedUntil(row.getObservedUntil());
+            changed.add(observation);
+        }
+        if (!changed.isEmpty()) {
+            weatherDataRepository.saveAll(changed);
+        }
+        int updated = changed.size() - inserted;
+        IngestReport report = new IngestReport(inserted, updated, observations.size() - changed.size() - rejected);
+        report.setRejectedCorrections(rejected);
+        return report;
+    }
+
+    /**
+     * Batched JDBC inserts that bypass the persistence context; with IDENTITY ids Hibernate would send one INSERT
+     * per row. Each batch first reads which of its times are stored already, so that it never hits the unique key.
+     */
+    @Override
+    @Transactional
+    public IngestReport bulkInsert(List<WeatherData> observations) {
+        int inserted = 0;
+        for (int start = 0; start < observations.size(); start += batchSize) {
+            List<WeatherData> batch = observations.subList(start, Math.min(start + batchSize, observations.size()));
+            List<WeatherData> fresh = withoutStoredReadings(batch);
+            insertBatch(fresh);
+            inserted += fresh.size();
+        }
+        return new IngestReport(inserted, 0, observations.size() - inserted);
+    }
+
+    // Drops readings of a time the station already has, in the table or earlier in the batch.
+    private List<WeatherData> withoutStoredReadings(List<WeatherData> batch) {
+        Map<String, LocalDateTime[]> spans = new HashMap<>();
+        for (WeatherData observation : batch) {
+            LocalDateTime timestamp = observation.getTimestamp();
+            LocalDateTime[] span = spans.computeIfAbsent(observation.getStationName(), stationName -> {
+                dictionary.recordWmoCode(stationName, observation.getWmoCode());
+                return new LocalDateTime[]{timestamp, timestamp};
+            });
+            span[0] = timestamp.isBefore(span[0]) ? timestamp : span[0];
+            span[1] = timestamp.isAfter(span[1]) ? timestamp : span[1];
+        }
+        Map<String, Set<LocalDateTime>> storedTimes = new HashMap<>();
+        spans.forEach((stationName, span) -> storedTimes.put(stationName, new HashSet<>(jdbcTemplate.queryForList(
+                STORED_TIMES, LocalDateTime.class, dictionary.stationId(stationName), span[0], span[1]))));
+
+        List<WeatherData> fresh = new ArrayList<>(batch.size());
+        for (WeatherData observation : batch) {
+            if (storedTimes.get(observation.getStationName()).add(observation.getTimestamp())) {
+                fresh.add(observation);
+            }
+        }
+        return fresh;
+    }
+
+    private void insertBatch(List<WeatherData> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(BULK_INSERT, new String[]{"id"})) {
+                for (WeatherData observation : rows) {
+                    PhenomenonCategory category = observation.getPhenomenonCategory();
+                    statement.setInt(1, dictionary.stationId(observation.getStationName()));
+                    statement.setObject(2, observation.getAirTemperature(), Types.DOUBLE);
+                    statement.setObject(3, observation.getWindSpeed(), Types.DOUBLE);
+                    statement.setObject(4, dictionary.phenomenonId(observation.getWeatherPhenomenon()), Types.INTEGER);
+                    statement.setString(5, category != null ? category.name() : null);
+                    statement.setObject(6, observation.getTimestamp());
+                    statement.setObject(7, observation.getObservedUntil());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    for (int i = 0; i < rows.size() && keys.next(); i++) {
+                        rows.get(i).setId(keys.getLong(1));
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public boolean extend(Long id, LocalDateTime observedUntil) {
+        return weatherDataRepository.extendObservedUntil(id, observedUntil) > 0;
+    }
+
+    @Override
+    public Optional<WeatherData> findLatest(String stationName) {
+        return weatherDataRepository.findLatestByStationName(stationName).map(row -> readingAt(row, lastReading(row)));
+    }
+
+    @Override
+    public Optional<WeatherData> findNearest(String stationName, LocalDateTime dateTime) {
+        // The closer of the floor and ceiling rows, each found with one index seek.
+        Optional<WeatherData> floor = weatherDataRepository.findFloorByStationNameAndTimestamp(stationName, dateTime)
+                .map(row -> readingAt(row, nearestReading(row, dateTime)));
+        Optional<WeatherData> ceiling = weatherDataRepository.findCeilingByStationNameAndTimestamp(stationName, dateTime);
+
+        // Raw rows before the raw cutoff may have been downsampled around the time, while older or late raw rows
+        // are left, so the downsampled tier is consulted whenever the raw floor lies there or is missing.
+        if (floor.isEmpty() || floor.get().getTimestamp().isBefore(rawCutoff())) {
+            Optional<WeatherData> aggregateFloor = aggregateRepository
+                    .findFloorByStationNameAndHourStart(stationName, dateTime).map(this::toObservation);
+            Optional<WeatherData> aggregateCeiling = aggregateRepository
+                    .findCeilingByStationNameAndHourStart(stationName, dateTime).map(this::toObservation);
+            floor = nearer(floor, aggregateFloor, dateTime);
+            ceiling = nearer(ceiling, aggregateCeiling, dateTime);
+        }
+        return nearer(floor, ceiling, dateTime);
+    }
+
+    @Override
+    public boolean hasDownsampledHistory(String stationName) {
+        return aggregateRepository.existsByStationName(stationName);
+    }
+
+    // A row standing for a run of readings contributes both ends of the run, so that nearest lookups over the
+    // result pick the same reading they would have picked with every reading stored.
+    @Override
+    public List<WeatherData> findRecent(String stationName, int limit) {
+        List<WeatherData> rows = weatherDataRepository
+                .findByStationNameOrderByStationNameDescTimestampDesc(stationName, Limit.of(limit));
+        List<WeatherData> readings = new ArrayList<>(rows.size());
+        for (WeatherData row : rows) {
+            if (readings.size() < limit && lastReading(row).isAfter(row.getTimestamp())) {
+                readings.add(readingAt(row, lastReading(row)));
+            }
+            if (readings.size() < limit) {
+                readings.add(row);
+            }
+        }
+        return readings;
+    }
+
+    /**
+     * Reads the rows from the cutoff on in one forward-only pass in index order, handing each over as it is read;
+     * nothing is kept per row. Like findRecent, a row standing for a run of readings contributes both ends of the
+     * run, so the handler may receive up to twice as many readings as rows.
+     */
+    @Override
+    public int loadRecent(String stationName, int limit, ObservationRowHandler handler) {
+        Integer stationId = dictionary.findStationId(stationName);
+        if (limit <= 0 || stationId == null || stationId == ObservationDictionary.UNKNOWN_STATION_ID) {
+            return 0;
+        }
+        List<LocalDateTime> cutoff = jdbcTemplate.queryForList(RECENT_CUTOFF, LocalDateTime.class, stationId, limit - 1);
+        LocalDateTime from = cutoff.isEmpty()
+                ? jdbcTemplate.queryForObject(OLDEST_TIME, LocalDateTime.class, stationId)
+                : cutoff.get(0);
+        if (from == null) {
+            return 0;
+        }
+        String wmoCode = dictionary.wmoCode(stationName);
+        int[] rows = {0};
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(RECENT_ROWS,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(LOAD_FETCH_SIZE);
+            statement.setInt(1, stationId);
+            statement.setObject(2, from);
+            return statement;
+        }, (ResultSet rs) -> {
+            LocalDateTime timestamp = rs.getObject("timestamp", LocalDateTime.class);
+            LocalDateTime observedUntil = rs.getObject("observed_until", LocalDateTime.class);
+            Double airTemperature = rs.getObject("air_temperature", Double.class);
+            Double windSpeed = rs.getObject("wind_speed", Double.class);
+            String phenomenon = dictionary.phenomenon(rs.getObject("phenomenon_id", Integer.class));
+            long id = rs.getLong("id");
+            handler.accept(timestamp, airTemperature, windSpeed, phenomenon, id, wmoCode);
+            if (observedUntil != null && observedUntil.isAfter(timestamp)) {
+                handler.accept(observedUntil, airTemperature, windSpeed, phenomenon, id, wmoCode);
+            }
+            rows[0]++;
+        });
+        return rows[0];
+    }
+
+    // Read with plain JDBC, so that pages of a long export do not pile up in a request-scoped persistence context.
+    // Each page is its own short statement; nothing stays open between pages.
+    @Override
+    public List<WeatherData> findRange(String stationName, LocalDateTime from, LocalDateTime to,
+                                       ObservationCursor after, int limit) {
+        Integer stationId = dictionary.findStationId(stationName);
+        List<WeatherData> page = new ArrayList<>();
+        if (limit <= 0 || stationId == null || stationId == ObservationDictionary.UNKNOWN_STATION_ID) {
+            return page;
+        }
+        LocalDateTime start = after != null && after.getTimestamp().isAfter(from) ? after.getTimestamp() : from;
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(RANGE_QUERY);
+            statement.setFetchSize(limit);
+            statement.setInt(1, stationId);
+            statement.setObject(2, start);
+            statement.setObject(3, to);
+            // Without a cursor, (timestamp > from OR id > MIN_VALUE) lets every row of the range through.
+            statement.setObject(4, after != null ? after.getTimestamp() : from);
+            statement.setLong(5, after != null ? after.rawIdFloor() : Long.MIN_VALUE);
+            statement.setInt(6, limit);
+            return statement;
+        }, (ResultSet rs) -> {
+            page.add(toObservation(stationName, rs));
+        });
+        return page;
+    }
+
+    // Hours are only downsampled once they are past the raw cutoff, so a range after it is not looked up.
+    @Override
+    public List<WeatherHourlyAggregate> findAggregateRange(String stationName, LocalDateTime from, LocalDateTime to,
+                                                           ObservationCursor after, int limit) {
+        Integer stationId = dictionary.findStationId(stationName);
+        List<WeatherHourlyAggregate> page = new ArrayList<>();
+        if (limit <= 0 || stationId == null || stationId == ObservationDictionary.UNKNOWN_STATION_ID
+                || !from.isBefore(rawCutoff())) {
+            return page;
+        }
+        LocalDateTime start = after != null && after.getTimestamp().isAfter(from) ? after.getTimestamp() : from;
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(AGGREGATE_RANGE_QUERY);
+            statement.setFetchSize(limit);
+            statement.setInt(1, stationId);
+            statement.setObject(2, start);
+            statement.setObject(3, to);
+            statement.setObject(4, after != null ? after.getTimestamp() : from);
+            statement.setLong(5, after != null ? after.aggregateIdFloor() : Long.MIN_VALUE);
+            statement.setInt(6, limit);
+            return statement;
+        }, (ResultSet rs) -> {
+            page.add(toAggregate(stationName, rs));
+        });
+        return page;
+    }
+
+    private WeatherData toObservation(String stationName, ResultSet rs) throws SQLException {
+        String category = rs.getString("phenomenon_category");
+        WeatherData observation = new WeatherData(stationName, dictionary.wmoCode(stationName),
+                rs.getObject("air_temperature", Double.class),
+                rs.getObject("wind_speed", Double.class),
+                dictionary.phenomenon(rs.getObject("phenomenon_id", Integer.class)),
+                rs.getObject("timestamp", LocalDateTime.class));
+        observation.setId(rs.getLong("id"));
+        observation.setPhenomenonCategory(category != null ? PhenomenonCategory.valueOf(category) : null);
+        observation.setObservedUntil(rs.getObject("observed_until", LocalDateTime.class));
+        return observation;
+    }
+
+    private WeatherHourlyAggregate toAggregate(String stationName, ResultSet rs) throws SQLException {
+        String category = rs.getString("phenomenon_category");
+        WeatherHourlyAggregate aggregate = new WeatherHourlyAggregate(stationName,
+                rs.getObject("hour_start", LocalDateTime.class));
+        aggregate.setId(rs.getLong("id"));
+        aggregate.setWmoCode(rs.getString("wmo_code"));
+        aggregate.setSampleCount(rs.getInt("sample_count"));
+        aggregate.setAirTemperatureSamples(rs.getInt("air_temperature_samples"));
+        aggregate.setAirTemperatureAvg(rs.getObject("air_temperature_avg", Double.class));
+        aggregate.setAirTemperatureMin(rs.getObject("air_temperature_min", Double.class));
+        aggregate.setAirTemperatureMax(rs.getObject("air_temperature_max", Double.class));
+        aggregate.setWindSpeedSamples(rs.getInt("wind_speed_samples"));
+        aggregate.setWindSpeedAvg(rs.getObject("wind_speed_avg", Double.class));
+        aggregate.setWindSpeedMax(rs.getObject("wind_speed_max", Double.class));
+        aggregate.setWeatherPhenomenon(dictionary.phenomenon(rs.getObject("phenomenon_id", Integer.class)));
+        aggregate.setPhenomenonCategory(category != null ? PhenomenonCategory.valueOf(category) : null);
+        return aggregate;
+    }
+
+    private static boolean sameValues(WeatherData a, WeatherData b) {
+        return Objects.equals(a.getAirTemperature(), b.getAirTemperature())
+                && Objects.equals(a.getWindSpeed(), b.getWindSpeed())
+                && Objects.equals(a.getWeatherPhenomenon(), b.getWeatherPhenomenon());
+    }
+
+    // Ties go to the earlier observation.
+    private LocalDateTime rawCutoff() {
+        return LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusDays(rawDays);
+    }
+
+    private static Optional<WeatherData> nearer(Optional<WeatherData> a, Optional<WeatherData> b, LocalDateTime dateTime) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return a.isPresent() ? a : b;
+        }
+        Duration toA = Duration.between(a.get().getTimestamp(), dateTime).abs();
+        Duration toB = Duration.between(b.get().getTimestamp(), dateTime).abs();
+        int compared = toA.compareTo(toB);
+        if (compared == 0) {
+            return a.get().getTimestamp().isAfter(b.get().getTimestamp()) ? b : a;
+        }
+        return compared < 0 ? a : b;
+    }
+
+    private static LocalDateTime lastReading(WeatherData row) {
+        return row.getObservedUntil() != null ? row.getObservedUntil() : row.getTimestamp();
+    }
+
+    // The end of the row's run nearest to the given time, which is not before the row's start; ties go to the start.
+    private static LocalDateTime nearestReading(WeatherData row, LocalDateTime dateTime) {
+        LocalDateTime last = lastReading(row);
+        if (!last.isAfter(dateTime)) {
+            return last;
+        }
+        Duration toFirst = Duration.between(row.getTimestamp(), dateTime);
+        Duration toLast = Duration.between(dateTime, last);
+        return toLast.compareTo(toFirst) < 0 ? last : row.getTimestamp();
+    }
+
+    // The row as the single reading at the given time; the row itself when that is its start.
+    private static WeatherData readingAt(WeatherData row, LocalDateTime timestamp) {
+        if (timestamp.equals(row.getTimestamp())) {
+            return row;
+        }
+        WeatherData reading = new WeatherData(row.getStationName(), row.getWmoCode(), row.getAirTemperature(),
+                row.getWindSpeed(), row.getWeatherPhenomenon(), timestamp);
+        reading.setId(row.getId());
+        reading.setPhenomenonCategory(row.getPhenomenonCategory());
+        reading.setObservedUntil(row.getObservedUntil());
+        return reading;
+    }
+
+    // An hourly aggregate stands in for an observation at the start of its hour, with the hour's averages.
+    private WeatherData toObservation(WeatherHourlyAggregate aggregate) {
+        WeatherData observation = new WeatherData(aggregate.getStationName(), aggregate.getWmoCode(),
+                aggregate.getAirTemperatureAvg(), aggregate.getWindSpeedAvg(),
+                aggregate.getWeatherPhenomenon(), aggregate.getHourStart());
+        observation.setPhenomenonCategory(aggregate.getPhenomenonCategory());
+        return observation;
+    }
+}
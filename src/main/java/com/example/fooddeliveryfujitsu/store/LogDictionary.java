@@ -0,0 +1,78 @@
+package com.example.fooddeliveryfujitsu.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only text file assigning 16-bit codes to the strings referenced by log segments
+ * (station names, WMO codes and phenomena). A string's code is its line number.
+ */
+final class LogDictionary {
+
+    private final FileChannel channel;
+    private final List<String> values = new ArrayList<>();
+    private final Map<String, Integer> codes = new HashMap<>();
+    private boolean dirty;
+
+    LogDictionary(Path path) throws IOException {
+        if (Files.exists(path)) {
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                codes.put(line, values.size());
+                values.add(line);
+            }
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    synchronized int encode(String value) throws IOException {
+        if (value == null) {
+            return LogSegment.NO_CODE;
+        }
+        if (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Line breaks cannot be stored in the observation log: " + value);
+        }
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        if (values.size() >= LogSegment.NO_CODE) {
+            throw new IllegalStateException("Observation log dictionary is full");
+        }
+        ByteBuffer line = ByteBuffer.wrap((value + "\n").getBytes(StandardCharsets.UTF_8));
+        while (line.hasRemaining()) {
+            channel.write(line);
+        }
+        code = values.size();
+        values.add(value);
+        codes.put(value, code);
+        dirty = true;
+        return code;
+    }
+
+    synchronized String decode(int code) {
+        return code == LogSegment.NO_CODE ? null : values.get(code);
+    }
+
+    // Flushes new entries to disk; called before the segments referring to them are committed.
+    synchronized void commit() throws IOException {
+        if (dirty) {
+            channel.force(false);
+            dirty = false;
+        }
+    }
+
+    synchronized void close() throws IOException {
+        commit();
+        channel.close();
+    }
+}
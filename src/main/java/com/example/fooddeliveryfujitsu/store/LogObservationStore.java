@@ -0,0 +1,386 @@
+package com.example.fooddeliveryfujitsu.store;
+
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+import com.example.fooddeliveryfujitsu.util.WeatherPhenomenonClassifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Observation store kept in an append-only log of memory-mapped segments instead of the database.
+ * Each station has its own directory; each segment file covers one time bucket of weather.storage.log.segment-hours
+ * and is named {@code <bucket start epoch second>-<sequence>.seg}, with a new sequence when a segment fills up.
+ * Every saveAll is fsynced before it returns. Reads decode the mapped segments in place.
+ * Ids are derived from the station and timestamp, so an observation keeps its id across restarts.
+ */
+@Component
+@ConditionalOnProperty(name = "weather.storage.backend", havingValue = "log")
+public class LogObservationStore implements ObservationStore, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(LogObservationStore.class);
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    // Low bits of a derived id, holding the station's dictionary code.
+    private static final int STATION_ID_BITS = 16;
+
+    private final Path directory;
+    private final long segmentSeconds;
+    private final int segmentBytes;
+    private final WeatherPhenomenonClassifier phenomenonClassifier;
+    private final LogDictionary dictionary;
+
+    private final Map<String, StationLog> stations = new ConcurrentHashMap<>();
+
+    @Autowired
+    public LogObservationStore(@Value("${weather.storage.log.directory:./weatherlog}") String directory,
+                               @Value("${weather.storage.log.segment-hours:168}") long segmentHours,
+                               @Value("${weather.storage.log.segment-bytes:1048576}") int segmentBytes,
+                               WeatherPhenomenonClassifier phenomenonClassifier) throws IOException {
+        this.directory = Paths.get(directory);
+        this.segmentSeconds = segmentHours * 3600;
+        this.segmentBytes = segmentBytes;
+        this.phenomenonClassifier = phenomenonClassifier;
+        Files.createDirectories(this.directory);
+        this.dictionary = new LogDictionary(this.directory.resolve("dictionary.txt"));
+        openExistingSegments();
+    }
+
+    @Override
+    public List<WeatherData> saveAll(List<WeatherData> observations) {
+        Set<StationLog> touched = new LinkedHashSet<>();
+        try {
+            for (WeatherData observation : observations) {
+                StationLog log = station(observation.getStationName());
+                log.lock.writeLock().lock();
+                try {
+                    append(log, observation);
+                } finally {
+                    log.lock.writeLock().unlock();
+                }
+                touched.add(log);
+            }
+            // Dictionary entries first, so that a committed segment never refers to a lost code.
+            dictionary.commit();
+            for (StationLog log : touched) {
+                log.lock.writeLock().lock();
+                try {
+                    log.commit();
+                } finally {
+                    log.lock.writeLock().unlock();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to the observation log", e);
+        }
+        return observations;
+    }
+
+    @Override
+    public Optional<WeatherData> findLatest(String stationName) {
+        List<WeatherData> recent = findRecent(stationName, 1);
+        return recent.isEmpty() ? Optional.empty() : Optional.of(recent.get(0));
+    }
+
+    @Override
+    public Optional<WeatherData> findNearest(String stationName, LocalDateTime dateTime) {
+        StationLog log = stations.get(stationName);
+        if (log == null) {
+            return Optional.empty();
+        }
+        long target = toEpochSecond(dateTime);
+        long bucket = bucketOf(target);
+
+        log.lock.readLock().lock();
+        try {
+            // A record lives in the bucket of its timestamp, so the floor is in the target bucket or the nearest
+            // earlier non-empty one, and the ceiling in the target bucket or the nearest later one.
+            Nearest nearest = new Nearest(log, target);
+            scanBucket(log, bucket, nearest);
+            for (Long earlier = log.buckets.lowerKey(bucket); nearest.floor == null && earlier != null;
+                 earlier = log.buckets.lowerKey(earlier)) {
+                scanBucket(log, earlier, nearest);
+            }
+            for (Long later = log.buckets.higherKey(bucket); nearest.ceiling == null && later != null;
+                 later = log.buckets.higherKey(later)) {
+                scanBucket(log, later, nearest);
+            }
+            return Optional.ofNullable(nearest.result());
+        } finally {
+            log.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<WeatherData> findRecent(String stationName, int limit) {
+        StationLog log = stations.get(stationName);
+        List<WeatherData> result = new ArrayList<>();
+        if (log == null || limit <= 0) {
+            return result;
+        }
+        log.lock.readLock().lock();
+        try {
+            for (Long bucket : log.buckets.descendingKeySet()) {
+                List<WeatherData> inBucket = new ArrayList<>();
+                scanBucket(log, bucket, (epochSecond, temperature, wind, phenomenon, wmo) ->
+                        inBucket.add(materialize(log, epochSecond, temperature, wind, phenomenon, wmo)));
+                inBucket.sort(Comparator.comparing(WeatherData::getTimestamp).reversed());
+                for (WeatherData observation : inBucket) {
+                    if (result.size() == limit) {
+                        return result;
+                    }
+                    result.add(observation);
+                }
+            }
+            return result;
+        } finally {
+            log.lock.readLock().unlock();
+        }
+    }
+
+    // Walks the buckets overlapping the range in time order; only one bucket's matching records are held at a time.
+    @Override
+    public List<WeatherData> findRange(String stationName, LocalDateTime from, LocalDateTime to,
+                                       ObservationCursor after, int limit) {
+        StationLog log = stations.get(stationName);
+        List<WeatherData> result = new ArrayList<>();
+        if (log == null || limit <= 0 || !from.isBefore(to)) {
+            return result;
+        }
+        LocalDateTime start = after != null && after.getTimestamp().isAfter(from) ? after.getTimestamp() : from;
+        log.lock.readLock().lock();
+        try {
+            for (Long bucket : log.buckets.subMap(bucketOf(toEpochSecond(start)), true,
+                    bucketOf(toEpochSecond(to)), true).keySet()) {
+                List<WeatherData> inBucket = new ArrayList<>();
+                scanBucket(log, bucket, (epochSecond, temperature, wind, phenomenon, wmo) -> {
+                    WeatherData observation = materialize(log, epochSecond, temperature, wind, phenomenon, wmo);
+                    if (!observation.getTimestamp().isBefore(start) && observation.getTimestamp().isBefore(to)
+                            && (after == null || after.precedes(observation))) {
+                        inBucket.add(observation);
+                    }
+                });
+                inBucket.sort(Comparator.comparing(WeatherData::getTimestamp));
+                for (WeatherData observation : inBucket) {
+                    if (result.size() == limit) {
+                        return result;
+                    }
+                    result.add(observation);
+                }
+            }
+            return result;
+        } finally {
+            log.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        for (StationLog log : stations.values()) {
+            for (List<LogSegment> segments : log.buckets.values()) {
+                for (LogSegment segment : segments) {
+                    segment.close();
+                }
+            }
+        }
+        dictionary.close();
+    }
+
+    // Callers hold the station's write lock.
+    private void append(StationLog log, WeatherData observation) throws IOException {
+        if (observation.getTimestamp() == null) {
+            throw new IllegalArgumentException("Observation without timestamp: " + observation);
+        }
+        long epochSecond = toEpochSecond(observation.getTimestamp());
+        long bucket = bucketOf(epochSecond);
+        List<LogSegment> segments = log.buckets.computeIfAbsent(bucket, key -> new ArrayList<>());
+        LogSegment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || !segment.hasRoomForRecord()) {
+            segment = LogSegment.create(log.directory.resolve(bucket + "-" + segments.size() + SEGMENT_SUFFIX),
+                    bucket, segmentBytes);
+            segments.add(segment);
+        }
+        segment.append(epochSecond,
+                Float.floatToRawIntBits(Floats.toFloat(observation.getAirTemperature())),
+                Float.floatToRawIntBits(Floats.toFloat(observation.getWindSpeed())),
+                dictionary.encode(observation.getWeatherPhenomenon()),
+                dictionary.encode(observation.getWmoCode()));
+        log.dirty.add(segment);
+        observation.setId(idOf(log, epochSecond));
+    }
+
+    // Callers hold the station's read or write lock.
+    private void scanBucket(StationLog log, long bucket, LogSegment.RecordVisitor visitor) {
+        List<LogSegment> segments = log.buckets.get(bucket);
+        if (segments != null) {
+            for (LogSegment segment : segments) {
+                segment.scan(visitor);
+            }
+        }
+    }
+
+    private WeatherData materialize(StationLog log, long epochSecond, int temperatureBits, int windBits,
+                                    int phenomenonCode, int wmoCode) {
+        String phenomenon = dictionary.decode(phenomenonCode);
+        WeatherData observation = new WeatherData(log.stationName, dictionary.decode(wmoCode),
+                Floats.toDouble(Float.intBitsToFloat(temperatureBits)),
+                Floats.toDouble(Float.intBitsToFloat(windBits)),
+                phenomenon,
+                LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC));
+        observation.setId(idOf(log, epochSecond));
+        observation.setPhenomenonCategory(phenomenonClassifier.classify(phenomenon));
+        return observation;
+    }
+
+    private StationLog station(String stationName) throws IOException {
+        if (stationName == null) {
+            throw new IllegalArgumentException("Observation without station name");
+        }
+        StationLog log = stations.get(stationName);
+        if (log != null) {
+            return log;
+        }
+        synchronized (stations) {
+            log = stations.get(stationName);
+            if (log == null) {
+                Path stationDirectory = directory.resolve(URLEncoder.encode(stationName, StandardCharsets.UTF_8));
+                Files.createDirectories(stationDirectory);
+                log = new StationLog(stationName, stationDirectory, dictionary.encode(stationName));
+                stations.put(stationName, log);
+            }
+            return log;
+        }
+    }
+
+    private void openExistingSegments() throws IOException {
+        int segmentCount = 0;
+        try (DirectoryStream<Path> stationDirectories = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path stationDirectory : stationDirectories) {
+                String stationName = URLDecoder.decode(stationDirectory.getFileName().toString(), StandardCharsets.UTF_8);
+                StationLog log = new StationLog(stationName, stationDirectory, dictionary.encode(stationName));
+                List<Path> files = new ArrayList<>();
+                try (DirectoryStream<Path> segmentFiles = Files.newDirectoryStream(stationDirectory, "*" + SEGMENT_SUFFIX)) {
+                    segmentFiles.forEach(files::add);
+                }
+                // Sequence order within a bucket keeps the last segment as the one to append to.
+                files.sort(Comparator.comparingLong(LogObservationStore::sequenceOf));
+                for (Path file : files) {
+                    LogSegment segment = LogSegment.open(file);
+                    log.buckets.computeIfAbsent(segment.getBucketStart(), key -> new ArrayList<>()).add(segment);
+                    segmentCount++;
+                }
+                stations.put(stationName, log);
+            }
+        }
+        dictionary.commit();
+        logger.info("Opened observation log at {} with {} stations and {} segments",
+                directory.toAbsolutePath(), stations.size(), segmentCount);
+    }
+
+    private long bucketOf(long epochSecond) {
+        return Math.floorDiv(epochSecond, segmentSeconds) * segmentSeconds;
+    }
+
+    private static long idOf(StationLog log, long epochSecond) {
+        return (epochSecond << STATION_ID_BITS) | log.stationCode;
+    }
+
+    private static long sequenceOf(Path segmentFile) {
+        String name = segmentFile.getFileName().toString();
+        return Long.parseLong(name.substring(name.indexOf('-') + 1, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    // Observation times are local wall-clock times; UTC is used only as an order-preserving encoding.
+    private static long toEpochSecond(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static final class StationLog {
+        private final String stationName;
+        private final Path directory;
+        private final int stationCode;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final NavigableMap<Long, List<LogSegment>> buckets = new TreeMap<>();
+        private final Set<LogSegment> dirty = new LinkedHashSet<>();
+
+        StationLog(String stationName, Path directory, int stationCode) {
+            this.stationName = stationName;
+            this.directory = directory;
+            this.stationCode = stationCode;
+        }
+
+        void commit() {
+            for (LogSegment segment : dirty) {
+                segment.commit();
+            }
+            dirty.clear();
+        }
+    }
+
+    // Tracks the closest records at or before and after the target time while segments are scanned.
+    private final class Nearest implements LogSegment.RecordVisitor {
+        private final StationLog log;
+        private final long target;
+        private long[] floor;
+        private long[] ceiling;
+
+        Nearest(StationLog log, long target) {
+            this.log = log;
+            this.target = target;
+        }
+
+        @Override
+        public void accept(long epochSecond, int temperatureBits, int windBits, int phenomenonCode, int wmoCode) {
+            long[] record = {epochSecond, temperatureBits, windBits, phenomenonCode, wmoCode};
+            if (epochSecond <= target) {
+                if (floor == null || epochSecond > floor[0]) {
+                    floor = record;
+                }
+            } else if (ceiling == null || epochSecond < ceiling[0]) {
+                ceiling = record;
+            }
+        }
+
+        // Ties go to the earlier observation.
+        WeatherData result() {
+            long[] nearest;
+            if (floor == null) {
+                nearest = ceiling;
+            } else if (ceiling == null) {
+                nearest = floor;
+            } else {
+                nearest = ceiling[0] - target < target - floor[0] ? ceiling : floor;
+            }
+            if (nearest == null) {
+                return null;
+            }
+            return materialize(log, nearest[0], (int) nearest[1], (int) nearest[2], (int) nearest[3], (int) nearest[4]);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.example.fooddeliveryfujitsu.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * One memory-mapped file of the observation log, holding the records of a station within one time bucket.
+ * Records are bit-packed Gorilla style: timestamps as delta-of-delta, temperature and wind as XOR against the
+ * previous float, and dictionary codes as "same as previous" flags. Only the bits counted in the header
+ * are committed; anything after them is ignored on reopen and overwritten by the next append.
+ * Callers serialize appends and exclude them from concurrent scans.
+ */
+final class LogSegment implements Closeable {
+
+    private static final int MAGIC = 0x574C4F47; // "WLOG"
+    private static final int FORMAT_VERSION = 1;
+
+    // magic (int), format version (int), bucket start (long), record count (int), reserved (int), committed bits (long)
+    private static final int HEADER_BYTES = 32;
+    private static final int RECORD_COUNT_OFFSET = 16;
+    private static final int COMMITTED_BITS_OFFSET = 24;
+
+    // Upper bound on the encoded size of one record, first or subsequent.
+    private static final int MAX_RECORD_BITS = 192;
+
+    static final int NO_CODE = 0xFFFF;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final long bucketStart;
+    private final long capacityBits;
+
+    private final EncoderState writer = new EncoderState();
+    private long bitPosition;
+    private int recordCount;
+    private boolean dirty;
+
+    private LogSegment(Path path, FileChannel channel, MappedByteBuffer buffer, long bucketStart) {
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.bucketStart = bucketStart;
+        this.capacityBits = (buffer.capacity() - (long) HEADER_BYTES) * Byte.SIZE;
+    }
+
+    static LogSegment create(Path path, long bucketStart, int sizeBytes) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, sizeBytes);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+        buffer.putLong(8, bucketStart);
+        buffer.putInt(RECORD_COUNT_OFFSET, 0);
+        buffer.putLong(COMMITTED_BITS_OFFSET, 0L);
+        buffer.force();
+        return new LogSegment(path, channel, buffer, bucketStart);
+    }
+
+    // Maps an existing segment and restores the encoder state from its committed records.
+    static LogSegment open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            channel.close();
+            throw new IOException("Not an observation log segment: " + path);
+        }
+        LogSegment segment = new LogSegment(path, channel, buffer, buffer.getLong(8));
+        segment.recordCount = buffer.getInt(RECORD_COUNT_OFFSET);
+        Cursor cursor = segment.new Cursor();
+        for (int i = 0; i < segment.recordCount; i++) {
+            cursor.next();
+        }
+        segment.bitPosition = cursor.bitPosition;
+        segment.writer.copyFrom(cursor.state);
+        return segment;
+    }
+
+    long getBucketStart() {
+        return bucketStart;
+    }
+
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    boolean hasRoomForRecord() {
+        return capacityBits - bitPosition >= MAX_RECORD_BITS;
+    }
+
+    void append(long epochSecond, int airTemperatureBits, int windSpeedBits, int phenomenonCode, int wmoCode) {
+        if (!hasRoomForRecord()) {
+            throw new IllegalStateException("Observation log segment is full: " + path);
+        }
+        EncoderState state = writer;
+        if (recordCount == 0) {
+            writeBits(epochSecond, 64);
+            writeBits(airTemperatureBits, 32);
+            writeBits(windSpeedBits, 32);
+            writeBits(phenomenonCode, 16);
+            writeBits(wmoCode, 16);
+            state.airTemperature.previous = airTemperatureBits;
+            state.windSpeed.previous = windSpeedBits;
+        } else {
+            long delta = epochSecond - state.previousTimestamp;
+            writeDeltaOfDelta(delta - state.previousDelta);
+            state.previousDelta = delta;
+            writeXor(state.airTemperature, airTemperatureBits);
+            writeXor(state.windSpeed, windSpeedBits);
+            writeCode(state.phenomenonCode, phenomenonCode);
+            writeCode(state.wmoCode, wmoCode);
+        }
+        state.previousTimestamp = epochSecond;
+        state.phenomenonCode = phenomenonCode;
+        state.wmoCode = wmoCode;
+        recordCount++;
+        dirty = true;
+    }
+
+    // Publishes the appended records in the header and flushes the mapped pages to disk.
+    void commit() {
+        if (!dirty) {
+            return;
+        }
+        buffer.putLong(COMMITTED_BITS_OFFSET, bitPosition);
+        buffer.putInt(RECORD_COUNT_OFFSET, recordCount);
+        buffer.force();
+        dirty = false;
+    }
+
+    // Decodes every committed record directly from the mapped buffer, in append order.
+    void scan(RecordVisitor visitor) {
+        Cursor cursor = new Cursor();
+        for (int i = 0; i < recordCount; i++) {
+            cursor.next();
+            visitor.accept(cursor.state.previousTimestamp, cursor.state.airTemperature.previous,
+                    cursor.state.windSpeed.previous, cursor.state.phenomenonCode, cursor.state.wmoCode);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        commit();
+        channel.close();
+    }
+
+    private void writeDeltaOfDelta(long deltaOfDelta) {
+        if (deltaOfDelta == 0) {
+            writeBit(false);
+        } else if (fitsSigned(deltaOfDelta, 7)) {
+            writeBits(0b10, 2);
+            writeBits(deltaOfDelta, 7);
+        } else if (fitsSigned(deltaOfDelta, 9)) {
+            writeBits(0b110, 3);
+            writeBits(deltaOfDelta, 9);
+        } else if (fitsSigned(deltaOfDelta, 12)) {
+            writeBits(0b1110, 4);
+            writeBits(deltaOfDelta, 12);
+        } else {
+            writeBits(0b1111, 4);
+            writeBits(deltaOfDelta, 64);
+        }
+    }
+
+    private void writeXor(XorState state, int value) {
+        int xor = value ^ state.previous;
+        state.previous = value;
+        if (xor == 0) {
+            writeBit(false);
+            return;
+        }
+        writeBit(true);
+        int leading = Integer.numberOfLeadingZeros(xor);
+        int trailing = Integer.numberOfTrailingZeros(xor);
+        if (state.leading >= 0 && leading >= state.leading && trailing >= state.trailing) {
+            // Meaningful bits fit in the previous window.
+            writeBit(false);
+            writeBits(xor >>> state.trailing, Integer.SIZE - state.leading - state.trailing);
+        } else {
+            int significant = Integer.SIZE - leading - trailing;
+            writeBit(true);
+            writeBits(leading, 5);
+            writeBits(significant - 1, 5);
+            writeBits(xor >>> trailing, significant);
+            state.leading = leading;
+            state.trailing = trailing;
+        }
+    }
+
+    private void writeCode(int previous, int code) {
+        if (code == previous) {
+            writeBit(false);
+        } else {
+            writeBit(true);
+            writeBits(code, 16);
+        }
+    }
+
+    private void writeBits(long value, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            writeBit(((value >>> i) & 1L) != 0);
+        }
+    }
+
+    private void writeBit(boolean bit) {
+        long absolute = HEADER_BYTES * (long) Byte.SIZE + bitPosition;
+        int index = (int) (absolute >>> 3);
+        int mask = 1 << (7 - (int) (absolute & 7));
+        byte current = buffer.get(index);
+        buffer.put(index, (byte) (bit ? current | mask : current & ~mask));
+        bitPosition++;
+    }
+
+    private static boolean fitsSigned(long value, int bits) {
+        long limit = 1L << (bits - 1);
+        return value >= -limit && value < limit;
+    }
+
+    /**
+     * Receives decoded records. Floats are passed as raw bits, codes as dictionary codes or {@link #NO_CODE}.
+     */
+    interface RecordVisitor {
+        void accept(long epochSecond, int airTemperatureBits, int windSpeedBits, int phenomenonCode, int wmoCode);
+    }
+
+    private static final class XorState {
+        private int previous;
+        // Window of the last explicitly encoded meaningful bits; -1 until the first one.
+        private int leading = -1;
+        private int trailing;
+
+        void copyFrom(XorState other) {
+            previous = other.previous;
+            leading = other.leading;
+            trailing = other.trailing;
+        }
+    }
+
+    private static final class EncoderState {
+        private long previousTimestamp;
+        private long previousDelta;
+        private final XorState airTemperature = new XorState();
+        private final XorState windSpeed = new XorState();
+        private int phenomenonCode;
+        private int wmoCode;
+
+        void copyFrom(EncoderState other) {
+            previousTimestamp = other.previousTimestamp;
+            previousDelta = other.previousDelta;
+            airTemperature.copyFrom(other.airTemperature);
+            windSpeed.copyFrom(other.windSpeed);
+            phenomenonCode = other.phenomenonCode;
+            wmoCode = other.wmoCode;
+        }
+    }
+
+    // Sequential decoder over the committed bits; mirrors the encoder state record by record.
+    private final class Cursor {
+        private final EncoderState state = new EncoderState();
+        private long bitPosition;
+        private int decoded;
+
+        void next() {
+            if (decoded == 0) {
+                state.previousTimestamp = readBits(64);
+                state.airTemperature.previous = (int) readBits(32);
+                state.windSpeed.previous = (int) readBits(32);
+                state.phenomenonCode = (int) readBits(16);
+                state.wmoCode = (int) readBits(16);
+            } else {
+                long delta = state.previousDelta + readDeltaOfDelta();
+                state.previousTimestamp += delta;
+                state.previousDelta = delta;
+                readXor(state.airTemperature);
+                readXor(state.windSpeed);
+                state.phenomenonCode = readCode(state.phenomenonCode);
+                state.wmoCode = readCode(state.wmoCode);
+            }
+            decoded++;
+        }
+
+        private long readDeltaOfDelta() {
+            if (!readBit()) {
+                return 0;
+            }
+            if (!readBit()) {
+                return readSigned(7);
+            }
+            if (!readBit()) {
+                return readSigned(9);
+            }
+            if (!readBit()) {
+                return readSigned(12);
+            }
+            return readBits(64);
+        }
+
+        private void readXor(XorState xorState) {
+            if (!readBit()) {
+                return;
+            }
+            if (readBit()) {
+                xorState.leading = (int) readBits(5);
+                int significant = (int) readBits(5) + 1;
+                xorState.trailing = Integer.SIZE - xorState.leading - significant;
+            }
+            int significant = Integer.SIZE - xorState.leading - xorState.trailing;
+            int xor = (int) readBits(significant) << xorState.trailing;
+            xorState.previous ^= xor;
+        }
+
+        private int readCode(int previous) {
+            return readBit() ? (int) readBits(16) : previous;
+        }
+
+        private long readSigned(int count) {
+            long value = readBits(count);
+            return (value << (Long.SIZE - count)) >> (Long.SIZE - count);
+        }
+
+        private long readBits(int count) {
+            long value = 0;
+            for (int i = 0; i < count; i++) {
+                value = (value << 1) | (readBit() ? 1L : 0L);
+            }
+            return value;
+        }
+
+        private boolean readBit() {
+            long absolute = HEADER_BYTES * (long) Byte.SIZE + bitPosition;
+            int index = (int) (absolute >>> 3);
+            bitPosition++;
+            return (buffer.get(index) & (1 << (7 - (int) (absolute & 7)))) != 0;
+        }
+    }
+}
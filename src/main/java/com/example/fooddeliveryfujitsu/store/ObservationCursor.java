@@ -0,0 +1,93 @@
+package com.example.fooddeliveryfujitsu.store;
+
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+import com.example.fooddeliveryfujitsu.models.WeatherHourlyAggregate;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+
+/**
+ * Keyset position in a station's history: the timestamp and id of the last observation or hourly aggregate read.
+ * History is ordered by time, with an aggregate before the raw observations of the same time, and by id within
+ * each tier. Handed to clients as an opaque URL-safe token.
+ */
+public final class ObservationCursor {
+
+    private static final int ENCODED_BYTES = Long.BYTES + Integer.BYTES + Long.BYTES + 1;
+
+    private final LocalDateTime timestamp;
+    private final long id;
+    // Whether the position is an hourly aggregate rather than a raw observation.
+    private final boolean aggregate;
+
+    private ObservationCursor(LocalDateTime timestamp, long id, boolean aggregate) {
+        this.timestamp = timestamp;
+        this.id = id;
+        this.aggregate = aggregate;
+    }
+
+    public static ObservationCursor after(WeatherData observation) {
+        return new ObservationCursor(observation.getTimestamp(), observation.getId(), false);
+    }
+
+    public static ObservationCursor after(WeatherHourlyAggregate aggregate) {
+        return new ObservationCursor(aggregate.getHourStart(), aggregate.getId(), true);
+    }
+
+    public static ObservationCursor decode(String token) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + token);
+        }
+        if (bytes.length != ENCODED_BYTES) {
+            throw new IllegalArgumentException("Invalid cursor: " + token);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long epochSecond = buffer.getLong();
+        int nano = buffer.getInt();
+        long id = buffer.getLong();
+        byte tier = buffer.get();
+        if (nano < 0 || nano > 999_999_999 || tier < 0 || tier > 1) {
+            throw new IllegalArgumentException("Invalid cursor: " + token);
+        }
+        return new ObservationCursor(LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC), id, tier == 1);
+    }
+
+    // Observation times are local wall-clock times; UTC is used only as an order-preserving encoding.
+    public String encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(ENCODED_BYTES)
+                .putLong(timestamp.toEpochSecond(ZoneOffset.UTC))
+                .putInt(timestamp.getNano())
+                .putLong(id)
+                .put((byte) (aggregate ? 1 : 0));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    // Whether the raw observation comes after this position.
+    public boolean precedes(WeatherData observation) {
+        int compared = observation.getTimestamp().compareTo(timestamp);
+        return compared > 0 || (compared == 0 && (aggregate || observation.getId() != null && observation.getId() > id));
+    }
+
+    // Id a raw observation at the cursor's time must exceed to come after it; all of them follow an aggregate.
+    public long rawIdFloor() {
+        return aggregate ? Long.MIN_VALUE : id;
+    }
+
+    // Id an aggregate at the cursor's time must exceed to come after it; none follows a raw observation.
+    public long aggregateIdFloor() {
+        return aggregate ? id : Long.MAX_VALUE;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public long getId() {
+        return id;
+    }
+}
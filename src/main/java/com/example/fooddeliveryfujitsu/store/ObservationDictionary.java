@@ -0,0 +1,212 @@
+package com.example.fooddeliveryfujitsu.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory bidirectional dictionary of the station and phenomenon dimension tables.
+ * Both tables are small and only grow, so they are read once and afterwards touched only to add a new
+ * value. New values are inserted in their own transaction, so that an id handed out is never rolled back
+ * with the observation that introduced it.
+ */
+@Component
+public class ObservationDictionary {
+
+    private static final Logger logger = LoggerFactory.getLogger(ObservationDictionary.class);
+
+    // Returned by findStationId for a station that was never stored; no row has this id, so a query on it is empty.
+    public static final int UNKNOWN_STATION_ID = -1;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate newTransaction;
+
+    private final Map<String, Integer> stationIds = new ConcurrentHashMap<>();
+    private final Map<Integer, String> stationNames = new ConcurrentHashMap<>();
+    private final Map<String, String> wmoCodes = new ConcurrentHashMap<>();
+    private final Map<String, Integer> phenomenonIds = new ConcurrentHashMap<>();
+    private final Map<Integer, String> phenomena = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    @Autowired
+    public ObservationDictionary(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public Integer stationId(String stationName) {
+        if (stationName == null) {
+            return null;
+        }
+        ensureLoaded();
+        Integer id = stationIds.get(stationName);
+        return id != null ? id : addStation(stationName);
+    }
+
+    // Lookup only, for reads: a station that has never been stored is not added to the dimension.
+    public Integer findStationId(String stationName) {
+        if (stationName == null) {
+            return null;
+        }
+        ensureLoaded();
+        Integer id = stationIds.get(stationName);
+        if (id != null) {
+            return id;
+        }
+        // Possibly added by another instance sharing the database.
+        List<Integer> stored = jdbcTemplate.queryForList("SELECT id FROM weather_station WHERE name = ?",
+                Integer.class, stationName);
+        if (stored.isEmpty()) {
+            return UNKNOWN_STATION_ID;
+        }
+        putStation(stored.get(0), stationName, null);
+        return stored.get(0);
+    }
+
+    public String stationName(Integer stationId) {
+        if (stationId == null) {
+            return null;
+        }
+        ensureLoaded();
+        String name = stationNames.get(stationId);
+        if (name == null) {
+            reload();
+            name = stationNames.get(stationId);
+        }
+        return name;
+    }
+
+    // Every station in the dimension, including ones added by another instance sharing the database.
+    public List<String> stationNames() {
+        reload();
+        return List.copyOf(stationIds.keySet());
+    }
+
+    public String wmoCode(String stationName) {
+        if (stationName == null) {
+            return null;
+        }
+        ensureLoaded();
+        return wmoCodes.get(stationName);
+    }
+
+    // Keeps the station's WMO code current; a station is not expected to change it.
+    public void recordWmoCode(String stationName, String wmoCode) {
+        if (stationName == null || wmoCode == null || wmoCode.equals(wmoCode(stationName))) {
+            return;
+        }
+        Integer id = stationId(stationName);
+        synchronized (this) {
+            newTransaction.executeWithoutResult(status ->
+                    jdbcTemplate.update("UPDATE weather_station SET wmo_code = ? WHERE id = ?", wmoCode, id));
+            wmoCodes.put(stationName, wmoCode);
+        }
+    }
+
+    public Integer phenomenonId(String phenomenon) {
+        if (phenomenon == null) {
+            return null;
+        }
+        ensureLoaded();
+        Integer id = phenomenonIds.get(phenomenon);
+        return id != null ? id : addPhenomenon(phenomenon);
+    }
+
+    public String phenomenon(Integer phenomenonId) {
+        if (phenomenonId == null) {
+            return null;
+        }
+        ensureLoaded();
+        String text = phenomena.get(phenomenonId);
+        if (text == null) {
+            reload();
+            text = phenomena.get(phenomenonId);
+        }
+        return text;
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            reload();
+        }
+    }
+
+    // Also picks up values added by another instance sharing the database.
+    private synchronized void reload() {
+        jdbcTemplate.query("SELECT id, name, wmo_code FROM weather_station", rs -> {
+            putStation(rs.getInt("id"), rs.getString("name"), rs.getString("wmo_code"));
+        });
+        jdbcTemplate.query("SELECT id, phenomenon_text FROM weather_phenomenon", rs -> {
+            putPhenomenon(rs.getInt("id"), rs.getString("phenomenon_text"));
+        });
+        if (!loaded) {
+            logger.info("Loaded {} stations and {} phenomena into the observation dictionary",
+                    stationIds.size(), phenomenonIds.size());
+            loaded = true;
+        }
+    }
+
+    private synchronized Integer addStation(String stationName) {
+        Integer id = stationIds.get(stationName);
+        if (id == null) {
+            id = insertIfAbsent("SELECT id FROM weather_station WHERE name = ?",
+                    "INSERT INTO weather_station (name) VALUES (?)", stationName);
+            putStation(id, stationName, null);
+        }
+        return id;
+    }
+
+    private synchronized Integer addPhenomenon(String phenomenon) {
+        Integer id = phenomenonIds.get(phenomenon);
+        if (id == null) {
+            id = insertIfAbsent("SELECT id FROM weather_phenomenon WHERE phenomenon_text = ?",
+                    "INSERT INTO weather_phenomenon (phenomenon_text) VALUES (?)", phenomenon);
+            putPhenomenon(id, phenomenon);
+        }
+        return id;
+    }
+
+    private Integer insertIfAbsent(String select, String insert, String value) {
+        return newTransaction.execute(status -> {
+            List<Integer> existing = jdbcTemplate.queryForList(select, Integer.class, value);
+            if (!existing.isEmpty()) {
+                return existing.get(0);
+            }
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+            jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(insert, Statement.RETURN_GENERATED_KEYS);
+                statement.setString(1, value);
+                return statement;
+            }, keyHolder);
+            return Objects.requireNonNull(keyHolder.getKey()).intValue();
+        });
+    }
+
+    private void putStation(int id, String name, String wmoCode) {
+        stationIds.put(name, id);
+        stationNames.put(id, name);
+        if (wmoCode != null) {
+            wmoCodes.put(name, wmoCode);
+        }
+    }
+
+    private void putPhenomenon(int id, String text) {
+        phenomenonIds.put(text, id);
+        phenomena.put(id, text);
+    }
+}
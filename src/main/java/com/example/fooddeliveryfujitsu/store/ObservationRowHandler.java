@@ -0,0 +1,14 @@
+package com.example.fooddeliveryfujitsu.store;
+
+import java.time.LocalDateTime;
+
+/**
+ * Receives stored readings field by field, so that a bulk reader such as the time series store can copy them into
+ * its own arrays without a WeatherData per row.
+ */
+@FunctionalInterface
+public interface ObservationRowHandler {
+
+    void accept(LocalDateTime timestamp, Double airTemperature, Double windSpeed, String weatherPhenomenon,
+                long id, String wmoCode);
+}
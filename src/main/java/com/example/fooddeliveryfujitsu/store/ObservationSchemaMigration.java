@@ -0,0 +1,102 @@
+package com.example.fooddeliveryfujitsu.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves a weather_data table created before the dimension tables onto them: the string columns are replaced
+ * by ids, and the station index is rebuilt on the integer column. Schema updates by Hibernate only add columns,
+ * so without this older rows would have no station id and be invisible to lookups. Tables that predate the unique
+ * reading key get it here, once their duplicates are gone.
+ * Runs once every singleton, including the entity manager factory and its schema update, is created, and before
+ * the context is refreshed: the web server and the scheduled jobs only start afterwards, so no request or fetch
+ * ever sees a half-migrated table.
+ */
+@Component
+public class ObservationSchemaMigration implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(ObservationSchemaMigration.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObservationDictionary dictionary;
+
+    @Autowired
+    public ObservationSchemaMigration(JdbcTemplate jdbcTemplate, ObservationDictionary dictionary) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        migrate();
+    }
+
+    public void migrate() {
+        migrateLegacyColumns();
+        enforceUniqueReadings();
+    }
+
+    public void migrateLegacyColumns() {
+        Integer legacyColumns = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS " +
+                "WHERE UPPER(TABLE_NAME) = 'WEATHER_DATA' AND UPPER(COLUMN_NAME) = 'STATION_NAME'", Integer.class);
+        if (legacyColumns == null || legacyColumns == 0) {
+            return;
+        }
+
+        List<Map<String, Object>> stations = jdbcTemplate.queryForList(
+                "SELECT DISTINCT station_name, wmo_code FROM weather_data WHERE station_name IS NOT NULL");
+        for (Map<String, Object> station : stations) {
+            String stationName = (String) station.get("STATION_NAME");
+            dictionary.stationId(stationName);
+            dictionary.recordWmoCode(stationName, (String) station.get("WMO_CODE"));
+        }
+        List<String> phenomena = jdbcTemplate.queryForList(
+                "SELECT DISTINCT weather_phenomenon FROM weather_data WHERE weather_phenomenon IS NOT NULL", String.class);
+        for (String phenomenon : phenomena) {
+            dictionary.phenomenonId(phenomenon);
+        }
+
+        // Hibernate's schema update has already added the unique reading key while every station_id is still null,
+        // so readings stored twice must go before the ids are filled in. The first row of each reading is kept.
+        int removed = jdbcTemplate.update("DELETE FROM weather_data w WHERE EXISTS (SELECT 1 FROM weather_data d " +
+                "WHERE d.station_name = w.station_name AND d.timestamp = w.timestamp AND d.id < w.id)");
+        int migrated = jdbcTemplate.update("UPDATE weather_data w SET " +
+                "station_id = (SELECT s.id FROM weather_station s WHERE s.name = w.station_name), " +
+                "phenomenon_id = (SELECT p.id FROM weather_phenomenon p WHERE p.phenomenon_text = w.weather_phenomenon) " +
+                "WHERE w.station_id IS NULL");
+        // The index on the old string column; the unique key on (station_id, timestamp) replaces it.
+        jdbcTemplate.execute("DROP INDEX IF EXISTS idx_station_timestamp");
+        jdbcTemplate.execute("ALTER TABLE weather_data DROP COLUMN station_name");
+        jdbcTemplate.execute("ALTER TABLE weather_data DROP COLUMN wmo_code");
+        jdbcTemplate.execute("ALTER TABLE weather_data DROP COLUMN weather_phenomenon");
+        logger.info("Moved {} weather observations of {} stations onto the dimension tables, removing {} duplicates",
+                migrated, stations.size(), removed);
+    }
+
+    /**
+     * Adds the (station_id, timestamp) unique key to a table that was created without it. Repeated fetches of the
+     * same feed may have stored a reading more than once; the first row of each reading is kept.
+     */
+    public void enforceUniqueReadings() {
+        Integer constraints = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLE_CONSTRAINTS " +
+                "WHERE UPPER(TABLE_NAME) = 'WEATHER_DATA' AND UPPER(CONSTRAINT_NAME) = 'UK_STATION_TIMESTAMP'",
+                Integer.class);
+        if (constraints != null && constraints > 0) {
+            return;
+        }
+
+        int removed = jdbcTemplate.update("DELETE FROM weather_data w WHERE EXISTS (SELECT 1 FROM weather_data d " +
+                "WHERE d.station_id = w.station_id AND d.timestamp = w.timestamp AND d.id < w.id)");
+        jdbcTemplate.execute("ALTER TABLE weather_data ADD CONSTRAINT uk_station_timestamp " +
+                "UNIQUE (station_id, timestamp)");
+        jdbcTemplate.execute("DROP INDEX IF EXISTS idx_station_timestamp");
+        logger.info("Removed {} duplicate weather observations and added the unique reading key", removed);
+    }
+}
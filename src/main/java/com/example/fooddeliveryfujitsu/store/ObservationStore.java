@@ -0,0 +1,114 @@
+package com.example.fooddeliveryfujitsu.store;
+
+import com.example.fooddeliveryfujitsu.models.IngestReport;
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+import com.example.fooddeliveryfujitsu.models.WeatherHourlyAggregate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Persistence backend for weather observations, selected with the weather.storage.backend property:
+ * "jpa" (default) keeps them in the weather_data table, "log" in a compressed append-only log.
+ * A stored observation may stand for a run of identical readings, from its timestamp to its observedUntil;
+ * lookups then report it at whichever end of the run is the reading they are asking for.
+ */
+public interface ObservationStore {
+
+    // Persists the observations and assigns their ids; returns them in the given order.
+    List<WeatherData> saveAll(List<WeatherData> observations);
+
+    /**
+     * Stores the observations keyed on station and timestamp, so that storing the same readings again changes
+     * nothing. A reading of a time the station already has is skipped; within the list the first reading of a
+     * time wins. Skipped readings take the stored row's id. Stores that can rewrite a row override this to
+     * replace it when the values differ.
+     */
+    default IngestReport upsertAll(List<WeatherData> observations) {
+        List<WeatherData> fresh = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (WeatherData observation : observations) {
+            if (!seen.add(observation.getStationName() + "|" + observation.getTimestamp())) {
+                continue;
+            }
+            Optional<WeatherData> stored = findNearest(observation.getStationName(), observation.getTimestamp())
+                    .filter(nearest -> nearest.getTimestamp().equals(observation.getTimestamp()));
+            if (stored.isPresent()) {
+                observation.setId(stored.get().getId());
+            } else {
+                fresh.add(observation);
+            }
+        }
+        if (!fresh.isEmpty()) {
+            saveAll(fresh);
+        }
+        return new IngestReport(fresh.size(), 0, observations.size() - fresh.size());
+    }
+
+    /**
+     * Write path for large imports such as backfills: the observations are inserted in batches, readings of a time
+     * the station already has are skipped without comparing their values, and nothing is ever updated.
+     */
+    default IngestReport bulkInsert(List<WeatherData> observations) {
+        return upsertAll(observations);
+    }
+
+    /**
+     * Records that the stored observation with the given id was read again, unchanged, at the given time.
+     * Returns false if the store cannot extend it, in which case the reading is to be saved as a new observation.
+     */
+    default boolean extend(Long id, LocalDateTime observedUntil) {
+        return false;
+    }
+
+    // Newest reading of the station.
+    Optional<WeatherData> findLatest(String stationName);
+
+    // Observation nearest to the given time; equally distant observations resolve to the earlier one.
+    Optional<WeatherData> findNearest(String stationName, LocalDateTime dateTime);
+
+    // Up to limit most recent readings of the station, newest first.
+    List<WeatherData> findRecent(String stationName, int limit);
+
+    /**
+     * Hands the station's most recent readings, as findRecent(stationName, limit) selects them, to the handler
+     * oldest first. Returns how many stored rows were read; fewer than limit means the station's whole stored
+     * history was handed over. Stores override this to read without building the list.
+     */
+    default int loadRecent(String stationName, int limit, ObservationRowHandler handler) {
+        List<WeatherData> newestFirst = findRecent(stationName, limit);
+        for (int i = newestFirst.size() - 1; i >= 0; i--) {
+            WeatherData reading = newestFirst.get(i);
+            handler.accept(reading.getTimestamp(), reading.getAirTemperature(), reading.getWindSpeed(),
+                    reading.getWeatherPhenomenon(), reading.getId() != null ? reading.getId() : 0L,
+                    reading.getWmoCode());
+        }
+        return newestFirst.size();
+    }
+
+    /**
+     * Up to limit stored observations of the station with from <= timestamp < to that come after the cursor
+     * (from the start of the range when it is null), in (timestamp, id) order. Fewer than limit means the range
+     * is exhausted; otherwise the next page starts after the last one returned.
+     */
+    List<WeatherData> findRange(String stationName, LocalDateTime from, LocalDateTime to,
+                                ObservationCursor after, int limit);
+
+    /**
+     * Up to limit downsampled hours of the station with from <= hourStart < to that come after the cursor, in
+     * (hourStart, id) order, paged like findRange. Stores that keep no downsampled history have none.
+     */
+    default List<WeatherHourlyAggregate> findAggregateRange(String stationName, LocalDateTime from, LocalDateTime to,
+                                                            ObservationCursor after, int limit) {
+        return new ArrayList<>();
+    }
+
+    // Whether older history of the station is kept downsampled, outside the observations findRecent returns.
+    default boolean hasDownsampledHistory(String stationName) {
+        return false;
+    }
+}
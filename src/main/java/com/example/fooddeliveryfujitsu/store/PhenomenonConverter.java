@@ -0,0 +1,33 @@
+package com.example.fooddeliveryfujitsu.store;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stores a weather phenomenon text as its id in the phenomenon dimension.
+ */
+@Component
+@Converter
+public class PhenomenonConverter implements AttributeConverter<String, Integer> {
+
+    private final ObservationDictionary dictionary;
+
+    // Lazy for the same reason as in StationNameConverter.
+    @Autowired
+    public PhenomenonConverter(@Lazy ObservationDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public Integer convertToDatabaseColumn(String phenomenon) {
+        return dictionary.phenomenonId(phenomenon);
+    }
+
+    @Override
+    public String convertToEntityAttribute(Integer phenomenonId) {
+        return dictionary.phenomenon(phenomenonId);
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.fooddeliveryfujitsu.store;
+
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+import com.example.fooddeliveryfujitsu.models.WeatherHourlyAggregate;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * Adds the station of an entity to the station dimension before the entity is written, since
+ * StationNameConverter only looks stations up.
+ */
+@Component
+public class StationDimensionListener {
+
+    private final ObservationDictionary dictionary;
+
+    // Lazy for the same reason as in StationNameConverter.
+    @Autowired
+    public StationDimensionListener(@Lazy ObservationDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    @PrePersist
+    @PreUpdate
+    public void registerStation(Object entity) {
+        if (entity instanceof WeatherData) {
+            dictionary.stationId(((WeatherData) entity).getStationName());
+        } else if (entity instanceof WeatherHourlyAggregate) {
+            dictionary.stationId(((WeatherHourlyAggregate) entity).getStationName());
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.fooddeliveryfujitsu.store;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stores a station name as its id in the station dimension. Query parameters compared with a converted
+ * attribute pass through here too, so repository lookups by station name filter on the integer column.
+ * The conversion only looks the station up, so that reads never write; StationDimensionListener adds the
+ * station of an entity before it is inserted or updated.
+ */
+@Component
+@Converter
+public class StationNameConverter implements AttributeConverter<String, Integer> {
+
+    private final ObservationDictionary dictionary;
+
+    // Lazy, since Hibernate creates this while the entity manager factory that the dictionary needs is being built.
+    @Autowired
+    public StationNameConverter(@Lazy ObservationDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public Integer convertToDatabaseColumn(String stationName) {
+        return dictionary.findStationId(stationName);
+    }
+
+    @Override
+    public String convertToEntityAttribute(Integer stationId) {
+        return dictionary.stationName(stationId);
+    }
+}
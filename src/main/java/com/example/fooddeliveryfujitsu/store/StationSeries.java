@@ -0,0 +1,192 @@
+package com.example.fooddeliveryfujitsu.store;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Observations of one station held column by column in primitive arrays, ordered by timestamp.
+ * Missing measurements are stored as NaN and missing phenomena as {@link #NO_PHENOMENON}.
+ * Readers and the ingest writer are separated by a read-write lock.
+ */
+final class StationSeries {
+
+    static final short NO_PHENOMENON = -1;
+
+    // Timestamp, temperature, wind, phenomenon code and id.
+    static final int BYTES_PER_ROW = Long.BYTES + Float.BYTES + Float.BYTES + Short.BYTES + Long.BYTES;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final String stationName;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private long[] epochSeconds = new long[INITIAL_CAPACITY];
+    private float[] airTemperatures = new float[INITIAL_CAPACITY];
+    private float[] windSpeeds = new float[INITIAL_CAPACITY];
+    private short[] phenomenonCodes = new short[INITIAL_CAPACITY];
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private int size;
+
+    private String wmoCode;
+    // False once older rows have been evicted or were never loaded: rows before the first one may exist in the observation store.
+    private boolean completeHistory;
+
+    StationSeries(String stationName, boolean completeHistory) {
+        this.stationName = stationName;
+        this.completeHistory = completeHistory;
+    }
+
+    String getStationName() {
+        return stationName;
+    }
+
+    boolean hasCompleteHistory() {
+        return completeHistory;
+    }
+
+    // Callers hold the write lock.
+    void setCompleteHistory(boolean completeHistory) {
+        this.completeHistory = completeHistory;
+    }
+
+    ReentrantReadWriteLock.ReadLock readLock() {
+        return lock.readLock();
+    }
+
+    ReentrantReadWriteLock.WriteLock writeLock() {
+        return lock.writeLock();
+    }
+
+    // Callers hold the write lock.
+    void append(long epochSecond, float airTemperature, float windSpeed, short phenomenonCode, long id, String wmoCode) {
+        if (size == epochSeconds.length) {
+            grow(size * 2);
+        }
+        // Observations almost always arrive in order; the rare late one is shifted into place. A station has one
+        // reading per time, as in the observation store, so a repeated time replaces the resident row.
+        int position = size;
+        boolean replaces = false;
+        if (size > 0 && epochSecond <= epochSeconds[size - 1]) {
+            position = insertionPoint(epochSecond);
+            replaces = epochSeconds[position] == epochSecond;
+            if (!replaces) {
+                shift(position);
+            }
+        }
+        epochSeconds[position] = epochSecond;
+        airTemperatures[position] = airTemperature;
+        windSpeeds[position] = windSpeed;
+        phenomenonCodes[position] = phenomenonCode;
+        ids[position] = id;
+        if (!replaces) {
+            size++;
+        }
+        if (wmoCode != null) {
+            this.wmoCode = wmoCode;
+        }
+    }
+
+    // Drops the oldest rows so that at most maxRows remain. Callers hold the write lock.
+    int evictOldest(int maxRows) {
+        int excess = size - maxRows;
+        if (excess <= 0) {
+            return 0;
+        }
+        System.arraycopy(epochSeconds, excess, epochSeconds, 0, maxRows);
+        System.arraycopy(airTemperatures, excess, airTemperatures, 0, maxRows);
+        System.arraycopy(windSpeeds, excess, windSpeeds, 0, maxRows);
+        System.arraycopy(phenomenonCodes, excess, phenomenonCodes, 0, maxRows);
+        System.arraycopy(ids, excess, ids, 0, maxRows);
+        size = maxRows;
+        completeHistory = false;
+        return excess;
+    }
+
+    // Drops the rows before the given time, whose history now lives elsewhere. Callers hold the write lock.
+    int evictBefore(long epochSecond) {
+        completeHistory = false;
+        return evictOldest(size - insertionPoint(epochSecond));
+    }
+
+    /**
+     * Index of the row nearest to the given time, ties going to the earlier row, or -1 when the answer may
+     * lie in rows that are not resident. Callers hold the read lock.
+     */
+    int nearestIndex(long epochSecond) {
+        if (size == 0) {
+            return -1;
+        }
+        int ceiling = insertionPoint(epochSecond + 1);
+        int floor = ceiling - 1;
+        if (floor < 0) {
+            // Every resident row is later; an older row may only exist outside memory.
+            return completeHistory ? 0 : -1;
+        }
+        if (ceiling >= size) {
+            return floor;
+        }
+        long toFloor = epochSecond - epochSeconds[floor];
+        long toCeiling = epochSeconds[ceiling] - epochSecond;
+        return toCeiling < toFloor ? ceiling : floor;
+    }
+
+    long epochSecondAt(int index) {
+        return epochSeconds[index];
+    }
+
+    float airTemperatureAt(int index) {
+        return airTemperatures[index];
+    }
+
+    float windSpeedAt(int index) {
+        return windSpeeds[index];
+    }
+
+    short phenomenonCodeAt(int index) {
+        return phenomenonCodes[index];
+    }
+
+    long idAt(int index) {
+        return ids[index];
+    }
+
+    String getWmoCode() {
+        return wmoCode;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // First index whose timestamp is not before the given one.
+    private int insertionPoint(long epochSecond) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (epochSeconds[mid] < epochSecond) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void shift(int position) {
+        int moved = size - position;
+        System.arraycopy(epochSeconds, position, epochSeconds, position + 1, moved);
+        System.arraycopy(airTemperatures, position, airTemperatures, position + 1, moved);
+        System.arraycopy(windSpeeds, position, windSpeeds, position + 1, moved);
+        System.arraycopy(phenomenonCodes, position, phenomenonCodes, position + 1, moved);
+        System.arraycopy(ids, position, ids, position + 1, moved);
+    }
+
+    private void grow(int capacity) {
+        epochSeconds = Arrays.copyOf(epochSeconds, capacity);
+        airTemperatures = Arrays.copyOf(airTemperatures, capacity);
+        windSpeeds = Arrays.copyOf(windSpeeds, capacity);
+        phenomenonCodes = Arrays.copyOf(phenomenonCodes, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+    }
+}
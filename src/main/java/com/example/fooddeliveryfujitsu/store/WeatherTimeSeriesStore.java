@@ -0,0 +1,253 @@
+package com.example.fooddeliveryfujitsu.store;
+
+import com.example.fooddeliveryfujitsu.events.WeatherDataIngestedEvent;
+import com.example.fooddeliveryfujitsu.events.WeatherHistoryBackfilledEvent;
+import com.example.fooddeliveryfujitsu.events.WeatherHistoryCompactedEvent;
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+import com.example.fooddeliveryfujitsu.util.WeatherPhenomenonClassifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resident copy of recent weather history, stored per station in primitive column arrays.
+ * A heap budget bounds the number of resident rows; the oldest rows are dropped first, and lookups whose
+ * answer may lie in dropped history return null so that the caller can fall back to the observation store.
+ * Timestamps are kept at second precision, as published by the weather service.
+ */
+@Component
+public class WeatherTimeSeriesStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(WeatherTimeSeriesStore.class);
+
+    // Share of a full series dropped at once, so that eviction cost is amortized over many appends.
+    private static final int EVICTION_PERCENT = 10;
+
+    private final ObservationStore observationStore;
+    private final WeatherPhenomenonClassifier phenomenonClassifier;
+    private final long heapBudgetBytes;
+    private final int expectedStations;
+
+    private final Map<String, StationSeries> seriesByStation = new ConcurrentHashMap<>();
+
+    // Phenomenon texts by code and codes by text; the vocabulary is small and grows only on new texts.
+    private final List<String> phenomena = new ArrayList<>();
+    private final Map<String, Short> phenomenonCodes = new HashMap<>();
+
+    @Autowired
+    public WeatherTimeSeriesStore(ObservationStore observationStore,
+                                  WeatherPhenomenonClassifier phenomenonClassifier,
+                                  @Value("${weather.store.heap-budget-bytes:67108864}") long heapBudgetBytes,
+                                  @Value("${weather.store.expected-stations:3}") int expectedStations) {
+        this.observationStore = observationStore;
+        this.phenomenonClassifier = phenomenonClassifier;
+        this.heapBudgetBytes = heapBudgetBytes;
+        this.expectedStations = Math.max(expectedStations, 1);
+    }
+
+    // Rows each station may keep resident under the heap budget.
+    public int getMaxRowsPerStation() {
+        long rows = heapBudgetBytes / StationSeries.BYTES_PER_ROW / expectedStations;
+        return (int) Math.min(rows, Integer.MAX_VALUE - 8);
+    }
+
+    /**
+     * Loads the most recent history of the given stations, as much as the budget allows per station.
+     * A station whose whole history fits, with nothing downsampled before it, is marked complete, so lookups
+     * before its first row need no store access.
+     */
+    public void load(Collection<String> stationNames) {
+        int maxRows = getMaxRowsPerStation();
+        for (String stationName : stationNames) {
+            if (maxRows == 0) {
+                seriesByStation.put(stationName, new StationSeries(stationName, false));
+                continue;
+            }
+            StationSeries series = new StationSeries(stationName, false);
+            series.writeLock().lock();
+            try {
+                // Rows go straight into the column arrays, oldest first, as the store reads them.
+                int rows = observationStore.loadRecent(stationName, maxRows,
+                        (timestamp, airTemperature, windSpeed, phenomenon, id, wmoCode) -> series.append(
+                                toEpochSecond(timestamp), Floats.toFloat(airTemperature), Floats.toFloat(windSpeed),
+                                encodePhenomenon(phenomenon), id, wmoCode));
+                // Both ends of unchanged runs can exceed the budget; the oldest readings then make way.
+                int evicted = series.evictOldest(maxRows);
+                if (rows < maxRows && evicted == 0 && !observationStore.hasDownsampledHistory(stationName)) {
+                    series.setCompleteHistory(true);
+                }
+            } finally {
+                series.writeLock().unlock();
+            }
+            seriesByStation.put(stationName, series);
+            logger.info("Loaded {} resident observations for station {}", series.size(), stationName);
+        }
+    }
+
+    // Runs before other listeners of the same event, so that they already see the new observations.
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onWeatherDataIngested(WeatherDataIngestedEvent event) {
+        for (WeatherData observation : event.getObservations()) {
+            append(observation);
+        }
+    }
+
+    /**
+     * Merges an imported batch into the resident history. A row between resident rows fills in history that is
+     * resident in full, but a row before the first resident row would hide the stored rows between the two unless
+     * all older history is resident; such a row is left to the observation store and the station's series is
+     * marked incomplete, so that lookups before its first row go to the store.
+     */
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onWeatherHistoryBackfilled(WeatherHistoryBackfilledEvent event) {
+        int maxRows = getMaxRowsPerStation();
+        for (WeatherData observation : event.getObservations()) {
+            StationSeries series = seriesByStation.computeIfAbsent(observation.getStationName(),
+                    stationName -> new StationSeries(stationName, false));
+            series.writeLock().lock();
+            try {
+                boolean beforeResident = series.size() > 0
+                        && toEpochSecond(observation.getTimestamp()) < series.epochSecondAt(0);
+                // A full series would evict its oldest rows to make room, after which it is incomplete as well.
+                if (beforeResident && (!series.hasCompleteHistory() || series.size() >= maxRows)) {
+                    series.setCompleteHistory(false);
+                } else if (maxRows > 0) {
+                    if (series.size() >= maxRows) {
+                        series.evictOldest(maxRows - Math.max(maxRows * EVICTION_PERCENT / 100, 1));
+                    }
+                    appendTo(series, observation);
+                }
+            } finally {
+                series.writeLock().unlock();
+            }
+        }
+    }
+
+    // Resident rows older than the cutoff are dropped; lookups before it now belong to the downsampled tier.
+    @EventListener
+    public void onWeatherHistoryCompacted(WeatherHistoryCompactedEvent event) {
+        long cutoff = toEpochSecond(event.getRawCutoff());
+        for (String stationName : event.getStationNames()) {
+            StationSeries series = seriesByStation.get(stationName);
+            if (series == null) {
+                continue;
+            }
+            series.writeLock().lock();
+            try {
+                int evicted = series.evictBefore(cutoff);
+                logger.debug("Evicted {} resident observations of station {} after compaction", evicted, stationName);
+            } finally {
+                series.writeLock().unlock();
+            }
+        }
+    }
+
+    public void append(WeatherData observation) {
+        if (observation.getStationName() == null || observation.getTimestamp() == null) {
+            return;
+        }
+        int maxRows = getMaxRowsPerStation();
+        // A station first seen after loading has no resident history, so earlier rows may still be in the observation store.
+        StationSeries series = seriesByStation.computeIfAbsent(observation.getStationName(),
+                stationName -> new StationSeries(stationName, false));
+        series.writeLock().lock();
+        try {
+            if (series.size() >= maxRows) {
+                int evicted = series.evictOldest(maxRows - Math.max(maxRows * EVICTION_PERCENT / 100, 1));
+                logger.debug("Evicted {} resident observations of station {}", evicted, series.getStationName());
+            }
+            if (maxRows > 0) {
+                appendTo(series, observation);
+            }
+        } finally {
+            series.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Observation nearest to the given time, ties going to the earlier one, or null when the station is not
+     * resident or the nearest observation may be older than the resident history.
+     */
+    public WeatherData findNearest(String stationName, LocalDateTime dateTime) {
+        StationSeries series = seriesByStation.get(stationName);
+        if (series == null) {
+            return null;
+        }
+        series.readLock().lock();
+        try {
+            int index = series.nearestIndex(toEpochSecond(dateTime));
+            return index >= 0 ? materialize(series, index) : null;
+        } finally {
+            series.readLock().unlock();
+        }
+    }
+
+    public int residentRows(String stationName) {
+        StationSeries series = seriesByStation.get(stationName);
+        return series != null ? series.size() : 0;
+    }
+
+    // Callers hold the series write lock.
+    private void appendTo(StationSeries series, WeatherData observation) {
+        series.append(toEpochSecond(observation.getTimestamp()),
+                Floats.toFloat(observation.getAirTemperature()),
+                Floats.toFloat(observation.getWindSpeed()),
+                encodePhenomenon(observation.getWeatherPhenomenon()),
+                observation.getId() != null ? observation.getId() : 0L,
+                observation.getWmoCode());
+    }
+
+    private WeatherData materialize(StationSeries series, int index) {
+        String phenomenon = decodePhenomenon(series.phenomenonCodeAt(index));
+        WeatherData observation = new WeatherData(series.getStationName(), series.getWmoCode(),
+                Floats.toDouble(series.airTemperatureAt(index)),
+                Floats.toDouble(series.windSpeedAt(index)),
+                phenomenon,
+                LocalDateTime.ofEpochSecond(series.epochSecondAt(index), 0, ZoneOffset.UTC));
+        long id = series.idAt(index);
+        observation.setId(id != 0L ? id : null);
+        observation.setPhenomenonCategory(phenomenonClassifier.classify(phenomenon));
+        return observation;
+    }
+
+    private synchronized short encodePhenomenon(String phenomenon) {
+        if (phenomenon == null) {
+            return StationSeries.NO_PHENOMENON;
+        }
+        Short code = phenomenonCodes.get(phenomenon);
+        if (code == null) {
+            if (phenomena.size() > Short.MAX_VALUE) {
+                throw new IllegalStateException("Too many distinct weather phenomena: " + phenomena.size());
+            }
+            code = (short) phenomena.size();
+            phenomena.add(phenomenon);
+            phenomenonCodes.put(phenomenon, code);
+        }
+        return code;
+    }
+
+    private synchronized String decodePhenomenon(short code) {
+        return code == StationSeries.NO_PHENOMENON ? null : phenomena.get(code);
+    }
+
+    // Observation times are local wall-clock times; UTC is used only as an order-preserving encoding.
+    private static long toEpochSecond(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+}
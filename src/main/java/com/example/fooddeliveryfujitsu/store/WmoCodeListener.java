@@ -0,0 +1,33 @@
+package com.example.fooddeliveryfujitsu.store;
+
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PrePersist;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the WMO code, an attribute of the station, in the station dimension instead of on every observation.
+ */
+@Component
+public class WmoCodeListener {
+
+    private final ObservationDictionary dictionary;
+
+    // Lazy for the same reason as in StationNameConverter.
+    @Autowired
+    public WmoCodeListener(@Lazy ObservationDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    @PrePersist
+    public void recordWmoCode(WeatherData observation) {
+        dictionary.recordWmoCode(observation.getStationName(), observation.getWmoCode());
+    }
+
+    @PostLoad
+    public void restoreWmoCode(WeatherData observation) {
+        observation.setWmoCode(dictionary.wmoCode(observation.getStationName()));
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.fooddeliveryfujitsu.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads newline-terminated lines of at most a given length. The part of a longer line beyond the limit is
+ * skipped while reading instead of being buffered, and the line is reported as too long, so a client cannot
+ * make the server hold an arbitrarily long line in memory.
+ */
+public final class BoundedLineReader implements Closeable {
+
+    private final Reader in;
+    private final int maxLength;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+
+    private final StringBuilder line = new StringBuilder();
+    private boolean tooLong;
+
+    public BoundedLineReader(Reader in, int maxLength) {
+        this.in = in;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Advances to the next line; false at the end of the input.
+     */
+    public boolean next() throws IOException {
+        line.setLength(0);
+        tooLong = false;
+        boolean read = false;
+        while (true) {
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return read;
+                }
+            }
+            read = true;
+            int start = position;
+            while (position < limit && buffer[position] != '\n') {
+                position++;
+            }
+            append(start, position);
+            if (position < limit) {
+                position++;
+                return true;
+            }
+        }
+    }
+
+    // The current line, cut at the maximum length when isTooLong.
+    public String getLine() {
+        return line.toString();
+    }
+
+    public boolean isTooLong() {
+        return tooLong;
+    }
+
+    private void append(int from, int to) {
+        int room = maxLength - line.length();
+        if (to - from > room) {
+            tooLong = true;
+            line.append(buffer, from, room);
+        } else {
+            line.append(buffer, from, to - from);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.fooddeliveryfujitsu.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Conversions between euro amounts and the whole cents used for fee arithmetic.
+ * Fee columns are DECIMAL(10, 2), so every stored amount is exactly representable in cents.
+ */
+public final class Cents {
+
+    private Cents() {
+    }
+
+    public static long fromDecimal(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toDecimal(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+}
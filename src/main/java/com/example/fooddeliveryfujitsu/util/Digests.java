@@ -0,0 +1,26 @@
+package com.example.fooddeliveryfujitsu.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * SHA-256 digests of canonical text, for validators that must be equal on every instance and across restarts
+ * exactly when the digested content is. Encoded as unpadded base64url, which is valid inside an entity tag.
+ */
+public final class Digests {
+
+    private Digests() {
+    }
+
+    public static String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to provide SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.fooddeliveryfujitsu.util;
+
+/**
+ * Thrown when an observations feed cannot be read to its end, whether the XML is malformed or the stream
+ * failed or was cut off. Stations read before the failure may already have been handed to the visitor.
+ */
+public class WeatherFeedParseException extends RuntimeException {
+
+    public WeatherFeedParseException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
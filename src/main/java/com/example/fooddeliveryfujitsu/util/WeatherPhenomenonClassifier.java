@@ -0,0 +1,76 @@
+package com.example.fooddeliveryfujitsu.util;
+
+import com.example.fooddeliveryfujitsu.models.PhenomenonCategory;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Maps ilmateenistus phenomenon descriptions onto pricing categories.
+ * The vocabulary patterns are compiled once and the category of every distinct phenomenon string
+ * is memoized, so after warm-up classification is a single hash lookup.
+ */
+@Component
+public class WeatherPhenomenonClassifier {
+
+    // The feed vocabulary is small; the bound only protects against unexpected free-form values.
+    private static final int MAX_MEMOIZED_PHENOMENA = 1024;
+
+    private static final Pattern FORBIDDEN = compile(List.of(
+            "Glaze", "Hail", "Thunder"
+    ));
+    private static final Pattern SNOW_SLEET = compile(List.of(
+            "Light snow shower", "Moderate snow shower", "Heavy snow shower",
+            "Light sleet", "Moderate sleet", "Light snowfall", "Moderate snowfall",
+            "Heavy snowfall", "Blowing snow", "Drifting snow"
+    ));
+    private static final Pattern RAIN = compile(List.of(
+            "Light rain", "Moderate rain", "Heavy rain", "Light shower",
+            "Moderate shower", "Heavy shower", "Light rain shower", "Moderate rain shower",
+            "Heavy rain shower", "Drizzle"
+    ));
+
+    private final Map<String, PhenomenonCategory> categories = new ConcurrentHashMap<>();
+
+    public PhenomenonCategory classify(String phenomenon) {
+        if (phenomenon == null || phenomenon.isEmpty()) {
+            return PhenomenonCategory.NONE;
+        }
+
+        PhenomenonCategory category = categories.get(phenomenon);
+        if (category != null) {
+            return category;
+        }
+
+        category = match(phenomenon);
+        if (categories.size() < MAX_MEMOIZED_PHENOMENA) {
+            categories.put(phenomenon, category);
+        }
+        return category;
+    }
+
+    private static PhenomenonCategory match(String phenomenon) {
+        // Forbidden phenomena take precedence, as they rule out the vehicle regardless of any fee.
+        if (FORBIDDEN.matcher(phenomenon).find()) {
+            return PhenomenonCategory.FORBIDDEN;
+        }
+        if (SNOW_SLEET.matcher(phenomenon).find()) {
+            return PhenomenonCategory.SNOW_SLEET;
+        }
+        if (RAIN.matcher(phenomenon).find()) {
+            return PhenomenonCategory.RAIN;
+        }
+        return PhenomenonCategory.NONE;
+    }
+
+    private static Pattern compile(List<String> vocabulary) {
+        String alternation = vocabulary.stream()
+                .map(Pattern::quote)
+                .collect(Collectors.joining("|"));
+        return Pattern.compile(alternation, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+}
@@ -4,15 +4,11 @@ import com.example.fooddeliveryfujitsu.models.WeatherData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import java.io.IOException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.InputStream;
 import java.time.Instant;
 import java.time.LocalDateTime;
@@ -23,7 +19,13 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 
+/**
+ * Pull parser for the ilmateenistus observations feed. The document is read as a stream of events, so memory
+ * stays constant however large the file is, and a station is dropped as soon as its wmocode shows it is not
+ * one of the target stations.
+ */
 @Component
 public class WeatherXmlParser {
 
@@ -38,82 +40,154 @@ public class WeatherXmlParser {
         TARGET_STATIONS.add("41803"); // Pärnu
     }
 
+    private final XMLInputFactory inputFactory;
+
+    public WeatherXmlParser() {
+        inputFactory = XMLInputFactory.newInstance();
+        // The feed has no DTD; refusing one also rules out external entity expansion.
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    // Returns no observations at all for a feed that cannot be read to its end, rather than the ones before the error.
     public List<WeatherData> parseWeatherData(InputStream xmlStream) {
         List<WeatherData> weatherDataList = new ArrayList<>();
-
         try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document document = builder.parse(xmlStream);
-            document.getDocumentElement().normalize();
-
-            String observationsTimestampStr = document.getDocumentElement().getAttribute("timestamp");
-            logger.info("Raw timestamp from XML: {}", observationsTimestampStr);
+            parseWeatherData(xmlStream, weatherDataList::add);
+        } catch (WeatherFeedParseException e) {
+            logger.error("Error parsing weather XML data", e);
+            return new ArrayList<>();
+        }
+        return weatherDataList;
+    }
 
-            LocalDateTime timestamp;
-            try {
-                long unixTimestamp = Long.parseLong(observationsTimestampStr);
-                timestamp = LocalDateTime.ofInstant(Instant.ofEpochSecond(unixTimestamp),
-                        ZoneId.systemDefault());
-                logger.info("Parsed Unix timestamp to: {}", timestamp);
-            } catch (NumberFormatException e) {
-                try {
-                    timestamp = LocalDateTime.parse(observationsTimestampStr, TIMESTAMP_FORMATTER);
-                    logger.info("Parsed string timestamp to: {}", timestamp);
-                } catch (DateTimeParseException dtpe) {
-                    logger.error("Failed to parse timestamp: {}", observationsTimestampStr, dtpe);
-                    timestamp = LocalDateTime.now();
-                    logger.info("Using current time as fallback: {}", timestamp);
+    /**
+     * Hands each target station's observation to the visitor as soon as its station element ends and returns
+     * how many there were. Every observations element sets the timestamp of the stations inside it.
+     * The StAX reader reports failures of the underlying stream, such as a read timeout or a truncated gzip body,
+     * as XMLStreamException too; either way a WeatherFeedParseException is thrown, so that a partial feed is
+     * never mistaken for a complete one.
+     */
+    public int parseWeatherData(InputStream xmlStream, Consumer<WeatherData> visitor) {
+        int parsed = 0;
+        int skipped = 0;
+        XMLStreamReader reader = null;
+        try {
+            reader = inputFactory.createXMLStreamReader(xmlStream);
+            LocalDateTime timestamp = null;
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String element = reader.getLocalName();
+                if ("observations".equals(element)) {
+                    String observationsTimestampStr = reader.getAttributeValue(null, "timestamp");
+                    timestamp = parseTimestamp(observationsTimestampStr != null ? observationsTimestampStr : "");
+                } else if ("station".equals(element)) {
+                    WeatherData weatherData = readStation(reader, timestamp);
+                    if (weatherData == null) {
+                        skipped++;
+                        continue;
+                    }
+                    logger.debug("Parsed station: {}", weatherData);
+                    visitor.accept(weatherData);
+                    parsed++;
                 }
             }
+        } catch (XMLStreamException e) {
+            throw new WeatherFeedParseException("Weather feed ended with an error after " + parsed
+                    + " target stations", e);
+        } finally {
+            close(reader);
+        }
 
-            NodeList stationList = document.getElementsByTagName("station");
-            logger.info("Found {} stations in XML", stationList.getLength());
-
-            for (int i = 0; i < stationList.getLength(); i++) {
-                Element stationElement = (Element) stationList.item(i);
-                String wmoCode = getElementTextContent(stationElement, "wmocode");
+        logger.info("Parsed {} target stations, skipped {} other stations", parsed, skipped);
+        return parsed;
+    }
 
-                if (!TARGET_STATIONS.contains(wmoCode)) {
-                    continue;
+    // Reads the station's fields up to its end tag; returns null, leaving the rest unread, for other stations.
+    private WeatherData readStation(XMLStreamReader reader, LocalDateTime timestamp) throws XMLStreamException {
+        String stationName = "";
+        String wmoCode = null;
+        String airTemperature = "";
+        String windSpeed = "";
+        String phenomenon = "";
+
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            if (depth > 1) {
+                depth++;
+                continue;
+            }
+            switch (reader.getLocalName()) {
+                case "name" -> stationName = reader.getElementText();
+                case "wmocode" -> {
+                    wmoCode = reader.getElementText();
+                    if (!TARGET_STATIONS.contains(wmoCode)) {
+                        skipElement(reader);
+                        return null;
+                    }
                 }
-
-                String stationName = getElementTextContent(stationElement, "name");
-                Double airTemperature = parseDoubleOrNull(getElementTextContent(stationElement, "airtemperature"));
-                Double windSpeed = parseDoubleOrNull(getElementTextContent(stationElement, "windspeed"));
-                String phenomenon = getElementTextContent(stationElement, "phenomenon");
-
-                logger.info("Processing station: {} ({}), temp: {}, wind: {}, phenomenon: {}",
-                        stationName, wmoCode, airTemperature, windSpeed, phenomenon);
-
-                WeatherData weatherData = new WeatherData(
-                        stationName,
-                        wmoCode,
-                        airTemperature,
-                        windSpeed,
-                        phenomenon,
-                        timestamp
-                );
-
-                weatherDataList.add(weatherData);
-                logger.info("Added weather data: {}", weatherData);
+                case "airtemperature" -> airTemperature = reader.getElementText();
+                case "windspeed" -> windSpeed = reader.getElementText();
+                case "phenomenon" -> phenomenon = reader.getElementText();
+                default -> depth++;
             }
+        }
 
-            logger.info("Total weather data records parsed: {}", weatherDataList.size());
+        if (!TARGET_STATIONS.contains(wmoCode)) {
+            return null;
+        }
+        return new WeatherData(stationName, wmoCode, parseDoubleOrNull(airTemperature), parseDoubleOrNull(windSpeed),
+                phenomenon, timestamp);
+    }
 
-        } catch (ParserConfigurationException | SAXException | IOException e) {
-            logger.error("Error parsing weather XML data", e);
+    // Advances past the end tag of the element the reader is inside, without looking at its content.
+    private void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
         }
+    }
 
-        return weatherDataList;
+    private LocalDateTime parseTimestamp(String observationsTimestampStr) {
+        try {
+            long unixTimestamp = Long.parseLong(observationsTimestampStr);
+            return LocalDateTime.ofInstant(Instant.ofEpochSecond(unixTimestamp), ZoneId.systemDefault());
+        } catch (NumberFormatException e) {
+            try {
+                return LocalDateTime.parse(observationsTimestampStr, TIMESTAMP_FORMATTER);
+            } catch (DateTimeParseException dtpe) {
+                logger.error("Failed to parse timestamp: {}", observationsTimestampStr, dtpe);
+                LocalDateTime timestamp = LocalDateTime.now();
+                logger.info("Using current time as fallback: {}", timestamp);
+                return timestamp;
+            }
+        }
     }
 
-    private String getElementTextContent(Element parentElement, String tagName) {
-        NodeList nodeList = parentElement.getElementsByTagName(tagName);
-        if (nodeList.getLength() > 0) {
-            return nodeList.item(0).getTextContent();
+    private void close(XMLStreamReader reader) {
+        if (reader == null) {
+            return;
+        }
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            logger.warn("Could not close XML reader", e);
         }
-        return "";
     }
 
     private Double parseDoubleOrNull(String value) {
@@ -127,4 +201,4 @@ public class WeatherXmlParser {
             return null;
         }
     }
-}
\ No newline at end of file
+}
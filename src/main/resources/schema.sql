@@ -1,12 +1,44 @@
+CREATE TABLE IF NOT EXISTS weather_station (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    name VARCHAR(100) NOT NULL,
+    wmo_code VARCHAR(10),
+    UNIQUE KEY uk_station_name (name)
+    );
+
+CREATE TABLE IF NOT EXISTS weather_phenomenon (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    phenomenon_text VARCHAR(100) NOT NULL,
+    UNIQUE KEY uk_phenomenon_text (phenomenon_text)
+    );
+
 CREATE TABLE IF NOT EXISTS weather_data (
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
-    station_name VARCHAR(100) NOT NULL,
-    wmo_code VARCHAR(10) NOT NULL,
+    station_id INT NOT NULL,
     air_temperature DOUBLE,
     wind_speed DOUBLE,
-    weather_phenomenon VARCHAR(100),
+    phenomenon_id INT,
+    phenomenon_category VARCHAR(20),
     timestamp TIMESTAMP NOT NULL,
-    INDEX idx_station_timestamp (station_name, timestamp)
+    observed_until TIMESTAMP,
+    UNIQUE KEY uk_station_timestamp (station_id, timestamp)
+    );
+
+CREATE TABLE IF NOT EXISTS weather_hourly (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    station_id INT NOT NULL,
+    wmo_code VARCHAR(10),
+    hour_start TIMESTAMP NOT NULL,
+    sample_count INT NOT NULL,
+    air_temperature_samples INT NOT NULL,
+    air_temperature_avg DOUBLE,
+    air_temperature_min DOUBLE,
+    air_temperature_max DOUBLE,
+    wind_speed_samples INT NOT NULL,
+    wind_speed_avg DOUBLE,
+    wind_speed_max DOUBLE,
+    phenomenon_id INT,
+    phenomenon_category VARCHAR(20),
+    UNIQUE KEY uk_hourly_station_hour (station_id, hour_start)
     );
 
 CREATE TABLE IF NOT EXISTS regional_base_fee (
@@ -16,7 +48,9 @@ CREATE TABLE IF NOT EXISTS regional_base_fee (
     fee DECIMAL(10, 2) NOT NULL,
     valid_from TIMESTAMP NOT NULL,
     valid_to TIMESTAMP,
-    UNIQUE KEY uk_city_vehicle_valid_from (city, vehicle_type, valid_from)
+    UNIQUE KEY uk_city_vehicle_valid_from (city, vehicle_type, valid_from),
+    INDEX idx_base_fee_city_vehicle_id (city, vehicle_type, id),
+    INDEX idx_base_fee_vehicle_id (vehicle_type, id)
     );
 
 CREATE TABLE IF NOT EXISTS weather_extra_fee (
@@ -29,5 +63,8 @@ CREATE TABLE IF NOT EXISTS weather_extra_fee (
     fee DECIMAL(10, 2) NOT NULL,
     valid_from TIMESTAMP NOT NULL,
     valid_to TIMESTAMP,
-    UNIQUE KEY uk_type_vehicle_value_valid_from (fee_type, vehicle_type, min_value, max_value, phenomenon_category, valid_from)
-    );
\ No newline at end of file
+    UNIQUE KEY uk_type_vehicle_value_valid_from (fee_type, vehicle_type, min_value, max_value, phenomenon_category, valid_from),
+    INDEX idx_extra_fee_type_valid_from (fee_type, valid_from),
+    INDEX idx_extra_fee_type_vehicle_id (fee_type, vehicle_type, id),
+    INDEX idx_extra_fee_vehicle_id (vehicle_type, id)
+    );
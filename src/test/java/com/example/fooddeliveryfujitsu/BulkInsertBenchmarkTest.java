@@ -0,0 +1,85 @@
+package com.example.fooddeliveryfujitsu;
+
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+import com.example.fooddeliveryfujitsu.repositories.WeatherDataRepository;
+import com.example.fooddeliveryfujitsu.store.JpaObservationStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares insert throughput of the JPA saveAll path with the batched JDBC bulk insert. Run with: mvn test -Pbenchmark
+ * Row counts can be overridden with -Dbenchmark.rows=10000,100000 and batch sizes with -Dbenchmark.batch-sizes=100,1000
+ */
+@Tag("benchmark")
+@SpringBootTest
+@ActiveProfiles("test")
+class BulkInsertBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkInsertBenchmarkTest.class);
+
+    @Autowired
+    private WeatherDataRepository weatherDataRepository;
+
+    @Autowired
+    private JpaObservationStore store;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("TRUNCATE TABLE weather_data");
+    }
+
+    @Test
+    void bulkInsertOutpacesSaveAll() {
+        String[] sizes = System.getProperty("benchmark.rows", "10000,100000").split(",");
+        String[] batchSizes = System.getProperty("benchmark.batch-sizes", "100,1000,5000").split(",");
+        Object target = AopTestUtils.getTargetObject(store);
+        Object configuredBatchSize = ReflectionTestUtils.getField(target, "batchSize");
+
+        try {
+            for (String size : sizes) {
+                int rows = Integer.parseInt(size.trim());
+                double saveAllRate = rowsPerSecond(rows, weatherDataRepository::saveAll);
+                logger.info("{}", String.format("rows=%,d  saveAll: %,.0f rows/s", rows, saveAllRate));
+
+                for (String batchSize : batchSizes) {
+                    ReflectionTestUtils.setField(target, "batchSize", Integer.parseInt(batchSize.trim()));
+                    double bulkRate = rowsPerSecond(rows, store::bulkInsert);
+                    logger.info("{}", String.format("rows=%,d  bulkInsert batch=%s: %,.0f rows/s (%.1fx)",
+                            rows, batchSize.trim(), bulkRate, bulkRate / saveAllRate));
+                    assertTrue(bulkRate > saveAllRate, "Bulk insert is not faster than saveAll");
+                }
+            }
+        } finally {
+            ReflectionTestUtils.setField(target, "batchSize", configuredBatchSize);
+        }
+    }
+
+    // Inserts the rows into an empty table with the given writer and checks that they all arrived.
+    private double rowsPerSecond(int rows, Consumer<List<WeatherData>> writer) {
+        jdbcTemplate.execute("TRUNCATE TABLE weather_data");
+        List<WeatherData> observations = HourlyObservations.observations(rows);
+        long started = System.nanoTime();
+        writer.accept(observations);
+        long elapsed = System.nanoTime() - started;
+        assertEquals(rows, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM weather_data", Integer.class));
+        return rows / (elapsed / 1e9);
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.fooddeliveryfujitsu;
+
+import com.example.fooddeliveryfujitsu.models.RegionalBaseFee;
+import com.example.fooddeliveryfujitsu.models.WeatherExtraFee;
+import com.example.fooddeliveryfujitsu.repositories.RegionalBaseFeeRepository;
+import com.example.fooddeliveryfujitsu.repositories.WeatherExtraFeeRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class BusinessRulesControllerIntegrationTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private RegionalBaseFeeRepository regionalBaseFeeRepository;
+
+    @Autowired
+    private WeatherExtraFeeRepository weatherExtraFeeRepository;
+
+    @BeforeEach
+    void setUp() {
+        regionalBaseFeeRepository.deleteAll();
+        weatherExtraFeeRepository.deleteAll();
+        List<RegionalBaseFee> fees = new ArrayList<>();
+        // Five consecutive monthly versions for Tallinn cars, one for Tartu.
+        for (int month = 0; month < 5; month++) {
+            fees.add(new RegionalBaseFee("TALLINN", "CAR", new BigDecimal(4 + month), T0.plusMonths(month),
+                    T0.plusMonths(month + 1)));
+        }
+        fees.add(new RegionalBaseFee("TARTU", "CAR", new BigDecimal("3.5"), T0, null));
+        regionalBaseFeeRepository.saveAll(fees);
+
+        weatherExtraFeeRepository.saveAll(List.of(
+                new WeatherExtraFee("WSEF", "BIKE", 10.0, 20.0, null, new BigDecimal("0.5"), T0, null),
+                new WeatherExtraFee("ATEF", "BIKE", -10.0, 0.0, null, new BigDecimal("0.5"), T0, null),
+                new WeatherExtraFee("ATEF", "SCOOTER", -10.0, 0.0, null, new BigDecimal("0.5"), T0, T0.plusDays(1))));
+    }
+
+    @AfterEach
+    void tearDown() {
+        regionalBaseFeeRepository.deleteAll();
+        weatherExtraFeeRepository.deleteAll();
+    }
+
+    @Test
+    void testRegionalBaseFeesArePagedWithCursor() throws Exception {
+        JsonNode first = list("/api/business-rules/regional-base-fees?city=TALLINN&limit=2");
+        assertEquals(2, first.get("items").size());
+        assertEquals(4, first.get("items").get(0).get("fee").asInt());
+
+        List<Integer> fees = new ArrayList<>();
+        JsonNode page = first;
+        while (true) {
+            page.get("items").forEach(item -> fees.add(item.get("fee").asInt()));
+            if (page.get("nextCursor").isNull()) {
+                break;
+            }
+            page = list("/api/business-rules/regional-base-fees?city=TALLINN&limit=2&cursor="
+                    + page.get("nextCursor").asText());
+        }
+        assertEquals(List.of(4, 5, 6, 7, 8), fees);
+    }
+
+    @Test
+    void testRegionalBaseFeesFilterByActiveTime() throws Exception {
+        JsonNode page = list("/api/business-rules/regional-base-fees?vehicleType=CAR&activeAt=2025-03-01 00:00:00");
+        assertEquals(2, page.get("items").size());
+        assertEquals("TALLINN", page.get("items").get(0).get("city").asText());
+        // validTo is exclusive: the February version has ended at the start of March.
+        assertEquals(6, page.get("items").get(0).get("fee").asInt());
+        assertEquals("TARTU", page.get("items").get(1).get("city").asText());
+        assertTrue(page.get("nextCursor").isNull());
+    }
+
+    @Test
+    void testWeatherExtraFeesFilterByTypeVehicleAndActiveTime() throws Exception {
+        assertEquals(2, list("/api/business-rules/weather-extra-fees?feeType=ATEF").get("items").size());
+        assertEquals(2, list("/api/business-rules/weather-extra-fees?vehicleType=BIKE").get("items").size());
+
+        JsonNode page = list("/api/business-rules/weather-extra-fees?feeType=ATEF&activeAt=2025-01-05 00:00:00");
+        assertEquals(1, page.get("items").size());
+        assertEquals("BIKE", page.get("items").get(0).get("vehicleType").asText());
+    }
+
+    @Test
+    void testListingRejectsInvalidCursorAndLimit() throws Exception {
+        mockMvc.perform(get("/api/business-rules/regional-base-fees?cursor=bm90LWEtbnVtYmVy"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/business-rules/weather-extra-fees?limit=0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/business-rules/weather-extra-fees?limit=1001"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private JsonNode list(String url) throws Exception {
+        String body = mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(body);
+    }
+}
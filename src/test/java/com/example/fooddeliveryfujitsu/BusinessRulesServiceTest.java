@@ -1,15 +1,20 @@
 package com.example.fooddeliveryfujitsu;
 
+import com.example.fooddeliveryfujitsu.events.BusinessRulesChangedEvent;
 import com.example.fooddeliveryfujitsu.models.RegionalBaseFee;
 import com.example.fooddeliveryfujitsu.models.WeatherExtraFee;
 import com.example.fooddeliveryfujitsu.repositories.RegionalBaseFeeRepository;
 import com.example.fooddeliveryfujitsu.repositories.WeatherExtraFeeRepository;
 import com.example.fooddeliveryfujitsu.services.BusinessRulesService;
+import com.example.fooddeliveryfujitsu.util.WeatherPhenomenonClassifier;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -29,6 +34,12 @@ class BusinessRulesServiceTest {
     @Mock
     private WeatherExtraFeeRepository weatherExtraFeeRepository;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Spy
+    private WeatherPhenomenonClassifier phenomenonClassifier = new WeatherPhenomenonClassifier();
+
     @InjectMocks
     private BusinessRulesService businessRulesService;
 
@@ -43,36 +54,52 @@ class BusinessRulesServiceTest {
     @Test
     void testGetRegionalBaseFeeFromDatabase() {
         RegionalBaseFee fee = new RegionalBaseFee("TALLINN", "CAR", new BigDecimal("4.5"), now.minusDays(1), null);
-        when(regionalBaseFeeRepository.findActiveRuleForCityAndVehicle("TALLINN", "CAR", now))
-                .thenReturn(Optional.of(fee));
+        when(regionalBaseFeeRepository.findAll()).thenReturn(List.of(fee));
 
-        BigDecimal result = businessRulesService.getRegionalBaseFee("TALLINN", "CAR", now);
+        long result = businessRulesService.getRegionalBaseFeeCents("TALLINN", "CAR", now);
 
-        assertEquals(new BigDecimal("4.5"), result);
-        verify(regionalBaseFeeRepository).findActiveRuleForCityAndVehicle("TALLINN", "CAR", now);
+        assertEquals(450L, result);
+        verify(regionalBaseFeeRepository).findAll();
     }
 
     @Test
     void testGetRegionalBaseFeeFromDefaultValue() {
-        when(regionalBaseFeeRepository.findActiveRuleForCityAndVehicle("TALLINN", "CAR", now))
-                .thenReturn(Optional.empty());
+        when(regionalBaseFeeRepository.findAll()).thenReturn(Collections.emptyList());
 
-        BigDecimal result = businessRulesService.getRegionalBaseFee("TALLINN", "CAR", now);
+        long result = businessRulesService.getRegionalBaseFeeCents("TALLINN", "CAR", now);
+
+        assertEquals(400L, result);
+        verify(regionalBaseFeeRepository).findAll();
+    }
 
-        assertEquals(new BigDecimal("4.0"), result);
-        verify(regionalBaseFeeRepository).findActiveRuleForCityAndVehicle("TALLINN", "CAR", now);
+    @Test
+    void testRuleLookupsAreServedFromSnapshot() {
+        RegionalBaseFee oldFee = new RegionalBaseFee("TARTU", "BIKE", new BigDecimal("2.0"), now.minusDays(10), null);
+        RegionalBaseFee newFee = new RegionalBaseFee("TARTU", "BIKE", new BigDecimal("2.8"), now.minusDays(2), null);
+        WeatherExtraFee coldRule = new WeatherExtraFee("AIR_TEMP", "BIKE", -100.0, -10.0, null,
+                new BigDecimal("1.5"), now.minusDays(5), null);
+        when(regionalBaseFeeRepository.findAll()).thenReturn(List.of(oldFee, newFee));
+        when(weatherExtraFeeRepository.findAll()).thenReturn(List.of(coldRule));
+
+        assertEquals(280L, businessRulesService.getRegionalBaseFeeCents("TARTU", "BIKE", now));
+        assertEquals(200L, businessRulesService.getRegionalBaseFeeCents("TARTU", "BIKE", now.minusDays(5)));
+        assertEquals(150L, businessRulesService.getAirTemperatureExtraFeeCents("BIKE", -15.0, now));
+        assertEquals(100L, businessRulesService.getAirTemperatureExtraFeeCents("BIKE", -15.0, now.minusDays(6)));
+
+        verify(regionalBaseFeeRepository, times(1)).findAll();
+        verify(weatherExtraFeeRepository, times(1)).findAll();
     }
 
     @Test
     void testGetAirTemperatureExtraFeeWithLowTemperature() {
-        BigDecimal result = businessRulesService.getAirTemperatureExtraFee("BIKE", -15.0, now);
-        assertEquals(new BigDecimal("1.0"), result);
+        long result = businessRulesService.getAirTemperatureExtraFeeCents("BIKE", -15.0, now);
+        assertEquals(100L, result);
 
-        result = businessRulesService.getAirTemperatureExtraFee("BIKE", -5.0, now);
-        assertEquals(new BigDecimal("0.5"), result);
+        result = businessRulesService.getAirTemperatureExtraFeeCents("BIKE", -5.0, now);
+        assertEquals(50L, result);
 
-        result = businessRulesService.getAirTemperatureExtraFee("BIKE", 5.0, now);
-        assertEquals(BigDecimal.ZERO, result);
+        result = businessRulesService.getAirTemperatureExtraFeeCents("BIKE", 5.0, now);
+        assertEquals(0L, result);
     }
 
     @Test
@@ -107,8 +134,30 @@ class BusinessRulesServiceTest {
     void testDeleteRegionalBaseFee() {
         when(regionalBaseFeeRepository.existsById(1L)).thenReturn(true);
 
+        long versionBefore = businessRulesService.getSnapshot().getVersion();
+
         businessRulesService.deleteRegionalBaseFee(1L);
 
         verify(regionalBaseFeeRepository).deleteById(1L);
+        assertEquals(versionBefore + 1, businessRulesService.getSnapshot().getVersion());
+        verify(eventPublisher).publishEvent(any(BusinessRulesChangedEvent.class));
+    }
+
+    @Test
+    void testRuleUpdatePublishesOldAndNewValidity() {
+        RegionalBaseFee stored = new RegionalBaseFee("TALLINN", "CAR", new BigDecimal("4.5"), now.minusDays(10), now.minusDays(5));
+        stored.setId(1L);
+        RegionalBaseFee updated = new RegionalBaseFee("TALLINN", "CAR", new BigDecimal("4.5"), now.plusDays(5), null);
+        updated.setId(1L);
+        when(regionalBaseFeeRepository.findById(1L)).thenReturn(Optional.of(stored));
+        when(regionalBaseFeeRepository.save(updated)).thenReturn(updated);
+
+        businessRulesService.saveRegionalBaseFee(updated);
+
+        ArgumentCaptor<BusinessRulesChangedEvent> event = ArgumentCaptor.forClass(BusinessRulesChangedEvent.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertTrue(event.getValue().affects(now.minusDays(7)));
+        assertTrue(event.getValue().affects(now.plusDays(30)));
+        assertFalse(event.getValue().affects(now));
     }
 }
@@ -1,5 +1,6 @@
 package com.example.fooddeliveryfujitsu;
 
+import com.example.fooddeliveryfujitsu.events.WeatherDataIngestedEvent;
 import com.example.fooddeliveryfujitsu.models.DeliveryFeeRequest;
 import com.example.fooddeliveryfujitsu.models.WeatherData;
 import com.example.fooddeliveryfujitsu.repositories.WeatherDataRepository;
@@ -9,13 +10,24 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -33,6 +45,9 @@ class DeliveryFeeControllerIntegrationTest {
     @Autowired
     private WeatherDataRepository weatherDataRepository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     @BeforeEach
     void setUp() {
         weatherDataRepository.deleteAll();
@@ -66,6 +81,8 @@ class DeliveryFeeControllerIntegrationTest {
                 "Rain",
                 now
         ));
+
+        eventPublisher.publishEvent(new WeatherDataIngestedEvent(weatherDataRepository.findAll()));
     }
 
     @Test
@@ -116,4 +133,133 @@ class DeliveryFeeControllerIntegrationTest {
                 .andExpect(jsonPath("$.breakdown.windSpeedExtraFee").value(0))
                 .andExpect(jsonPath("$.breakdown.weatherPhenomenonExtraFee").value(0));
     }
+
+    @Test
+    void testCalculateDeliveryFeeBatchKeepsInputOrder() throws Exception {
+        List<DeliveryFeeRequest> requests = Arrays.asList(
+                new DeliveryFeeRequest(DeliveryFeeRequest.City.TALLINN, DeliveryFeeRequest.VehicleType.CAR),
+                new DeliveryFeeRequest(DeliveryFeeRequest.City.TALLINN, null),
+                new DeliveryFeeRequest(DeliveryFeeRequest.City.PARNU, DeliveryFeeRequest.VehicleType.BIKE)
+        );
+
+        mockMvc.perform(post("/api/delivery-fee/calculate-batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(requests)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].fee").value(4.0))
+                .andExpect(jsonPath("$[1].error").value("vehicleType: Vehicle type is required"))
+                .andExpect(jsonPath("$[2].breakdown.windSpeedExtraFee").value(0.5));
+    }
+
+    @Test
+    void testCalculateDeliveryFeeBatchRejectsOversizedBatch() throws Exception {
+        List<DeliveryFeeRequest> requests = Collections.nCopies(1001,
+                new DeliveryFeeRequest(DeliveryFeeRequest.City.TARTU, DeliveryFeeRequest.VehicleType.CAR));
+
+        mockMvc.perform(post("/api/delivery-fee/calculate-batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(requests)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Batch size 1001 exceeds the maximum of 1000"));
+    }
+
+    @Test
+    void testCalculateDeliveryFeeStreamWritesOneLinePerRequest() throws Exception {
+        String body = "{\"city\":\"TALLINN\",\"vehicleType\":\"CAR\"}\n"
+                + "{\"city\":\"NARVA\",\"vehicleType\":\"CAR\"}\n"
+                + "\n"
+                + "{\"city\":\"PARNU\",\"vehicleType\":\"BIKE\"}\n";
+
+        String result = mockMvc.perform(post("/api/delivery-fee/calculate-stream")
+                        .contentType("application/x-ndjson")
+                        .content(body))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = result.split("\n");
+        assertEquals(3, lines.length);
+        assertEquals(0, new BigDecimal("4.00").compareTo(objectMapper.readTree(lines[0]).get("fee").decimalValue()));
+        assertTrue(objectMapper.readTree(lines[1]).get("error").asText().startsWith("Invalid request"));
+        assertEquals(0.5, objectMapper.readTree(lines[2]).get("breakdown").get("windSpeedExtraFee").asDouble());
+    }
+
+    @Test
+    void testCalculateDeliveryFeeStreamRejectsOverlongLines() throws Exception {
+        String body = "{\"city\":\"TALLINN\",\"vehicleType\":\"CAR\"," + " ".repeat(10000) + "}\n"
+                + "{\"city\":\"TALLINN\",\"vehicleType\":\"CAR\"}";
+
+        String result = mockMvc.perform(post("/api/delivery-fee/calculate-stream")
+                        .contentType("application/x-ndjson")
+                        .content(body))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = result.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("Invalid request: line exceeds 8192 characters",
+                objectMapper.readTree(lines[0]).get("error").asText());
+        assertEquals(0, new BigDecimal("4.00").compareTo(objectMapper.readTree(lines[1]).get("fee").decimalValue()));
+    }
+
+    @Test
+    void testGetFeeMatrixReturnsAllCitiesAndVehicles() throws Exception {
+        mockMvc.perform(get("/api/delivery-fee/matrix"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.cities.TALLINN.stationName").value("Tallinn-Harku"))
+                .andExpect(jsonPath("$.cities.TALLINN.fees.CAR.fee").value(4.0))
+                .andExpect(jsonPath("$.cities.TARTU.fees.BIKE.breakdown.airTemperatureExtraFee").value(0.5))
+                .andExpect(jsonPath("$.cities.PARNU.fees.SCOOTER.fee").isNumber());
+    }
+
+    @Test
+    void testGetQuoteSupportsConditionalRequests() throws Exception {
+        String eTag = mockMvc.perform(get("/api/delivery-fee/quote")
+                        .param("city", "TALLINN")
+                        .param("vehicleType", "CAR"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.fee").value(4.0))
+                .andExpect(header().doesNotExist("Last-Modified"))
+                .andExpect(header().string("Cache-Control", startsWith("max-age=")))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/api/delivery-fee/quote")
+                        .param("city", "TALLINN")
+                        .param("vehicleType", "CAR")
+                        .header("If-None-Match", eTag))
+                .andExpect(status().isNotModified());
+
+        mockMvc.perform(get("/api/delivery-fee/quote")
+                        .param("city", "TALLINN")
+                        .param("vehicleType", "BIKE")
+                        .header("If-None-Match", "\"stale\""))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void testGetQuoteETagChangesWhenReadingIsCorrectedInPlace() throws Exception {
+        String eTag = mockMvc.perform(get("/api/delivery-fee/quote")
+                        .param("city", "TALLINN")
+                        .param("vehicleType", "BIKE"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        // Same row, same id and timestamp, corrected values
+        WeatherData reading = weatherDataRepository.findAll().stream()
+                .filter(data -> data.getStationName().equals("Tallinn-Harku"))
+                .findFirst().orElseThrow();
+        reading.setAirTemperature(-12.0);
+        weatherDataRepository.save(reading);
+        eventPublisher.publishEvent(new WeatherDataIngestedEvent(List.of(reading)));
+
+        String correctedETag = mockMvc.perform(get("/api/delivery-fee/quote")
+                        .param("city", "TALLINN")
+                        .param("vehicleType", "BIKE")
+                        .header("If-None-Match", eTag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.fee").value(4.0))
+                .andReturn().getResponse().getHeader("ETag");
+
+        assertNotEquals(eTag, correctedETag);
+    }
 }
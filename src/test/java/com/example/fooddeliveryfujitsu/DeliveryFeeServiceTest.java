@@ -1,24 +1,33 @@
 package com.example.fooddeliveryfujitsu;
 
+import com.example.fooddeliveryfujitsu.events.WeatherDataIngestedEvent;
 import com.example.fooddeliveryfujitsu.models.DeliveryFeeRequest;
 import com.example.fooddeliveryfujitsu.models.DeliveryFeeResponse;
 import com.example.fooddeliveryfujitsu.models.WeatherData;
+import com.example.fooddeliveryfujitsu.repositories.RegionalBaseFeeRepository;
+import com.example.fooddeliveryfujitsu.repositories.WeatherExtraFeeRepository;
 import com.example.fooddeliveryfujitsu.services.BusinessRulesService;
 import com.example.fooddeliveryfujitsu.services.DeliveryFeeService;
+import com.example.fooddeliveryfujitsu.services.HistoricalQuoteCache;
+import com.example.fooddeliveryfujitsu.services.QuoteSession;
 import com.example.fooddeliveryfujitsu.services.WeatherDataService;
+import com.example.fooddeliveryfujitsu.util.WeatherPhenomenonClassifier;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class DeliveryFeeServiceTest {
@@ -27,9 +36,14 @@ class DeliveryFeeServiceTest {
     private WeatherDataService weatherDataService;
 
     @Mock
-    private BusinessRulesService businessRulesService;
+    private RegionalBaseFeeRepository regionalBaseFeeRepository;
+
+    @Mock
+    private WeatherExtraFeeRepository weatherExtraFeeRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
 
-    @InjectMocks
     private DeliveryFeeService deliveryFeeService;
 
     private LocalDateTime now;
@@ -38,6 +52,13 @@ class DeliveryFeeServiceTest {
     void setUp() {
         MockitoAnnotations.openMocks(this);
         now = LocalDateTime.now();
+
+        // No rules stored, so the default business rules apply.
+        WeatherPhenomenonClassifier phenomenonClassifier = new WeatherPhenomenonClassifier();
+        BusinessRulesService businessRulesService = new BusinessRulesService(
+                regionalBaseFeeRepository, weatherExtraFeeRepository, eventPublisher, phenomenonClassifier);
+        deliveryFeeService = new DeliveryFeeService(weatherDataService, businessRulesService, phenomenonClassifier,
+                new HistoricalQuoteCache(100, 3600));
     }
 
     @Test
@@ -57,20 +78,16 @@ class DeliveryFeeServiceTest {
         );
 
         when(weatherDataService.getLatestWeatherDataForCity(eq("TARTU"))).thenReturn(Optional.of(weatherData));
-        when(businessRulesService.getRegionalBaseFee(eq("TARTU"), eq("BIKE"), any())).thenReturn(new BigDecimal("2.5"));
-        when(businessRulesService.getAirTemperatureExtraFee(eq("BIKE"), eq(-2.1), any())).thenReturn(new BigDecimal("0.5"));
-        when(businessRulesService.getWindSpeedExtraFee(eq("BIKE"), eq(4.7), any())).thenReturn(BigDecimal.ZERO);
-        when(businessRulesService.getWeatherPhenomenonExtraFee(eq("BIKE"), eq("Light snow shower"), any())).thenReturn(new BigDecimal("1.0"));
-        when(businessRulesService.isVehicleUsageForbidden(eq("BIKE"), eq(4.7), eq("Light snow shower"))).thenReturn(false);
 
         DeliveryFeeResponse response = deliveryFeeService.calculateDeliveryFee(request);
 
         assertFalse(response.hasError());
-        assertEquals(new BigDecimal("4.0"), response.getFee());
-        assertEquals(new BigDecimal("2.5"), response.getBreakdown().getRegionalBaseFee());
-        assertEquals(new BigDecimal("0.5"), response.getBreakdown().getAirTemperatureExtraFee());
-        assertEquals(BigDecimal.ZERO, response.getBreakdown().getWindSpeedExtraFee());
-        assertEquals(new BigDecimal("1.0"), response.getBreakdown().getWeatherPhenomenonExtraFee());
+        assertEquals(400L, response.getFeeCents());
+        assertEquals(250L, response.getBreakdown().getRegionalBaseFeeCents());
+        assertEquals(50L, response.getBreakdown().getAirTemperatureExtraFeeCents());
+        assertEquals(0L, response.getBreakdown().getWindSpeedExtraFeeCents());
+        assertEquals(100L, response.getBreakdown().getWeatherPhenomenonExtraFeeCents());
+        assertEquals(new BigDecimal("4.00"), response.getFee());
     }
 
     @Test
@@ -90,7 +107,6 @@ class DeliveryFeeServiceTest {
         );
 
         when(weatherDataService.getLatestWeatherDataForCity(eq("PARNU"))).thenReturn(Optional.of(weatherData));
-        when(businessRulesService.isVehicleUsageForbidden(eq("BIKE"), eq(22.0), eq("Clear"))).thenReturn(true);
 
         DeliveryFeeResponse response = deliveryFeeService.calculateDeliveryFee(request);
 
@@ -116,7 +132,6 @@ class DeliveryFeeServiceTest {
         );
 
         when(weatherDataService.getLatestWeatherDataForCity(eq("TALLINN"))).thenReturn(Optional.of(weatherData));
-        when(businessRulesService.isVehicleUsageForbidden(eq("SCOOTER"), eq(5.0), eq("Thunder"))).thenReturn(true);
 
         DeliveryFeeResponse response = deliveryFeeService.calculateDeliveryFee(request);
 
@@ -143,13 +158,11 @@ class DeliveryFeeServiceTest {
         );
 
         when(weatherDataService.getWeatherDataForCityAtTime(eq("TALLINN"), eq(historicalDate))).thenReturn(Optional.of(weatherData));
-        when(businessRulesService.getRegionalBaseFee(eq("TALLINN"), eq("CAR"), eq(historicalDate))).thenReturn(new BigDecimal("4.0"));
-        when(businessRulesService.isVehicleUsageForbidden(eq("CAR"), eq(3.0), eq("Light snow"))).thenReturn(false);
 
         DeliveryFeeResponse response = deliveryFeeService.calculateDeliveryFee(request);
 
         assertFalse(response.hasError());
-        assertEquals(new BigDecimal("4.0"), response.getFee()); // Car has no extra fees
+        assertEquals(400L, response.getFeeCents()); // Car has no extra fees
     }
 
     @Test
@@ -166,4 +179,83 @@ class DeliveryFeeServiceTest {
         assertTrue(response.hasError());
         assertEquals("Weather data not available for the specified city", response.getError());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testCurrentQuotesAreServedFromPrecomputedMatrix() {
+        WeatherData weatherData = new WeatherData("Tallinn-Harku", "26038", 5.0, 4.0, "Clear", now);
+        when(weatherDataService.getLatestWeatherDataForCity(eq("TALLINN"))).thenReturn(Optional.of(weatherData));
+
+        DeliveryFeeRequest request = new DeliveryFeeRequest(
+                DeliveryFeeRequest.City.TALLINN,
+                DeliveryFeeRequest.VehicleType.SCOOTER
+        );
+
+        DeliveryFeeResponse first = deliveryFeeService.calculateDeliveryFee(request);
+        DeliveryFeeResponse second = deliveryFeeService.calculateDeliveryFee(request);
+
+        assertSame(first, second);
+        assertEquals(350L, first.getFeeCents());
+        verify(weatherDataService, times(1)).getLatestWeatherDataForCity("TALLINN");
+
+        WeatherData colderWeather = new WeatherData("Tallinn-Harku", "26038", -5.0, 4.0, "Clear", now.plusHours(1));
+        when(weatherDataService.getLatestWeatherDataForCity(eq("TALLINN"))).thenReturn(Optional.of(colderWeather));
+        deliveryFeeService.onWeatherDataIngested(new WeatherDataIngestedEvent(List.of(colderWeather)));
+
+        assertEquals(400L, deliveryFeeService.calculateDeliveryFee(request).getFeeCents());
+        verify(weatherDataService, times(2)).getLatestWeatherDataForCity("TALLINN");
+    }
+
+    @Test
+    void testQuoteSessionResolvesEachHistoricalObservationOnce() {
+        LocalDateTime historicalDate = LocalDateTime.of(2023, 1, 1, 12, 0);
+        WeatherData weatherData = new WeatherData("Tartu-Tõravere", "26242", -2.1, 4.7, "Light snow shower", historicalDate);
+        when(weatherDataService.getWeatherDataForCityAtTime(eq("TARTU"), eq(historicalDate))).thenReturn(Optional.of(weatherData));
+        when(weatherDataService.getWeatherDataForCityAtTime(eq("PARNU"), eq(historicalDate))).thenReturn(Optional.empty());
+
+        QuoteSession session = deliveryFeeService.openQuoteSession(16);
+
+        DeliveryFeeResponse bike = session.quote(new DeliveryFeeRequest(
+                DeliveryFeeRequest.City.TARTU, DeliveryFeeRequest.VehicleType.BIKE, historicalDate));
+        DeliveryFeeResponse car = session.quote(new DeliveryFeeRequest(
+                DeliveryFeeRequest.City.TARTU, DeliveryFeeRequest.VehicleType.CAR, historicalDate));
+        DeliveryFeeResponse missing = session.quote(new DeliveryFeeRequest(
+                DeliveryFeeRequest.City.PARNU, DeliveryFeeRequest.VehicleType.CAR, historicalDate));
+        session.quote(new DeliveryFeeRequest(
+                DeliveryFeeRequest.City.PARNU, DeliveryFeeRequest.VehicleType.BIKE, historicalDate));
+
+        assertEquals(400L, bike.getFeeCents());
+        assertEquals(350L, car.getFeeCents());
+        assertTrue(missing.hasError());
+        verify(weatherDataService, times(1)).getWeatherDataForCityAtTime("TARTU", historicalDate);
+        verify(weatherDataService, times(1)).getWeatherDataForCityAtTime("PARNU", historicalDate);
+    }
+
+    @Test
+    void testEachQuoteAndMatrixReadsOneRulesSnapshot() {
+        WeatherPhenomenonClassifier phenomenonClassifier = new WeatherPhenomenonClassifier();
+        BusinessRulesService businessRulesService = spy(new BusinessRulesService(
+                regionalBaseFeeRepository, weatherExtraFeeRepository, eventPublisher, phenomenonClassifier));
+        deliveryFeeService = new DeliveryFeeService(weatherDataService, businessRulesService, phenomenonClassifier,
+                new HistoricalQuoteCache(100, 3600));
+
+        LocalDateTime historicalDate = LocalDateTime.of(2023, 1, 1, 12, 0);
+        WeatherData weatherData = new WeatherData("Tartu-Tõravere", "26242", -2.1, 12.0, "Light snow shower", historicalDate);
+        when(weatherDataService.getWeatherDataForCityAtTime(eq("TARTU"), eq(historicalDate))).thenReturn(Optional.of(weatherData));
+        when(weatherDataService.getLatestWeatherDataForCity(eq("TARTU"))).thenReturn(Optional.of(weatherData));
+
+        // Every fee component of a bike quote applies, yet the snapshot is read once
+        DeliveryFeeResponse response = deliveryFeeService.calculateDeliveryFee(new DeliveryFeeRequest(
+                DeliveryFeeRequest.City.TARTU, DeliveryFeeRequest.VehicleType.BIKE, historicalDate));
+        assertEquals(450L, response.getFeeCents());
+        verify(businessRulesService, times(1)).getSnapshot();
+
+        deliveryFeeService.rebuildFeeMatrix();
+        verify(businessRulesService, times(2)).getSnapshot();
+
+        // Session quotes price with the snapshot of the session's fee matrix
+        QuoteSession session = deliveryFeeService.openQuoteSession(16);
+        session.quote(new DeliveryFeeRequest(
+                DeliveryFeeRequest.City.TARTU, DeliveryFeeRequest.VehicleType.SCOOTER, historicalDate));
+        verify(businessRulesService, times(2)).getSnapshot();
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.fooddeliveryfujitsu;
+
+import com.example.fooddeliveryfujitsu.events.BusinessRulesChangedEvent;
+import com.example.fooddeliveryfujitsu.events.ValidityInterval;
+import com.example.fooddeliveryfujitsu.events.WeatherDataIngestedEvent;
+import com.example.fooddeliveryfujitsu.events.WeatherHistoryBackfilledEvent;
+import com.example.fooddeliveryfujitsu.models.DeliveryFeeRequest;
+import com.example.fooddeliveryfujitsu.models.DeliveryFeeResponse;
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+import com.example.fooddeliveryfujitsu.services.HistoricalQuoteCache;
+import com.example.fooddeliveryfujitsu.services.PricedQuote;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoricalQuoteCacheTest {
+
+    private static final DeliveryFeeRequest.City TALLINN = DeliveryFeeRequest.City.TALLINN;
+    private static final DeliveryFeeRequest.VehicleType CAR = DeliveryFeeRequest.VehicleType.CAR;
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @Test
+    void testHitsMissesAndSizeEviction() {
+        HistoricalQuoteCache cache = new HistoricalQuoteCache(2, 3600);
+
+        assertNull(cache.get(TALLINN, CAR, T0));
+        cache.put(TALLINN, CAR, T0, quoteAt(T0), cache.currentGeneration());
+        cache.put(TALLINN, CAR, T0.plusHours(1), quoteAt(T0.plusHours(1)), cache.currentGeneration());
+        assertNotNull(cache.get(TALLINN, CAR, T0));
+        // T0 was used most recently, so the entry for T0 + 1h is evicted.
+        cache.put(TALLINN, CAR, T0.plusHours(2), quoteAt(T0.plusHours(2)), cache.currentGeneration());
+
+        assertNull(cache.get(TALLINN, CAR, T0.plusHours(1)));
+        assertNotNull(cache.get(TALLINN, CAR, T0));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    void testExpiredEntriesAreNotServed() {
+        HistoricalQuoteCache cache = new HistoricalQuoteCache(10, 0);
+
+        cache.put(TALLINN, CAR, T0, quoteAt(T0), cache.currentGeneration());
+
+        assertNull(cache.get(TALLINN, CAR, T0));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    void testRuleChangeInvalidatesOnlyCoveredTimes() {
+        HistoricalQuoteCache cache = new HistoricalQuoteCache(10, 3600);
+        cache.put(TALLINN, CAR, T0, quoteAt(T0), cache.currentGeneration());
+        cache.put(TALLINN, CAR, T0.plusDays(10), quoteAt(T0.plusDays(10)), cache.currentGeneration());
+
+        cache.onBusinessRulesChanged(new BusinessRulesChangedEvent(2L,
+                List.of(new ValidityInterval(T0.plusDays(5), T0.plusDays(20)))));
+
+        assertNotNull(cache.get(TALLINN, CAR, T0));
+        assertNull(cache.get(TALLINN, CAR, T0.plusDays(10)));
+    }
+
+    @Test
+    void testIngestInvalidatesOnlyWhenCloserObservationArrives() {
+        HistoricalQuoteCache cache = new HistoricalQuoteCache(10, 3600);
+        cache.put(TALLINN, CAR, T0, quoteAt(T0.minusMinutes(30)), cache.currentGeneration());
+
+        cache.onWeatherDataIngested(new WeatherDataIngestedEvent(List.of(observationAt(T0.plusHours(2)))));
+        assertNotNull(cache.get(TALLINN, CAR, T0));
+
+        cache.onWeatherDataIngested(new WeatherDataIngestedEvent(List.of(observationAt(T0.plusMinutes(10)))));
+        assertNull(cache.get(TALLINN, CAR, T0));
+    }
+
+    @Test
+    void testBackfillInvalidatesOnlyQuotesItCouldReprice() {
+        HistoricalQuoteCache cache = new HistoricalQuoteCache(10, 3600);
+        cache.put(TALLINN, CAR, T0, quoteAt(T0.minusMinutes(30)), cache.currentGeneration());
+        cache.put(TALLINN, CAR, T0.plusDays(10), quoteAt(T0.plusDays(10)), cache.currentGeneration());
+
+        // Imported history ending an hour before T0 is farther away than the observation the quote was priced from.
+        cache.onWeatherHistoryBackfilled(new WeatherHistoryBackfilledEvent(List.of(
+                observationAt(T0.minusYears(1)), observationAt(T0.minusHours(1)))));
+        assertNotNull(cache.get(TALLINN, CAR, T0));
+
+        cache.onWeatherHistoryBackfilled(new WeatherHistoryBackfilledEvent(List.of(
+                new WeatherData("Pärnu", "41803", -5.0, 3.0, "Clear", T0.minusMinutes(20)))));
+        assertNotNull(cache.get(TALLINN, CAR, T0));
+
+        cache.onWeatherHistoryBackfilled(new WeatherHistoryBackfilledEvent(List.of(
+                observationAt(T0.minusYears(1)), observationAt(T0.minusMinutes(20)))));
+        assertNull(cache.get(TALLINN, CAR, T0));
+        assertNotNull(cache.get(TALLINN, CAR, T0.plusDays(10)));
+    }
+
+    @Test
+    void testQuotesComputedBeforeInvalidationAreNotStored() {
+        HistoricalQuoteCache cache = new HistoricalQuoteCache(10, 3600);
+        long generation = cache.currentGeneration();
+
+        cache.onBusinessRulesChanged(new BusinessRulesChangedEvent(2L));
+        cache.put(TALLINN, CAR, T0, quoteAt(T0), generation);
+
+        assertEquals(0, cache.size());
+    }
+
+    private static PricedQuote quoteAt(LocalDateTime observedAt) {
+        DeliveryFeeResponse response = new DeliveryFeeResponse(400L,
+                new DeliveryFeeResponse.FeeBreakdown(400L, 0L, 0L, 0L));
+        return new PricedQuote(response, observationAt(observedAt), "rules", null);
+    }
+
+    private static WeatherData observationAt(LocalDateTime timestamp) {
+        return new WeatherData("Tallinn-Harku", "26038", -5.0, 3.0, "Clear", timestamp);
+    }
+}
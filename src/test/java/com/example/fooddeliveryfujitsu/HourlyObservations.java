@@ -0,0 +1,70 @@
+package com.example.fooddeliveryfujitsu;
+
+import com.example.fooddeliveryfujitsu.models.PhenomenonCategory;
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+import com.example.fooddeliveryfujitsu.store.ObservationDictionary;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Seed data for the benchmarks and QueryPlanTest. Rows are spread round-robin over the stations, one observation
+ * per station per hour from START, so row i is station i % 3 at hour i / 3 and a table of n rows can be grown to
+ * m rows by adding rows n to m.
+ */
+final class HourlyObservations {
+
+    static final String[] STATIONS = {"Tallinn-Harku", "Tartu-Tõravere", "Pärnu"};
+    static final String[] WMO_CODES = {"26038", "26242", "41803"};
+    // The cities of the stations, in the same order.
+    static final String[] CITIES = {"TALLINN", "TARTU", "PARNU"};
+    static final LocalDateTime START = LocalDateTime.of(2000, 1, 1, 0, 15);
+
+    private static final String INSERT = "INSERT INTO weather_data (station_id, air_temperature, wind_speed, " +
+            "phenomenon_id, phenomenon_category, timestamp) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final int BATCH_SIZE = 10000;
+
+    private HourlyObservations() {
+    }
+
+    // Inserts rows from to to, all with the same values, in plain JDBC batches.
+    static void insert(JdbcTemplate jdbcTemplate, ObservationDictionary dictionary, int from, int to) {
+        Integer clear = dictionary.phenomenonId("Clear");
+        List<Object[]> batch = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            batch.add(new Object[]{dictionary.stationId(STATIONS[i % STATIONS.length]), -1.0, 5.0, clear, "NONE",
+                    Timestamp.valueOf(START.plusHours(i / STATIONS.length))});
+            if (batch.size() == BATCH_SIZE || i == to - 1) {
+                jdbcTemplate.batchUpdate(INSERT, batch);
+                batch.clear();
+            }
+        }
+    }
+
+    // Hourly rows of one more station from START, with the same values as insert writes.
+    static void insertStation(JdbcTemplate jdbcTemplate, ObservationDictionary dictionary, String station, int hours) {
+        Integer clear = dictionary.phenomenonId("Clear");
+        List<Object[]> batch = new ArrayList<>();
+        for (int i = 0; i < hours; i++) {
+            batch.add(new Object[]{dictionary.stationId(station), -1.0, 5.0, clear, "NONE",
+                    Timestamp.valueOf(START.plusHours(i))});
+        }
+        jdbcTemplate.batchUpdate(INSERT, batch);
+    }
+
+    // The first rows as unsaved observations with varying values, for measuring the write paths themselves.
+    static List<WeatherData> observations(int rows) {
+        List<WeatherData> observations = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            int station = i % STATIONS.length;
+            WeatherData observation = new WeatherData(STATIONS[station], WMO_CODES[station], (i % 40) - 20.0,
+                    (i % 15) * 1.0, "Clear", START.plusHours(i / STATIONS.length));
+            observation.setPhenomenonCategory(PhenomenonCategory.NONE);
+            observations.add(observation);
+        }
+        return observations;
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.fooddeliveryfujitsu;
+
+import com.example.fooddeliveryfujitsu.models.IngestReport;
+import com.example.fooddeliveryfujitsu.models.PhenomenonCategory;
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+import com.example.fooddeliveryfujitsu.repositories.WeatherDataRepository;
+import com.example.fooddeliveryfujitsu.store.JpaObservationStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Batches of three rows, so that the inserts below span several JDBC batches.
+@SpringBootTest(properties = "weather.ingest.batch-size=3")
+@ActiveProfiles("test")
+class JpaObservationStoreTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 2, 1, 0, 15);
+
+    @Autowired
+    private JpaObservationStore store;
+
+    @Autowired
+    private WeatherDataRepository weatherDataRepository;
+
+    @BeforeEach
+    void setUp() {
+        weatherDataRepository.deleteAll();
+    }
+
+    @Test
+    void testBulkInsertStoresEveryFieldAndAssignsIds() {
+        List<WeatherData> observations = new ArrayList<>();
+        for (int hour = 0; hour < 8; hour++) {
+            WeatherData observation = new WeatherData("Pärnu", "41803", hour - 2.5, hour % 3 == 0 ? null : 4.0,
+                    hour % 2 == 0 ? "Light rain" : null, T0.plusHours(hour));
+            observation.setPhenomenonCategory(hour % 2 == 0 ? PhenomenonCategory.RAIN : PhenomenonCategory.NONE);
+            observations.add(observation);
+        }
+
+        IngestReport report = store.bulkInsert(observations);
+
+        assertEquals(8, report.getInserted());
+        assertEquals(0, report.getSkipped());
+        assertTrue(observations.stream().allMatch(observation -> observation.getId() != null));
+        WeatherData stored = weatherDataRepository.findById(observations.get(6).getId()).orElseThrow();
+        assertEquals(T0.plusHours(6), stored.getTimestamp());
+        assertEquals(3.5, stored.getAirTemperature());
+        assertNull(stored.getWindSpeed());
+        assertEquals("Light rain", stored.getWeatherPhenomenon());
+        assertEquals(PhenomenonCategory.RAIN, stored.getPhenomenonCategory());
+        assertEquals("41803", stored.getWmoCode());
+    }
+
+    @Test
+    void testBulkInsertSkipsStoredAndRepeatedReadings() {
+        store.bulkInsert(new ArrayList<>(List.of(
+                new WeatherData("Pärnu", "41803", 1.0, 1.0, null, T0),
+                new WeatherData("Pärnu", "41803", 2.0, 1.0, null, T0.plusHours(2)))));
+
+        IngestReport report = store.bulkInsert(new ArrayList<>(List.of(
+                new WeatherData("Pärnu", "41803", 9.0, 1.0, null, T0),
+                new WeatherData("Pärnu", "41803", 3.0, 1.0, null, T0.plusHours(1)),
+                new WeatherData("Pärnu", "41803", 3.5, 1.0, null, T0.plusHours(1)),
+                new WeatherData("Tartu-Tõravere", "26242", 4.0, 1.0, null, T0),
+                new WeatherData("Pärnu", "41803", 9.0, 1.0, null, T0.plusHours(2)))));
+
+        assertEquals(2, report.getInserted());
+        assertEquals(3, report.getSkipped());
+        assertEquals(List.of(1.0, 3.0, 2.0), weatherDataRepository.findByStationNameInRange("Pärnu", T0, T0.plusDays(1))
+                .stream().map(WeatherData::getAirTemperature).toList());
+        assertEquals(4.0, store.findLatest("Tartu-Tõravere").orElseThrow().getAirTemperature());
+    }
+
+    @Test
+    void testCorrectionOfARunIsRejectedAndReported() {
+        WeatherData run = new WeatherData("Pärnu", "41803", -2.0, 1.0, null, T0);
+        store.saveAll(List.of(run, new WeatherData("Pärnu", "41803", 1.0, 1.0, null, T0.plusHours(5))));
+        assertTrue(store.extend(run.getId(), T0.plusHours(3)));
+
+        WeatherData correction = new WeatherData("Pärnu", "41803", -6.0, 1.0, null, T0);
+        WeatherData single = new WeatherData("Pärnu", "41803", 2.0, 1.0, null, T0.plusHours(5));
+        IngestReport report = store.upsertAll(List.of(correction, single));
+
+        assertEquals(1, report.getUpdated());
+        assertEquals(1, report.getRejectedCorrections());
+        assertEquals(0, report.getSkipped());
+        // The run still reports its old values at both ends; the reading takes what is stored.
+        assertEquals(-2.0, correction.getAirTemperature());
+        assertEquals(-2.0, store.findNearest("Pärnu", T0).orElseThrow().getAirTemperature());
+        WeatherData end = store.findNearest("Pärnu", T0.plusHours(3)).orElseThrow();
+        assertEquals(T0.plusHours(3), end.getTimestamp());
+        assertEquals(-2.0, end.getAirTemperature());
+        assertEquals(2.0, store.findNearest("Pärnu", T0.plusHours(5)).orElseThrow().getAirTemperature());
+    }
+
+    @Test
+    void testLoadRecentStreamsTheNewestRowsOldestFirst() {
+        List<WeatherData> observations = new ArrayList<>();
+        for (int hour = 0; hour < 6; hour++) {
+            observations.add(new WeatherData("Pärnu", "41803", (double) hour, 2.0, "Clear", T0.plusHours(hour)));
+        }
+        // The newest row stands for a run of unchanged readings up to T0 + 8h.
+        observations.get(5).setObservedUntil(T0.plusHours(8));
+        store.bulkInsert(observations);
+
+        List<LocalDateTime> times = new ArrayList<>();
+        int rows = store.loadRecent("Pärnu", 3, (timestamp, airTemperature, windSpeed, phenomenon, id, wmoCode) -> {
+            assertEquals("Clear", phenomenon);
+            assertEquals("41803", wmoCode);
+            times.add(timestamp);
+        });
+
+        assertEquals(3, rows);
+        assertEquals(List.of(T0.plusHours(3), T0.plusHours(4), T0.plusHours(5), T0.plusHours(8)), times);
+
+        // Fewer rows than the limit: the whole history, which tells the caller nothing older exists.
+        times.clear();
+        assertEquals(6, store.loadRecent("Pärnu", 100, (timestamp, airTemperature, windSpeed, phenomenon, id, wmoCode)
+                -> times.add(timestamp)));
+        assertEquals(T0, times.get(0));
+        assertEquals(0, store.loadRecent("Tartu-Tõravere", 100, (timestamp, airTemperature, windSpeed, phenomenon, id,
+                                                                  wmoCode) -> fail("No rows expected")));
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.fooddeliveryfujitsu;
+
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+import com.example.fooddeliveryfujitsu.repositories.WeatherDataRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Boots against a database created by the first release: weather_data with string station columns and a reading
+ * stored twice. Hibernate adds the unique reading key while station_id is still empty, so the migration has to
+ * drop the duplicates before it fills the ids.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:legacydb;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=update",
+        "spring.sql.init.schema-locations=classpath:schema-legacy.sql",
+        "spring.sql.init.encoding=UTF-8"
+})
+@ActiveProfiles("test")
+class LegacySchemaMigrationTest {
+
+    // Legacy columns left when the context was refreshed, i.e. before the web server and the scheduled jobs start.
+    private static volatile Integer legacyColumnsAtRefresh;
+
+    @TestConfiguration
+    static class RefreshProbe {
+        @Bean
+        ApplicationListener<ContextRefreshedEvent> legacyColumnsAtRefresh(JdbcTemplate jdbcTemplate) {
+            return event -> legacyColumnsAtRefresh = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " +
+                    "INFORMATION_SCHEMA.COLUMNS WHERE UPPER(TABLE_NAME) = 'WEATHER_DATA' " +
+                    "AND UPPER(COLUMN_NAME) = 'STATION_NAME'", Integer.class);
+        }
+    }
+
+    @Autowired
+    private WeatherDataRepository weatherDataRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void testLegacyDatabaseWithDuplicateReadingsIsMigratedAtStartup() {
+        assertEquals(0, legacyColumnsAtRefresh);
+        List<String> columns = jdbcTemplate.queryForList("SELECT UPPER(COLUMN_NAME) FROM INFORMATION_SCHEMA.COLUMNS " +
+                "WHERE UPPER(TABLE_NAME) = 'WEATHER_DATA'", String.class);
+        assertFalse(columns.contains("STATION_NAME"));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM weather_data WHERE station_id IS NULL", Integer.class));
+
+        assertEquals(2, weatherDataRepository.findByStationNameInRange("Tallinn-Harku",
+                LocalDateTime.of(2025, 1, 15, 0, 0), LocalDateTime.of(2025, 1, 16, 0, 0)).size());
+        WeatherData latest = weatherDataRepository.findLatestByStationName("Tallinn-Harku").get();
+        assertEquals(-4.0, latest.getAirTemperature());
+        assertEquals("26038", latest.getWmoCode());
+        assertTrue(weatherDataRepository.findLatestByStationName("Pärnu").isPresent());
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.fooddeliveryfujitsu;
+
+import com.example.fooddeliveryfujitsu.models.IngestReport;
+import com.example.fooddeliveryfujitsu.models.PhenomenonCategory;
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+import com.example.fooddeliveryfujitsu.store.LogObservationStore;
+import com.example.fooddeliveryfujitsu.store.ObservationCursor;
+import com.example.fooddeliveryfujitsu.util.WeatherPhenomenonClassifier;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogObservationStoreTest {
+
+    private static final String STATION = "Tartu-Tõravere";
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 1, 1, 0, 15);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testSavedObservationsRoundTripExactly() throws Exception {
+        LogObservationStore store = open(24, 1 << 20);
+        store.saveAll(List.of(
+                new WeatherData(STATION, "26242", -2.1, 4.7, "Light snow shower", T0),
+                new WeatherData(STATION, "26242", null, 0.3, null, T0.plusHours(1))));
+
+        List<WeatherData> recent = store.findRecent(STATION, 10);
+        assertEquals(2, recent.size());
+        assertEquals(T0.plusHours(1), recent.get(0).getTimestamp());
+        assertNull(recent.get(0).getAirTemperature());
+        assertNull(recent.get(0).getWeatherPhenomenon());
+        assertEquals(0.3, recent.get(0).getWindSpeed());
+
+        WeatherData first = recent.get(1);
+        assertEquals(STATION, first.getStationName());
+        assertEquals("26242", first.getWmoCode());
+        assertEquals(-2.1, first.getAirTemperature());
+        assertEquals(4.7, first.getWindSpeed());
+        assertEquals("Light snow shower", first.getWeatherPhenomenon());
+        assertEquals(PhenomenonCategory.SNOW_SLEET, first.getPhenomenonCategory());
+        assertNotNull(first.getId());
+        store.destroy();
+    }
+
+    @Test
+    void testNearestSearchesNeighbouringSegments() throws Exception {
+        // One-hour buckets, so every observation sits in its own segment file.
+        LogObservationStore store = open(1, 1 << 20);
+        List<WeatherData> observations = new ArrayList<>();
+        for (int hour = 0; hour < 10; hour += 3) {
+            observations.add(new WeatherData(STATION, "26242", (double) hour, 1.0, null, T0.plusHours(hour)));
+        }
+        store.saveAll(observations);
+
+        assertEquals(T0.plusHours(3), store.findNearest(STATION, T0.plusHours(4)).get().getTimestamp());
+        assertEquals(T0.plusHours(6), store.findNearest(STATION, T0.plusHours(5)).get().getTimestamp());
+        // Equally distant neighbours resolve to the earlier observation.
+        assertEquals(T0.plusHours(3), store.findNearest(STATION, T0.plusHours(4).plusMinutes(30)).get().getTimestamp());
+        assertEquals(T0, store.findNearest(STATION, T0.minusDays(2)).get().getTimestamp());
+        assertEquals(T0.plusHours(9), store.findNearest(STATION, T0.plusDays(2)).get().getTimestamp());
+        assertTrue(store.findNearest("Pärnu", T0).isEmpty());
+        store.destroy();
+    }
+
+    @Test
+    void testReopenedLogKeepsCommittedObservationsAndAppends() throws Exception {
+        // Small segments force several rolls within one bucket.
+        LogObservationStore store = open(168, 256);
+        List<WeatherData> observations = new ArrayList<>();
+        for (int hour = 0; hour < 50; hour++) {
+            observations.add(new WeatherData(STATION, "26242", (hour - 21) / 10.0, 3.0, hour % 2 == 0 ? "Clear" : "Light rain",
+                    T0.plusHours(hour)));
+        }
+        store.saveAll(observations);
+        Long latestId = store.findLatest(STATION).get().getId();
+        store.destroy();
+
+        LogObservationStore reopened = open(168, 256);
+        assertEquals(50, reopened.findRecent(STATION, 100).size());
+        assertEquals(latestId, reopened.findLatest(STATION).get().getId());
+
+        reopened.saveAll(List.of(new WeatherData(STATION, "26242", 7.5, 2.0, "Clear", T0.plusHours(50))));
+        WeatherData latest = reopened.findLatest(STATION).get();
+        assertEquals(T0.plusHours(50), latest.getTimestamp());
+        assertEquals(7.5, latest.getAirTemperature());
+
+        WeatherData middle = reopened.findNearest(STATION, T0.plusHours(25)).get();
+        assertEquals(observations.get(25).getAirTemperature(), middle.getAirTemperature());
+        assertEquals("Light rain", middle.getWeatherPhenomenon());
+        reopened.destroy();
+    }
+
+    @Test
+    void testRangePagesAcrossSegmentsInTimeOrder() throws Exception {
+        LogObservationStore store = open(2, 1 << 20);
+        List<WeatherData> observations = new ArrayList<>();
+        // Saved newest first, so that order within and across segments comes from the read, not the append.
+        for (int hour = 9; hour >= 0; hour--) {
+            observations.add(new WeatherData(STATION, "26242", (double) hour, 1.0, null, T0.plusHours(hour)));
+        }
+        store.saveAll(observations);
+
+        List<WeatherData> first = store.findRange(STATION, T0.plusHours(1), T0.plusHours(8), null, 4);
+        assertEquals(List.of(1.0, 2.0, 3.0, 4.0), first.stream().map(WeatherData::getAirTemperature).toList());
+
+        List<WeatherData> rest = store.findRange(STATION, T0.plusHours(1), T0.plusHours(8),
+                ObservationCursor.after(first.get(3)), 4);
+        assertEquals(List.of(5.0, 6.0, 7.0), rest.stream().map(WeatherData::getAirTemperature).toList());
+        assertTrue(store.findRange("Pärnu", T0, T0.plusDays(1), null, 4).isEmpty());
+        store.destroy();
+    }
+
+    @Test
+    void testUpsertSkipsReadingsAlreadyLogged() throws Exception {
+        LogObservationStore store = open(24, 1 << 20);
+        List<WeatherData> feed = List.of(
+                new WeatherData(STATION, "26242", -2.1, 4.7, "Clear", T0),
+                new WeatherData(STATION, "26242", -1.0, 4.0, "Clear", T0.plusHours(1)));
+        IngestReport first = store.upsertAll(feed);
+        assertEquals(2, first.getInserted());
+
+        IngestReport again = store.upsertAll(List.of(
+                new WeatherData(STATION, "26242", -2.1, 4.7, "Clear", T0),
+                new WeatherData(STATION, "26242", 0.5, 3.0, "Clear", T0.plusHours(2))));
+        assertEquals(1, again.getInserted());
+        assertEquals(1, again.getSkipped());
+        assertEquals(3, store.findRecent(STATION, 10).size());
+        store.destroy();
+    }
+
+    private LogObservationStore open(long segmentHours, int segmentBytes) throws Exception {
+        return new LogObservationStore(directory.toString(), segmentHours, segmentBytes, new WeatherPhenomenonClassifier());
+    }
+}
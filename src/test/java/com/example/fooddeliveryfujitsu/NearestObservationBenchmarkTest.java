@@ -0,0 +1,90 @@
+package com.example.fooddeliveryfujitsu;
+
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+import com.example.fooddeliveryfujitsu.repositories.WeatherDataRepository;
+import com.example.fooddeliveryfujitsu.services.WeatherDataService;
+import com.example.fooddeliveryfujitsu.store.ObservationDictionary;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Measures nearest-observation lookups as weather_data grows. Run with: mvn test -Pbenchmark
+ * Row counts can be overridden with -Dbenchmark.rows=10000,100000,1000000
+ */
+@Tag("benchmark")
+@SpringBootTest
+@ActiveProfiles("test")
+class NearestObservationBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(NearestObservationBenchmarkTest.class);
+
+    private static final int LOOKUPS = 2000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private WeatherDataRepository weatherDataRepository;
+
+    @Autowired
+    private WeatherDataService weatherDataService;
+
+    @Autowired
+    private ObservationDictionary dictionary;
+
+    @Test
+    void nearestObservationLatencyIsFlatInTableSize() {
+        String[] sizes = System.getProperty("benchmark.rows", "10000,100000,1000000").split(",");
+        weatherDataRepository.deleteAll();
+
+        Map<Integer, Double> microsPerLookup = new LinkedHashMap<>();
+        int inserted = 0;
+        for (String size : sizes) {
+            int rows = Integer.parseInt(size.trim());
+            HourlyObservations.insert(jdbcTemplate, dictionary, inserted, rows);
+            inserted = rows;
+            microsPerLookup.put(rows, measureLookups(rows));
+        }
+
+        microsPerLookup.forEach((rows, micros) ->
+                logger.info("{}", String.format("weather_data rows=%,d  nearest lookup=%.1f us", rows, micros)));
+
+        double smallest = microsPerLookup.values().iterator().next();
+        double largest = new ArrayList<>(microsPerLookup.values()).get(microsPerLookup.size() - 1);
+        assertTrue(largest < smallest * 5, "Nearest-observation lookup latency grows with table size");
+    }
+
+    private double measureLookups(int rows) {
+        long hours = Math.max(rows / HourlyObservations.STATIONS.length, 1);
+        Random random = new Random(rows);
+        String[] cities = HourlyObservations.CITIES;
+        LocalDateTime start = HourlyObservations.START;
+
+        // Warm-up, then the measured run.
+        for (int i = 0; i < LOOKUPS / 4; i++) {
+            weatherDataService.getWeatherDataForCityAtTime(cities[i % 3], start.plusMinutes(random.nextInt((int) hours * 60)));
+        }
+        long started = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            Optional<WeatherData> found = weatherDataService.getWeatherDataForCityAtTime(cities[i % 3],
+                    start.plusMinutes(random.nextInt((int) hours * 60)));
+            assertTrue(found.isPresent());
+        }
+        return (System.nanoTime() - started) / 1000.0 / LOOKUPS;
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.fooddeliveryfujitsu;
+
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+import com.example.fooddeliveryfujitsu.repositories.WeatherDataRepository;
+import com.example.fooddeliveryfujitsu.store.ObservationDictionary;
+import com.example.fooddeliveryfujitsu.store.ObservationSchemaMigration;
+import com.example.fooddeliveryfujitsu.store.ObservationStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class ObservationDictionaryTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 1, 15, 10, 15);
+
+    @Autowired
+    private WeatherDataRepository weatherDataRepository;
+
+    @Autowired
+    private ObservationDictionary dictionary;
+
+    @Autowired
+    private ObservationSchemaMigration migration;
+
+    @Autowired
+    private ObservationStore observationStore;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        weatherDataRepository.deleteAll();
+    }
+
+    @Test
+    void testObservationsAreStoredAsDimensionIds() {
+        weatherDataRepository.save(new WeatherData("Tartu-Tõravere", "26242", -2.1, 4.0, "Light snow shower", T0));
+
+        Map<String, Object> row = jdbcTemplate.queryForMap("SELECT station_id, phenomenon_id FROM weather_data");
+        assertEquals(dictionary.stationId("Tartu-Tõravere"), ((Number) row.get("STATION_ID")).intValue());
+        assertEquals(dictionary.phenomenonId("Light snow shower"), ((Number) row.get("PHENOMENON_ID")).intValue());
+        assertEquals("26242", jdbcTemplate.queryForObject(
+                "SELECT wmo_code FROM weather_station WHERE name = ?", String.class, "Tartu-Tõravere"));
+
+        WeatherData loaded = weatherDataRepository.findLatestByStationName("Tartu-Tõravere").get();
+        assertEquals("Tartu-Tõravere", loaded.getStationName());
+        assertEquals("26242", loaded.getWmoCode());
+        assertEquals("Light snow shower", loaded.getWeatherPhenomenon());
+        assertTrue(weatherDataRepository.findLatestByStationName("Pärnu").isEmpty());
+    }
+
+    @Test
+    void testDictionaryIsBidirectional() {
+        Integer id = dictionary.stationId("Tallinn-Harku");
+        assertEquals(id, dictionary.stationId("Tallinn-Harku"));
+        assertEquals("Tallinn-Harku", dictionary.stationName(id));
+        assertNotEquals(id, dictionary.stationId("Pärnu"));
+        assertNull(dictionary.stationId(null));
+
+        Integer rain = dictionary.phenomenonId("Moderate rain");
+        assertEquals("Moderate rain", dictionary.phenomenon(rain));
+    }
+
+    @Test
+    void testDuplicateReadingsAreRemovedBeforeAddingTheUniqueKey() {
+        jdbcTemplate.execute("ALTER TABLE weather_data DROP CONSTRAINT uk_station_timestamp");
+        Integer station = dictionary.stationId("Pärnu");
+        for (double temperature : new double[]{1.0, 1.0, 2.0}) {
+            jdbcTemplate.update("INSERT INTO weather_data (station_id, air_temperature, timestamp) VALUES (?, ?, ?)",
+                    station, temperature, Timestamp.valueOf(T0));
+        }
+        jdbcTemplate.update("INSERT INTO weather_data (station_id, air_temperature, timestamp) VALUES (?, ?, ?)",
+                station, 3.0, Timestamp.valueOf(T0.plusHours(1)));
+
+        migration.enforceUniqueReadings();
+
+        assertEquals(List.of(1.0, 3.0), jdbcTemplate.queryForList(
+                "SELECT air_temperature FROM weather_data ORDER BY timestamp", Double.class));
+        assertThrows(DataIntegrityViolationException.class, () -> jdbcTemplate.update(
+                "INSERT INTO weather_data (station_id, air_temperature, timestamp) VALUES (?, ?, ?)",
+                station, 4.0, Timestamp.valueOf(T0)));
+
+        // Already unique: nothing left to do.
+        migration.enforceUniqueReadings();
+    }
+
+    @Test
+    void testLegacyStringColumnsAreMigrated() {
+        jdbcTemplate.execute("ALTER TABLE weather_data ADD COLUMN station_name VARCHAR(100)");
+        jdbcTemplate.execute("ALTER TABLE weather_data ADD COLUMN wmo_code VARCHAR(10)");
+        jdbcTemplate.execute("ALTER TABLE weather_data ADD COLUMN weather_phenomenon VARCHAR(100)");
+        jdbcTemplate.execute("ALTER TABLE weather_data ALTER COLUMN station_id SET NULL");
+        jdbcTemplate.update("INSERT INTO weather_data (station_name, wmo_code, air_temperature, wind_speed, " +
+                        "weather_phenomenon, phenomenon_category, timestamp) VALUES (?, ?, ?, ?, ?, ?, ?)",
+                "Legacy-Station", "99999", 1.5, 3.0, "Legacy fog", "NONE", Timestamp.valueOf(T0));
+
+        migration.migrateLegacyColumns();
+
+        List<String> columns = jdbcTemplate.queryForList("SELECT UPPER(COLUMN_NAME) FROM INFORMATION_SCHEMA.COLUMNS " +
+                "WHERE UPPER(TABLE_NAME) = 'WEATHER_DATA'", String.class);
+        assertFalse(columns.contains("STATION_NAME"));
+        assertFalse(columns.contains("WEATHER_PHENOMENON"));
+
+        WeatherData migrated = weatherDataRepository.findLatestByStationName("Legacy-Station").get();
+        assertEquals("99999", migrated.getWmoCode());
+        assertEquals("Legacy fog", migrated.getWeatherPhenomenon());
+        assertEquals(1.5, migrated.getAirTemperature());
+
+        // Already migrated: nothing left to do.
+        migration.migrateLegacyColumns();
+    }
+
+    @Test
+    void testReadsOfAnUnknownStationDoNotAddIt() {
+        String unknown = "Never-Ingested";
+
+        assertTrue(weatherDataRepository.findLatestByStationName(unknown).isEmpty());
+        assertTrue(weatherDataRepository.findByStationNameInRange(unknown, T0, T0.plusDays(1)).isEmpty());
+        assertTrue(observationStore.findNearest(unknown, T0).isEmpty());
+        assertTrue(observationStore.findRange(unknown, T0, T0.plusDays(1), null, 10).isEmpty());
+        assertEquals(0, observationStore.loadRecent(unknown, 10, (timestamp, air, wind, phenomenon, id, wmo) -> { }));
+
+        assertEquals(ObservationDictionary.UNKNOWN_STATION_ID, dictionary.findStationId(unknown));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM weather_station WHERE name = ?", Integer.class, unknown));
+
+        // Writing the station adds it, and reads find it from then on.
+        weatherDataRepository.save(new WeatherData(unknown, null, 1.0, 2.0, "Clear", T0));
+        assertEquals(dictionary.stationId(unknown), dictionary.findStationId(unknown));
+        assertTrue(weatherDataRepository.findLatestByStationName(unknown).isPresent());
+    }
+}
@@ -0,0 +1,355 @@
+package com.example.fooddeliveryfujitsu;
+
+import com.example.fooddeliveryfujitsu.models.CursorPage;
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+import com.example.fooddeliveryfujitsu.repositories.RegionalBaseFeeRepository;
+import com.example.fooddeliveryfujitsu.repositories.WeatherDataRepository;
+import com.example.fooddeliveryfujitsu.repositories.WeatherExtraFeeRepository;
+import com.example.fooddeliveryfujitsu.services.BusinessRulesService;
+import com.example.fooddeliveryfujitsu.store.ObservationDictionary;
+import com.example.fooddeliveryfujitsu.store.ObservationStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs every query of the weather and rule repositories and of the JDBC observation store, and checks with
+ * EXPLAIN that H2 answers each from an index without a full scan or a sort. The schema is the one Hibernate
+ * generates from the entities, as ddl-auto does in production.
+ * The plan check runs with the regular tests on a small table; the timings per call against growing tables
+ * run with: mvn test -Pbenchmark; row counts can be overridden with -Dbenchmark.rows=10000,100000,1000000
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class QueryPlanTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryPlanTest.class);
+
+    // A station with fewer rows than the recent history limit.
+    private static final String SPARSE_STATION = "Kuressaare linn";
+    private static final String[] VEHICLES = {"CAR", "SCOOTER", "BIKE"};
+    private static final String[] FEE_TYPES = {"ATEF", "WSEF", "WPEF"};
+    private static final int PLAN_ROWS = 3000;
+
+    // A scan with no index condition at all: H2 marks it as tableScan, or names the index without a condition.
+    private static final Pattern FULL_SCAN = Pattern.compile("\\.tableScan|/\\* PUBLIC\\.\\w+ \\*/");
+    private static final long MIN_CALLS = 20;
+    private static final long MEASURE_NANOS = 1_000_000_000L;
+
+    // Statements prepared while a query case runs, by Hibernate and by plain JDBC alike.
+    private static final List<String> captured = new ArrayList<>();
+    private static volatile boolean capturing;
+
+    @TestConfiguration
+    static class StatementCaptureConfiguration {
+        @Bean
+        static BeanPostProcessor statementCapture() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource ? new CapturingDataSource((DataSource) bean) : bean;
+                }
+            };
+        }
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private WeatherDataRepository weatherDataRepository;
+
+    @Autowired
+    private RegionalBaseFeeRepository regionalBaseFeeRepository;
+
+    @Autowired
+    private WeatherExtraFeeRepository weatherExtraFeeRepository;
+
+    @Autowired
+    private BusinessRulesService businessRulesService;
+
+    @Autowired
+    private ObservationStore observationStore;
+
+    @Autowired
+    private ObservationDictionary dictionary;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void tearDown() {
+        truncateTables();
+    }
+
+    @Test
+    void everyQueryIsServedByAnIndex() {
+        truncateTables();
+        insertRows(0, PLAN_ROWS);
+        jdbcTemplate.execute("ANALYZE");
+
+        List<String> violations = new ArrayList<>();
+        queryCases().forEach((name, queryCase) -> {
+            List<String> statements = capture(queryCase);
+            if (statements.isEmpty()) {
+                violations.add(name + ": ran no statement");
+            }
+            for (String sql : statements) {
+                String plan = explain(sql);
+                String problem = planProblem(plan);
+                if (problem != null) {
+                    violations.add(name + ": " + problem + "\n" + plan);
+                }
+            }
+        });
+        assertTrue(violations.isEmpty(), "Queries without a usable index:\n" + String.join("\n\n", violations));
+    }
+
+    @Test
+    @Tag("benchmark")
+    void queryTimings() {
+        String[] sizes = System.getProperty("benchmark.rows", "10000,100000,1000000").split(",");
+        truncateTables();
+
+        Map<String, Runnable> cases = queryCases();
+        Map<String, Map<Integer, Double>> microsPerCall = new LinkedHashMap<>();
+        int inserted = 0;
+        for (String size : sizes) {
+            int rows = Integer.parseInt(size.trim());
+            insertRows(inserted, rows);
+            inserted = rows;
+            jdbcTemplate.execute("ANALYZE");
+
+            cases.forEach((name, queryCase) -> microsPerCall.computeIfAbsent(name, key -> new LinkedHashMap<>())
+                    .put(rows, measure(queryCase)));
+        }
+
+        microsPerCall.forEach((query, timings) -> {
+            StringBuilder line = new StringBuilder(String.format("%-55s", query));
+            timings.forEach((rows, micros) -> line.append(String.format("  rows=%,d: %,.1f us", rows, micros)));
+            logger.info("{}", line);
+        });
+    }
+
+    private Map<String, Runnable> queryCases() {
+        String station = HourlyObservations.STATIONS[1];
+        LocalDateTime middle = HourlyObservations.START.plusDays(10);
+        LocalDateTime future = HourlyObservations.START.plusYears(500);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        Map<String, Runnable> cases = new LinkedHashMap<>();
+        cases.put("WeatherData.findByStationNameAndTimestamp",
+                () -> weatherDataRepository.findByStationNameAndTimestamp(station, HourlyObservations.START.plusHours(240)));
+        cases.put("WeatherData.findLatestByStationName",
+                () -> weatherDataRepository.findLatestByStationName(station));
+        cases.put("WeatherData.findFloorByStationNameAndTimestamp",
+                () -> weatherDataRepository.findFloorByStationNameAndTimestamp(station, middle));
+        cases.put("WeatherData.findCeilingByStationNameAndTimestamp",
+                () -> weatherDataRepository.findCeilingByStationNameAndTimestamp(station, middle));
+        cases.put("WeatherData.findByStationNameOrderBy...Desc (limit 100)",
+                () -> weatherDataRepository.findByStationNameOrderByStationNameDescTimestampDesc(station, Limit.of(100)));
+        cases.put("WeatherData.findOldestByStationName",
+                () -> weatherDataRepository.findOldestByStationName(station));
+        cases.put("WeatherData.findByStationNameInRange (1 day)",
+                () -> weatherDataRepository.findByStationNameInRange(station, middle, middle.plusDays(1)));
+        // Modifying queries run against rows that do not exist, so the data stays the same for every size.
+        cases.put("WeatherData.deleteByStationNameInRange",
+                () -> transaction.executeWithoutResult(status ->
+                        weatherDataRepository.deleteByStationNameInRange(station, future, future.plusDays(1))));
+        cases.put("WeatherData.extendObservedUntil",
+                () -> weatherDataRepository.extendObservedUntil(-1L, middle));
+
+        cases.put("ObservationStore.findRange (page of 100)",
+                () -> observationStore.findRange(station, middle, middle.plusDays(30), null, 100));
+        // Every reading is stored already, so only the lookup of stored times runs and nothing is inserted.
+        cases.put("ObservationStore.bulkInsert (stored times)",
+                () -> observationStore.bulkInsert(List.of(storedReading(station, middle))));
+        cases.put("ObservationStore.loadRecent (100 rows)",
+                () -> observationStore.loadRecent(station, 100, (timestamp, air, wind, phenomenon, id, wmo) -> { }));
+        cases.put("ObservationStore.loadRecent (fewer rows than the limit)",
+                () -> observationStore.loadRecent(SPARSE_STATION, 100, (timestamp, air, wind, phenomenon, id, wmo) -> { }));
+
+        cases.put("RegionalBaseFee.findByCityAndVehicleTypeOrderByValidFromDesc",
+                () -> regionalBaseFeeRepository.findByCityAndVehicleTypeOrderByValidFromDesc("TARTU", "BIKE"));
+        cases.put("RegionalBaseFee list (city, vehicle)",
+                () -> businessRulesService.findRegionalBaseFees("TARTU", "BIKE", null, null, 100));
+        cases.put("RegionalBaseFee list (city, vehicle, active at)",
+                () -> businessRulesService.findRegionalBaseFees("TARTU", "BIKE", middle, null, 100));
+        cases.put("RegionalBaseFee list (vehicle, after cursor)",
+                () -> businessRulesService.findRegionalBaseFees(null, "BIKE", null, cursorAt(100), 100));
+        cases.put("RegionalBaseFee list (unfiltered)",
+                () -> businessRulesService.findRegionalBaseFees(null, null, null, null, 100));
+
+        cases.put("WeatherExtraFee.findByFeeTypeOrderByValidFromDesc",
+                () -> weatherExtraFeeRepository.findByFeeTypeOrderByValidFromDesc("WSEF"));
+        cases.put("WeatherExtraFee list (fee type, vehicle)",
+                () -> businessRulesService.findWeatherExtraFees("WSEF", "BIKE", null, null, 100));
+        cases.put("WeatherExtraFee list (fee type, vehicle, active at)",
+                () -> businessRulesService.findWeatherExtraFees("WSEF", "BIKE", middle, null, 100));
+        cases.put("WeatherExtraFee list (vehicle, after cursor)",
+                () -> businessRulesService.findWeatherExtraFees(null, "BIKE", null, cursorAt(100), 100));
+        return cases;
+    }
+
+    private static String cursorAt(long id) {
+        return CursorPage.encodeCursor(id);
+    }
+
+    // Same values as insertRows writes, at an hour every station has.
+    private static WeatherData storedReading(String station, LocalDateTime hour) {
+        return new WeatherData(station, null, -1.0, 5.0, "Clear", hour);
+    }
+
+    private static List<String> capture(Runnable queryCase) {
+        synchronized (captured) {
+            captured.clear();
+        }
+        capturing = true;
+        try {
+            queryCase.run();
+        } finally {
+            capturing = false;
+        }
+        synchronized (captured) {
+            return new ArrayList<>(captured);
+        }
+    }
+
+    // H2 explains a statement with its parameters unset, so the captured SQL can be used as it is.
+    private String explain(String sql) {
+        return jdbcTemplate.execute((ConnectionCallback<String>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql);
+                 ResultSet rs = statement.executeQuery()) {
+                StringBuilder plan = new StringBuilder();
+                while (rs.next()) {
+                    plan.append(rs.getString(1));
+                }
+                return plan.toString();
+            }
+        });
+    }
+
+    // An ordered read of a bounded prefix of an index is fine even without an index condition.
+    private static String planProblem(String plan) {
+        boolean indexSorted = plan.contains("/* index sorted */");
+        if (plan.contains("ORDER BY") && !indexSorted) {
+            return "sorts its result";
+        }
+        if (FULL_SCAN.matcher(plan).find() && !(indexSorted && plan.contains("FETCH FIRST"))) {
+            return "scans the whole table";
+        }
+        return null;
+    }
+
+    private static double measure(Runnable queryCase) {
+        for (int i = 0; i < 3; i++) {
+            queryCase.run();
+        }
+        long calls = 0;
+        long started = System.nanoTime();
+        long elapsed;
+        do {
+            queryCase.run();
+            calls++;
+            elapsed = System.nanoTime() - started;
+        } while (calls < MIN_CALLS || elapsed < MEASURE_NANOS);
+        return elapsed / 1000.0 / calls;
+    }
+
+    // Observations are seeded by HourlyObservations; the rule tables get the same number of rows, spread
+    // round-robin over cities, vehicles and fee types. The sparse station gets a few rows with the first call.
+    private void insertRows(int from, int to) {
+        if (from == 0) {
+            HourlyObservations.insertStation(jdbcTemplate, dictionary, SPARSE_STATION, 10);
+        }
+        HourlyObservations.insert(jdbcTemplate, dictionary, from, to);
+
+        List<Object[]> baseFees = new ArrayList<>();
+        List<Object[]> extraFees = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            Timestamp validFrom = Timestamp.valueOf(HourlyObservations.START.plusMinutes(i));
+            baseFees.add(new Object[]{HourlyObservations.CITIES[i % 3], VEHICLES[(i / 3) % 3], 3.0, validFrom});
+            extraFees.add(new Object[]{FEE_TYPES[i % 3], VEHICLES[(i / 3) % 3], (double) (i % 20), 0.5, validFrom});
+            if (baseFees.size() >= 10000 || i == to - 1) {
+                jdbcTemplate.batchUpdate("INSERT INTO regional_base_fee (city, vehicle_type, fee, valid_from) " +
+                        "VALUES (?, ?, ?, ?)", baseFees);
+                jdbcTemplate.batchUpdate("INSERT INTO weather_extra_fee (fee_type, vehicle_type, min_value, fee, " +
+                        "valid_from) VALUES (?, ?, ?, ?, ?)", extraFees);
+                baseFees.clear();
+                extraFees.clear();
+            }
+        }
+    }
+
+    private void truncateTables() {
+        jdbcTemplate.execute("TRUNCATE TABLE weather_data");
+        jdbcTemplate.execute("TRUNCATE TABLE regional_base_fee");
+        jdbcTemplate.execute("TRUNCATE TABLE weather_extra_fee");
+    }
+
+    // Records the SQL of every statement prepared while a query case runs.
+    private static final class CapturingDataSource extends DelegatingDataSource {
+
+        CapturingDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return capturing(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return capturing(super.getConnection(username, password));
+        }
+
+        private static Connection capturing(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                        if (capturing && method.getName().startsWith("prepare")
+                                && args != null && args[0] instanceof String) {
+                            synchronized (captured) {
+                                captured.add((String) args[0]);
+                            }
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.fooddeliveryfujitsu;
+
+import com.example.fooddeliveryfujitsu.models.RegionalBaseFee;
+import com.example.fooddeliveryfujitsu.models.WeatherExtraFee;
+import com.example.fooddeliveryfujitsu.services.TariffSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TariffSnapshotTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @Test
+    void testRegionalBaseFeeVersionsOverTime() {
+        List<RegionalBaseFee> fees = List.of(
+                new RegionalBaseFee("TALLINN", "CAR", new BigDecimal("4.00"), T0, null),
+                new RegionalBaseFee("TALLINN", "CAR", new BigDecimal("4.50"), T0.plusDays(10), T0.plusDays(20)),
+                new RegionalBaseFee("TALLINN", "CAR", new BigDecimal("5.00"), T0.plusDays(30), null)
+        );
+
+        TariffSnapshot snapshot = TariffSnapshot.build(1L, fees, Collections.emptyList());
+
+        assertNull(snapshot.findRegionalBaseFee("TALLINN", "CAR", T0.minusSeconds(1)));
+        assertEquals(400L, snapshot.findRegionalBaseFee("TALLINN", "CAR", T0).getFeeCents());
+        assertEquals(450L, snapshot.findRegionalBaseFee("TALLINN", "CAR", T0.plusDays(15)).getFeeCents());
+        // The temporary rule expired, so the open-ended original applies again.
+        assertEquals(400L, snapshot.findRegionalBaseFee("TALLINN", "CAR", T0.plusDays(20)).getFeeCents());
+        assertEquals(500L, snapshot.findRegionalBaseFee("TALLINN", "CAR", T0.plusDays(300)).getFeeCents());
+        assertNull(snapshot.findRegionalBaseFee("TARTU", "CAR", T0.plusDays(15)));
+    }
+
+    @Test
+    void testRangeRulesResolveByTimeAndValue() {
+        List<WeatherExtraFee> fees = List.of(
+                new WeatherExtraFee("AIR_TEMP", "BIKE", -100.0, -10.0, null, new BigDecimal("1.00"), T0, null),
+                new WeatherExtraFee("AIR_TEMP", "BIKE", -10.0, 0.0, null, new BigDecimal("0.50"), T0, null),
+                // Later, overlapping version that only reprices the coldest band.
+                new WeatherExtraFee("AIR_TEMP", "BIKE", -100.0, -15.0, null, new BigDecimal("2.00"), T0.plusDays(5), null)
+        );
+
+        TariffSnapshot snapshot = TariffSnapshot.build(1L, Collections.emptyList(), fees);
+
+        assertEquals(100L, snapshot.findRangeRule("AIR_TEMP", "BIKE", -20.0, T0.plusDays(1)).getFeeCents());
+        assertEquals(200L, snapshot.findRangeRule("AIR_TEMP", "BIKE", -20.0, T0.plusDays(6)).getFeeCents());
+        assertEquals(100L, snapshot.findRangeRule("AIR_TEMP", "BIKE", -12.0, T0.plusDays(6)).getFeeCents());
+        assertEquals(50L, snapshot.findRangeRule("AIR_TEMP", "BIKE", -10.0, T0.plusDays(6)).getFeeCents());
+        // Upper bounds are exclusive.
+        assertNull(snapshot.findRangeRule("AIR_TEMP", "BIKE", 0.0, T0.plusDays(6)));
+        assertNull(snapshot.findRangeRule("AIR_TEMP", "SCOOTER", -20.0, T0.plusDays(6)));
+    }
+
+    @Test
+    void testPhenomenonRulesAndBoundaries() {
+        List<WeatherExtraFee> fees = List.of(
+                new WeatherExtraFee("WEATHER_PHENOMENON", "SCOOTER", null, null, "RAIN", new BigDecimal("0.75"),
+                        T0, T0.plusDays(1))
+        );
+
+        TariffSnapshot snapshot = TariffSnapshot.build(1L, Collections.emptyList(), fees);
+
+        assertEquals(75L, snapshot.findPhenomenonRule("SCOOTER", "RAIN", T0).getFeeCents());
+        assertNull(snapshot.findPhenomenonRule("SCOOTER", "SNOW_SLEET", T0));
+        assertNull(snapshot.findPhenomenonRule("SCOOTER", "RAIN", T0.plusDays(1)));
+        assertEquals(T0, snapshot.nextBoundaryAfter(T0.minusDays(1)));
+        assertEquals(T0.plusDays(1), snapshot.nextBoundaryAfter(T0));
+        assertNull(snapshot.nextBoundaryAfter(T0.plusDays(1)));
+    }
+
+    @Test
+    void testDigestFollowsRuleContentNotVersionOrOrder() {
+        RegionalBaseFee car = new RegionalBaseFee("TALLINN", "CAR", new BigDecimal("4.00"), T0, null);
+        RegionalBaseFee bike = new RegionalBaseFee("TALLINN", "BIKE", new BigDecimal("3.00"), T0, null);
+
+        TariffSnapshot first = TariffSnapshot.build(1L, List.of(car, bike), Collections.emptyList());
+        TariffSnapshot reloaded = TariffSnapshot.build(7L, List.of(bike, car), Collections.emptyList());
+        assertEquals(first.getDigest(), reloaded.getDigest());
+
+        RegionalBaseFee repriced = new RegionalBaseFee("TALLINN", "CAR", new BigDecimal("4.50"), T0, null);
+        TariffSnapshot changed = TariffSnapshot.build(8L, List.of(repriced, bike), Collections.emptyList());
+        assertNotEquals(first.getDigest(), changed.getDigest());
+    }
+
+    @Test
+    void testLongRuleHistory() {
+        List<RegionalBaseFee> fees = new ArrayList<>();
+        for (int day = 0; day < 5000; day++) {
+            fees.add(new RegionalBaseFee("PARNU", "SCOOTER", BigDecimal.valueOf(200 + day, 2),
+                    T0.plusDays(day), T0.plusDays(day + 1)));
+        }
+
+        TariffSnapshot snapshot = TariffSnapshot.build(1L, fees, Collections.emptyList());
+
+        assertEquals(200L, snapshot.findRegionalBaseFee("PARNU", "SCOOTER", T0.plusHours(12)).getFeeCents());
+        assertEquals(4199L, snapshot.findRegionalBaseFee("PARNU", "SCOOTER", T0.plusDays(3999)).getFeeCents());
+        assertNull(snapshot.findRegionalBaseFee("PARNU", "SCOOTER", T0.plusDays(5000)));
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.fooddeliveryfujitsu;
+
+import com.example.fooddeliveryfujitsu.events.WeatherHistoryBackfilledEvent;
+import com.example.fooddeliveryfujitsu.models.BackfillReport;
+import com.example.fooddeliveryfujitsu.models.IngestReport;
+import com.example.fooddeliveryfujitsu.models.PhenomenonCategory;
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+import com.example.fooddeliveryfujitsu.repositories.WeatherDataRepository;
+import com.example.fooddeliveryfujitsu.repositories.WeatherHourlyAggregateRepository;
+import com.example.fooddeliveryfujitsu.services.WeatherBackfillService;
+import com.example.fooddeliveryfujitsu.services.WeatherHistoryLock;
+import com.example.fooddeliveryfujitsu.services.WeatherRetentionService;
+import com.example.fooddeliveryfujitsu.store.ObservationDictionary;
+import com.example.fooddeliveryfujitsu.store.ObservationStore;
+import com.example.fooddeliveryfujitsu.util.WeatherPhenomenonClassifier;
+import com.example.fooddeliveryfujitsu.util.WeatherXmlParser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class WeatherBackfillServiceTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2021, 3, 1, 0, 15);
+
+    @Mock
+    private ObservationStore observationStore;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private WeatherDataRepository weatherDataRepository;
+
+    @Mock
+    private WeatherHourlyAggregateRepository aggregateRepository;
+
+    @Mock
+    private ObservationDictionary dictionary;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path archive;
+
+    private final WeatherHistoryLock historyLock = new WeatherHistoryLock();
+
+    private WeatherBackfillService backfillService;
+
+    // Every reading handed to bulkInsert, in order.
+    private final List<WeatherData> stored = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(observationStore.bulkInsert(anyList())).thenAnswer(invocation -> {
+            List<WeatherData> observations = invocation.getArgument(0);
+            stored.addAll(observations);
+            return new IngestReport(observations.size(), 0, 0);
+        });
+        // Two files per batch, so that three files are written in two batches.
+        backfillService = new WeatherBackfillService(observationStore, new WeatherXmlParser(),
+                new WeatherPhenomenonClassifier(), eventPublisher, Optional.empty(), historyLock, archive.toString(), 2, 2);
+    }
+
+    @Test
+    void testImportsNestedPlainAndCompressedFeeds() throws IOException {
+        writeFeed("2021/03/01-00.xml", T0, "Light snow shower");
+        writeFeed("2021/03/01-01.xml.gz", T0.plusHours(1), "Clear");
+        writeFeed("2021/03/01-02.xml", T0.plusHours(2), "Glaze");
+        Files.writeString(archive.resolve("notes.txt"), "not a feed");
+
+        BackfillReport report = backfillService.importDirectory(archive);
+
+        assertTrue(report.isFinished());
+        assertEquals(3, report.getTotalFiles());
+        assertEquals(3, report.getImportedFiles());
+        assertEquals(0, report.getFailedFiles());
+        assertEquals(6, report.getInserted());
+        verify(observationStore, times(2)).bulkInsert(anyList());
+        assertEquals(6, stored.size());
+        assertEquals(PhenomenonCategory.SNOW_SLEET, stored.get(0).getPhenomenonCategory());
+        assertEquals(PhenomenonCategory.FORBIDDEN, stored.get(5).getPhenomenonCategory());
+        assertEquals(report.getInserted(), backfillService.getProgress().orElseThrow().getInserted());
+
+        // One event per stored batch, so caches follow the import as it goes.
+        ArgumentCaptor<WeatherHistoryBackfilledEvent> events = ArgumentCaptor.forClass(WeatherHistoryBackfilledEvent.class);
+        verify(eventPublisher, times(2)).publishEvent(events.capture());
+        WeatherHistoryBackfilledEvent first = events.getAllValues().get(0);
+        assertEquals(List.of("Pärnu", "Tallinn-Harku"), first.getStationNames());
+        assertEquals(T0, first.getFrom());
+        assertEquals(T0.plusHours(1), first.getTo());
+        assertEquals(2, events.getAllValues().get(1).getObservations().size());
+        assertEquals(T0.plusHours(2), events.getAllValues().get(1).getFrom());
+    }
+
+    @Test
+    void testResumesAfterCheckpointedFiles() throws IOException {
+        writeFeed("01.xml", T0, "Clear");
+        writeFeed("02.xml", T0.plusHours(1), "Clear");
+        backfillService.importDirectory(archive);
+        writeFeed("03.xml", T0.plusHours(2), "Clear");
+        stored.clear();
+
+        BackfillReport report = backfillService.importDirectory(archive);
+
+        assertEquals(3, report.getTotalFiles());
+        assertEquals(2, report.getResumedFiles());
+        assertEquals(1, report.getImportedFiles());
+        assertEquals(2, stored.size());
+        assertEquals(T0.plusHours(2), stored.get(0).getTimestamp());
+        assertEquals(List.of("01.xml", "02.xml", "03.xml"),
+                Files.readAllLines(archive.resolve(WeatherBackfillService.CHECKPOINT_FILE)));
+    }
+
+    @Test
+    void testUnreadableFilesAreRetriedOnTheNextRun() throws IOException {
+        writeFeed("01.xml", T0, "Clear");
+        Files.writeString(archive.resolve("02.xml.gz"), "not gzip");
+
+        BackfillReport report = backfillService.importDirectory(archive);
+
+        assertTrue(report.isFinished());
+        assertEquals(1, report.getImportedFiles());
+        assertEquals(1, report.getFailedFiles());
+        assertEquals(List.of("01.xml"), Files.readAllLines(archive.resolve(WeatherBackfillService.CHECKPOINT_FILE)));
+
+        report = backfillService.importDirectory(archive);
+        assertEquals(1, report.getResumedFiles());
+        assertEquals(1, report.getFailedFiles());
+    }
+
+    @Test
+    void testTruncatedFeedsAreFailedAndNotCheckpointed() throws IOException {
+        writeFeed("01.xml", T0, "Clear");
+        writeFeed("02.xml.gz", T0.plusHours(1), "Clear");
+        // Keep the first station and half of the compressed stream, as an interrupted copy would.
+        byte[] compressed = Files.readAllBytes(archive.resolve("02.xml.gz"));
+        Files.write(archive.resolve("02.xml.gz"), Arrays.copyOf(compressed, compressed.length / 2));
+        Files.writeString(archive.resolve("03.xml"), "<observations timestamp=\"1614550500\"><station><name>Pärnu");
+
+        BackfillReport report = backfillService.importDirectory(archive);
+
+        assertEquals(1, report.getImportedFiles());
+        assertEquals(2, report.getFailedFiles());
+        assertEquals(2, stored.size());
+        assertTrue(stored.stream().allMatch(observation -> T0.equals(observation.getTimestamp())));
+        assertEquals(List.of("01.xml"), Files.readAllLines(archive.resolve(WeatherBackfillService.CHECKPOINT_FILE)));
+    }
+
+    @Test
+    void testReadingsRetentionWouldDropAreNotImported() throws IOException {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).plusMinutes(15);
+        LocalDateTime expired = now.minusYears(2);
+        LocalDateTime downsampled = now.minusDays(60);
+        LocalDateTime raw = now.minusDays(59);
+        writeFeed("01.xml", expired, "Clear");
+        writeFeed("02.xml", downsampled, "Clear");
+        writeFeed("03.xml", raw, "Clear");
+        when(aggregateRepository.findHourStartsByStationNameInRange(eq("Pärnu"), any(), any()))
+                .thenReturn(List.of(downsampled.truncatedTo(ChronoUnit.HOURS)));
+        WeatherRetentionService retentionService = new WeatherRetentionService(weatherDataRepository,
+                aggregateRepository, dictionary, eventPublisher, transactionManager, historyLock, 30, 12, "");
+        backfillService = new WeatherBackfillService(observationStore, new WeatherXmlParser(),
+                new WeatherPhenomenonClassifier(), eventPublisher, Optional.of(retentionService), historyLock, archive.toString(), 2, 2);
+
+        BackfillReport report = backfillService.importDirectory(archive);
+
+        // Two years back is past the 12 months of aggregates; Pärnu's hour 60 days back is already downsampled.
+        assertEquals(3, report.getImportedFiles());
+        assertEquals(3, report.getExpired());
+        assertEquals(3, report.getInserted());
+        assertEquals(List.of(downsampled, raw, raw),
+                stored.stream().map(WeatherData::getTimestamp).sorted().toList());
+        assertEquals("Tallinn-Harku", stored.stream().filter(o -> o.getTimestamp().equals(downsampled))
+                .findFirst().orElseThrow().getStationName());
+    }
+
+    @Test
+    void testRejectsDirectoriesOutsideTheRoot() {
+        assertThrows(IllegalArgumentException.class, () -> backfillService.startImport("../"));
+        assertThrows(IllegalArgumentException.class, () -> backfillService.startImport("missing"));
+        verify(observationStore, never()).bulkInsert(any());
+    }
+
+    @Test
+    void testStartedImportRunsInTheBackground() throws Exception {
+        writeFeed("01.xml", T0, "Clear");
+        writeFeed("02.xml", T0.plusHours(1), "Clear");
+        writeFeed("03.xml", T0.plusHours(2), "Clear");
+
+        BackfillReport started = backfillService.startImport(".");
+
+        assertEquals(3, started.getTotalFiles());
+        assertFalse(started.isFinished());
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (backfillService.isRunning() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        BackfillReport report = backfillService.getProgress().orElseThrow();
+        assertTrue(report.isFinished());
+        assertEquals(3, report.getImportedFiles());
+        // The import has given the history back to retention.
+        assertTrue(historyLock.tryAcquire());
+    }
+
+    @Test
+    void testImportIsRejectedWhileRetentionRuns() throws IOException {
+        writeFeed("01.xml", T0, "Clear");
+        assertTrue(historyLock.tryAcquire());
+
+        assertThrows(IllegalStateException.class, () -> backfillService.startImport("."));
+        assertFalse(backfillService.isRunning());
+        historyLock.release();
+
+        assertEquals(1, backfillService.importDirectory(archive).getImportedFiles());
+    }
+
+    // A feed with the two stations the tests use, timed by epoch second as the live feed is.
+    private void writeFeed(String name, LocalDateTime timestamp, String phenomenon) throws IOException {
+        String xml = """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <observations timestamp="%d">
+                    <station>
+                        <name>Tallinn-Harku</name>
+                        <wmocode>26038</wmocode>
+                        <airtemperature>-1.0</airtemperature>
+                        <windspeed>4.0</windspeed>
+                        <phenomenon>%s</phenomenon>
+                    </station>
+                    <station>
+                        <name>Pärnu</name>
+                        <wmocode>41803</wmocode>
+                        <airtemperature>1.0</airtemperature>
+                        <windspeed>6.0</windspeed>
+                        <phenomenon>%s</phenomenon>
+                    </station>
+                </observations>
+                """.formatted(timestamp.atZone(ZoneId.systemDefault()).toEpochSecond(), phenomenon, phenomenon);
+        Path file = archive.resolve(name);
+        Files.createDirectories(file.getParent());
+        try (OutputStream out = name.endsWith(".gz")
+                ? new GZIPOutputStream(Files.newOutputStream(file))
+                : Files.newOutputStream(file)) {
+            out.write(xml.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -1,39 +1,84 @@
 package com.example.fooddeliveryfujitsu;
 
+import com.example.fooddeliveryfujitsu.events.WeatherDataIngestedEvent;
+import com.example.fooddeliveryfujitsu.models.IngestReport;
+import com.example.fooddeliveryfujitsu.models.PhenomenonCategory;
 import com.example.fooddeliveryfujitsu.models.WeatherData;
 import com.example.fooddeliveryfujitsu.repositories.WeatherDataRepository;
+import com.example.fooddeliveryfujitsu.repositories.WeatherHourlyAggregateRepository;
 import com.example.fooddeliveryfujitsu.services.WeatherDataService;
+import com.example.fooddeliveryfujitsu.store.JpaObservationStore;
+import com.example.fooddeliveryfujitsu.store.ObservationDictionary;
+import com.example.fooddeliveryfujitsu.store.WeatherTimeSeriesStore;
 import com.example.fooddeliveryfujitsu.util.WeatherXmlParser;
+import com.example.fooddeliveryfujitsu.util.WeatherPhenomenonClassifier;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
 import org.springframework.web.client.RestTemplate;
 
-import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.headerDoesNotExist;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
 
 class WeatherDataServiceTest {
 
+    private static final String API_URL = "https://test-api.example.com/weather";
+
     @Mock
     private WeatherDataRepository weatherDataRepository;
 
+    @Mock
+    private WeatherHourlyAggregateRepository aggregateRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private ObservationDictionary dictionary;
+
     @Mock
     private WeatherXmlParser weatherXmlParser;
 
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    private MockRestServiceServer server;
+
     @Mock
-    private RestTemplate restTemplate;
+    private ApplicationEventPublisher eventPublisher;
+
+    @Spy
+    private WeatherPhenomenonClassifier phenomenonClassifier = new WeatherPhenomenonClassifier();
+
+    @Mock
+    private WeatherTimeSeriesStore timeSeriesStore;
 
-    @InjectMocks
     private WeatherDataService weatherDataService;
 
     private LocalDateTime now;
@@ -41,12 +86,21 @@ class WeatherDataServiceTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        server = MockRestServiceServer.bindTo(restTemplate).build();
+        weatherDataService = new WeatherDataService(new JpaObservationStore(weatherDataRepository, aggregateRepository, jdbcTemplate, dictionary),
+                weatherXmlParser, restTemplate, eventPublisher, phenomenonClassifier, timeSeriesStore);
         now = LocalDateTime.now();
+        // The service parses through the visitor overload; tests stub the list variant, which this forwards to.
+        when(weatherXmlParser.parseWeatherData(any(InputStream.class), any())).thenAnswer(invocation -> {
+            List<WeatherData> parsed = weatherXmlParser.parseWeatherData(invocation.<InputStream>getArgument(0));
+            parsed.forEach(invocation.<Consumer<WeatherData>>getArgument(1));
+            return parsed.size();
+        });
 
         try {
             java.lang.reflect.Field field = WeatherDataService.class.getDeclaredField("weatherApiUrl");
             field.setAccessible(true);
-            field.set(weatherDataService, "https://test-api.example.com/weather");
+            field.set(weatherDataService, API_URL);
         } catch (Exception e) {
             fail("Failed to set up test: " + e.getMessage());
         }
@@ -54,29 +108,162 @@ class WeatherDataServiceTest {
 
     @Test
     void testFetchAndSaveWeatherData() {
-        byte[] mockXmlData = "<observations>test data</observations>".getBytes();
-        when(restTemplate.getForObject(anyString(), eq(byte[].class))).thenReturn(mockXmlData);
+        server.expect(requestTo(API_URL))
+                .andExpect(header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andRespond(withSuccess("<observations>test data</observations>", MediaType.APPLICATION_XML));
 
         WeatherData weatherData1 = new WeatherData("Tallinn-Harku", "26038", 5.0, 4.0, "Clear", now);
         WeatherData weatherData2 = new WeatherData("Tartu-Tõravere", "26242", 3.0, 3.0, "Cloudy", now);
         List<WeatherData> parsedData = Arrays.asList(weatherData1, weatherData2);
 
-        when(weatherXmlParser.parseWeatherData(any(ByteArrayInputStream.class))).thenReturn(parsedData);
+        when(weatherXmlParser.parseWeatherData(any(InputStream.class))).thenReturn(parsedData);
         when(weatherDataRepository.saveAll(parsedData)).thenReturn(parsedData);
 
         weatherDataService.fetchAndSaveWeatherData();
 
-        verify(restTemplate).getForObject(anyString(), eq(byte[].class));
-        verify(weatherXmlParser).parseWeatherData(any(ByteArrayInputStream.class));
+        server.verify();
+        verify(weatherXmlParser).parseWeatherData(any(InputStream.class));
         verify(weatherDataRepository).saveAll(parsedData);
+        verify(eventPublisher).publishEvent(any(WeatherDataIngestedEvent.class));
+        assertEquals(PhenomenonCategory.NONE, weatherData1.getPhenomenonCategory());
+    }
+
+    @Test
+    void testUnchangedFeedIsNotParsedAgain() {
+        server.expect(requestTo(API_URL))
+                .andRespond(withSuccess("<observations/>", MediaType.APPLICATION_XML)
+                        .header(HttpHeaders.ETAG, "\"v1\"")
+                        .header(HttpHeaders.LAST_MODIFIED, "Sun, 23 Mar 2025 12:00:00 GMT"));
+        server.expect(requestTo(API_URL))
+                .andExpect(header(HttpHeaders.IF_NONE_MATCH, "\"v1\""))
+                .andExpect(header(HttpHeaders.IF_MODIFIED_SINCE, "Sun, 23 Mar 2025 12:00:00 GMT"))
+                .andRespond(withStatus(HttpStatus.NOT_MODIFIED));
+        WeatherData reading = new WeatherData("Pärnu", "41803", 2.0, 6.0, "Rain", now);
+        when(weatherXmlParser.parseWeatherData(any(InputStream.class))).thenReturn(List.of(reading));
+
+        weatherDataService.fetchAndSaveWeatherData();
+        weatherDataService.fetchAndSaveWeatherData();
+
+        server.verify();
+        verify(weatherXmlParser, times(1)).parseWeatherData(any(InputStream.class));
+        verify(weatherDataRepository, times(1)).saveAll(anyList());
+        verify(eventPublisher, times(1)).publishEvent(any(WeatherDataIngestedEvent.class));
+    }
+
+    @Test
+    void testFeedAlreadyStoredIsSkipped() {
+        server.expect(ExpectedCount.twice(), requestTo(API_URL))
+                .andRespond(withSuccess("<observations/>", MediaType.APPLICATION_XML));
+        when(weatherXmlParser.parseWeatherData(any(InputStream.class))).thenAnswer(invocation -> List.of(
+                new WeatherData("Tallinn-Harku", "26038", 5.0, 4.0, "Clear", now),
+                new WeatherData("Pärnu", "41803", 2.0, 6.0, "Rain", now)));
+        // Deliver ingest events back to the service, as the application context does.
+        doAnswer(invocation -> {
+            weatherDataService.onWeatherDataIngested(invocation.getArgument(0));
+            return null;
+        }).when(eventPublisher).publishEvent(any(WeatherDataIngestedEvent.class));
+
+        IngestReport first = weatherDataService.fetchAndSaveWeatherData();
+        IngestReport second = weatherDataService.fetchAndSaveWeatherData();
+
+        assertEquals(2, first.getInserted());
+        assertEquals(0, second.getInserted());
+        assertEquals(2, second.getSkipped());
+        verify(weatherDataRepository, times(1)).saveAll(anyList());
+        verify(eventPublisher, times(1)).publishEvent(any(WeatherDataIngestedEvent.class));
+    }
+
+    @Test
+    void testReadingsAreUpsertedOnStationAndTimestamp() {
+        server.expect(requestTo(API_URL)).andRespond(withSuccess("<observations/>", MediaType.APPLICATION_XML));
+        WeatherData same = new WeatherData("Tallinn-Harku", "26038", 5.0, 4.0, "Clear", now);
+        WeatherData corrected = new WeatherData("Tartu-Tõravere", "26242", 3.5, 3.0, "Cloudy", now);
+        WeatherData fresh = new WeatherData("Pärnu", "41803", 2.0, 6.0, "Rain", now);
+        when(weatherXmlParser.parseWeatherData(any(InputStream.class))).thenReturn(List.of(same, corrected, fresh));
+
+        WeatherData storedSame = new WeatherData("Tallinn-Harku", "26038", 5.0, 4.0, "Clear", now);
+        storedSame.setId(1L);
+        WeatherData storedCorrected = new WeatherData("Tartu-Tõravere", "26242", 3.0, 3.0, "Cloudy", now);
+        storedCorrected.setId(2L);
+        when(weatherDataRepository.findByStationNameAndTimestamp("Tallinn-Harku", now)).thenReturn(Optional.of(storedSame));
+        when(weatherDataRepository.findByStationNameAndTimestamp("Tartu-Tõravere", now))
+                .thenReturn(Optional.of(storedCorrected));
+
+        IngestReport report = weatherDataService.fetchAndSaveWeatherData();
+
+        assertEquals(1, report.getInserted());
+        assertEquals(1, report.getUpdated());
+        assertEquals(1, report.getSkipped());
+        verify(weatherDataRepository).saveAll(List.of(corrected, fresh));
+        assertEquals(1L, same.getId());
+        assertEquals(2L, corrected.getId());
+    }
+
+    @Test
+    void testGzipFeedIsDecodedWhileParsing() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            new ClassPathResource("sample-weather-data.xml").getInputStream().transferTo(gzip);
+        }
+        server.expect(requestTo(API_URL))
+                .andRespond(withSuccess(compressed.toByteArray(), MediaType.APPLICATION_XML)
+                        .header(HttpHeaders.CONTENT_ENCODING, "gzip"));
+        WeatherXmlParser realParser = new WeatherXmlParser();
+        when(weatherXmlParser.parseWeatherData(any(InputStream.class)))
+                .thenAnswer(invocation -> realParser.parseWeatherData(invocation.<InputStream>getArgument(0)));
+
+        weatherDataService.fetchAndSaveWeatherData();
+
+        verify(weatherDataRepository).saveAll(argThat((List<WeatherData> saved) -> saved.size() == 3
+                && saved.stream().anyMatch(data -> "Pärnu".equals(data.getStationName()))));
+    }
+
+    @Test
+    void testTruncatedFeedIsNotStoredAndFetchedAgainInFull() throws Exception {
+        String xml;
+        try (InputStream in = new ClassPathResource("sample-weather-data.xml").getInputStream()) {
+            xml = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        String truncated = xml.substring(0, xml.indexOf("</station>") + "</station>".length());
+        server.expect(requestTo(API_URL))
+                .andRespond(withSuccess(truncated, MediaType.APPLICATION_XML).header(HttpHeaders.ETAG, "\"v1\""));
+        server.expect(requestTo(API_URL))
+                .andExpect(headerDoesNotExist(HttpHeaders.IF_NONE_MATCH))
+                .andRespond(withSuccess(xml, MediaType.APPLICATION_XML).header(HttpHeaders.ETAG, "\"v1\""));
+        WeatherXmlParser realParser = new WeatherXmlParser();
+        when(weatherXmlParser.parseWeatherData(any(InputStream.class), any()))
+                .thenAnswer(invocation -> realParser.parseWeatherData(invocation.<InputStream>getArgument(0),
+                        invocation.<Consumer<WeatherData>>getArgument(1)));
+
+        IngestReport partial = weatherDataService.fetchAndSaveWeatherData();
+        IngestReport complete = weatherDataService.fetchAndSaveWeatherData();
+
+        server.verify();
+        assertEquals(0, partial.getInserted());
+        assertEquals(3, complete.getInserted());
+        verify(weatherDataRepository, times(1)).saveAll(anyList());
+        verify(eventPublisher, times(1)).publishEvent(any(WeatherDataIngestedEvent.class));
+    }
+
+    @Test
+    void testEmptyFeedDoesNotRememberValidators() {
+        server.expect(requestTo(API_URL))
+                .andRespond(withSuccess("<observations/>", MediaType.APPLICATION_XML).header(HttpHeaders.ETAG, "\"v1\""));
+        server.expect(requestTo(API_URL))
+                .andExpect(headerDoesNotExist(HttpHeaders.IF_NONE_MATCH))
+                .andRespond(withSuccess("<observations/>", MediaType.APPLICATION_XML));
+
+        weatherDataService.fetchAndSaveWeatherData();
+        weatherDataService.fetchAndSaveWeatherData();
+
+        server.verify();
     }
 
     @Test
     void testGetLatestWeatherDataForCity() {
         WeatherData weatherData = new WeatherData("Tallinn-Harku", "26038", 5.0, 4.0, "Clear", now);
-        List<WeatherData> dataList = List.of(weatherData);
 
-        when(weatherDataRepository.findLatestByStationName("Tallinn-Harku")).thenReturn(dataList);
+        when(weatherDataRepository.findLatestByStationName("Tallinn-Harku")).thenReturn(Optional.of(weatherData));
 
         Optional<WeatherData> result = weatherDataService.getLatestWeatherDataForCity("TALLINN");
 
@@ -85,6 +272,22 @@ class WeatherDataServiceTest {
         verify(weatherDataRepository).findLatestByStationName("Tallinn-Harku");
     }
 
+    @Test
+    void testLatestWeatherDataIsHeldAfterIngest() {
+        WeatherData seeded = new WeatherData("Pärnu", "41803", 1.0, 2.0, "Clear", now.minusHours(1));
+        when(weatherDataRepository.findLatestByStationName("Pärnu")).thenReturn(Optional.of(seeded));
+
+        weatherDataService.seedLatestObservations();
+        assertSame(seeded, weatherDataService.getLatestWeatherDataForCity("PARNU").orElseThrow());
+
+        WeatherData ingested = new WeatherData("Pärnu", "41803", 2.0, 3.0, "Rain", now);
+        WeatherData older = new WeatherData("Pärnu", "41803", 0.0, 1.0, "Clear", now.minusHours(5));
+        weatherDataService.onWeatherDataIngested(new WeatherDataIngestedEvent(List.of(ingested, older)));
+
+        assertSame(ingested, weatherDataService.getLatestWeatherDataForCity("PARNU").orElseThrow());
+        verify(weatherDataRepository, times(1)).findLatestByStationName("Pärnu");
+    }
+
     @Test
     void testGetLatestWeatherDataForCityUnknownCity() {
         Optional<WeatherData> result = weatherDataService.getLatestWeatherDataForCity("UNKNOWN_CITY");
@@ -97,13 +300,83 @@ class WeatherDataServiceTest {
     void testGetWeatherDataForCityAtTime() {
         WeatherData weatherData = new WeatherData("Tartu-Tõravere", "26242", 3.0, 3.0, "Cloudy", now);
 
-        when(weatherDataRepository.findClosestByStationNameAndDateTime(eq("Tartu-Tõravere"), eq(now)))
+        when(weatherDataRepository.findFloorByStationNameAndTimestamp(eq("Tartu-Tõravere"), eq(now)))
                 .thenReturn(Optional.of(weatherData));
+        when(weatherDataRepository.findCeilingByStationNameAndTimestamp(eq("Tartu-Tõravere"), eq(now)))
+                .thenReturn(Optional.empty());
 
         Optional<WeatherData> result = weatherDataService.getWeatherDataForCityAtTime("TARTU", now);
 
         assertTrue(result.isPresent());
         assertEquals("Tartu-Tõravere", result.get().getStationName());
-        verify(weatherDataRepository).findClosestByStationNameAndDateTime("Tartu-Tõravere", now);
+        verify(weatherDataRepository).findFloorByStationNameAndTimestamp("Tartu-Tõravere", now);
+    }
+
+    @Test
+    void testGetWeatherDataForCityAtTimePicksCloserNeighbour() {
+        WeatherData before = new WeatherData("Pärnu", "41803", 1.0, 2.0, "Clear", now.minusMinutes(40));
+        WeatherData after = new WeatherData("Pärnu", "41803", 2.0, 3.0, "Clear", now.plusMinutes(20));
+
+        when(weatherDataRepository.findFloorByStationNameAndTimestamp(eq("Pärnu"), eq(now)))
+                .thenReturn(Optional.of(before));
+        when(weatherDataRepository.findCeilingByStationNameAndTimestamp(eq("Pärnu"), eq(now)))
+                .thenReturn(Optional.of(after));
+
+        assertSame(after, weatherDataService.getWeatherDataForCityAtTime("PARNU", now).orElseThrow());
+
+        // Equally distant neighbours resolve to the earlier observation.
+        before.setTimestamp(now.minusMinutes(20));
+        assertSame(before, weatherDataService.getWeatherDataForCityAtTime("PARNU", now).orElseThrow());
+    }
+
+    @Test
+    void testChangeOnlyIngestExtendsUnchangedReadings() throws Exception {
+        java.lang.reflect.Field field = WeatherDataService.class.getDeclaredField("ingestMode");
+        field.setAccessible(true);
+        field.set(weatherDataService, "change-only");
+
+        WeatherData stored = new WeatherData("Tallinn-Harku", "26038", 5.0, 4.0, "Clear", now.minusHours(1));
+        stored.setId(7L);
+        weatherDataService.onWeatherDataIngested(new WeatherDataIngestedEvent(List.of(stored)));
+
+        server.expect(requestTo(API_URL)).andRespond(withSuccess("<observations/>", MediaType.APPLICATION_XML));
+        WeatherData unchanged = new WeatherData("Tallinn-Harku", "26038", 5.0, 4.0, "Clear", now);
+        WeatherData changed = new WeatherData("Tartu-Tõravere", "26242", 3.0, 3.0, "Cloudy", now);
+        when(weatherXmlParser.parseWeatherData(any(InputStream.class))).thenReturn(List.of(unchanged, changed));
+        when(weatherDataRepository.extendObservedUntil(7L, now)).thenReturn(1);
+
+        weatherDataService.fetchAndSaveWeatherData();
+
+        verify(weatherDataRepository).saveAll(List.of(changed));
+        assertEquals(7L, unchanged.getId());
+        verify(eventPublisher).publishEvent(argThat((Object event) -> event instanceof WeatherDataIngestedEvent
+                && ((WeatherDataIngestedEvent) event).getObservations().size() == 2));
+    }
+
+    @Test
+    void testNearestReadingWithinAnUnchangedRun() {
+        WeatherData run = new WeatherData("Pärnu", "41803", 1.0, 2.0, "Clear", now.minusHours(5));
+        run.setId(3L);
+        run.setObservedUntil(now.minusHours(1));
+        when(weatherDataRepository.findFloorByStationNameAndTimestamp(eq("Pärnu"), any(LocalDateTime.class)))
+                .thenReturn(Optional.of(run));
+        when(weatherDataRepository.findCeilingByStationNameAndTimestamp(eq("Pärnu"), any(LocalDateTime.class)))
+                .thenReturn(Optional.empty());
+
+        // Inside the run the nearer end is reported; after it, its last reading.
+        assertEquals(now.minusHours(1), weatherDataService.getWeatherDataForCityAtTime("PARNU", now.minusHours(2))
+                .orElseThrow().getTimestamp());
+        assertSame(run, weatherDataService.getWeatherDataForCityAtTime("PARNU", now.minusHours(4)).orElseThrow());
+        WeatherData after = weatherDataService.getWeatherDataForCityAtTime("PARNU", now).orElseThrow();
+        assertEquals(now.minusHours(1), after.getTimestamp());
+        assertEquals(3L, after.getId());
+        assertEquals(1.0, after.getAirTemperature());
+
+        // The run's last reading, not its start, is compared with the next row.
+        WeatherData next = new WeatherData("Pärnu", "41803", 4.0, 2.0, "Rain", now.plusMinutes(90));
+        when(weatherDataRepository.findCeilingByStationNameAndTimestamp(eq("Pärnu"), any(LocalDateTime.class)))
+                .thenReturn(Optional.of(next));
+        assertEquals(now.minusHours(1), weatherDataService.getWeatherDataForCityAtTime("PARNU", now)
+                .orElseThrow().getTimestamp());
     }
-}
\ No newline at end of file
+}
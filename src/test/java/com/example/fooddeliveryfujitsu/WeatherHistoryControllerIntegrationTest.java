@@ -0,0 +1,162 @@
+package com.example.fooddeliveryfujitsu;
+
+import com.example.fooddeliveryfujitsu.models.PhenomenonCategory;
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+import com.example.fooddeliveryfujitsu.models.WeatherHourlyAggregate;
+import com.example.fooddeliveryfujitsu.repositories.WeatherDataRepository;
+import com.example.fooddeliveryfujitsu.repositories.WeatherHourlyAggregateRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Pages of two rows, so that every request below crosses several keyset pages.
+@SpringBootTest(properties = "weather.history.page-size=2")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class WeatherHistoryControllerIntegrationTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 1, 15, 10, 15);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private WeatherDataRepository weatherDataRepository;
+
+    @Autowired
+    private WeatherHourlyAggregateRepository aggregateRepository;
+
+    @BeforeEach
+    void setUp() {
+        weatherDataRepository.deleteAll();
+        aggregateRepository.deleteAll();
+        List<WeatherData> observations = new ArrayList<>();
+        for (int hour = 0; hour < 7; hour++) {
+            observations.add(new WeatherData("Tartu-Tõravere", "26242", (double) hour, 3.0, "Clear", T0.plusHours(hour)));
+        }
+        // An off-the-hour reading between two hourly ones.
+        observations.add(new WeatherData("Tartu-Tõravere", "26242", 99.0, 3.0, "Clear", T0.plusHours(3).plusMinutes(30)));
+        observations.add(new WeatherData("Pärnu", "41803", 1.0, 1.0, "Rain", T0.plusHours(1)));
+        observations.forEach(observation -> observation.setPhenomenonCategory(PhenomenonCategory.NONE));
+        weatherDataRepository.saveAll(observations);
+    }
+
+    @Test
+    void testHistoryStreamsTheRangeOldestFirst() throws Exception {
+        List<JsonNode> lines = history("from=2025-01-15 11:00:00&to=2025-01-15 15:15:00");
+
+        assertEquals(5, lines.size());
+        assertEquals("2025-01-15T11:15:00", lines.get(0).get("timestamp").asText());
+        assertEquals("Tartu-Tõravere", lines.get(0).get("stationName").asText());
+        assertEquals("26242", lines.get(0).get("wmoCode").asText());
+        assertEquals("NONE", lines.get(0).get("phenomenonCategory").asText());
+        assertEquals(3.0, lines.get(2).get("airTemperature").asDouble());
+        assertEquals(99.0, lines.get(3).get("airTemperature").asDouble());
+        assertEquals("2025-01-15T14:15:00", lines.get(4).get("timestamp").asText());
+    }
+
+    @Test
+    void testHistoryResumesAfterCursor() throws Exception {
+        List<JsonNode> first = history("from=2025-01-15 00:00:00&to=2025-01-16 00:00:00&limit=3");
+        assertEquals(3, first.size());
+
+        String cursor = first.get(2).get("cursor").asText();
+        List<JsonNode> rest = history("from=2025-01-15 00:00:00&to=2025-01-16 00:00:00&cursor=" + cursor);
+        assertEquals(5, rest.size());
+        assertEquals(3.0, rest.get(0).get("airTemperature").asDouble());
+        assertEquals(99.0, rest.get(1).get("airTemperature").asDouble());
+        assertEquals(6.0, rest.get(4).get("airTemperature").asDouble());
+
+        assertEquals(0, history("from=2025-01-15 00:00:00&to=2025-01-16 00:00:00&cursor="
+                + rest.get(4).get("cursor").asText()).size());
+    }
+
+    @Test
+    void testHistoryInterleavesDownsampledHours() throws Exception {
+        aggregateRepository.save(aggregate(T0.minusHours(2).withMinute(0), -3.0));
+        aggregateRepository.save(aggregate(T0.plusHours(1).withMinute(0), -5.0));
+
+        List<JsonNode> first = history("from=2025-01-15 00:00:00&to=2025-01-16 00:00:00&limit=3");
+        assertEquals(3, first.size());
+        assertTrue(first.get(0).get("aggregate").asBoolean());
+        assertEquals("2025-01-15T08:00:00", first.get(0).get("timestamp").asText());
+        assertEquals(-3.0, first.get(0).get("airTemperature").asDouble());
+        assertEquals(-4.0, first.get(0).get("airTemperatureMin").asDouble());
+        assertEquals(2, first.get(0).get("sampleCount").asInt());
+        assertEquals("26242", first.get(0).get("wmoCode").asText());
+        assertFalse(first.get(1).get("aggregate").asBoolean());
+        assertEquals("2025-01-15T10:15:00", first.get(1).get("timestamp").asText());
+        assertEquals("2025-01-15T11:00:00", first.get(2).get("timestamp").asText());
+
+        // Resuming after an aggregate continues with the raw observations that follow it.
+        List<JsonNode> rest = history("from=2025-01-15 00:00:00&to=2025-01-16 00:00:00&cursor="
+                + first.get(2).get("cursor").asText());
+        assertEquals(7, rest.size());
+        assertEquals("2025-01-15T11:15:00", rest.get(0).get("timestamp").asText());
+        assertFalse(rest.get(0).get("aggregate").asBoolean());
+    }
+
+    @Test
+    void testHistoryRejectsInvalidParameters() throws Exception {
+        mockMvc.perform(get("/api/weather/TARTU/history?from=2025-01-16 00:00:00&to=2025-01-15 00:00:00"))
+                .andExpect(status().isBadRequest())
+                .andExpect(status().reason("from must be before to"));
+        mockMvc.perform(get("/api/weather/TARTU/history?from=2025-01-15 00:00:00&to=2025-01-16 00:00:00&cursor=abc"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/weather/TARTU/history?from=2025-01-15 00:00:00&to=2025-01-16 00:00:00&limit=0"))
+                .andExpect(status().isBadRequest())
+                .andExpect(status().reason("limit must be positive"));
+        mockMvc.perform(get("/api/weather/NARVA/history?from=2025-01-15 00:00:00&to=2025-01-16 00:00:00"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private static WeatherHourlyAggregate aggregate(LocalDateTime hourStart, double airTemperatureAvg) {
+        WeatherHourlyAggregate aggregate = new WeatherHourlyAggregate("Tartu-Tõravere", hourStart);
+        aggregate.setWmoCode("26242");
+        aggregate.setSampleCount(2);
+        aggregate.setAirTemperatureSamples(2);
+        aggregate.setAirTemperatureAvg(airTemperatureAvg);
+        aggregate.setAirTemperatureMin(airTemperatureAvg - 1.0);
+        aggregate.setAirTemperatureMax(airTemperatureAvg + 1.0);
+        aggregate.setWindSpeedSamples(2);
+        aggregate.setWindSpeedAvg(3.0);
+        aggregate.setWindSpeedMax(4.0);
+        aggregate.setWeatherPhenomenon("Clear");
+        aggregate.setPhenomenonCategory(PhenomenonCategory.NONE);
+        return aggregate;
+    }
+
+    private List<JsonNode> history(String query) throws Exception {
+        String body = mockMvc.perform(get("/api/weather/TARTU/history?" + query))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/x-ndjson;charset=UTF-8"))
+                .andReturn().getResponse().getContentAsString();
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : body.split("\n")) {
+            if (!line.isEmpty()) {
+                lines.add(objectMapper.readTree(line));
+            }
+        }
+        return lines;
+    }
+}
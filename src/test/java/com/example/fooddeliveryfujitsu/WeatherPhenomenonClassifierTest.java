@@ -0,0 +1,35 @@
+package com.example.fooddeliveryfujitsu;
+
+import com.example.fooddeliveryfujitsu.models.PhenomenonCategory;
+import com.example.fooddeliveryfujitsu.util.WeatherPhenomenonClassifier;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WeatherPhenomenonClassifierTest {
+
+    private final WeatherPhenomenonClassifier classifier = new WeatherPhenomenonClassifier();
+
+    @Test
+    void testClassifyFeedVocabulary() {
+        assertEquals(PhenomenonCategory.SNOW_SLEET, classifier.classify("Light snow shower"));
+        assertEquals(PhenomenonCategory.SNOW_SLEET, classifier.classify("Moderate sleet"));
+        assertEquals(PhenomenonCategory.RAIN, classifier.classify("Heavy rain"));
+        assertEquals(PhenomenonCategory.RAIN, classifier.classify("Light shower"));
+        assertEquals(PhenomenonCategory.FORBIDDEN, classifier.classify("Glaze"));
+        assertEquals(PhenomenonCategory.FORBIDDEN, classifier.classify("Thunderstorm"));
+        assertEquals(PhenomenonCategory.NONE, classifier.classify("Variable clouds"));
+    }
+
+    @Test
+    void testClassifyIgnoresCase() {
+        assertEquals(PhenomenonCategory.SNOW_SLEET, classifier.classify("LIGHT SNOWFALL"));
+        assertEquals(PhenomenonCategory.FORBIDDEN, classifier.classify("hail"));
+    }
+
+    @Test
+    void testClassifyMissingPhenomenon() {
+        assertEquals(PhenomenonCategory.NONE, classifier.classify(null));
+        assertEquals(PhenomenonCategory.NONE, classifier.classify(""));
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.fooddeliveryfujitsu;
+
+import com.example.fooddeliveryfujitsu.events.WeatherDataIngestedEvent;
+import com.example.fooddeliveryfujitsu.models.PhenomenonCategory;
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+import com.example.fooddeliveryfujitsu.models.WeatherHourlyAggregate;
+import com.example.fooddeliveryfujitsu.repositories.WeatherDataRepository;
+import com.example.fooddeliveryfujitsu.repositories.WeatherHourlyAggregateRepository;
+import com.example.fooddeliveryfujitsu.services.WeatherDataService;
+import com.example.fooddeliveryfujitsu.services.WeatherHistoryLock;
+import com.example.fooddeliveryfujitsu.services.WeatherRetentionService;
+import com.example.fooddeliveryfujitsu.store.ObservationStore;
+import com.example.fooddeliveryfujitsu.util.WeatherPhenomenonClassifier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class WeatherRetentionServiceTest {
+
+    private static final String STATION = "Pärnu";
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 6, 1, 12, 30);
+
+    @TempDir
+    static Path exportDirectory;
+
+    @DynamicPropertySource
+    static void retentionProperties(DynamicPropertyRegistry registry) {
+        registry.add("weather.retention.raw-days", () -> "30");
+        registry.add("weather.retention.aggregate-months", () -> "12");
+        registry.add("weather.retention.export-directory", () -> exportDirectory.toString());
+    }
+
+    @Autowired
+    private WeatherRetentionService retentionService;
+
+    @Autowired
+    private WeatherDataService weatherDataService;
+
+    @Autowired
+    private WeatherDataRepository weatherDataRepository;
+
+    @Autowired
+    private WeatherHourlyAggregateRepository aggregateRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ObservationStore observationStore;
+
+    @Autowired
+    private WeatherHistoryLock historyLock;
+
+    private final WeatherPhenomenonClassifier classifier = new WeatherPhenomenonClassifier();
+
+    @BeforeEach
+    void setUp() {
+        weatherDataRepository.deleteAll();
+        aggregateRepository.deleteAll();
+    }
+
+    @Test
+    void testOldObservationsAreDownsampledAndStillAnswerLookups() {
+        LocalDateTime oldHour = NOW.minusDays(40).withMinute(0);
+        ingest(List.of(
+                observation(oldHour.plusMinutes(15), -4.0, 3.0, "Light rain"),
+                observation(oldHour.plusMinutes(35), -2.0, 9.0, "Light snow shower"),
+                observation(oldHour.plusMinutes(55), null, 6.0, "Clear"),
+                observation(NOW.minusDays(1), 15.0, 2.0, "Clear")));
+
+        retentionService.applyRetention(NOW);
+
+        List<WeatherData> raw = weatherDataRepository.findAll();
+        assertEquals(1, raw.size());
+        assertEquals(NOW.minusDays(1), raw.get(0).getTimestamp());
+
+        WeatherHourlyAggregate aggregate = aggregateRepository.findByStationNameAndHourStart(STATION, oldHour).get();
+        assertEquals(3, aggregate.getSampleCount());
+        assertEquals(2, aggregate.getAirTemperatureSamples());
+        assertEquals(-3.0, aggregate.getAirTemperatureAvg());
+        assertEquals(-4.0, aggregate.getAirTemperatureMin());
+        assertEquals(-2.0, aggregate.getAirTemperatureMax());
+        assertEquals(6.0, aggregate.getWindSpeedAvg());
+        assertEquals(9.0, aggregate.getWindSpeedMax());
+        assertEquals("Light snow shower", aggregate.getWeatherPhenomenon());
+        assertEquals(PhenomenonCategory.SNOW_SLEET, aggregate.getPhenomenonCategory());
+
+        WeatherData historical = weatherDataService.getWeatherDataForCityAtTime("PARNU", oldHour.plusMinutes(20)).get();
+        assertEquals(oldHour, historical.getTimestamp());
+        assertEquals(-3.0, historical.getAirTemperature());
+        assertEquals(PhenomenonCategory.SNOW_SLEET, historical.getPhenomenonCategory());
+
+        WeatherData recent = weatherDataService.getWeatherDataForCityAtTime("PARNU", NOW.minusDays(2)).get();
+        assertEquals(NOW.minusDays(1), recent.getTimestamp());
+    }
+
+    @Test
+    void testNearestLookupPrefersACloserAggregateOverAnOlderRawRow() {
+        LocalDateTime oldHour = NOW.minusDays(40).withMinute(0);
+        ingest(List.of(
+                observation(oldHour.plusMinutes(15), -4.0, 3.0, null),
+                observation(oldHour.plusMinutes(35), -2.0, 9.0, null),
+                observation(NOW.minusDays(1), 15.0, 2.0, "Clear")));
+        retentionService.applyRetention(NOW);
+
+        // An older raw row left behind the raw cutoff, e.g. a backfilled reading not downsampled yet.
+        weatherDataRepository.save(observation(NOW.minusDays(45), 7.0, 1.0, null));
+
+        WeatherData nearest = observationStore.findNearest(STATION, oldHour.plusMinutes(20)).get();
+        assertEquals(oldHour, nearest.getTimestamp());
+        assertEquals(-3.0, nearest.getAirTemperature());
+    }
+
+    @Test
+    void testRetentionIsSkippedWhileAnImportRuns() {
+        LocalDateTime oldHour = NOW.minusDays(40).withMinute(0);
+        ingest(List.of(observation(oldHour.plusMinutes(15), 1.0, 2.0, null)));
+
+        assertTrue(historyLock.tryAcquire());
+        try {
+            retentionService.applyRetention(NOW);
+        } finally {
+            historyLock.release();
+        }
+        assertEquals(1, weatherDataRepository.count());
+        assertEquals(0, aggregateRepository.count());
+
+        retentionService.applyRetention(NOW);
+        assertEquals(0, weatherDataRepository.count());
+        assertEquals(1, aggregateRepository.count());
+    }
+
+    @Test
+    void testLateObservationsMergeIntoExistingHour() {
+        LocalDateTime oldHour = NOW.minusDays(40).withMinute(0);
+        ingest(List.of(observation(oldHour.plusMinutes(15), 1.0, 2.0, null)));
+        retentionService.applyRetention(NOW);
+
+        ingest(List.of(observation(oldHour.plusMinutes(45), 3.0, 4.0, null)));
+        retentionService.applyRetention(NOW);
+
+        WeatherHourlyAggregate aggregate = aggregateRepository.findByStationNameAndHourStart(STATION, oldHour).get();
+        assertEquals(2, aggregate.getSampleCount());
+        assertEquals(2.0, aggregate.getAirTemperatureAvg());
+        assertEquals(3.0, aggregate.getWindSpeedAvg());
+        assertEquals(1, aggregateRepository.count());
+    }
+
+    @Test
+    void testExpiredAggregatesAreExportedAndDropped() throws Exception {
+        LocalDateTime expiredHour = LocalDateTime.of(2024, 3, 10, 8, 0);
+        ingest(List.of(
+                observation(expiredHour.plusMinutes(15), 2.5, 5.0, "Moderate rain"),
+                observation(NOW.minusDays(60), 10.0, 1.0, null)));
+
+        retentionService.applyRetention(NOW);
+
+        assertEquals(0, weatherDataRepository.count());
+        assertEquals(1, aggregateRepository.count());
+        List<String> lines = Files.readAllLines(exportDirectory.resolve("weather_hourly-2024-03.csv"), StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).startsWith("station_name,"));
+        assertTrue(lines.get(1).startsWith("Pärnu,41803,2024-03-10T08:00,1,2.5,2.5,2.5,5.0,5.0,Moderate rain,RAIN"),
+                lines.get(1));
+    }
+
+    private void ingest(List<WeatherData> observations) {
+        List<WeatherData> saved = new ArrayList<>(weatherDataRepository.saveAll(observations));
+        eventPublisher.publishEvent(new WeatherDataIngestedEvent(saved));
+    }
+
+    private WeatherData observation(LocalDateTime timestamp, Double temperature, Double wind, String phenomenon) {
+        WeatherData observation = new WeatherData(STATION, "41803", temperature, wind, phenomenon, timestamp);
+        observation.setPhenomenonCategory(classifier.classify(phenomenon));
+        return observation;
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.fooddeliveryfujitsu;
+
+import com.example.fooddeliveryfujitsu.events.WeatherHistoryBackfilledEvent;
+import com.example.fooddeliveryfujitsu.models.PhenomenonCategory;
+import com.example.fooddeliveryfujitsu.models.WeatherData;
+import com.example.fooddeliveryfujitsu.store.ObservationStore;
+import com.example.fooddeliveryfujitsu.store.WeatherTimeSeriesStore;
+import com.example.fooddeliveryfujitsu.util.WeatherPhenomenonClassifier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+class WeatherTimeSeriesStoreTest {
+
+    private static final String STATION = "Tartu-Tõravere";
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 1, 1, 0, 15);
+    // Heap budget of the timestamp, two floats, a short and an id for ten rows of one station.
+    private static final long TEN_ROWS = 10L * (8 + 4 + 4 + 2 + 8);
+
+    @Mock
+    private ObservationStore observationStore;
+
+    private WeatherPhenomenonClassifier phenomenonClassifier;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        // Loading goes through the interface's default, which reads findRecent.
+        when(observationStore.loadRecent(anyString(), anyInt(), any())).thenCallRealMethod();
+        phenomenonClassifier = new WeatherPhenomenonClassifier();
+    }
+
+    @Test
+    void testLoadedHistoryAnswersNearestLookups() {
+        List<WeatherData> newestFirst = new ArrayList<>();
+        for (int hour = 4; hour >= 0; hour--) {
+            newestFirst.add(observation(hour, -2.1 - hour, hour == 2 ? "Light snow shower" : null));
+        }
+        when(observationStore.findRecent(eq(STATION), anyInt()))
+                .thenReturn(newestFirst);
+
+        WeatherTimeSeriesStore store = new WeatherTimeSeriesStore(observationStore, phenomenonClassifier, TEN_ROWS, 1);
+        store.load(List.of(STATION));
+
+        WeatherData nearest = store.findNearest(STATION, T0.plusHours(2).plusMinutes(20));
+        assertEquals(T0.plusHours(2), nearest.getTimestamp());
+        assertEquals(-4.1, nearest.getAirTemperature());
+        assertEquals("Light snow shower", nearest.getWeatherPhenomenon());
+        assertEquals(PhenomenonCategory.SNOW_SLEET, nearest.getPhenomenonCategory());
+        assertEquals(3L, nearest.getId());
+
+        // Equally distant neighbours resolve to the earlier observation.
+        assertEquals(T0.plusHours(1), store.findNearest(STATION, T0.plusHours(1).plusMinutes(30)).getTimestamp());
+        // The whole history fitted, so times before it need no database access.
+        assertEquals(T0, store.findNearest(STATION, T0.minusDays(1)).getTimestamp());
+        assertNull(store.findNearest("Pärnu", T0));
+    }
+
+    @Test
+    void testEvictedHistoryFallsBackToDatabase() {
+        WeatherTimeSeriesStore store = new WeatherTimeSeriesStore(observationStore, phenomenonClassifier, TEN_ROWS, 1);
+        // Appended out of order, as a late observation would be.
+        for (int hour = 11; hour >= 0; hour--) {
+            store.append(observation(hour, 1.0, "Clear"));
+        }
+        assertEquals(10, store.residentRows(STATION));
+
+        for (int hour = 12; hour < 20; hour++) {
+            store.append(observation(hour, 1.0, "Clear"));
+        }
+
+        assertTrue(store.residentRows(STATION) <= 10);
+        assertEquals(T0.plusHours(19), store.findNearest(STATION, T0.plusDays(1)).getTimestamp());
+        assertNull(store.findNearest(STATION, T0));
+    }
+
+    @Test
+    void testBackfillFillsCompleteHistoryAndLeavesOlderRowsToTheStore() {
+        List<WeatherData> newestFirst = new ArrayList<>();
+        for (int hour = 8; hour >= 4; hour -= 2) {
+            newestFirst.add(observation(hour, 1.0, "Clear"));
+        }
+        when(observationStore.findRecent(eq(STATION), anyInt())).thenReturn(newestFirst);
+        WeatherTimeSeriesStore store = new WeatherTimeSeriesStore(observationStore, phenomenonClassifier, TEN_ROWS, 1);
+        store.load(List.of(STATION));
+
+        // The whole history of the station is resident, so imported rows before and between it are merged.
+        store.onWeatherHistoryBackfilled(new WeatherHistoryBackfilledEvent(List.of(
+                observation(0, -3.0, "Clear"), observation(5, -5.0, "Clear"))));
+        assertEquals(5, store.residentRows(STATION));
+        assertEquals(-5.0, store.findNearest(STATION, T0.plusHours(5)).getAirTemperature());
+        assertEquals(T0, store.findNearest(STATION, T0.minusDays(1)).getTimestamp());
+
+        // A series that does not hold its older history does not take rows before its first one.
+        WeatherData parnu = observation(6, 2.0, "Clear");
+        parnu.setStationName("Pärnu");
+        store.append(parnu);
+        WeatherData olderParnu = observation(1, 2.0, "Clear");
+        olderParnu.setStationName("Pärnu");
+        store.onWeatherHistoryBackfilled(new WeatherHistoryBackfilledEvent(List.of(olderParnu)));
+        assertEquals(1, store.residentRows("Pärnu"));
+        assertNull(store.findNearest("Pärnu", T0.plusHours(1)));
+    }
+
+    @Test
+    void testBackfillBeforeAFullSeriesMarksItIncomplete() {
+        List<WeatherData> newestFirst = new ArrayList<>();
+        for (int hour = 18; hour >= 10; hour--) {
+            newestFirst.add(observation(hour, 1.0, "Clear"));
+        }
+        when(observationStore.findRecent(eq(STATION), anyInt())).thenReturn(newestFirst);
+        WeatherTimeSeriesStore store = new WeatherTimeSeriesStore(observationStore, phenomenonClassifier, TEN_ROWS, 1);
+        store.load(List.of(STATION));
+        // Nine rows fitted, so the history is complete; a live row then fills the budget.
+        store.append(observation(19, 1.0, "Clear"));
+        assertEquals(T0.plusHours(10), store.findNearest(STATION, T0).getTimestamp());
+
+        store.onWeatherHistoryBackfilled(new WeatherHistoryBackfilledEvent(List.of(observation(0, 1.0, "Clear"))));
+
+        assertEquals(10, store.residentRows(STATION));
+        assertNull(store.findNearest(STATION, T0));
+    }
+
+    private static WeatherData observation(int hour, double airTemperature, String phenomenon) {
+        WeatherData observation = new WeatherData(STATION, "26242", airTemperature, 4.7, phenomenon, T0.plusHours(hour));
+        observation.setId(hour + 1L);
+        return observation;
+    }
+}
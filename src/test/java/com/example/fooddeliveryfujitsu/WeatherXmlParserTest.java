@@ -1,13 +1,18 @@
 package com.example.fooddeliveryfujitsu;
 
 import com.example.fooddeliveryfujitsu.models.WeatherData;
+import com.example.fooddeliveryfujitsu.util.WeatherFeedParseException;
 import com.example.fooddeliveryfujitsu.util.WeatherXmlParser;
 import org.junit.jupiter.api.Test;
 import org.springframework.core.io.ClassPathResource;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -37,6 +42,87 @@ class WeatherXmlParserTest {
         assertTrue(results.isEmpty());
     }
 
+    @Test
+    void testParseSkipsOtherStationsAndIgnoresUnknownFields() {
+        // Shaped like the live feed: extra fields, stations without a WMO code and nested elements.
+        String xml = """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <observations timestamp="2025-03-23 12:00:00">
+                    <station>
+                        <name>Kuressaare linn</name>
+                        <wmocode></wmocode>
+                        <airtemperature>9.9</airtemperature>
+                    </station>
+                    <station>
+                        <name>Tartu-Tõravere</name>
+                        <wmocode>26242</wmocode>
+                        <longitude>26.46130</longitude>
+                        <phenomenon>Light snow shower</phenomenon>
+                        <precipitations><name>ignored</name></precipitations>
+                        <airtemperature>-2.1</airtemperature>
+                        <windspeed></windspeed>
+                    </station>
+                    <station>
+                        <name>Ruhnu</name>
+                        <wmocode>26231</wmocode>
+                        <extra><airtemperature>1.0</airtemperature></extra>
+                    </station>
+                </observations>
+                """;
+
+        List<WeatherData> results = parser.parseWeatherData(
+                new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(1, results.size());
+        WeatherData tartu = results.get(0);
+        assertEquals("Tartu-Tõravere", tartu.getStationName());
+        assertEquals("26242", tartu.getWmoCode());
+        assertEquals(-2.1, tartu.getAirTemperature());
+        assertNull(tartu.getWindSpeed());
+        assertEquals("Light snow shower", tartu.getWeatherPhenomenon());
+        assertEquals(LocalDateTime.of(2025, 3, 23, 12, 0), tartu.getTimestamp());
+    }
+
+    @Test
+    void testParseStreamsEveryObservationsElementToVisitor() {
+        StringBuilder xml = new StringBuilder("<archive>");
+        for (int hour = 0; hour < 48; hour++) {
+            xml.append("<observations timestamp=\"2025-03-")
+                    .append(String.format("%02d %02d", 1 + hour / 24, hour % 24)).append(":00:00\">")
+                    .append("<station><name>Pärnu</name><wmocode>41803</wmocode><airtemperature>")
+                    .append(hour).append("</airtemperature></station>")
+                    .append("<station><name>Other Station</name><wmocode>99999</wmocode></station>")
+                    .append("</observations>");
+        }
+        xml.append("</archive>");
+
+        List<WeatherData> visited = new ArrayList<>();
+        int parsed = parser.parseWeatherData(
+                new ByteArrayInputStream(xml.toString().getBytes(StandardCharsets.UTF_8)), visited::add);
+
+        assertEquals(48, parsed);
+        assertEquals(48, visited.size());
+        assertEquals(LocalDateTime.of(2025, 3, 2, 23, 0), visited.get(47).getTimestamp());
+        assertEquals(47.0, visited.get(47).getAirTemperature());
+    }
+
+    @Test
+    void testTruncatedFeedFailsInsteadOfReturningPartialData() throws IOException {
+        String xml;
+        try (InputStream in = new ClassPathResource("sample-weather-data.xml").getInputStream()) {
+            xml = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        // Cut off as a stalled or truncated download would be, right after the first station.
+        String truncated = xml.substring(0, xml.indexOf("</station>") + "</station>".length());
+
+        List<WeatherData> visited = new ArrayList<>();
+        assertThrows(WeatherFeedParseException.class, () -> parser.parseWeatherData(
+                new ByteArrayInputStream(truncated.getBytes(StandardCharsets.UTF_8)), visited::add));
+        assertEquals(1, visited.size());
+
+        assertTrue(parser.parseWeatherData(new ByteArrayInputStream(truncated.getBytes(StandardCharsets.UTF_8))).isEmpty());
+    }
+
     @Test
     void testParseDoubleOrNull() throws Exception {
         Method parseDoubleMethod = WeatherXmlParser.class.getDeclaredMethod("parseDoubleOrNull", String.class);
@@ -0,0 +1,18 @@
+-- weather_data as created before the station and phenomenon dimensions, with a reading stored twice
+CREATE TABLE IF NOT EXISTS weather_data (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    station_name VARCHAR(100) NOT NULL,
+    wmo_code VARCHAR(10) NOT NULL,
+    air_temperature DOUBLE,
+    wind_speed DOUBLE,
+    weather_phenomenon VARCHAR(100),
+    timestamp TIMESTAMP NOT NULL
+    );
+
+CREATE INDEX IF NOT EXISTS idx_station_timestamp ON weather_data(station_name, timestamp);
+
+INSERT INTO weather_data (station_name, wmo_code, air_temperature, wind_speed, weather_phenomenon, timestamp)
+VALUES ('Tallinn-Harku', '26038', -5.0, 8.0, 'Light snow', TIMESTAMP '2025-01-15 10:15:00'),
+       ('Tallinn-Harku', '26038', -5.0, 8.0, 'Light snow', TIMESTAMP '2025-01-15 10:15:00'),
+       ('Tallinn-Harku', '26038', -4.0, 7.0, 'Clear', TIMESTAMP '2025-01-15 11:15:00'),
+       ('Pärnu', '41803', 0.0, 12.0, 'Rain', TIMESTAMP '2025-01-15 10:15:00');
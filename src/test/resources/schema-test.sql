@@ -1,16 +1,28 @@
+CREATE TABLE IF NOT EXISTS weather_station (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    name VARCHAR(100) NOT NULL,
+    wmo_code VARCHAR(10),
+    CONSTRAINT uk_station_name UNIQUE (name)
+    );
+
+CREATE TABLE IF NOT EXISTS weather_phenomenon (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    phenomenon_text VARCHAR(100) NOT NULL,
+    CONSTRAINT uk_phenomenon_text UNIQUE (phenomenon_text)
+    );
+
 CREATE TABLE IF NOT EXISTS weather_data (
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
-    station_name VARCHAR(100) NOT NULL,
-    wmo_code VARCHAR(10) NOT NULL,
+    station_id INT NOT NULL,
     air_temperature DOUBLE,
     wind_speed DOUBLE,
-    weather_phenomenon VARCHAR(100),
-    timestamp TIMESTAMP NOT NULL
+    phenomenon_id INT,
+    phenomenon_category VARCHAR(20),
+    timestamp TIMESTAMP NOT NULL,
+    observed_until TIMESTAMP,
+    CONSTRAINT uk_station_timestamp UNIQUE (station_id, timestamp)
     );
 
--- Create index using H2 syntax
-CREATE INDEX IF NOT EXISTS idx_station_timestamp ON weather_data(station_name, timestamp);
-
 -- Regional base fee table
 CREATE TABLE IF NOT EXISTS regional_base_fee (
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
@@ -22,6 +34,9 @@ CREATE TABLE IF NOT EXISTS regional_base_fee (
     CONSTRAINT uk_city_vehicle_valid_from UNIQUE (city, vehicle_type, valid_from)
     );
 
+CREATE INDEX IF NOT EXISTS idx_base_fee_city_vehicle_id ON regional_base_fee(city, vehicle_type, id);
+CREATE INDEX IF NOT EXISTS idx_base_fee_vehicle_id ON regional_base_fee(vehicle_type, id);
+
 -- Weather extra fee table
 CREATE TABLE IF NOT EXISTS weather_extra_fee (
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
@@ -34,4 +49,27 @@ CREATE TABLE IF NOT EXISTS weather_extra_fee (
     valid_from TIMESTAMP NOT NULL,
     valid_to TIMESTAMP,
     CONSTRAINT uk_type_vehicle_value_valid_from UNIQUE (fee_type, vehicle_type, min_value, max_value, phenomenon_category, valid_from)
-    );
\ No newline at end of file
+    );
+
+CREATE INDEX IF NOT EXISTS idx_extra_fee_type_valid_from ON weather_extra_fee(fee_type, valid_from);
+CREATE INDEX IF NOT EXISTS idx_extra_fee_type_vehicle_id ON weather_extra_fee(fee_type, vehicle_type, id);
+CREATE INDEX IF NOT EXISTS idx_extra_fee_vehicle_id ON weather_extra_fee(vehicle_type, id);
+
+-- Hourly aggregates of downsampled weather data
+CREATE TABLE IF NOT EXISTS weather_hourly (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    station_id INT NOT NULL,
+    wmo_code VARCHAR(10),
+    hour_start TIMESTAMP NOT NULL,
+    sample_count INT NOT NULL,
+    air_temperature_samples INT NOT NULL,
+    air_temperature_avg DOUBLE,
+    air_temperature_min DOUBLE,
+    air_temperature_max DOUBLE,
+    wind_speed_samples INT NOT NULL,
+    wind_speed_avg DOUBLE,
+    wind_speed_max DOUBLE,
+    phenomenon_id INT,
+    phenomenon_category VARCHAR(20),
+    CONSTRAINT uk_hourly_station_hour UNIQUE (station_id, hour_start)
+    );